@@ -0,0 +1,93 @@
+package com.orta.gos.model.bench;
+
+import com.google.protobuf.ByteString;
+import com.orta.gos.model.BinaryBody;
+import com.orta.gos.model.Payload;
+import com.orta.gos.model.PlatformMessage;
+import com.orta.gos.model.PlatformWorkflow;
+import com.orta.gos.model.rules.BlockBounds;
+import com.orta.gos.model.rules.BlockType;
+import com.orta.gos.model.rules.Step;
+import com.orta.gos.model.rules.Tracker;
+import com.orta.gos.model.rules.TrackerUtils;
+
+import io.vavr.collection.HashMap;
+import io.vavr.collection.List;
+import io.vavr.collection.Map;
+
+/**
+ * Shared builders for the benchmark states.
+ */
+final class Fixtures {
+
+  private Fixtures() {
+    // Private constructor to prevent instantiation
+  }
+
+  /**
+   * Builds a rules map with {@code mainSteps} MAIN steps and a quarter of that (at
+   * least one) for each of the GENERAL_ERROR and FINALLY blocks.
+   */
+  static Map<BlockType, List<Step>> rulesSteps(final int mainSteps) {
+    var sideSteps = Math.max(1, mainSteps / 4);
+    return HashMap.of(
+        BlockType.MAIN, steps("main", mainSteps),
+        BlockType.GENERAL_ERROR, steps("error", sideSteps),
+        BlockType.FINALLY, steps("finally", sideSteps));
+  }
+
+  static List<Step> steps(final String prefix, final int count) {
+    return List.range(0, count)
+        .map(idx -> Step.newBuilder()
+            .setName(String.format("%s-%d", prefix, idx))
+            .setAddress(String.format("%s-%d.svc:9000", prefix, idx))
+            .putAttributes("timeout", "30s")
+            .putAttributes("retries", "3")
+            .build());
+  }
+
+  /**
+   * Creates a tracker pointing to the first step of the provided ordered steps.
+   */
+  static Tracker tracker(final List<Step> orderedSteps) {
+    var builder = Tracker.newBuilder()
+        .setCurrentBlock(BlockType.MAIN)
+        .setCurrentStep(0)
+        .setTermination(orderedSteps.size());
+    return BlockBounds.setRanges(builder, TrackerUtils.blockRanges(0, orderedSteps)).build();
+  }
+
+  static Payload payload(final int idx, final int size) {
+    var body = new byte[size];
+    for (int i = 0; i < size; i++) {
+      body[i] = (byte) (i * 31 + idx);
+    }
+    return Payload.newBuilder()
+        .setUuid(String.format("payload-%d", idx))
+        .setCreationTimestamp(1_700_000_000_000L + idx)
+        .putAttributes("content-type", "application/octet-stream")
+        .setBinaryBody(BinaryBody.newBuilder().setBody(ByteString.copyFrom(body)))
+        .build();
+  }
+
+  static PlatformMessage message(final int mainSteps, final int payloadCount, final int payloadSize,
+      final int headerCount) {
+    var steps = TrackerUtils.orderedSteps(rulesSteps(mainSteps));
+    var builder = PlatformMessage.newBuilder()
+        .setId("bench-message")
+        .setCreationTime(1_700_000_000_000L)
+        .setWorkflowLog(PlatformWorkflow.newBuilder()
+            .addSelectedWorkflows("bench-workflow")
+            .addAllSteps(steps)
+            .setTracker(tracker(steps)));
+
+    for (int i = 0; i < payloadCount; i++) {
+      builder.addPayloads(payload(i, payloadSize));
+    }
+    for (int i = 0; i < headerCount; i++) {
+      builder.putHeaders(String.format("header-%d", i), String.format("value-%d", i));
+    }
+    return builder.build();
+  }
+
+}
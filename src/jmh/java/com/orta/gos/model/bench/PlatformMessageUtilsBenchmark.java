@@ -0,0 +1,111 @@
+package com.orta.gos.model.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.orta.gos.model.PlatformMessage;
+import com.orta.gos.model.ProcessInput;
+import com.orta.gos.model.ProcessOutcome;
+import com.orta.gos.model.ProcessOutcomeFailure;
+import com.orta.gos.model.ProcessOutcomeSucces;
+import com.orta.gos.model.utils.PlatformMessageSplicer;
+import com.orta.gos.model.utils.PlatformMessageUtils;
+import com.orta.gos.model.utils.PlatformMessageView;
+
+import io.vavr.control.Option;
+
+/**
+ * Per-hop message handling: building the step input, folding the step outcome back
+ * into the message (including its re-serialization for the next hop) and routing a
+ * serialized message.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PlatformMessageUtilsBenchmark {
+
+  @Param({ "16" })
+  int stepCount;
+
+  @Param({ "1", "16", "128" })
+  int payloadCount;
+
+  @Param({ "256", "65536" })
+  int payloadSize;
+
+  @Param({ "4", "64" })
+  int headerCount;
+
+  PlatformMessage message;
+  ByteString messageBytes;
+  ProcessOutcome success;
+  ProcessOutcome failure;
+
+  @Setup
+  public void setup() {
+    message = Fixtures.message(stepCount, payloadCount, payloadSize, headerCount);
+    messageBytes = message.toByteString();
+
+    var successBuilder = ProcessOutcomeSucces.newBuilder()
+        .setOutputPayload(Fixtures.payload(payloadCount, payloadSize));
+    for (int i = 0; i < headerCount; i++) {
+      successBuilder.putHeaders(String.format("out-header-%d", i), String.format("value-%d", i));
+    }
+    success = ProcessOutcome.newBuilder().setSuccess(successBuilder).build();
+    failure = ProcessOutcome.newBuilder()
+        .setFailure(ProcessOutcomeFailure.newBuilder().setErrorMessage("bench failure"))
+        .build();
+  }
+
+  @Benchmark
+  public PlatformMessage appendOutcomeSuccess() {
+    return PlatformMessageUtils.withMessage(message).appendOutcome(success);
+  }
+
+  @Benchmark
+  public PlatformMessage appendOutcomeFailure() {
+    return PlatformMessageUtils.withMessage(message).appendOutcome(failure);
+  }
+
+  @Benchmark
+  public byte[] appendOutcomeAndSerialize() {
+    return PlatformMessageUtils.withMessage(message).appendOutcome(success).toByteArray();
+  }
+
+  @Benchmark
+  public ByteString appendOutcomeSpliced() throws InvalidProtocolBufferException {
+    return PlatformMessageSplicer.appendOutcome(messageBytes, success);
+  }
+
+  @Benchmark
+  public ProcessInput processInput() {
+    return PlatformMessageUtils.withMessage(message).processInput();
+  }
+
+  @Benchmark
+  public Option<String> routeParsed() throws InvalidProtocolBufferException {
+    return PlatformMessageUtils.withMessage(PlatformMessage.parseFrom(messageBytes)).maybeCurrentAddress();
+  }
+
+  @Benchmark
+  public Option<String> routeView() throws InvalidProtocolBufferException {
+    return PlatformMessageView.parse(messageBytes).maybeCurrentAddress();
+  }
+
+}
@@ -0,0 +1,139 @@
+package com.orta.gos.model.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.orta.gos.model.rules.BlockBounds;
+import com.orta.gos.model.rules.BlockRange;
+import com.orta.gos.model.rules.BlockType;
+import com.orta.gos.model.rules.RulesUtils;
+import com.orta.gos.model.rules.Step;
+import com.orta.gos.model.rules.Tracker;
+import com.orta.gos.model.rules.TrackerState;
+import com.orta.gos.model.rules.TrackerUtils;
+import com.orta.gos.model.rules.TransitionTable;
+import com.orta.gos.model.rules.WorkflowPlan;
+import com.orta.gos.model.rules.WorkflowPlanCache;
+
+import io.vavr.collection.List;
+import io.vavr.collection.Map;
+
+/**
+ * Tracker transitions and step-ordering costs, as paid once per step (transitions) or
+ * once per enrichment (ordering and block ranges).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TrackerUtilsBenchmark {
+
+  @Param({ "8", "64", "512" })
+  int stepCount;
+
+  Map<BlockType, List<Step>> rulesSteps;
+  List<Step> orderedSteps;
+  WorkflowPlanCache planCache;
+
+  Tracker insideBlock;
+  Tracker endOfMain;
+
+  TransitionTable transitions;
+  TrackerState state;
+
+  @Setup
+  public void setup() {
+    rulesSteps = Fixtures.rulesSteps(stepCount);
+    orderedSteps = TrackerUtils.orderedSteps(rulesSteps);
+    planCache = new WorkflowPlanCache();
+    planCache.plan("bench-workflow", rulesSteps);
+
+    var initial = Fixtures.tracker(orderedSteps);
+    BlockRange main = BlockBounds.range(initial, BlockType.MAIN).get();
+
+    insideBlock = initial.toBuilder().setCurrentStep(main.getStartIdx()).build();
+    endOfMain = initial.toBuilder().setCurrentStep(main.getEndIdx()).build();
+
+    transitions = planCache.plan("bench-workflow", rulesSteps).transitions();
+    state = new TrackerState();
+  }
+
+  @Benchmark
+  public Tracker nextStepOnSuccessInsideBlock() {
+    return TrackerUtils.nextStepOnSuccess(insideBlock).build();
+  }
+
+  @Benchmark
+  public Tracker nextStepOnSuccessEndOfBlock() {
+    return TrackerUtils.nextStepOnSuccess(endOfMain).build();
+  }
+
+  @Benchmark
+  public Tracker nextStepOnFailure() {
+    return TrackerUtils.nextStepOnFailure(insideBlock).build();
+  }
+
+  @Benchmark
+  public int transitionOnSuccessInsideBlock() {
+    return transitions.onSuccess(state.load(insideBlock)).currentStep();
+  }
+
+  @Benchmark
+  public int transitionOnSuccessEndOfBlock() {
+    return transitions.onSuccess(state.load(endOfMain)).currentStep();
+  }
+
+  @Benchmark
+  public int transitionOnFailure() {
+    return transitions.onFailure(state.load(insideBlock)).currentStep();
+  }
+
+  @Benchmark
+  public Tracker transitionOnSuccessMaterialized() {
+    return transitions.onSuccess(state.load(insideBlock)).toBuilder(insideBlock).build();
+  }
+
+  @Benchmark
+  public Map<Integer, BlockRange> blockRanges() {
+    return TrackerUtils.blockRanges(0, orderedSteps);
+  }
+
+  @Benchmark
+  public List<Step> orderedSteps() {
+    return TrackerUtils.orderedSteps(rulesSteps);
+  }
+
+  @Benchmark
+  public List<Step> fromRule() {
+    return RulesUtils.fromRule(rulesSteps);
+  }
+
+  @Benchmark
+  public WorkflowPlan compilePlan() {
+    return WorkflowPlan.compile(rulesSteps);
+  }
+
+  @Benchmark
+  public WorkflowPlan cachedPlanById() {
+    return planCache.plan("bench-workflow", rulesSteps);
+  }
+
+  @Benchmark
+  public WorkflowPlan cachedPlanByContent() {
+    return planCache.plan(rulesSteps);
+  }
+
+}
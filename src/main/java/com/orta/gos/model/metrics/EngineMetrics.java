@@ -0,0 +1,156 @@
+package com.orta.gos.model.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import com.orta.gos.model.metrics.MetricsRegistry.MeterId;
+import com.orta.gos.model.rules.BlockType;
+
+import io.vavr.collection.List;
+
+/**
+ * Meters of the workflow engine, updated by {@code TrackerUtils}, {@code TransitionTable}
+ * and {@code PlatformMessageUtils.appendOutcome}:
+ * <ul>
+ * <li>{@value #TRANSITIONS}: outcomes moving a tracker, tagged with the block they
+ * completed a step of</li>
+ * <li>{@value #FAILURES}: failed outcomes, tagged the same way</li>
+ * <li>{@value #EARLY_TERMINATIONS}: failures terminating the workflow, as no
+ * GENERAL_ERROR block could handle them</li>
+ * <li>{@value #BACKWARD_JUMPS}: jumps to a block starting before the current step,
+ * rejected</li>
+ * <li>{@value #APPEND_OUTCOME}: time spent appending an outcome to a message, in
+ * nanoseconds</li>
+ * </ul>
+ *
+ * Metering is off until a registry is {@link #install(MetricsRegistry) installed}; the
+ * meters are resolved once on install, so updating one is an array read and a
+ * {@link LongAdder} increment.
+ */
+public final class EngineMetrics {
+
+  public static final String TRANSITIONS = "gos.tracker.transitions";
+  public static final String FAILURES = "gos.tracker.failures";
+  public static final String EARLY_TERMINATIONS = "gos.tracker.early_terminations";
+  public static final String BACKWARD_JUMPS = "gos.tracker.backward_jump_rejections";
+  public static final String APPEND_OUTCOME = "gos.message.append_outcome";
+
+  private static final String BLOCK_TAG = "block";
+  private static final int BLOCK_SLOTS = BlockType.FINALLY_VALUE + 1;
+
+  private static final EngineMetrics DISABLED = new EngineMetrics();
+
+  private static volatile EngineMetrics current = DISABLED;
+
+  private final boolean enabled;
+  private final LongAdder[] transitions;
+  private final LongAdder[] failures;
+  private final LongAdder[] earlyTerminations;
+  private final LongAdder backwardJumps;
+  private final LatencyHistogram appendOutcome;
+
+  private EngineMetrics() {
+    this.enabled = false;
+    this.transitions = new LongAdder[0];
+    this.failures = new LongAdder[0];
+    this.earlyTerminations = new LongAdder[0];
+    this.backwardJumps = new LongAdder();
+    this.appendOutcome = new LatencyHistogram();
+  }
+
+  private EngineMetrics(final MetricsRegistry registry) {
+    this.enabled = true;
+    this.transitions = byBlock(registry, TRANSITIONS);
+    this.failures = byBlock(registry, FAILURES);
+    this.earlyTerminations = byBlock(registry, EARLY_TERMINATIONS);
+    this.backwardJumps = registry.counter(MeterId.of(BACKWARD_JUMPS));
+    this.appendOutcome = registry.histogram(MeterId.of(APPEND_OUTCOME));
+  }
+
+  /**
+   * Starts metering the engine into the registry, replacing the registry installed before.
+   *
+   * @param registry the registry to meter into
+   */
+  public static void install(final MetricsRegistry registry) {
+    current = new EngineMetrics(registry);
+  }
+
+  /**
+   * Stops metering the engine.
+   */
+  public static void uninstall() {
+    current = DISABLED;
+  }
+
+  /**
+   * @param blockNumber number of the block type the step completed in
+   */
+  public static void transition(final int blockNumber) {
+    var metrics = current;
+    if (metrics.enabled) {
+      increment(metrics.transitions, blockNumber);
+    }
+  }
+
+  /**
+   * @param blockNumber number of the block type the step failed in
+   */
+  public static void failure(final int blockNumber) {
+    var metrics = current;
+    if (metrics.enabled) {
+      increment(metrics.transitions, blockNumber);
+      increment(metrics.failures, blockNumber);
+    }
+  }
+
+  /**
+   * @param blockNumber number of the block type the workflow terminated from
+   */
+  public static void earlyTermination(final int blockNumber) {
+    var metrics = current;
+    if (metrics.enabled) {
+      increment(metrics.earlyTerminations, blockNumber);
+    }
+  }
+
+  public static void backwardJumpRejected() {
+    var metrics = current;
+    if (metrics.enabled) {
+      metrics.backwardJumps.increment();
+    }
+  }
+
+  /**
+   * @return the start time of an appendOutcome to pass to {@link #appendOutcome(long)},
+   *         read only when metering
+   */
+  public static long appendStarted() {
+    return current.enabled ? System.nanoTime() : 0;
+  }
+
+  /**
+   * @param startedNanos the value returned by {@link #appendStarted()}
+   */
+  public static void appendOutcome(final long startedNanos) {
+    var metrics = current;
+    if (metrics.enabled && startedNanos != 0) {
+      metrics.appendOutcome.record(System.nanoTime() - startedNanos);
+    }
+  }
+
+  private static LongAdder[] byBlock(final MetricsRegistry registry, final String name) {
+    var counters = new LongAdder[BLOCK_SLOTS];
+    List.of(BlockType.values())
+        .filter(blockType -> blockType != BlockType.UNRECOGNIZED)
+        .forEach(blockType -> counters[blockType.getNumber()] =
+            registry.counter(MeterId.of(name, BLOCK_TAG, blockType.name())));
+    return counters;
+  }
+
+  private static void increment(final LongAdder[] counters, final int blockNumber) {
+    if (blockNumber >= 0 && blockNumber < counters.length && counters[blockNumber] != null) {
+      counters[blockNumber].increment();
+    }
+  }
+
+}
@@ -0,0 +1,128 @@
+package com.orta.gos.model.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free histogram of latencies, in the unit they are recorded in (microseconds for the
+ * step latencies, nanoseconds for the engine timings), with log-linear buckets in the
+ * manner of HdrHistogram: values below 32 have a bucket each, and every power of two above is
+ * split into 32 buckets, so a value is reported within about 3% of its actual value over
+ * the whole {@code long} range, with a fixed footprint of 15 KB.
+ *
+ * Recording is a few atomic increments and never allocates; reading while values are
+ * being recorded gives a view that may be behind by the values in flight.
+ */
+public final class LatencyHistogram {
+
+  /**
+   * @param count number of recorded values
+   * @param mean  mean of the recorded values
+   * @param p50   median
+   * @param p90   90th percentile
+   * @param p99   99th percentile
+   * @param max   largest recorded value
+   */
+  public record Summary(long count, double mean, long p50, long p90, long p99, long max) {
+  }
+
+  private static final int SUB_BUCKET_BITS = 5;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  private static final int BUCKETS = (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+  private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+  private final LongAdder count = new LongAdder();
+  private final LongAdder sum = new LongAdder();
+  private final AtomicLong max = new AtomicLong();
+
+  /**
+   * Records a latency; negative values are recorded as 0.
+   *
+   * @param latency the latency
+   */
+  public void record(final long latency) {
+    var value = Math.max(0, latency);
+    counts.incrementAndGet(bucket(value));
+    count.increment();
+    sum.add(value);
+    max.accumulateAndGet(value, Math::max);
+  }
+
+  /**
+   * Adds the values recorded by the other histogram.
+   *
+   * @param other the histogram to merge in
+   */
+  public void merge(final LatencyHistogram other) {
+    for (int bucket = 0; bucket < BUCKETS; bucket++) {
+      var bucketCount = other.counts.get(bucket);
+      if (bucketCount > 0) {
+        counts.addAndGet(bucket, bucketCount);
+      }
+    }
+    count.add(other.count.sum());
+    sum.add(other.sum.sum());
+    max.accumulateAndGet(other.max.get(), Math::max);
+  }
+
+  public long count() {
+    return count.sum();
+  }
+
+  public long max() {
+    return max.get();
+  }
+
+  public double mean() {
+    var recorded = count.sum();
+    return recorded == 0 ? 0 : (double) sum.sum() / recorded;
+  }
+
+  /**
+   * @param percentile the percentile, between 0 and 100
+   * @return the highest value of the bucket holding the percentile, capped by the largest
+   *         recorded value, or 0 when nothing was recorded
+   */
+  public long percentile(final double percentile) {
+    if (percentile < 0 || percentile > 100) {
+      throw new IllegalArgumentException(String.format("percentile must be within [0, 100] (was %f)", percentile));
+    }
+    var recorded = count.sum();
+    if (recorded == 0) {
+      return 0;
+    }
+    var rank = Math.max(1, (long) Math.ceil(percentile / 100 * recorded));
+    var seen = 0L;
+    for (int bucket = 0; bucket < BUCKETS; bucket++) {
+      seen += counts.get(bucket);
+      if (seen >= rank) {
+        return Math.min(highest(bucket), max.get());
+      }
+    }
+    return max.get();
+  }
+
+  public Summary summary() {
+    return new Summary(count(), mean(), percentile(50), percentile(90), percentile(99), max());
+  }
+
+  static int bucket(final long value) {
+    if (value < SUB_BUCKETS) {
+      return (int) value;
+    }
+    var exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+    var subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+    return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+  }
+
+  static long highest(final int bucket) {
+    if (bucket < SUB_BUCKETS) {
+      return bucket;
+    }
+    var shift = bucket / SUB_BUCKETS - 1;
+    var lowest = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+    return lowest + (1L << shift) - 1;
+  }
+
+}
@@ -0,0 +1,49 @@
+package com.orta.gos.model.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import io.vavr.collection.List;
+
+/**
+ * Registry of the meters updated by the engine: striped {@link LongAdder} counters and
+ * lock-free {@link LatencyHistogram}s, identified by a name and tags.
+ *
+ * Meters are looked up once and held by the caller (see {@link EngineMetrics}), so an
+ * implementation is free to allocate or register them on lookup. A Micrometer bridge
+ * registers the meters it hands out, e.g. a {@code FunctionCounter} reading
+ * {@link LongAdder#sum()} for a counter and gauges reading the percentiles of a histogram,
+ * while {@link SimpleMetricsRegistry} only keeps them in memory.
+ */
+public interface MetricsRegistry {
+
+  /**
+   * @param name the meter name
+   * @param tags the meter tags, as key/value pairs
+   */
+  record MeterId(String name, List<String> tags) {
+
+    public MeterId {
+      if (tags.size() % 2 != 0) {
+        throw new IllegalArgumentException(String.format(
+            "Tags of meter [%s] must be key/value pairs (were %s)", name, tags.mkString(", ")));
+      }
+    }
+
+    public static MeterId of(final String name, final String... tags) {
+      return new MeterId(name, List.of(tags));
+    }
+  }
+
+  /**
+   * @param id the meter id
+   * @return the counter of the id, the same instance on every lookup
+   */
+  LongAdder counter(MeterId id);
+
+  /**
+   * @param id the meter id
+   * @return the histogram of the id, the same instance on every lookup
+   */
+  LatencyHistogram histogram(MeterId id);
+
+}
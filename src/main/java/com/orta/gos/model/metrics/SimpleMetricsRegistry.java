@@ -0,0 +1,42 @@
+package com.orta.gos.model.metrics;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import io.vavr.collection.HashMap;
+import io.vavr.collection.Map;
+
+/**
+ * {@link MetricsRegistry} keeping its meters in memory, read through {@link #counters()}
+ * and {@link #histograms()}.
+ */
+public final class SimpleMetricsRegistry implements MetricsRegistry {
+
+  private final ConcurrentHashMap<MeterId, LongAdder> counters = new ConcurrentHashMap<>();
+  private final ConcurrentHashMap<MeterId, LatencyHistogram> histograms = new ConcurrentHashMap<>();
+
+  @Override
+  public LongAdder counter(final MeterId id) {
+    return counters.computeIfAbsent(id, ignored -> new LongAdder());
+  }
+
+  @Override
+  public LatencyHistogram histogram(final MeterId id) {
+    return histograms.computeIfAbsent(id, ignored -> new LatencyHistogram());
+  }
+
+  /**
+   * @return the current value of every counter
+   */
+  public Map<MeterId, Long> counters() {
+    return HashMap.ofAll(counters).mapValues(LongAdder::sum);
+  }
+
+  /**
+   * @return the summary of every histogram
+   */
+  public Map<MeterId, LatencyHistogram.Summary> histograms() {
+    return HashMap.ofAll(histograms).mapValues(LatencyHistogram::summary);
+  }
+
+}
@@ -0,0 +1,96 @@
+package com.orta.gos.model.metrics;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.orta.gos.model.PlatformMessage;
+import com.orta.gos.model.rules.Step;
+import com.orta.gos.model.rules.WorkflowRegistry;
+import com.orta.gos.model.utils.PlatformMessageUtils;
+import com.orta.gos.model.utils.StepTimingUtils;
+
+import io.quarkus.logging.Log;
+import io.vavr.collection.SortedMap;
+import io.vavr.collection.TreeMap;
+import io.vavr.control.Option;
+
+/**
+ * Aggregation of the timing traces of completed messages into per-step latency histograms,
+ * to find the steps dominating the workflow latency.
+ *
+ * Steps are keyed by name, so the same step used by several workflows is aggregated
+ * once. Messages carrying a {@code workflow_ref} have their step names resolved through
+ * the registry.
+ */
+public final class StepLatencies {
+
+  /**
+   * @param latency  summary of the step latencies in microseconds, from dispatch to outcome
+   * @param failures number of failed outcomes
+   * @param attempts number of calls made
+   */
+  public record StepSummary(LatencyHistogram.Summary latency, long failures, long attempts) {
+  }
+
+  private static final class StepStats {
+    final LatencyHistogram latency = new LatencyHistogram();
+    final LongAdder failures = new LongAdder();
+    final LongAdder attempts = new LongAdder();
+  }
+
+  private final WorkflowRegistry registry;
+  private final ConcurrentHashMap<String, StepStats> steps = new ConcurrentHashMap<>();
+
+  public StepLatencies(final WorkflowRegistry registry) {
+    this.registry = registry;
+  }
+
+  /**
+   * Records the timing trace of the message.
+   *
+   * @param message a completed (or in flight) message
+   * @return this aggregation
+   */
+  public StepLatencies record(final PlatformMessage message) {
+    var utils = PlatformMessageUtils.withMessage(message);
+    StepTimingUtils.timings(message.getWorkflowLog()).forEach(timing -> utils.step(timing.stepIdx(), registry)
+        .map(Step::getName)
+        .peekLeft(error -> Log.warnf("Skipping timing of step %d of message %s: %s", timing.stepIdx(),
+            message.getId(), error))
+        .forEach(name -> {
+          var stats = steps.computeIfAbsent(name, ignored -> new StepStats());
+          stats.latency.record(timing.durationMicros());
+          stats.attempts.add(timing.attempts());
+          if (timing.failed()) {
+            stats.failures.increment();
+          }
+        }));
+    return this;
+  }
+
+  /**
+   * @param messages the completed messages
+   * @return this aggregation
+   */
+  public StepLatencies recordAll(final Iterable<PlatformMessage> messages) {
+    messages.forEach(this::record);
+    return this;
+  }
+
+  /**
+   * @param step the step name
+   * @return the latency histogram of the step, if any of its outcomes was recorded
+   */
+  public Option<LatencyHistogram> histogram(final String step) {
+    return Option.of(steps.get(step)).map(stats -> stats.latency);
+  }
+
+  /**
+   * @return the summary of every recorded step, by step name
+   */
+  public SortedMap<String, StepSummary> summaries() {
+    return TreeMap.ofAll(steps).mapValues(stats -> new StepSummary(stats.latency.summary(), stats.failures.sum(),
+        stats.attempts.sum()));
+  }
+
+}
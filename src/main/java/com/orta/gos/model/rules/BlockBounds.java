@@ -0,0 +1,115 @@
+package com.orta.gos.model.rules;
+
+import io.vavr.collection.HashMap;
+import io.vavr.collection.List;
+import io.vavr.collection.Map;
+import io.vavr.control.Option;
+
+/**
+ * Utility class reading the block ranges of a tracker from either of their encodings, and
+ * writing the compact one.
+ *
+ * The compact {@code block_bounds} array holds the start and end index of every block at
+ * {@code 2 * number} and {@code 2 * number + 1} (plus one, so an absent block is 0), and
+ * is read with an array index instead of a map lookup. Trackers written before it carry
+ * the {@code ranges} map only, which is read when the array is empty.
+ */
+public class BlockBounds {
+
+  private BlockBounds() {
+    // Private constructor to prevent instantiation
+  }
+
+  /**
+   * @param tracker     the tracker
+   * @param blockNumber the block type number
+   * @return the index of the first step of the block, or -1 when the block is absent
+   */
+  public static int start(final TrackerOrBuilder tracker, final int blockNumber) {
+    return bound(tracker, 2 * blockNumber, blockNumber, true);
+  }
+
+  /**
+   * @param tracker     the tracker
+   * @param blockNumber the block type number
+   * @return the index of the last step of the block, or -1 when the block is absent
+   */
+  public static int end(final TrackerOrBuilder tracker, final int blockNumber) {
+    return bound(tracker, 2 * blockNumber + 1, blockNumber, false);
+  }
+
+  public static boolean hasBlock(final TrackerOrBuilder tracker, final int blockNumber) {
+    return start(tracker, blockNumber) != WorkflowPlan.NO_INDEX;
+  }
+
+  /**
+   * @param tracker   the tracker
+   * @param blockType the block type
+   * @return the range of the block, if present
+   */
+  public static Option<BlockRange> range(final TrackerOrBuilder tracker, final BlockType blockType) {
+    var number = blockType.getNumber();
+    return hasBlock(tracker, number) ? Option.of(BlockRange.newBuilder()
+        .setType(blockType)
+        .setStartIdx(start(tracker, number))
+        .setEndIdx(end(tracker, number))
+        .build()) : Option.none();
+  }
+
+  /**
+   * @param tracker the tracker
+   * @return the ranges of the blocks present, keyed by block type number
+   */
+  public static Map<Integer, BlockRange> ranges(final TrackerOrBuilder tracker) {
+    if (tracker.getBlockBoundsCount() == 0) {
+      return HashMap.ofAll(tracker.getRangesMap());
+    }
+    return List.of(BlockType.values())
+        .filter(blockType -> blockType != BlockType.UNRECOGNIZED)
+        .flatMap(blockType -> range(tracker, blockType))
+        .toMap(range -> range.getTypeValue(), range -> range);
+  }
+
+  /**
+   * Sets the block ranges in the compact encoding, clearing the {@code ranges} map.
+   *
+   * @param builder the tracker to update
+   * @param ranges  the block ranges keyed by block type number
+   * @return the tracker builder
+   */
+  public static Tracker.Builder setRanges(final Tracker.Builder builder, final Map<Integer, BlockRange> ranges) {
+    var bounds = new int[ranges.keySet().max().map(number -> 2 * number + 2).getOrElse(0)];
+    ranges.forEach((number, range) -> {
+      bounds[2 * number] = range.getStartIdx() + 1;
+      bounds[2 * number + 1] = range.getEndIdx() + 1;
+    });
+    builder.clearRanges().clearBlockBounds();
+    for (var bound : bounds) {
+      builder.addBlockBounds(bound);
+    }
+    return builder;
+  }
+
+  /**
+   * Moves the ranges of a tracker written with the {@code ranges} map to the compact
+   * encoding.
+   *
+   * @param builder the tracker to update
+   * @return the tracker builder
+   */
+  public static Tracker.Builder compact(final Tracker.Builder builder) {
+    return builder.getBlockBoundsCount() == 0 && builder.getRangesCount() > 0
+        ? setRanges(builder, HashMap.ofAll(builder.getRangesMap()))
+        : builder;
+  }
+
+  private static int bound(final TrackerOrBuilder tracker, final int position, final int blockNumber,
+      final boolean start) {
+    if (tracker.getBlockBoundsCount() > 0) {
+      return position < tracker.getBlockBoundsCount() ? tracker.getBlockBounds(position) - 1 : WorkflowPlan.NO_INDEX;
+    }
+    var range = tracker.getRangesMap().get(blockNumber);
+    return range == null ? WorkflowPlan.NO_INDEX : start ? range.getStartIdx() : range.getEndIdx();
+  }
+
+}
@@ -1,7 +1,8 @@
 package com.orta.gos.model.rules;
 
+import com.orta.gos.model.metrics.EngineMetrics;
+
 import io.vavr.control.Either;
-import io.vavr.control.Option;
 
 import static io.vavr.control.Either.left;
 import static io.vavr.control.Either.right;
@@ -16,16 +17,20 @@ public record TrackerDetails(TrackerOrBuilder tracker) {
   }
 
   public Boolean lastStepInBlock() {
-    return tracker.getCurrentStep() == tracker.getRangesMap().get(tracker.getCurrentBlockValue()).getEndIdx();
+    return tracker.getCurrentStep() == BlockBounds.end(tracker, tracker.getCurrentBlockValue());
   }
 
   public Either<String, Tuple2<Integer, BlockType>> jumpToBlock(final BlockType blockType) {
-    return Option.of(tracker.getRangesMap().get(blockType.getNumber()))
+    return BlockBounds.range(tracker, blockType)
         .toEither(String.format("Block [%s] was not found", blockType))
         .map(BlockRange::getStartIdx)
-        .flatMap(idx -> Integer.compare(idx, tracker.getCurrentStep()) < 0
-            ? left(String.format("attempt to move backwards (from %d to idx %d)", tracker.getCurrentStep(), idx))
-            : right(Tuple.of(idx, blockType)));
+        .flatMap(idx -> {
+          if (Integer.compare(idx, tracker.getCurrentStep()) < 0) {
+            EngineMetrics.backwardJumpRejected();
+            return left(String.format("attempt to move backwards (from %d to idx %d)", tracker.getCurrentStep(), idx));
+          }
+          return right(Tuple.of(idx, blockType));
+        });
   }
 
 }
@@ -0,0 +1,155 @@
+package com.orta.gos.model.rules;
+
+import java.util.BitSet;
+
+/**
+ * Mutable, primitive view of the position fields of a {@link Tracker} (current step,
+ * current block, error raised, error raised step and in-flight parallel steps).
+ *
+ * Used by {@link TransitionTable} to move through a workflow without allocating; a
+ * {@link Tracker} is materialized only when {@link #toBuilder(TrackerOrBuilder)} is called.
+ * Instances are not thread-safe and are meant to be reused by a single thread.
+ */
+public final class TrackerState {
+
+  private int currentStep;
+  private int currentBlock;
+  private boolean errorRaised;
+  private int errorRaisedStep;
+  private final BitSet inFlight = new BitSet();
+
+  public TrackerState() {
+    // Empty state, positioned on step 0 of TYPE_NA
+  }
+
+  public static TrackerState of(final TrackerOrBuilder tracker) {
+    return new TrackerState().load(tracker);
+  }
+
+  /**
+   * Copies the position fields of the tracker into this state.
+   *
+   * @param tracker the tracker to read
+   * @return this state
+   */
+  public TrackerState load(final TrackerOrBuilder tracker) {
+    this.currentStep = tracker.getCurrentStep();
+    this.currentBlock = tracker.getCurrentBlockValue();
+    this.errorRaised = tracker.getErrorRaised();
+    this.errorRaisedStep = tracker.getErrorRaisedStep();
+    this.inFlight.clear();
+    for (int i = 0; i < tracker.getInFlightStepsCount(); i++) {
+      this.inFlight.set(tracker.getInFlightSteps(i));
+    }
+    return this;
+  }
+
+  public TrackerState set(final int currentStep, final int currentBlock, final boolean errorRaised,
+      final int errorRaisedStep) {
+    this.currentStep = currentStep;
+    this.currentBlock = currentBlock;
+    this.errorRaised = errorRaised;
+    this.errorRaisedStep = errorRaisedStep;
+    this.inFlight.clear();
+    return this;
+  }
+
+  public int currentStep() {
+    return currentStep;
+  }
+
+  /**
+   * @return the block type number of the current block
+   */
+  public int currentBlockValue() {
+    return currentBlock;
+  }
+
+  public BlockType currentBlock() {
+    var blockType = BlockType.forNumber(currentBlock);
+    return blockType == null ? BlockType.UNRECOGNIZED : blockType;
+  }
+
+  public boolean errorRaised() {
+    return errorRaised;
+  }
+
+  public int errorRaisedStep() {
+    return errorRaisedStep;
+  }
+
+  public boolean hasInFlight() {
+    return !inFlight.isEmpty();
+  }
+
+  public boolean inFlight(final int step) {
+    return inFlight.get(step);
+  }
+
+  /**
+   * @return true when the workflow has nowhere to advance (current block is TYPE_NA)
+   */
+  public boolean terminated() {
+    return currentBlock == BlockType.TYPE_NA_VALUE;
+  }
+
+  void moveTo(final int step, final int block) {
+    this.currentStep = step;
+    this.currentBlock = block;
+  }
+
+  /**
+   * Marks the steps from {@code fromStep} to {@code toStep} (inclusive) as in flight.
+   */
+  void dispatch(final int fromStep, final int toStep) {
+    inFlight.clear();
+    inFlight.set(fromStep, toStep + 1);
+  }
+
+  /**
+   * Marks the step as completed.
+   *
+   * @return the first step still in flight, or -1 when none is left
+   */
+  int complete(final int step) {
+    inFlight.clear(step);
+    return inFlight.nextSetBit(0);
+  }
+
+  void clearInFlight() {
+    inFlight.clear();
+  }
+
+  void raiseError(final int failedStep) {
+    this.errorRaisedStep = errorRaised ? Math.min(failedStep, errorRaisedStep) : failedStep;
+    this.errorRaised = true;
+  }
+
+  /**
+   * Materializes the state on top of the provided tracker, keeping its ranges and
+   * termination.
+   *
+   * @param base the tracker the state was loaded from (or an equivalent one)
+   * @return tracker builder with the position fields of this state
+   */
+  public Tracker.Builder toBuilder(final TrackerOrBuilder base) {
+    var builder = base instanceof Tracker tracker ? Tracker.newBuilder(tracker)
+        : Tracker.newBuilder(((Tracker.Builder) base).build());
+    builder
+        .setCurrentStep(currentStep)
+        .setCurrentBlockValue(currentBlock)
+        .setErrorRaised(errorRaised)
+        .setErrorRaisedStep(errorRaisedStep)
+        .clearInFlightSteps();
+    inFlight.stream().forEach(builder::addInFlightSteps);
+    return builder;
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+        "TrackerState[currentStep=%d, currentBlock=%s, errorRaised=%s, errorRaisedStep=%d, inFlight=%s]",
+        currentStep, currentBlock(), errorRaised, errorRaisedStep, inFlight);
+  }
+
+}
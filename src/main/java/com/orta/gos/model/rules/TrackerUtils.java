@@ -3,9 +3,13 @@ package com.orta.gos.model.rules;
 import static com.orta.gos.model.rules.BlockEdge.END;
 import static com.orta.gos.model.rules.BlockEdge.START;
 import static com.orta.gos.model.rules.BlockType.FINALLY;
+import static com.orta.gos.model.rules.BlockType.PARALLEL;
+import static com.orta.gos.model.rules.BlockType.PARALLEL_VALUE;
 import static com.orta.gos.model.rules.BlockType.TYPE_NA;
 import static io.vavr.control.Either.left;
 
+import com.orta.gos.model.metrics.EngineMetrics;
+
 import io.quarkus.logging.Log;
 import io.vavr.Tuple;
 import io.vavr.Tuple2;
@@ -42,7 +46,7 @@ public class TrackerUtils {
    * Orders steps by block type and marks the first and last steps of each block
    * with indicators.
    * The blocks are ordered according to the BlockType enum order:
-   * MAIN -> GENERAL_ERROR -> FINALLY
+   * MAIN -> PARALLEL -> GENERAL_ERROR -> FINALLY
    *
    * @param stepsMap Map containing steps grouped by block type
    * @return Ordered list of steps with block indicators added
@@ -92,13 +96,101 @@ public class TrackerUtils {
     });
   }
 
+  /**
+   * Steps currently running: the in-flight steps of a PARALLEL block, the current step
+   * otherwise, and none once the workflow terminated.
+   *
+   * A PARALLEL tracker without in-flight steps runs every step of the block from the
+   * current step on.
+   *
+   * @param tracker the tracker
+   * @return indices of the running steps, ascending
+   */
+  public static List<Integer> runningSteps(final TrackerOrBuilder tracker) {
+    return switch (tracker.getCurrentBlock()) {
+      case TYPE_NA -> List.empty();
+      case PARALLEL -> tracker.getInFlightStepsCount() > 0 ? List.ofAll(tracker.getInFlightStepsList())
+          : List.rangeClosed(tracker.getCurrentStep(), BlockBounds.end(tracker, PARALLEL_VALUE));
+      case MAIN, GENERAL_ERROR, FINALLY, UNRECOGNIZED -> List.of(tracker.getCurrentStep());
+    };
+  }
+
+  /**
+   * Whether an outcome of the step applies to the tracker: the step is one of the
+   * running steps of a PARALLEL block, or the current step of any other block. No step
+   * runs once the workflow terminated.
+   *
+   * @param tracker the tracker
+   * @param step    index of the step
+   * @return true when the step outcome is expected
+   */
+  public static boolean isRunning(final TrackerOrBuilder tracker, final int step) {
+    return switch (tracker.getCurrentBlock()) {
+      case TYPE_NA -> false;
+      case PARALLEL -> runningSteps(tracker).contains(step);
+      case MAIN, GENERAL_ERROR, FINALLY, UNRECOGNIZED -> step == tracker.getCurrentStep();
+    };
+  }
+
   public static Tracker.Builder nextStepOnSuccess(final Tracker tracker) {
+    return nextStepOnSuccess(tracker, tracker.getCurrentStep());
+  }
+
+  /**
+   * Advances the tracker after the step completed successfully.
+   *
+   * In a PARALLEL block the step is removed from the in-flight steps, and the tracker
+   * leaves the block only when none is left. An outcome of a step that is not running
+   * (e.g. a parallel step still running when the block failed, or any step once the
+   * workflow terminated) is ignored.
+   *
+   * @param tracker       the tracker
+   * @param completedStep index of the completed step
+   * @return the advanced tracker
+   * @throws IllegalStateException when the step is running in a block without range
+   */
+  public static Tracker.Builder nextStepOnSuccess(final Tracker tracker, final int completedStep) {
+    if (!isRunning(tracker, completedStep)) {
+      Log.warnf("Ignoring outcome of step %d, not running (running: %s)", completedStep, runningSteps(tracker));
+      return Tracker.newBuilder(tracker);
+    }
+
+    if (!BlockBounds.hasBlock(tracker, tracker.getCurrentBlockValue())) {
+      throw new IllegalStateException(String.format("Current block [%s] has no range", tracker.getCurrentBlock()));
+    }
+    EngineMetrics.transition(tracker.getCurrentBlockValue());
+
+    if (tracker.getCurrentBlock() == PARALLEL) {
+      var remaining = runningSteps(tracker).remove(completedStep);
+      if (!remaining.isEmpty()) {
+        return Tracker.newBuilder(tracker)
+            .setCurrentStep(remaining.head())
+            .clearInFlightSteps()
+            .addAllInFlightSteps(remaining);
+      }
+
+      // All the parallel steps completed, advance from the end of the block
+      var endIdx = BlockBounds.end(tracker, PARALLEL_VALUE);
+      return advance(Tracker.newBuilder(tracker).clearInFlightSteps().setCurrentStep(endIdx).build());
+    }
+
+    return advance(tracker);
+  }
+
+  /**
+   * Moves the tracker past its current step: to the next step of the block, or to the
+   * next block from the last step of the block.
+   */
+  private static Tracker.Builder advance(final Tracker tracker) {
     var details = TrackerDetails.instance(tracker);
     var lastStep = details.lastStepInBlock();
 
     if (lastStep) {
       Either<String, Tuple2<Integer, BlockType>> result = switch (tracker.getCurrentBlock()) {
         case MAIN:
+          yield BlockBounds.hasBlock(tracker, PARALLEL_VALUE) ? details.jumpToBlock(PARALLEL)
+              : details.jumpToBlock(FINALLY);
+        case PARALLEL:
         case GENERAL_ERROR:
           yield details.jumpToBlock(FINALLY);
         case FINALLY:
@@ -112,17 +204,36 @@ public class TrackerUtils {
         return Tuple.of(tracker.getTermination(), TYPE_NA);
       }, v -> v);
 
-      return Tracker.newBuilder(tracker).setCurrentBlock(nextStepIndex._2).setCurrentStep(nextStepIndex._1);
+      return enterBlock(Tracker.newBuilder(tracker), nextStepIndex._2, nextStepIndex._1);
     } else {
       return Tracker.newBuilder(tracker).setCurrentStep(tracker.getCurrentStep() + 1);
     }
   }
 
   public static Tracker.Builder nextStepOnFailure(final Tracker tracker) {
+    return nextStepOnFailure(tracker, tracker.getCurrentStep());
+  }
+
+  /**
+   * Advances the tracker after the step failed: MAIN and PARALLEL jump to GENERAL_ERROR
+   * (abandoning the other in-flight parallel steps), other blocks terminate. An outcome of
+   * a step that is not running (or of any step once the workflow terminated) is ignored.
+   *
+   * @param tracker    the tracker
+   * @param failedStep index of the failed step
+   * @return the advanced tracker
+   */
+  public static Tracker.Builder nextStepOnFailure(final Tracker tracker, final int failedStep) {
+    if (!isRunning(tracker, failedStep)) {
+      Log.warnf("Ignoring failure of step %d, not running", failedStep);
+      return Tracker.newBuilder(tracker);
+    }
+    EngineMetrics.failure(tracker.getCurrentBlockValue());
+
     var details = TrackerDetails.instance(tracker);
 
     Either<String, Tuple2<Integer, BlockType>> nextStep = switch (tracker.getCurrentBlock()) {
-      case MAIN:
+      case MAIN, PARALLEL:
         yield details.jumpToBlock(BlockType.GENERAL_ERROR);
       default:
         yield left(String.format("Failed on %s block, terminating", tracker.getCurrentBlock()));
@@ -130,17 +241,28 @@ public class TrackerUtils {
 
     var newPosition = nextStep.fold(errorMessage -> {
       Log.errorf("Next Step on Failure: %s", errorMessage);
+      EngineMetrics.earlyTermination(tracker.getCurrentBlockValue());
       return Tuple.of(tracker.getTermination(), TYPE_NA);
     }, v -> v);
 
-    return Tracker.newBuilder(tracker)
-        .setCurrentBlock(newPosition._2)
-        .setCurrentStep(newPosition._1)
+    return enterBlock(Tracker.newBuilder(tracker), newPosition._2, newPosition._1)
         .setErrorRaised(true)
-        .setErrorRaisedStep(tracker.getErrorRaised() ? Math.min(tracker.getCurrentStep(), tracker.getErrorRaisedStep())
-            : tracker
-                .getCurrentStep());
+        .setErrorRaisedStep(tracker.getErrorRaised() ? Math.min(failedStep, tracker.getErrorRaisedStep())
+            : failedStep);
 
   }
 
+  /**
+   * Positions the tracker on the first step of the block, dispatching all the steps of a
+   * PARALLEL block at once.
+   */
+  private static Tracker.Builder enterBlock(final Tracker.Builder builder, final BlockType blockType,
+      final int stepIdx) {
+    builder.setCurrentBlock(blockType).setCurrentStep(stepIdx).clearInFlightSteps();
+    if (blockType == PARALLEL) {
+      builder.addAllInFlightSteps(List.rangeClosed(stepIdx, BlockBounds.end(builder, PARALLEL_VALUE)));
+    }
+    return builder;
+  }
+
 }
@@ -0,0 +1,212 @@
+package com.orta.gos.model.rules;
+
+import static com.orta.gos.model.rules.BlockType.FINALLY;
+import static com.orta.gos.model.rules.BlockType.GENERAL_ERROR;
+import static com.orta.gos.model.rules.BlockType.PARALLEL;
+
+import java.util.Arrays;
+
+import com.orta.gos.model.metrics.EngineMetrics;
+
+import io.quarkus.logging.Log;
+
+/**
+ * Primitive transition table for moving a {@link TrackerState} through a workflow.
+ *
+ * Holds the start/end index of every block in int arrays indexed by the block type
+ * number, so {@link #onSuccess(TrackerState)} and {@link #onFailure(TrackerState)} follow
+ * exactly the semantics of {@link TrackerUtils#nextStepOnSuccess(Tracker)} and
+ * {@link TrackerUtils#nextStepOnFailure(Tracker)} without allocating on the happy path
+ * (moving inside a block or jumping to an existing block). Tables are immutable and can be
+ * shared by all messages of the same workflow (see {@link WorkflowPlan#transitions()}).
+ */
+public final class TransitionTable {
+
+  private final int[] blockStart;
+  private final int[] blockEnd;
+  private final int termination;
+
+  TransitionTable(final int[] blockStart, final int[] blockEnd, final int termination) {
+    this.blockStart = blockStart;
+    this.blockEnd = blockEnd;
+    this.termination = termination;
+  }
+
+  /**
+   * Builds a table from the ranges and termination index of a tracker.
+   *
+   * @param tracker the tracker holding the block ranges
+   * @return transition table of the tracker workflow
+   */
+  public static TransitionTable of(final TrackerOrBuilder tracker) {
+    var ranges = BlockBounds.ranges(tracker);
+    var slots = ranges.keySet().max().getOrElse(-1) + 1;
+    var blockStart = new int[slots];
+    var blockEnd = new int[slots];
+    Arrays.fill(blockStart, WorkflowPlan.NO_INDEX);
+    Arrays.fill(blockEnd, WorkflowPlan.NO_INDEX);
+
+    ranges.forEach((blockNumber, range) -> {
+      blockStart[blockNumber] = range.getStartIdx();
+      blockEnd[blockNumber] = range.getEndIdx();
+    });
+
+    return new TransitionTable(blockStart, blockEnd, tracker.getTermination());
+  }
+
+  public int termination() {
+    return termination;
+  }
+
+  public TrackerState onSuccess(final TrackerState state) {
+    return onSuccess(state, state.currentStep());
+  }
+
+  /**
+   * Advances the state after a successful step: moves to the next step of the block, or
+   * from the last step of MAIN to the PARALLEL block (when present), and from the last
+   * step of MAIN/PARALLEL/GENERAL_ERROR to the FINALLY block, otherwise terminates. A
+   * PARALLEL block is left once all its in-flight steps completed.
+   *
+   * @param state         the state to advance (mutated in place)
+   * @param completedStep the completed step; the state is left unchanged when the step is
+   *                      not running (or the workflow terminated)
+   * @return the same state
+   * @throws IllegalStateException when the step is running in a block without range
+   */
+  public TrackerState onSuccess(final TrackerState state, final int completedStep) {
+    if (!running(state, completedStep)) {
+      Log.warnf("Ignoring outcome of step %d, not running", completedStep);
+      return state;
+    }
+
+    var currentBlock = state.currentBlockValue();
+    if (!hasBlock(currentBlock)) {
+      throw new IllegalStateException(String.format("Current block [%s] has no range", state.currentBlock()));
+    }
+    EngineMetrics.transition(currentBlock);
+
+    if (currentBlock == BlockType.PARALLEL_VALUE) {
+      if (!state.hasInFlight()) {
+        state.dispatch(state.currentStep(), blockEnd[currentBlock]);
+      }
+      var nextInFlight = state.complete(completedStep);
+      if (nextInFlight >= 0) {
+        state.moveTo(nextInFlight, currentBlock);
+        return state;
+      }
+      // All the parallel steps completed, advance from the end of the block
+      state.moveTo(blockEnd[currentBlock], currentBlock);
+    }
+
+    var currentStep = state.currentStep();
+    if (currentStep != blockEnd[currentBlock]) {
+      state.moveTo(currentStep + 1, currentBlock);
+    } else if (currentBlock == BlockType.MAIN_VALUE && hasBlock(BlockType.PARALLEL_VALUE)) {
+      if (!jumpToBlock(state, PARALLEL)) {
+        terminate(state);
+      }
+    } else if (currentBlock == BlockType.MAIN_VALUE || currentBlock == BlockType.PARALLEL_VALUE
+        || currentBlock == BlockType.GENERAL_ERROR_VALUE) {
+      if (!jumpToBlock(state, FINALLY)) {
+        terminate(state);
+      }
+    } else {
+      Log.error("Terminating workflow, nowhere to advance");
+      terminate(state);
+    }
+    return state;
+  }
+
+  public TrackerState onFailure(final TrackerState state) {
+    return onFailure(state, state.currentStep());
+  }
+
+  /**
+   * Advances the state after a failed step: moves from MAIN or PARALLEL to the
+   * GENERAL_ERROR block (abandoning the other in-flight steps), otherwise terminates.
+   * Marks the error as raised and keeps the earliest failed step.
+   *
+   * @param state      the state to advance (mutated in place)
+   * @param failedStep the failed step; the state is left unchanged when the step is not
+   *                   running (or the workflow terminated)
+   * @return the same state
+   */
+  public TrackerState onFailure(final TrackerState state, final int failedStep) {
+    if (!running(state, failedStep)) {
+      Log.warnf("Ignoring failure of step %d, not running", failedStep);
+      return state;
+    }
+
+    var failedBlock = state.currentBlockValue();
+    EngineMetrics.failure(failedBlock);
+    if (failedBlock == BlockType.MAIN_VALUE || failedBlock == BlockType.PARALLEL_VALUE) {
+      if (!jumpToBlock(state, GENERAL_ERROR)) {
+        EngineMetrics.earlyTermination(failedBlock);
+        terminate(state);
+      }
+    } else {
+      Log.errorf("Next Step on Failure: Failed on %s block, terminating", state.currentBlock());
+      EngineMetrics.earlyTermination(failedBlock);
+      terminate(state);
+    }
+
+    state.raiseError(failedStep);
+    return state;
+  }
+
+  public int blockStart(final BlockType blockType) {
+    return hasBlock(blockType.getNumber()) ? blockStart[blockType.getNumber()] : WorkflowPlan.NO_INDEX;
+  }
+
+  public int blockEnd(final BlockType blockType) {
+    return hasBlock(blockType.getNumber()) ? blockEnd[blockType.getNumber()] : WorkflowPlan.NO_INDEX;
+  }
+
+  private boolean hasBlock(final int blockNumber) {
+    return blockNumber >= 0 && blockNumber < blockStart.length && blockStart[blockNumber] != WorkflowPlan.NO_INDEX;
+  }
+
+  /**
+   * Mirrors {@link TrackerUtils#isRunning(TrackerOrBuilder, int)}: no step runs once the
+   * workflow terminated.
+   */
+  private boolean running(final TrackerState state, final int step) {
+    return switch (state.currentBlockValue()) {
+      case BlockType.TYPE_NA_VALUE -> false;
+      case BlockType.PARALLEL_VALUE -> state.hasInFlight() ? state.inFlight(step)
+          : hasBlock(BlockType.PARALLEL_VALUE) && step >= state.currentStep()
+              && step <= blockEnd[BlockType.PARALLEL_VALUE];
+      default -> step == state.currentStep();
+    };
+  }
+
+  private boolean jumpToBlock(final TrackerState state, final BlockType target) {
+    var targetNumber = target.getNumber();
+    if (!hasBlock(targetNumber)) {
+      Log.errorf("Block [%s] was not found", target);
+      return false;
+    }
+
+    var startIdx = blockStart[targetNumber];
+    if (startIdx < state.currentStep()) {
+      Log.errorf("attempt to move backwards (from %d to idx %d)", state.currentStep(), startIdx);
+      EngineMetrics.backwardJumpRejected();
+      return false;
+    }
+
+    state.moveTo(startIdx, targetNumber);
+    if (target == PARALLEL) {
+      state.dispatch(startIdx, blockEnd[targetNumber]);
+    } else {
+      state.clearInFlight();
+    }
+    return true;
+  }
+
+  private void terminate(final TrackerState state) {
+    state.moveTo(termination, BlockType.TYPE_NA_VALUE);
+    state.clearInFlight();
+  }
+
+}
@@ -0,0 +1,230 @@
+package com.orta.gos.model.rules;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HexFormat;
+
+import com.google.protobuf.CodedOutputStream;
+import com.orta.gos.model.utils.StringInterner;
+
+import io.vavr.collection.List;
+import io.vavr.collection.Map;
+
+/**
+ * Immutable, precompiled form of a rule set: the ordered steps (with block indicators
+ * already applied) and the start/end index of every block, indexed by the block type
+ * number.
+ *
+ * A plan is equivalent to {@link TrackerUtils#orderedSteps(Map)} followed by
+ * {@link TrackerUtils#blockRanges(Integer, List)}, but is computed once and can be shared
+ * between all messages using the same rule set (see {@link WorkflowPlanCache}).
+ */
+public final class WorkflowPlan {
+
+  static final int NO_INDEX = -1;
+
+  private static final List<BlockType> BLOCK_ORDER = List.of(BlockType.values())
+      .filter(blockType -> blockType != BlockType.UNRECOGNIZED);
+
+  private static final int BLOCK_SLOTS = BLOCK_ORDER.map(BlockType::getNumber).max().get() + 1;
+
+  private final Step[] steps;
+  private final int[] blockStart;
+  private final int[] blockEnd;
+  private final List<Step> stepsList;
+  private final Map<Integer, BlockRange> ranges;
+  private final TransitionTable transitions;
+
+  private WorkflowPlan(final Step[] steps, final int[] blockStart, final int[] blockEnd) {
+    this.steps = steps;
+    this.blockStart = blockStart;
+    this.blockEnd = blockEnd;
+    this.stepsList = List.of(steps);
+    this.ranges = rangesFrom(0);
+    this.transitions = new TransitionTable(blockStart, blockEnd, steps.length);
+  }
+
+  /**
+   * Compiles a rule set into a plan. Blocks are ordered according to the BlockType enum
+   * order (MAIN -> PARALLEL -> GENERAL_ERROR -> FINALLY) and empty blocks are skipped. The
+   * step identifiers are interned with {@link StringInterner#shared()}.
+   *
+   * @param rulesSteps map of BlockType to its corresponding list of steps
+   * @return the compiled plan
+   */
+  public static WorkflowPlan compile(final Map<BlockType, List<Step>> rulesSteps) {
+    var blockStart = new int[BLOCK_SLOTS];
+    var blockEnd = new int[BLOCK_SLOTS];
+    Arrays.fill(blockStart, NO_INDEX);
+    Arrays.fill(blockEnd, NO_INDEX);
+
+    var ordered = BLOCK_ORDER.foldLeft(List.<Step>empty(), (accum, blockType) -> {
+      var marked = StepUtils.markEdges(blockType, rulesSteps.getOrElse(blockType, List.empty()))
+          .map(StringInterner.shared()::intern);
+      if (!marked.isEmpty()) {
+        blockStart[blockType.getNumber()] = accum.size();
+        blockEnd[blockType.getNumber()] = accum.size() + marked.size() - 1;
+      }
+      return accum.appendAll(marked);
+    });
+
+    return new WorkflowPlan(ordered.toJavaArray(Step[]::new), blockStart, blockEnd);
+  }
+
+  /**
+   * Computes a stable content hash (SHA-256, hex encoded) of a rule set, suitable as a
+   * cache key when no workflow id is available.
+   *
+   * Every block is framed by its type number and step count, and every step by its
+   * serialized size (all as varints), so different step lists never digest the same bytes.
+   *
+   * @param rulesSteps map of BlockType to its corresponding list of steps
+   * @return hex encoded hash of the rule set content
+   */
+  public static String contentHash(final Map<BlockType, List<Step>> rulesSteps) {
+    try {
+      var digest = MessageDigest.getInstance("SHA-256");
+      var buffer = new byte[4096];
+      var header = new byte[2 * CodedOutputStream.computeUInt32SizeNoTag(Integer.MAX_VALUE)];
+      for (var blockType : BLOCK_ORDER) {
+        var blockSteps = rulesSteps.getOrElse(blockType, List.empty());
+        if (blockSteps == null || blockSteps.isEmpty()) {
+          continue;
+        }
+        digestFrame(digest, header, blockType.getNumber(), blockSteps.size());
+        for (var step : blockSteps) {
+          var size = step.getSerializedSize();
+          digestFrame(digest, header, size);
+          var bytes = size <= buffer.length ? buffer : new byte[size];
+          var output = CodedOutputStream.newInstance(bytes);
+          output.useDeterministicSerialization();
+          step.writeTo(output);
+          digest.update(bytes, 0, size);
+        }
+      }
+      return HexFormat.of().formatHex(digest.digest());
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-256 is not available", e);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private static void digestFrame(final MessageDigest digest, final byte[] header, final int... values)
+      throws IOException {
+    var output = CodedOutputStream.newInstance(header);
+    for (var value : values) {
+      output.writeUInt32NoTag(value);
+    }
+    digest.update(header, 0, output.getTotalBytesWritten());
+  }
+
+  public int size() {
+    return steps.length;
+  }
+
+  public Step step(final int idx) {
+    return steps[idx];
+  }
+
+  /**
+   * @return the ordered steps, with block indicators set
+   */
+  public List<Step> steps() {
+    return stepsList;
+  }
+
+  /**
+   * @return the index marking the workflow as terminated (one past the last step)
+   */
+  public int termination() {
+    return steps.length;
+  }
+
+  public boolean hasBlock(final BlockType blockType) {
+    return blockStart(blockType) != NO_INDEX;
+  }
+
+  /**
+   * @return index of the first step of the block, or -1 when the block is empty
+   */
+  public int blockStart(final BlockType blockType) {
+    var number = blockType.getNumber();
+    return number < BLOCK_SLOTS ? blockStart[number] : NO_INDEX;
+  }
+
+  /**
+   * @return index of the last step of the block, or -1 when the block is empty
+   */
+  public int blockEnd(final BlockType blockType) {
+    var number = blockType.getNumber();
+    return number < BLOCK_SLOTS ? blockEnd[number] : NO_INDEX;
+  }
+
+  /**
+   * @return the first non-empty block, or TYPE_NA when the plan has no steps
+   */
+  public BlockType firstBlock() {
+    return BLOCK_ORDER
+        .find(blockType -> blockType != BlockType.TYPE_NA && hasBlock(blockType))
+        .getOrElse(BlockType.TYPE_NA);
+  }
+
+  /**
+   * @return block ranges keyed by block type number, as produced by
+   *         {@link TrackerUtils#blockRanges(Integer, List)}
+   */
+  public Map<Integer, BlockRange> ranges() {
+    return ranges;
+  }
+
+  /**
+   * Block ranges offset by the provided base index, for plans appended after already
+   * existing steps.
+   *
+   * @param baseIdx the index of the first step of the plan in the workflow
+   * @return block ranges keyed by block type number
+   */
+  public Map<Integer, BlockRange> ranges(final int baseIdx) {
+    return baseIdx == 0 ? ranges : rangesFrom(baseIdx);
+  }
+
+  /**
+   * @return the transition table of the plan, shared by all trackers created from it
+   */
+  public TransitionTable transitions() {
+    return transitions;
+  }
+
+  /**
+   * Creates a tracker positioned on the first step of the plan.
+   *
+   * @return tracker builder with ranges and termination set
+   */
+  public Tracker.Builder initialTracker() {
+    var first = firstBlock();
+    var builder = Tracker.newBuilder()
+        .setCurrentStep(first == BlockType.TYPE_NA ? termination() : blockStart(first))
+        .setCurrentBlock(first)
+        .setTermination(termination());
+    BlockBounds.setRanges(builder, ranges);
+    if (first == BlockType.PARALLEL) {
+      builder.addAllInFlightSteps(List.rangeClosed(blockStart(first), blockEnd(first)));
+    }
+    return builder;
+  }
+
+  private Map<Integer, BlockRange> rangesFrom(final int baseIdx) {
+    return BLOCK_ORDER
+        .filter(this::hasBlock)
+        .toMap(blockType -> blockType.getNumber(), blockType -> BlockRange.newBuilder()
+            .setType(blockType)
+            .setStartIdx(baseIdx + blockStart(blockType))
+            .setEndIdx(baseIdx + blockEnd(blockType))
+            .build());
+  }
+
+}
@@ -0,0 +1,126 @@
+package com.orta.gos.model.rules;
+
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import io.vavr.collection.List;
+import io.vavr.collection.Map;
+import io.vavr.control.Option;
+
+/**
+ * Bounded, thread-safe cache of compiled {@link WorkflowPlan}s. Plans are keyed either by
+ * workflow id or by the content hash of the rule set, and the least recently used plan is
+ * evicted once the cache reaches its capacity.
+ */
+public final class WorkflowPlanCache {
+
+  public static final int DEFAULT_MAX_ENTRIES = 1024;
+
+  private static final String ID_PREFIX = "id:";
+  private static final String HASH_PREFIX = "sha256:";
+
+  private final int maxEntries;
+  private final LinkedHashMap<String, WorkflowPlan> plans;
+
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder evictions = new LongAdder();
+
+  public record Stats(long hits, long misses, long evictions, int size) {
+  }
+
+  public WorkflowPlanCache() {
+    this(DEFAULT_MAX_ENTRIES);
+  }
+
+  public WorkflowPlanCache(final int maxEntries) {
+    if (maxEntries <= 0) {
+      throw new IllegalArgumentException(String.format("maxEntries must be positive (was %d)", maxEntries));
+    }
+    this.maxEntries = maxEntries;
+    this.plans = new LinkedHashMap<>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(java.util.Map.Entry<String, WorkflowPlan> eldest) {
+        var evict = size() > WorkflowPlanCache.this.maxEntries;
+        if (evict) {
+          evictions.increment();
+        }
+        return evict;
+      }
+    };
+  }
+
+  /**
+   * Provides the plan of a workflow identified by id, compiling the rule set only when
+   * the id is not cached. The caller is responsible for using a new id (e.g. including a
+   * version) whenever the rule set of a workflow changes.
+   *
+   * @param workflowId the workflow id (and version)
+   * @param rulesSteps map of BlockType to its corresponding list of steps
+   * @return the cached or newly compiled plan
+   */
+  public WorkflowPlan plan(final String workflowId, final Map<BlockType, List<Step>> rulesSteps) {
+    return getOrCompile(ID_PREFIX + workflowId, rulesSteps);
+  }
+
+  /**
+   * Provides the plan of a rule set keyed by its content hash, compiling it only when an
+   * identical rule set was not seen before.
+   *
+   * @param rulesSteps map of BlockType to its corresponding list of steps
+   * @return the cached or newly compiled plan
+   */
+  public WorkflowPlan plan(final Map<BlockType, List<Step>> rulesSteps) {
+    return getOrCompile(HASH_PREFIX + WorkflowPlan.contentHash(rulesSteps), rulesSteps);
+  }
+
+  public Option<WorkflowPlan> get(final String workflowId) {
+    return lookup(ID_PREFIX + workflowId);
+  }
+
+  public void invalidate(final String workflowId) {
+    synchronized (plans) {
+      plans.remove(ID_PREFIX + workflowId);
+    }
+  }
+
+  public void clear() {
+    synchronized (plans) {
+      plans.clear();
+    }
+  }
+
+  public Stats stats() {
+    synchronized (plans) {
+      return new Stats(hits.sum(), misses.sum(), evictions.sum(), plans.size());
+    }
+  }
+
+  private WorkflowPlan getOrCompile(final String key, final Map<BlockType, List<Step>> rulesSteps) {
+    var cached = lookup(key);
+    if (cached.isDefined()) {
+      return cached.get();
+    }
+
+    // Compile outside the lock; concurrent misses on the same key keep the first plan
+    var compiled = WorkflowPlan.compile(rulesSteps);
+    synchronized (plans) {
+      var existing = plans.putIfAbsent(key, compiled);
+      return existing == null ? compiled : existing;
+    }
+  }
+
+  private Option<WorkflowPlan> lookup(final String key) {
+    WorkflowPlan plan;
+    synchronized (plans) {
+      plan = plans.get(key);
+    }
+    if (plan == null) {
+      misses.increment();
+    } else {
+      hits.increment();
+    }
+    return Option.of(plan);
+  }
+
+}
@@ -0,0 +1,163 @@
+package com.orta.gos.model.rules;
+
+import static io.vavr.control.Either.left;
+import static io.vavr.control.Either.right;
+
+import java.util.LinkedHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import io.vavr.Function1;
+import io.vavr.collection.List;
+import io.vavr.collection.Map;
+import io.vavr.control.Either;
+import io.vavr.control.Option;
+
+/**
+ * Local registry of workflow definitions, resolving a {@link WorkflowRef} carried by a
+ * message to the compiled {@link WorkflowPlan} of the definition.
+ *
+ * Definitions are registered locally or fetched on demand through the loader (e.g. from
+ * the rules service). Registered definitions are kept until replaced, while loaded ones
+ * are held in a bounded LRU and fetched again through the loader after eviction. Compiled
+ * plans are held in a bounded {@link WorkflowPlanCache} and recompiled from the definition
+ * after eviction. Plans are cached by id, version and
+ * content hash, so a plan compiled from a replaced definition is never returned for the
+ * new one, even when compiled concurrently with the replacement.
+ */
+public final class WorkflowRegistry {
+
+  private record Definition(WorkflowRef ref, Map<BlockType, List<Step>> rulesSteps) {
+  }
+
+  private final ConcurrentHashMap<String, Definition> definitions = new ConcurrentHashMap<>();
+  private final LinkedHashMap<String, Definition> loaded;
+  private final WorkflowPlanCache plans;
+  private final Function1<WorkflowRef, Option<Map<BlockType, List<Step>>>> loader;
+
+  public WorkflowRegistry() {
+    this(WorkflowPlanCache.DEFAULT_MAX_ENTRIES, ref -> Option.none());
+  }
+
+  /**
+   * @param maxPlans maximal number of compiled plans, and of loaded definitions, kept in
+   *                 memory
+   * @param loader   provider of definitions that were not registered locally
+   */
+  public WorkflowRegistry(final int maxPlans,
+      final Function1<WorkflowRef, Option<Map<BlockType, List<Step>>>> loader) {
+    this(maxPlans, maxPlans, loader);
+  }
+
+  /**
+   * @param maxPlans  maximal number of compiled plans kept in memory
+   * @param maxLoaded maximal number of definitions fetched through the loader kept in
+   *                  memory
+   * @param loader    provider of definitions that were not registered locally
+   */
+  public WorkflowRegistry(final int maxPlans, final int maxLoaded,
+      final Function1<WorkflowRef, Option<Map<BlockType, List<Step>>>> loader) {
+    if (maxLoaded <= 0) {
+      throw new IllegalArgumentException(String.format("maxLoaded must be positive (was %d)", maxLoaded));
+    }
+    this.plans = new WorkflowPlanCache(maxPlans);
+    this.loaded = new LinkedHashMap<>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(java.util.Map.Entry<String, Definition> eldest) {
+        return size() > maxLoaded;
+      }
+    };
+    this.loader = loader;
+  }
+
+  /**
+   * Registers a workflow definition. Registering the same id and version again replaces
+   * the definition only when its content differs.
+   *
+   * @param id         the workflow id
+   * @param version    the workflow version
+   * @param rulesSteps map of BlockType to its corresponding list of steps
+   * @return the reference to carry in messages of the workflow
+   */
+  public WorkflowRef register(final String id, final int version, final Map<BlockType, List<Step>> rulesSteps) {
+    var ref = WorkflowRef.newBuilder()
+        .setId(id)
+        .setVersion(version)
+        .setHash(WorkflowPlan.contentHash(rulesSteps))
+        .build();
+
+    var key = key(ref);
+    var previous = definitions.put(key, new Definition(ref, rulesSteps));
+    synchronized (loaded) {
+      var previousLoaded = loaded.remove(key);
+      previous = previous == null ? previousLoaded : previous;
+    }
+    if (previous != null && !previous.ref().equals(ref)) {
+      plans.invalidate(planKey(previous.ref()));
+    }
+    return ref;
+  }
+
+  /**
+   * Resolves the reference to the compiled plan of its definition.
+   *
+   * @param ref the workflow reference
+   * @return the plan, or an error message when the definition is unknown or its content
+   *         hash differs from the referenced one
+   */
+  public Either<String, WorkflowPlan> resolve(final WorkflowRef ref) {
+    var definition = definition(ref);
+    if (definition.isEmpty()) {
+      return left(String.format("Unknown workflow %s", key(ref)));
+    }
+
+    var registered = definition.get().ref().getHash();
+    if (!ref.getHash().isEmpty() && !ref.getHash().equals(registered)) {
+      return left(String.format("Workflow %s hash mismatch (expected %s, registered %s)", key(ref),
+          ref.getHash(), registered));
+    }
+
+    return right(plans.plan(planKey(definition.get().ref()), definition.get().rulesSteps()));
+  }
+
+  public WorkflowPlanCache.Stats stats() {
+    return plans.stats();
+  }
+
+  private Option<Definition> definition(final WorkflowRef ref) {
+    var key = key(ref);
+    var registered = definitions.get(key);
+    if (registered != null) {
+      return Option.of(registered);
+    }
+    synchronized (loaded) {
+      var cached = loaded.get(key);
+      if (cached != null) {
+        return Option.of(cached);
+      }
+    }
+
+    // Fetch outside the lock; concurrent misses on the same key keep the first definition
+    return loader.apply(ref)
+        .map(rulesSteps -> {
+          var loadedRef = WorkflowRef.newBuilder(ref).setHash(WorkflowPlan.contentHash(rulesSteps)).build();
+          var definition = new Definition(loadedRef, rulesSteps);
+          synchronized (loaded) {
+            var local = definitions.get(key);
+            if (local != null) {
+              return local;
+            }
+            var existing = loaded.putIfAbsent(key, definition);
+            return existing == null ? definition : existing;
+          }
+        });
+  }
+
+  private static String key(final WorkflowRef ref) {
+    return ref.getId() + "@" + ref.getVersion();
+  }
+
+  private static String planKey(final WorkflowRef ref) {
+    return key(ref) + "#" + ref.getHash();
+  }
+
+}
@@ -0,0 +1,285 @@
+package com.orta.gos.model.runtime;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+import com.orta.gos.model.PlatformMessage;
+import com.orta.gos.model.rules.BlockBounds;
+import com.orta.gos.model.rules.BlockType;
+import com.orta.gos.model.rules.Step;
+import com.orta.gos.model.rules.Tracker;
+import com.orta.gos.model.rules.TrackerUtils;
+import com.orta.gos.model.rules.WorkflowRegistry;
+import com.orta.gos.model.utils.PlatformMessageUtils;
+
+import io.grpc.ManagedChannel;
+import io.grpc.ManagedChannelBuilder;
+import io.quarkus.logging.Log;
+import io.vavr.collection.List;
+
+/**
+ * Thread-safe cache of gRPC channels keyed by step address.
+ *
+ * Every address gets a small pool of channels, used round robin, so concurrent calls to
+ * a busy service are spread over several connections. Pools unused for longer than the
+ * idle timeout are shut down (checked as channels are requested), and the least recently
+ * used pool is shut down once the cache holds {@code maxAddresses} addresses. Shutdown is
+ * graceful: calls already started on an evicted channel complete, but a call started on a
+ * channel after its pool was evicted fails with UNAVAILABLE. As {@link #channel(String)}
+ * marks the pool as most recently used, that only happens when {@code maxAddresses} other
+ * addresses are requested between taking a channel and starting the call on it, so
+ * callers should start the call right away rather than hold on to a channel.
+ *
+ * {@link #warmUpNext(PlatformMessage, WorkflowRegistry)} reads ahead in the workflow and
+ * connects the channels of the steps following the running ones, so their first call
+ * does not pay the connection latency.
+ */
+public final class ChannelManager implements AutoCloseable {
+
+  /**
+   * @param maxAddresses       maximal number of addresses holding channels
+   * @param channelsPerAddress number of channels in the pool of an address
+   * @param idleTimeout        time after which the channels of an unused address are shut
+   *                           down
+   */
+  public record Options(int maxAddresses, int channelsPerAddress, Duration idleTimeout) {
+
+    public static final Options DEFAULT = new Options(256, 2, Duration.ofMinutes(5));
+
+    public Options {
+      if (maxAddresses <= 0 || channelsPerAddress <= 0 || idleTimeout.isNegative() || idleTimeout.isZero()) {
+        throw new IllegalArgumentException(String.format(
+            "maxAddresses, channelsPerAddress and idleTimeout must be positive (were %d, %d, %s)", maxAddresses,
+            channelsPerAddress, idleTimeout));
+      }
+    }
+  }
+
+  public record Stats(long hits, long misses, long evictions, int size) {
+  }
+
+  private final Options options;
+  private final Function<String, ManagedChannel> factory;
+  private final LongSupplier nanoClock;
+  private final long idleNanos;
+
+  // Least recently used first, guarded by this
+  private final LinkedHashMap<String, Pool> pools = new LinkedHashMap<>();
+  private long lastSweep;
+  private boolean closed;
+
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder evictions = new LongAdder();
+
+  /**
+   * Creates channels with {@link ManagedChannelBuilder#forTarget(String)} defaults.
+   */
+  public ChannelManager(final Options options) {
+    this(options, address -> ManagedChannelBuilder.forTarget(address).build());
+  }
+
+  /**
+   * @param options cache limits
+   * @param factory creates a channel to an address (e.g. configuring TLS and keep-alive)
+   */
+  public ChannelManager(final Options options, final Function<String, ManagedChannel> factory) {
+    this(options, factory, System::nanoTime);
+  }
+
+  ChannelManager(final Options options, final Function<String, ManagedChannel> factory, final LongSupplier nanoClock) {
+    this.options = options;
+    this.factory = factory;
+    this.nanoClock = nanoClock;
+    this.idleNanos = options.idleTimeout().toNanos();
+    this.lastSweep = nanoClock.getAsLong();
+  }
+
+  /**
+   * Provides a channel to the address, creating its pool on first use, and marks the
+   * pool as the most recently used one. Start the call on the channel right away (see
+   * the class documentation on eviction).
+   *
+   * @param address the step address, a gRPC target
+   * @return one of the channels of the address pool
+   */
+  public synchronized ManagedChannel channel(final String address) {
+    var now = sweep();
+    var pool = pools.get(address);
+    if (pool == null) {
+      misses.increment();
+      pool = create(address, now);
+    } else {
+      hits.increment();
+      pools.putLast(address, pool);
+    }
+    return pool.next(now);
+  }
+
+  /**
+   * Starts connecting the channels of the address, without waiting for the connection.
+   * Warming up is not a use of the address: it does not count as a hit or a miss, and
+   * leaves the recency and the idle clock of an existing pool untouched.
+   *
+   * @param address the step address
+   */
+  public void warmUp(final String address) {
+    ManagedChannel[] channels;
+    synchronized (this) {
+      var now = sweep();
+      var pool = pools.get(address);
+      channels = (pool == null ? create(address, now) : pool).channels;
+    }
+    for (var channel : channels) {
+      channel.getState(true);
+    }
+  }
+
+  /**
+   * Warms up the addresses of the steps the message runs after the running steps
+   * succeed, to be called while the running steps are in flight.
+   *
+   * @param message  the message about to run its running steps
+   * @param registry registry resolving the steps of messages carrying a workflow reference
+   * @return the warmed up addresses
+   */
+  public List<String> warmUpNext(final PlatformMessage message, final WorkflowRegistry registry) {
+    var utils = PlatformMessageUtils.withMessage(message);
+    var addresses = nextSteps(message.getWorkflowLog().getTracker())
+        .flatMap(idx -> utils.step(idx, registry).toOption())
+        .map(Step::getAddress)
+        .filter(address -> !address.isEmpty())
+        .distinct();
+    addresses.forEach(this::warmUp);
+    return addresses;
+  }
+
+  /**
+   * Shuts down the channels of the addresses unused for longer than the idle timeout.
+   */
+  public synchronized void evictIdle() {
+    evictIdle(nanoClock.getAsLong());
+  }
+
+  public synchronized Stats stats() {
+    return new Stats(hits.sum(), misses.sum(), evictions.sum(), pools.size());
+  }
+
+  @Override
+  public synchronized void close() {
+    closed = true;
+    pools.values().forEach(Pool::shutdown);
+    pools.clear();
+  }
+
+  /**
+   * Steps run after the running steps succeed: the next step of the block, or the first
+   * step(s) of the block the tracker jumps to (see {@link TrackerUtils#nextStepOnSuccess}).
+   */
+  private static List<Integer> nextSteps(final Tracker tracker) {
+    var block = tracker.getCurrentBlockValue();
+    if (!BlockBounds.hasBlock(tracker, block)) {
+      return List.empty();
+    }
+    if (block != BlockType.PARALLEL_VALUE && tracker.getCurrentStep() < BlockBounds.end(tracker, block)) {
+      return List.of(tracker.getCurrentStep() + 1);
+    }
+
+    var nextBlock = switch (tracker.getCurrentBlock()) {
+      case MAIN -> BlockBounds.hasBlock(tracker, BlockType.PARALLEL_VALUE) ? BlockType.PARALLEL_VALUE
+          : BlockType.FINALLY_VALUE;
+      case PARALLEL, GENERAL_ERROR -> BlockType.FINALLY_VALUE;
+      default -> BlockType.TYPE_NA_VALUE;
+    };
+    var nextStart = BlockBounds.start(tracker, nextBlock);
+    if (nextStart < 0 || nextStart < tracker.getCurrentStep()) {
+      return List.empty();
+    }
+    return nextBlock == BlockType.PARALLEL_VALUE ? List.rangeClosed(nextStart, BlockBounds.end(tracker, nextBlock))
+        : List.of(nextStart);
+  }
+
+  /**
+   * @return the current time, after shutting down the idle pools when due
+   */
+  private long sweep() {
+    if (closed) {
+      throw new IllegalStateException("ChannelManager is closed");
+    }
+
+    var now = nanoClock.getAsLong();
+    if (now - lastSweep >= idleNanos) {
+      evictIdle(now);
+    }
+    return now;
+  }
+
+  private Pool create(final String address, final long now) {
+    var pool = new Pool(address, now);
+    pools.put(address, pool);
+    evictEldest();
+    return pool;
+  }
+
+  private void evictIdle(final long now) {
+    lastSweep = now;
+    var iterator = pools.values().iterator();
+    while (iterator.hasNext()) {
+      var pool = iterator.next();
+      if (now - pool.lastUsed >= idleNanos) {
+        Log.debugf("Shutting down idle channels to [%s]", pool.address);
+        iterator.remove();
+        pool.shutdown();
+        evictions.increment();
+      }
+    }
+  }
+
+  private void evictEldest() {
+    var iterator = pools.values().iterator();
+    while (pools.size() > options.maxAddresses()) {
+      var eldest = iterator.next();
+      Log.debugf("Shutting down least recently used channels to [%s]", eldest.address);
+      iterator.remove();
+      eldest.shutdown();
+      evictions.increment();
+    }
+  }
+
+  /**
+   * Channels of an address, guarded by the manager lock.
+   */
+  private final class Pool {
+
+    private final String address;
+    private final ManagedChannel[] channels;
+    private int nextChannel;
+    private long lastUsed;
+
+    Pool(final String address, final long now) {
+      this.address = address;
+      this.lastUsed = now;
+      this.channels = new ManagedChannel[options.channelsPerAddress()];
+      for (int i = 0; i < channels.length; i++) {
+        channels[i] = factory.apply(address);
+      }
+    }
+
+    ManagedChannel next(final long now) {
+      lastUsed = now;
+      var channel = channels[nextChannel];
+      nextChannel = (nextChannel + 1) % channels.length;
+      return channel;
+    }
+
+    void shutdown() {
+      for (var channel : channels) {
+        channel.shutdown();
+      }
+    }
+  }
+
+}
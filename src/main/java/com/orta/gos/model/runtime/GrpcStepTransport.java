@@ -0,0 +1,44 @@
+package com.orta.gos.model.runtime;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import com.orta.gos.model.PlatformMessage;
+import com.orta.gos.model.ProcessGrpc;
+import com.orta.gos.model.ProcessInput;
+import com.orta.gos.model.ProcessOutcome;
+import com.orta.gos.model.rules.Step;
+import com.orta.gos.model.rules.WorkflowRegistry;
+
+/**
+ * Transport calling the gRPC Process service at the step address, over the channels of a
+ * {@link ChannelManager}. The channels of the next steps are warmed up while the running
+ * steps are called.
+ */
+public final class GrpcStepTransport implements StepTransport {
+
+  private final ChannelManager channels;
+  private final Duration deadline;
+
+  /**
+   * @param channels channels by step address
+   * @param deadline deadline of every call
+   */
+  public GrpcStepTransport(final ChannelManager channels, final Duration deadline) {
+    this.channels = channels;
+    this.deadline = deadline;
+  }
+
+  @Override
+  public ProcessOutcome call(final Step step, final ProcessInput input) {
+    return ProcessGrpc.newBlockingStub(channels.channel(step.getAddress()))
+        .withDeadlineAfter(deadline.toNanos(), TimeUnit.NANOSECONDS)
+        .process(input);
+  }
+
+  @Override
+  public void warmUp(final PlatformMessage message, final WorkflowRegistry registry) {
+    channels.warmUpNext(message, registry);
+  }
+
+}
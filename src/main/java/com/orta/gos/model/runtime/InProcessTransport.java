@@ -0,0 +1,44 @@
+package com.orta.gos.model.runtime;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+import com.orta.gos.model.Process;
+import com.orta.gos.model.ProcessInput;
+import com.orta.gos.model.ProcessOutcome;
+import com.orta.gos.model.ProcessOutcomeFailure;
+import com.orta.gos.model.rules.Step;
+
+/**
+ * Transport calling Process implementations registered in the same JVM by step address,
+ * standing in for the gRPC services in tests and single-process deployments.
+ */
+public final class InProcessTransport implements StepTransport {
+
+  private final ConcurrentHashMap<String, Function<ProcessInput, ProcessOutcome>> handlers = new ConcurrentHashMap<>();
+
+  public InProcessTransport register(final String address, final Function<ProcessInput, ProcessOutcome> handler) {
+    handlers.put(address, handler);
+    return this;
+  }
+
+  /**
+   * Registers a Process service implementation, waiting for its outcome.
+   */
+  public InProcessTransport registerService(final String address, final Process service) {
+    return register(address, input -> service.process(input).await().indefinitely());
+  }
+
+  @Override
+  public ProcessOutcome call(final Step step, final ProcessInput input) {
+    var handler = handlers.get(step.getAddress());
+    if (handler == null) {
+      return ProcessOutcome.newBuilder()
+          .setFailure(ProcessOutcomeFailure.newBuilder()
+              .setErrorMessage(String.format("No Process service at address [%s]", step.getAddress())))
+          .build();
+    }
+    return handler.apply(input);
+  }
+
+}
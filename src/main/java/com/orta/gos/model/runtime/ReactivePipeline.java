@@ -0,0 +1,352 @@
+package com.orta.gos.model.runtime;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+import com.orta.gos.model.PlatformMessage;
+import com.orta.gos.model.ProcessInput;
+import com.orta.gos.model.ProcessOutcome;
+import com.orta.gos.model.ProcessOutcomeFailure;
+import com.orta.gos.model.rules.BlockType;
+import com.orta.gos.model.rules.Step;
+import com.orta.gos.model.rules.WorkflowRegistry;
+import com.orta.gos.model.store.PayloadResolver;
+import com.orta.gos.model.utils.CallTiming;
+import com.orta.gos.model.utils.IndexedMessage;
+import com.orta.gos.model.utils.PlatformMessageUtils;
+import com.orta.gos.model.utils.ScatterUtils;
+
+import io.quarkus.logging.Log;
+import io.smallrye.mutiny.Multi;
+import io.smallrye.mutiny.Uni;
+import io.smallrye.mutiny.infrastructure.Infrastructure;
+import io.smallrye.mutiny.subscription.Cancellable;
+import io.smallrye.mutiny.subscription.UniEmitter;
+import io.vavr.Tuple;
+import io.vavr.Tuple2;
+import io.vavr.collection.List;
+
+/**
+ * Reactive counterpart of the {@link WorkflowDriver}: a stream of messages is run through
+ * their workflows and the terminated messages are emitted downstream.
+ *
+ * Demand is bounded: at most {@code maxInFlight} messages are requested from upstream and
+ * run at once, and calls to a single step address are limited to
+ * {@code perStepConcurrency}, queuing the others without blocking any thread. The steps
+ * of a PARALLEL block and the calls of a scatter-gather step run concurrently. In ordered
+ * mode a message that terminates early keeps its in-flight slot until all the messages
+ * before it were emitted, so reordering never buffers more than {@code maxInFlight}
+ * messages.
+ */
+public final class ReactivePipeline {
+
+  /**
+   * @param maxInFlight        maximal number of messages executed concurrently
+   * @param perStepConcurrency maximal number of concurrent calls to a single step address
+   * @param ordered            whether messages are emitted in their upstream order, rather
+   *                           than as soon as they terminate
+   */
+  public record Options(int maxInFlight, int perStepConcurrency, boolean ordered) {
+
+    public static final Options DEFAULT = new Options(1_024, 256, false);
+
+    public Options {
+      if (maxInFlight <= 0 || perStepConcurrency <= 0) {
+        throw new IllegalArgumentException(String.format(
+            "maxInFlight and perStepConcurrency must be positive (were %d, %d)", maxInFlight, perStepConcurrency));
+      }
+    }
+  }
+
+  private final ReactiveStepTransport transport;
+  private final Options options;
+  private final WorkflowRegistry registry;
+  private final PayloadResolver resolver;
+
+  private final ConcurrentHashMap<String, AddressLimiter> limiters = new ConcurrentHashMap<>();
+
+  public ReactivePipeline(final ReactiveStepTransport transport, final Options options) {
+    this(transport, options, new WorkflowRegistry(), PayloadResolver.NONE);
+  }
+
+  /**
+   * @param transport transport calling the Process services
+   * @param options   concurrency limits and completion mode
+   * @param registry  registry resolving the steps of messages carrying a workflow reference
+   * @param resolver  resolver of referenced (claim-checked) payload bodies
+   */
+  public ReactivePipeline(final ReactiveStepTransport transport, final Options options,
+      final WorkflowRegistry registry, final PayloadResolver resolver) {
+    this.transport = transport;
+    this.options = options;
+    this.registry = registry;
+    this.resolver = resolver;
+  }
+
+  /**
+   * Runs the messages until their workflow terminates. The stream fails when the current
+   * step of a message cannot be resolved.
+   *
+   * @param messages the messages, with their tracker positioned on the next step to run
+   * @return the terminated messages
+   */
+  public Multi<PlatformMessage> process(final Multi<PlatformMessage> messages) {
+    return options.ordered() ? ordered(messages)
+        : messages.onItem().transformToUni(this::submit).merge(options.maxInFlight());
+  }
+
+  /**
+   * Runs a single message until its workflow terminates.
+   *
+   * @param message the message
+   * @return the terminated message
+   */
+  public Uni<PlatformMessage> submit(final PlatformMessage message) {
+    return Uni.createFrom().deferred(() -> run(IndexedMessage.of(message)));
+  }
+
+  /**
+   * The Uni of the n-th message completes only once its turn is granted, i.e. when the
+   * previous message was emitted; the merge operator therefore emits in upstream order.
+   */
+  private Multi<PlatformMessage> ordered(final Multi<PlatformMessage> messages) {
+    var sequence = new AtomicLong();
+    var turns = new ConcurrentHashMap<Long, CompletableFuture<Void>>();
+    turns.computeIfAbsent(0L, seq -> new CompletableFuture<>()).complete(null);
+
+    return messages
+        .map(message -> Tuple.of(sequence.getAndIncrement(), message))
+        .onItem().transformToUni((Tuple2<Long, PlatformMessage> indexed) -> submit(indexed._2)
+            .chain(result -> Uni.createFrom()
+                .completionStage(turns.computeIfAbsent(indexed._1, seq -> new CompletableFuture<>()))
+                .replaceWith(Tuple.of(indexed._1, result))))
+        .merge(options.maxInFlight())
+        .onItem().invoke(emitted -> {
+          turns.remove(emitted._1);
+          turns.computeIfAbsent(emitted._1 + 1, seq -> new CompletableFuture<>()).complete(null);
+        })
+        .map(Tuple2::_2);
+  }
+
+  private Uni<PlatformMessage> run(final IndexedMessage current) {
+    if (current.message().getWorkflowLog().getTracker().getCurrentBlock() == BlockType.TYPE_NA) {
+      return Uni.createFrom().item(current.message());
+    }
+
+    var running = PlatformMessageUtils.withMessage(current.message()).runningSteps(registry);
+    if (running.isLeft()) {
+      return Uni.createFrom().failure(new IllegalStateException(String.format(
+          "Could not resolve the running steps of message %s: %s", current.message().getId(), running.getLeft())));
+    }
+
+    if (running.get().size() == 1) {
+      var step = running.get().head();
+      return execute(current, step._2).chain(executed -> run(append(current, step, executed)));
+    }
+    return fanOut(current, running.get()).chain(this::run);
+  }
+
+  /**
+   * Calls the running steps of a PARALLEL block concurrently, each with the payloads as
+   * they were when the block was entered, and appends the outcomes as they complete. Once
+   * the tracker leaves the block (all the steps completed, or one failed) the remaining
+   * calls are cancelled: the running transport calls are cancelled through their
+   * {@link AddressLimiter} and the queued or not yet subscribed ones never start.
+   */
+  private Uni<IndexedMessage> fanOut(final IndexedMessage current, final List<Tuple2<Integer, Step>> running) {
+    var state = new AtomicReference<>(current);
+    return Multi.createFrom().iterable(running)
+        .onItem().transformToUni((Tuple2<Integer, Step> step) -> execute(current, step._2)
+            .map(executed -> Tuple.of(step, executed)))
+        .merge(running.size())
+        .map(completed -> state.updateAndGet(message -> append(message, completed._1, completed._2)))
+        .select().first(message -> message.message().getWorkflowLog().getTracker()
+            .getCurrentBlock() == BlockType.PARALLEL)
+        .collect().last()
+        .replaceWith(state::get);
+  }
+
+  /**
+   * Runs the step: a single call, or one call per selected payload for a scatter-gather
+   * step, at most {@code max_parallelism} of them at once.
+   *
+   * @return the outcomes, in the order of the scattered inputs, and the timing of the calls
+   */
+  private Uni<Tuple2<List<ProcessOutcome>, CallTiming>> execute(final IndexedMessage current, final Step step) {
+    return Uni.createFrom().deferred(() -> {
+      var dispatched = CallTiming.dispatch();
+      return outcomes(current, step)
+          .map(outcomes -> Tuple.of(outcomes, CallTiming.since(dispatched, outcomes.size())));
+    });
+  }
+
+  private Uni<List<ProcessOutcome>> outcomes(final IndexedMessage current, final Step step) {
+    var input = current.processInput(step, resolver);
+    if (!step.hasScatter()) {
+      return call(step, input).map(List::of);
+    }
+
+    var inputs = ScatterUtils.scatter(input).zipWithIndex();
+    return Multi.createFrom().iterable(inputs)
+        .onItem().transformToUni((Tuple2<ProcessInput, Integer> scattered) -> call(step, scattered._1)
+            .map(outcome -> Tuple.of(scattered._2, outcome)))
+        .merge(ScatterUtils.parallelism(step.getScatter(), inputs.size()))
+        .collect().asList()
+        .map(outcomes -> List.ofAll(outcomes).sortBy(Tuple2::_1).map(Tuple2::_2));
+  }
+
+  private static IndexedMessage append(final IndexedMessage current, final Tuple2<Integer, Step> step,
+      final Tuple2<List<ProcessOutcome>, CallTiming> executed) {
+    return step._2.hasScatter() ? current.appendOutcomes(step._1, executed._1, step._2.getScatter(), executed._2)
+        : current.appendOutcome(step._1, executed._1.head(), executed._2);
+  }
+
+  private Uni<ProcessOutcome> call(final Step step, final ProcessInput input) {
+    return limiter(step.getAddress())
+        .submit(() -> transport.call(step, input))
+        .onFailure().recoverWithItem(error -> {
+          Log.errorf("Call to step %s at [%s] failed: %s", step.getName(), step.getAddress(), error.getMessage());
+          return ProcessOutcome.newBuilder()
+              .setFailure(ProcessOutcomeFailure.newBuilder().setErrorMessage(String.valueOf(error.getMessage())))
+              .build();
+        });
+  }
+
+  private AddressLimiter limiter(final String address) {
+    return limiters.computeIfAbsent(address, key -> new AddressLimiter(options.perStepConcurrency()));
+  }
+
+  /**
+   * Non-blocking semaphore: calls above the limit are queued and subscribed once a
+   * running call completes. Cancelling the returned Uni removes a queued call from the
+   * queue, or cancels the subscription to a running call; either way the permit is
+   * released exactly once.
+   */
+  private static final class AddressLimiter {
+
+    private final ArrayDeque<LimitedCall<?>> waiting = new ArrayDeque<>();
+    private int available;
+
+    AddressLimiter(final int permits) {
+      this.available = permits;
+    }
+
+    <T> Uni<T> submit(final Supplier<Uni<? extends T>> call) {
+      return Uni.createFrom().emitter(emitter -> {
+        var limited = new LimitedCall<T>(this, call, emitter);
+        emitter.onTermination(limited::terminate);
+        acquire(limited);
+      });
+    }
+
+    private void acquire(final LimitedCall<?> call) {
+      synchronized (this) {
+        if (call.terminated()) {
+          return;
+        }
+        if (available == 0) {
+          waiting.add(call);
+          return;
+        }
+        available--;
+      }
+      call.start();
+    }
+
+    private synchronized void dequeue(final LimitedCall<?> call) {
+      waiting.remove(call);
+    }
+
+    private void release() {
+      LimitedCall<?> next;
+      synchronized (this) {
+        next = waiting.poll();
+        if (next == null) {
+          available++;
+          return;
+        }
+      }
+      // Run the queued call on another thread, so synchronous completions do not recurse
+      Infrastructure.getDefaultExecutor().execute(next::start);
+    }
+  }
+
+  /**
+   * A call through an {@link AddressLimiter}: WAITING until granted a permit, RUNNING
+   * while holding it, and DONE once it completed, failed or was cancelled. Only the
+   * transition out of RUNNING releases the permit.
+   */
+  private static final class LimitedCall<T> {
+
+    private static final int WAITING = 0;
+    private static final int RUNNING = 1;
+    private static final int DONE = 2;
+
+    private final AddressLimiter limiter;
+    private final Supplier<Uni<? extends T>> call;
+    private final UniEmitter<? super T> emitter;
+    private final AtomicInteger state = new AtomicInteger(WAITING);
+    private volatile Cancellable subscription;
+
+    LimitedCall(final AddressLimiter limiter, final Supplier<Uni<? extends T>> call,
+        final UniEmitter<? super T> emitter) {
+      this.limiter = limiter;
+      this.call = call;
+      this.emitter = emitter;
+    }
+
+    boolean terminated() {
+      return state.get() == DONE;
+    }
+
+    /**
+     * Called holding a permit; hands it back when the call was cancelled meanwhile.
+     */
+    void start() {
+      if (!state.compareAndSet(WAITING, RUNNING)) {
+        limiter.release();
+        return;
+      }
+      subscription = Uni.createFrom().deferred(call).subscribe().with(
+          item -> {
+            finish();
+            emitter.complete(item);
+          },
+          failure -> {
+            finish();
+            emitter.fail(failure);
+          });
+      if (terminated()) {
+        subscription.cancel();
+      }
+    }
+
+    /**
+     * Termination hook of the emitter: runs on completion, failure and cancellation.
+     */
+    void terminate() {
+      var previous = state.getAndSet(DONE);
+      if (previous == WAITING) {
+        limiter.dequeue(this);
+      } else if (previous == RUNNING) {
+        var running = subscription;
+        if (running != null) {
+          running.cancel();
+        }
+        limiter.release();
+      }
+    }
+
+    private void finish() {
+      if (state.getAndSet(DONE) == RUNNING) {
+        limiter.release();
+      }
+    }
+  }
+
+}
@@ -0,0 +1,58 @@
+package com.orta.gos.model.runtime;
+
+import java.util.concurrent.Executor;
+
+import com.orta.gos.model.Process;
+import com.orta.gos.model.ProcessInput;
+import com.orta.gos.model.ProcessOutcome;
+import com.orta.gos.model.ProcessOutcomeFailure;
+import com.orta.gos.model.rules.Step;
+
+import io.smallrye.mutiny.Uni;
+
+/**
+ * Non-blocking counterpart of {@link StepTransport}, used by the {@link ReactivePipeline}.
+ */
+@FunctionalInterface
+public interface ReactiveStepTransport {
+
+  /**
+   * @param step  the step to run, its address identifies the Process service
+   * @param input the step input
+   * @return the step outcome; a failed Uni is recorded as a failed outcome
+   */
+  Uni<ProcessOutcome> call(Step step, ProcessInput input);
+
+  /**
+   * Calls the Process services (e.g. the Quarkus gRPC clients) by step address.
+   *
+   * @param services Process services by address
+   */
+  static ReactiveStepTransport of(final java.util.Map<String, ? extends Process> services) {
+    return (step, input) -> {
+      var service = services.get(step.getAddress());
+      return service != null ? service.process(input)
+          : Uni.createFrom().item(ProcessOutcome.newBuilder()
+              .setFailure(ProcessOutcomeFailure.newBuilder()
+                  .setErrorMessage(String.format("No Process service at address [%s]", step.getAddress())))
+              .build());
+    };
+  }
+
+  /**
+   * Adapts a blocking transport, running its calls on the executor (e.g. a virtual
+   * thread per task executor).
+   */
+  static ReactiveStepTransport blocking(final StepTransport transport, final Executor executor) {
+    return (step, input) -> Uni.createFrom().item(() -> {
+      try {
+        return transport.call(step, input);
+      } catch (RuntimeException e) {
+        throw e;
+      } catch (Exception e) {
+        throw new IllegalStateException(e.getMessage(), e);
+      }
+    }).runSubscriptionOn(executor);
+  }
+
+}
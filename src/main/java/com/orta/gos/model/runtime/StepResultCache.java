@@ -0,0 +1,235 @@
+package com.orta.gos.model.runtime;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.UUID;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedOutputStream;
+import com.orta.gos.model.PlatformMessage;
+import com.orta.gos.model.ProcessInput;
+import com.orta.gos.model.ProcessOutcome;
+import com.orta.gos.model.rules.Step;
+import com.orta.gos.model.rules.WorkflowRegistry;
+
+import io.smallrye.mutiny.Uni;
+import io.vavr.control.Option;
+
+/**
+ * Bounded, thread-safe cache of the outcomes of idempotent steps, so a repeated input
+ * skips the call to the Process service.
+ *
+ * Only steps marked with the {@value #CACHEABLE_ATTRIBUTE} attribute set to
+ * {@code "true"} are cached. Outcomes are keyed by the step name and address and by the
+ * SHA-256 hash of the deterministic serialization of the step input without the payload
+ * identities, i.e. of the bodies and attributes of the selected payloads and of the step
+ * attributes: the same content carried by payloads with other uuids or creation times
+ * hits. A hit returns the cached output payload under a fresh uuid and creation time.
+ * Only successful outcomes are cached; they expire after the time to live, and the least
+ * recently used outcome is evicted once the cache reaches its capacity.
+ *
+ * {@link #caching(StepTransport)} and {@link #caching(ReactiveStepTransport)} decorate a
+ * transport with the cache.
+ */
+public final class StepResultCache {
+
+  public static final String CACHEABLE_ATTRIBUTE = "cacheable";
+
+  /**
+   * @param maxEntries maximal number of cached outcomes
+   * @param timeToLive time after which a cached outcome is not used anymore
+   */
+  public record Options(int maxEntries, Duration timeToLive) {
+
+    public static final Options DEFAULT = new Options(10_000, Duration.ofMinutes(10));
+
+    public Options {
+      if (maxEntries <= 0 || timeToLive.isNegative() || timeToLive.isZero()) {
+        throw new IllegalArgumentException(String.format(
+            "maxEntries and timeToLive must be positive (were %d, %s)", maxEntries, timeToLive));
+      }
+    }
+  }
+
+  public record Stats(long hits, long misses, long evictions, int size) {
+  }
+
+  private record Key(String name, String address, ByteString inputHash) {
+  }
+
+  private record Entry(ProcessOutcome outcome, long expiresAt) {
+  }
+
+  private final Options options;
+  private final LongSupplier nanoClock;
+  private final long ttlNanos;
+
+  // Access ordered, guarded by this
+  private final LinkedHashMap<Key, Entry> outcomes;
+
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder evictions = new LongAdder();
+
+  public StepResultCache(final Options options) {
+    this(options, System::nanoTime);
+  }
+
+  StepResultCache(final Options options, final LongSupplier nanoClock) {
+    this.options = options;
+    this.nanoClock = nanoClock;
+    this.ttlNanos = options.timeToLive().toNanos();
+    this.outcomes = new LinkedHashMap<>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(final java.util.Map.Entry<Key, Entry> eldest) {
+        var evict = size() > StepResultCache.this.options.maxEntries();
+        if (evict) {
+          evictions.increment();
+        }
+        return evict;
+      }
+    };
+  }
+
+  public static boolean isCacheable(final Step step) {
+    return "true".equals(step.getAttributesMap().get(CACHEABLE_ATTRIBUTE));
+  }
+
+  /**
+   * Looks up the outcome of a previous call of the step with the same input.
+   *
+   * @param step  the step
+   * @param input the step input
+   * @return the cached outcome, with a fresh identity for its output payload, if present
+   *         and not expired
+   */
+  public Option<ProcessOutcome> get(final Step step, final ProcessInput input) {
+    return lookup(key(step, input)).map(StepResultCache::withFreshIdentity);
+  }
+
+  /**
+   * Caches the outcome of the step call; failures are not cached.
+   *
+   * @param step    the step
+   * @param input   the step input
+   * @param outcome the outcome of the call
+   */
+  public void put(final Step step, final ProcessInput input, final ProcessOutcome outcome) {
+    if (!outcome.hasSuccess()) {
+      return;
+    }
+    var key = key(step, input);
+    synchronized (this) {
+      outcomes.put(key, new Entry(outcome, nanoClock.getAsLong() + ttlNanos));
+    }
+  }
+
+  public synchronized Stats stats() {
+    return new Stats(hits.sum(), misses.sum(), evictions.sum(), outcomes.size());
+  }
+
+  public synchronized void clear() {
+    outcomes.clear();
+  }
+
+  /**
+   * Decorates the transport: cacheable steps are looked up in the cache, and only the
+   * missed ones are called.
+   *
+   * @param transport the transport calling the Process services
+   * @return the caching transport
+   */
+  public StepTransport caching(final StepTransport transport) {
+    return new StepTransport() {
+      @Override
+      public ProcessOutcome call(final Step step, final ProcessInput input) throws Exception {
+        if (!isCacheable(step)) {
+          return transport.call(step, input);
+        }
+        var cached = get(step, input);
+        if (cached.isDefined()) {
+          return cached.get();
+        }
+        var outcome = transport.call(step, input);
+        put(step, input, outcome);
+        return outcome;
+      }
+
+      @Override
+      public void warmUp(final PlatformMessage message, final WorkflowRegistry registry) {
+        transport.warmUp(message, registry);
+      }
+    };
+  }
+
+  /**
+   * Reactive counterpart of {@link #caching(StepTransport)}.
+   *
+   * @param transport the transport calling the Process services
+   * @return the caching transport
+   */
+  public ReactiveStepTransport caching(final ReactiveStepTransport transport) {
+    return (step, input) -> {
+      if (!isCacheable(step)) {
+        return transport.call(step, input);
+      }
+      return get(step, input)
+          .map(cached -> Uni.createFrom().item(cached))
+          .getOrElse(() -> transport.call(step, input).invoke(outcome -> put(step, input, outcome)));
+    };
+  }
+
+  private synchronized Option<ProcessOutcome> lookup(final Key key) {
+    var entry = outcomes.get(key);
+    if (entry != null && entry.expiresAt() - nanoClock.getAsLong() > 0) {
+      hits.increment();
+      return Option.of(entry.outcome());
+    }
+    if (entry != null) {
+      outcomes.remove(key);
+      evictions.increment();
+    }
+    misses.increment();
+    return Option.none();
+  }
+
+  /**
+   * A cached output is a new payload of the message it is appended to, so it must not
+   * share the uuid of the output of the original call.
+   */
+  private static ProcessOutcome withFreshIdentity(final ProcessOutcome outcome) {
+    if (!outcome.getSuccess().hasOutputPayload()) {
+      return outcome;
+    }
+    var fresh = outcome.toBuilder();
+    fresh.getSuccessBuilder().getOutputPayloadBuilder()
+        .setUuid(UUID.randomUUID().toString())
+        .setCreationTimestamp(System.currentTimeMillis());
+    return fresh.build();
+  }
+
+  private static Key key(final Step step, final ProcessInput input) {
+    var content = input.toBuilder();
+    content.getPayloadsBuilderList().forEach(payload -> payload.clearUuid().clearCreationTimestamp());
+    var normalized = content.build();
+    try {
+      var bytes = new byte[normalized.getSerializedSize()];
+      var output = CodedOutputStream.newInstance(bytes);
+      output.useDeterministicSerialization();
+      normalized.writeTo(output);
+      var hash = MessageDigest.getInstance("SHA-256").digest(bytes);
+      return new Key(step.getName(), step.getAddress(), ByteString.copyFrom(hash));
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-256 is not available", e);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+}
@@ -0,0 +1,35 @@
+package com.orta.gos.model.runtime;
+
+import com.orta.gos.model.PlatformMessage;
+import com.orta.gos.model.ProcessInput;
+import com.orta.gos.model.ProcessOutcome;
+import com.orta.gos.model.rules.Step;
+import com.orta.gos.model.rules.WorkflowRegistry;
+
+/**
+ * Calls the Process service of a step. Calls are blocking: the {@link WorkflowDriver}
+ * runs every message on its own virtual thread.
+ */
+@FunctionalInterface
+public interface StepTransport {
+
+  /**
+   * @param step  the step to run, its address identifies the Process service
+   * @param input the step input
+   * @return the step outcome
+   * @throws Exception when the service could not be called; the driver records it as a
+   *                   failed outcome
+   */
+  ProcessOutcome call(Step step, ProcessInput input) throws Exception;
+
+  /**
+   * Called before the running steps of the message are called, so the transport can
+   * prepare the connections of the steps that follow. Does nothing by default.
+   *
+   * @param message  the message about to run its running steps
+   * @param registry registry resolving the steps of messages carrying a workflow reference
+   */
+  default void warmUp(PlatformMessage message, WorkflowRegistry registry) {
+  }
+
+}
@@ -0,0 +1,318 @@
+package com.orta.gos.model.runtime;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+import com.orta.gos.model.PlatformMessage;
+import com.orta.gos.model.ProcessInput;
+import com.orta.gos.model.ProcessOutcome;
+import com.orta.gos.model.ProcessOutcomeFailure;
+import com.orta.gos.model.rules.BlockType;
+import com.orta.gos.model.rules.Step;
+import com.orta.gos.model.rules.WorkflowRegistry;
+import com.orta.gos.model.store.PayloadResolver;
+import com.orta.gos.model.utils.CallTiming;
+import com.orta.gos.model.utils.IndexedMessage;
+import com.orta.gos.model.utils.PlatformMessageUtils;
+import com.orta.gos.model.utils.ScatterUtils;
+
+import io.quarkus.logging.Log;
+import io.vavr.Tuple;
+import io.vavr.Tuple2;
+import io.vavr.collection.List;
+import io.vavr.collection.Seq;
+import io.vavr.control.Option;
+
+/**
+ * Runs messages through their workflow end to end: for every step the input is built,
+ * the Process service of the step is called through the {@link StepTransport} and the
+ * outcome is appended, until the tracker terminates.
+ *
+ * Every message runs on its own virtual thread, so transports are plain blocking calls;
+ * the steps of a PARALLEL block and the calls of a scatter-gather step run concurrently
+ * on additional virtual threads.
+ * Concurrency is bounded by the number of messages in flight and by the number of
+ * concurrent calls per step address, instead of by thread pool sizes; a submitter
+ * exceeding the in-flight bound blocks, or is rejected by {@link #trySubmit(PlatformMessage)}.
+ */
+public final class WorkflowDriver implements AutoCloseable {
+
+  /**
+   * @param maxInFlight        maximal number of messages executed concurrently
+   * @param perStepConcurrency maximal number of concurrent calls to a single step address
+   */
+  public record Options(int maxInFlight, int perStepConcurrency) {
+
+    public static final Options DEFAULT = new Options(10_000, 256);
+
+    public Options {
+      if (maxInFlight <= 0 || perStepConcurrency <= 0) {
+        throw new IllegalArgumentException(String.format(
+            "maxInFlight and perStepConcurrency must be positive (were %d, %d)", maxInFlight, perStepConcurrency));
+      }
+    }
+  }
+
+  private final StepTransport transport;
+  private final Options options;
+  private final WorkflowRegistry registry;
+  private final PayloadResolver resolver;
+
+  /**
+   * Concurrency limit of a step address, shared by the calls in progress to the address.
+   * The count of these calls is only updated inside {@link ConcurrentHashMap#compute}, so
+   * the limit is dropped with the last of them and the map only holds the addresses being
+   * called.
+   */
+  private static final class StepPermits {
+    final Semaphore semaphore;
+    int calls;
+
+    StepPermits(final int permits) {
+      this.semaphore = new Semaphore(permits);
+    }
+  }
+
+  private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+  private final Semaphore inFlight;
+  private final ConcurrentHashMap<String, StepPermits> stepPermits = new ConcurrentHashMap<>();
+
+  public WorkflowDriver(final StepTransport transport, final Options options) {
+    this(transport, options, new WorkflowRegistry(), PayloadResolver.NONE);
+  }
+
+  /**
+   * @param transport transport calling the Process services
+   * @param options   concurrency limits
+   * @param registry  registry resolving the steps of messages carrying a workflow reference
+   * @param resolver  resolver of referenced (claim-checked) payload bodies
+   */
+  public WorkflowDriver(final StepTransport transport, final Options options, final WorkflowRegistry registry,
+      final PayloadResolver resolver) {
+    this.transport = transport;
+    this.options = options;
+    this.registry = registry;
+    this.resolver = resolver;
+    this.inFlight = new Semaphore(options.maxInFlight());
+  }
+
+  /**
+   * Runs the message until its workflow terminates.
+   *
+   * The in-flight permit is acquired in the calling thread before the message is
+   * dispatched: while {@link Options#maxInFlight()} messages are running, the caller
+   * blocks, so a fast producer is slowed down instead of piling up parked virtual threads.
+   *
+   * @param message the message, with its tracker positioned on the next step to run
+   * @return the terminated message; completes exceptionally when a step cannot be
+   *         resolved
+   */
+  public CompletableFuture<PlatformMessage> submit(final PlatformMessage message) {
+    inFlight.acquireUninterruptibly();
+    return dispatch(message);
+  }
+
+  /**
+   * Runs the message until its workflow terminates, unless {@link Options#maxInFlight()}
+   * messages are already running.
+   *
+   * @param message the message, with its tracker positioned on the next step to run
+   * @return the terminated message as in {@link #submit(PlatformMessage)}, or none when
+   *         the driver is full and the message was rejected
+   */
+  public Option<CompletableFuture<PlatformMessage>> trySubmit(final PlatformMessage message) {
+    return inFlight.tryAcquire() ? Option.some(dispatch(message)) : Option.none();
+  }
+
+  /**
+   * Runs all the messages and waits for their termination.
+   *
+   * @param messages the messages to run
+   * @return the terminated messages, in the order of the provided messages
+   */
+  public List<PlatformMessage> runAll(final Seq<PlatformMessage> messages) {
+    var futures = List.ofAll(messages).map(this::submit);
+    return futures.map(CompletableFuture::join);
+  }
+
+  @Override
+  public void close() {
+    executor.close();
+  }
+
+  /**
+   * @return number of step addresses with calls in progress
+   */
+  int calledAddresses() {
+    return stepPermits.size();
+  }
+
+  private CompletableFuture<PlatformMessage> dispatch(final PlatformMessage message) {
+    try {
+      return CompletableFuture.supplyAsync(() -> {
+        try {
+          return run(message);
+        } finally {
+          inFlight.release();
+        }
+      }, executor);
+    } catch (RuntimeException e) {
+      inFlight.release();
+      throw e;
+    }
+  }
+
+  private PlatformMessage run(final PlatformMessage message) {
+    var current = IndexedMessage.of(message);
+    while (current.message().getWorkflowLog().getTracker().getCurrentBlock() != BlockType.TYPE_NA) {
+      var utils = PlatformMessageUtils.withMessage(current.message());
+      var running = utils.runningSteps(registry)
+          .getOrElseThrow(error -> new IllegalStateException(
+              String.format("Could not resolve the running steps of message %s: %s", message.getId(), error)));
+
+      transport.warmUp(current.message(), registry);
+      if (running.size() == 1) {
+        var step = running.head();
+        current = append(current, step, execute(step._2, current.processInput(step._2, resolver)));
+      } else {
+        current = fanOut(current, running);
+      }
+    }
+    return current.message();
+  }
+
+  /**
+   * Calls the running steps of a PARALLEL block concurrently, each with the payloads as
+   * they were when the block was entered, and appends the outcomes as they complete. Once
+   * the tracker leaves the block (all the steps completed, or one failed) the remaining
+   * calls are cancelled.
+   */
+  private IndexedMessage fanOut(final IndexedMessage current, final List<Tuple2<Integer, Step>> running) {
+    var completion = new ExecutorCompletionService<
+        Tuple2<Tuple2<Integer, Step>, Tuple2<List<ProcessOutcome>, CallTiming>>>(executor);
+    var futures = running.map(step -> {
+      var input = current.processInput(step._2, resolver);
+      return completion.submit(() -> Tuple.of(step, execute(step._2, input)));
+    });
+
+    var result = current;
+    try {
+      for (int i = 0; i < futures.size() && inParallelBlock(result); i++) {
+        var completed = completion.take().get();
+        result = append(result, completed._1, completed._2);
+      }
+      return result;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException(
+          String.format("Interrupted running the parallel steps of message %s", current.message().getId()), e);
+    } catch (ExecutionException e) {
+      throw new IllegalStateException(
+          String.format("Parallel step of message %s failed", current.message().getId()), e.getCause());
+    } finally {
+      futures.forEach(future -> future.cancel(true));
+    }
+  }
+
+  /**
+   * Runs the step: a single call, or one call per selected payload for a scatter-gather
+   * step, at most {@code max_parallelism} of them at once.
+   *
+   * @return the outcomes, in the order of the scattered inputs, and the timing of the calls
+   */
+  private Tuple2<List<ProcessOutcome>, CallTiming> execute(final Step step, final ProcessInput input) {
+    var dispatched = CallTiming.dispatch();
+    var outcomes = outcomes(step, input);
+    return Tuple.of(outcomes, CallTiming.since(dispatched, outcomes.size()));
+  }
+
+  /**
+   * Calls the step, once per scattered input for a scatter-gather step. When the message
+   * thread is interrupted, the scattered calls still running (or waiting for a permit) are
+   * cancelled.
+   */
+  private List<ProcessOutcome> outcomes(final Step step, final ProcessInput input) {
+    if (!step.hasScatter()) {
+      return List.of(call(step, input));
+    }
+
+    var inputs = ScatterUtils.scatter(input);
+    var permits = new Semaphore(ScatterUtils.parallelism(step.getScatter(), inputs.size()));
+    var futures = List.<Future<ProcessOutcome>>empty();
+    try {
+      for (var scattered : inputs) {
+        permits.acquire();
+        futures = futures.prepend(executor.submit(() -> {
+          try {
+            return call(step, scattered);
+          } finally {
+            permits.release();
+          }
+        }));
+      }
+
+      var outcomes = List.<ProcessOutcome>empty();
+      for (var future : futures.reverse()) {
+        outcomes = outcomes.prepend(future.get());
+      }
+      return outcomes.reverse();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException(String.format("Interrupted running the scattered calls of step %s",
+          step.getName()), e);
+    } catch (ExecutionException e) {
+      throw new IllegalStateException(String.format("Scattered call of step %s failed", step.getName()),
+          e.getCause());
+    } finally {
+      futures.forEach(future -> future.cancel(true));
+    }
+  }
+
+  private static IndexedMessage append(final IndexedMessage current, final Tuple2<Integer, Step> step,
+      final Tuple2<List<ProcessOutcome>, CallTiming> executed) {
+    return step._2.hasScatter() ? current.appendOutcomes(step._1, executed._1, step._2.getScatter(), executed._2)
+        : current.appendOutcome(step._1, executed._1.head(), executed._2);
+  }
+
+  private static boolean inParallelBlock(final IndexedMessage message) {
+    return message.message().getWorkflowLog().getTracker().getCurrentBlock() == BlockType.PARALLEL;
+  }
+
+  private ProcessOutcome call(final Step step, final ProcessInput input) {
+    var permits = stepPermits.compute(step.getAddress(), (address, existing) -> {
+      var entered = existing == null ? new StepPermits(options.perStepConcurrency()) : existing;
+      entered.calls++;
+      return entered;
+    });
+    try {
+      permits.semaphore.acquire();
+    } catch (InterruptedException e) {
+      leave(step.getAddress());
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException(String.format("Interrupted waiting to call step %s", step.getName()), e);
+    }
+
+    try {
+      return transport.call(step, input);
+    } catch (Exception e) {
+      Log.errorf("Call to step %s at [%s] failed: %s", step.getName(), step.getAddress(), e.getMessage());
+      return ProcessOutcome.newBuilder()
+          .setFailure(ProcessOutcomeFailure.newBuilder().setErrorMessage(String.valueOf(e.getMessage())))
+          .build();
+    } finally {
+      permits.semaphore.release();
+      leave(step.getAddress());
+    }
+  }
+
+  private void leave(final String address) {
+    stepPermits.computeIfPresent(address, (key, permits) -> --permits.calls == 0 ? null : permits);
+  }
+
+}
@@ -0,0 +1,109 @@
+package com.orta.gos.model.store;
+
+import com.google.protobuf.ByteString;
+import com.orta.gos.model.CompressedBody;
+import com.orta.gos.model.Payload;
+import com.orta.gos.model.PlatformMessage;
+
+import io.quarkus.logging.Log;
+import io.vavr.collection.List;
+import io.vavr.control.Option;
+
+/**
+ * Compression of payload bodies carried by the message from hop to hop: {@code StringBody},
+ * {@code BinaryBody} and {@code RestRequestBody} bodies larger than the threshold are
+ * replaced by a {@code CompressedBody}, decompressed again by
+ * {@link PayloadResolver#resolve(Payload)} right before calling the {@code Process}
+ * service.
+ *
+ * A payload may choose its codec with the {@value #CODEC_ATTRIBUTE} attribute, naming a
+ * codec known to {@link PayloadCodec#forName(String)} or {@value #IDENTITY} to be left
+ * uncompressed. Bodies that do not shrink are left uncompressed.
+ *
+ * @param codec          the codec of the payloads not choosing one
+ * @param thresholdBytes bodies with an encoded size above this threshold are compressed
+ */
+public record BodyCompression(PayloadCodec codec, int thresholdBytes) {
+
+  public static final String CODEC_ATTRIBUTE = "codec";
+  public static final String IDENTITY = "identity";
+
+  public static BodyCompression of(final PayloadCodec codec, final int thresholdBytes) {
+    return new BodyCompression(codec, thresholdBytes);
+  }
+
+  /**
+   * Compresses the payload body when it is eligible and above the threshold.
+   *
+   * @param payload the payload to compress
+   * @return the payload with a compressed body, or the same payload when not eligible
+   */
+  public Payload compress(final Payload payload) {
+    var body = switch (payload.getBodyCase()) {
+      case STRING_BODY, BINARY_BODY, REST_REQUEST -> PayloadResolver.encodedBody(payload)
+          .filter(bytes -> bytes.size() > thresholdBytes);
+      default -> Option.<ByteString>none();
+    };
+
+    return body.flatMap(bytes -> codec(payload).flatMap(selected -> {
+      var compressed = selected.compress(bytes);
+      return compressed.size() < bytes.size() ? Option.of(payload.toBuilder()
+          .setCompressedBody(CompressedBody.newBuilder()
+              .setCodec(selected.name())
+              .setBody(compressed)
+              .setSize(bytes.size())
+              .setBodyField(payload.getBodyCase().getNumber()))
+          .build()) : Option.none();
+    })).getOrElse(payload);
+  }
+
+  /**
+   * Compresses every eligible payload of the message.
+   *
+   * @param message the message
+   * @return the message with large bodies compressed
+   */
+  public PlatformMessage compress(final PlatformMessage message) {
+    var payloads = List.ofAll(message.getPayloadsList()).map(this::compress);
+    return message.toBuilder()
+        .clearPayloads()
+        .addAllPayloads(payloads)
+        .build();
+  }
+
+  /**
+   * Replaces a compressed body with the body it was compressed from. Payloads with another
+   * body are returned as is.
+   *
+   * @param payload the payload to decompress
+   * @return the payload with its original body
+   * @throws IllegalStateException when the codec is unknown, the body is corrupted or it
+   *                               does not inflate to exactly its recorded size
+   */
+  public static Payload decompress(final Payload payload) {
+    if (payload.getBodyCase() != Payload.BodyCase.COMPRESSED_BODY) {
+      return payload;
+    }
+
+    var compressed = payload.getCompressedBody();
+    var codec = PayloadCodec.forName(compressed.getCodec()).getOrElseThrow(() -> new IllegalStateException(
+        String.format("Unknown payload codec [%s]", compressed.getCodec())));
+
+    return PayloadResolver.inline(payload.toBuilder(), compressed.getBodyField(),
+        codec.decompress(compressed.getBody(), compressed.getSize())).build();
+  }
+
+  private Option<PayloadCodec> codec(final Payload payload) {
+    var name = payload.getAttributesMap().get(CODEC_ATTRIBUTE);
+    if (name == null) {
+      return Option.of(codec);
+    }
+    if (IDENTITY.equals(name)) {
+      return Option.none();
+    }
+    return PayloadCodec.forName(name)
+        .onEmpty(() -> Log.warnf("Unknown payload codec [%s], leaving payload %s uncompressed", name,
+            payload.getUuid()));
+  }
+
+}
@@ -0,0 +1,119 @@
+package com.orta.gos.model.store;
+
+import com.google.protobuf.ByteString;
+import com.orta.gos.model.Payload;
+import com.orta.gos.model.PayloadReference;
+import com.orta.gos.model.PlatformMessage;
+
+import io.vavr.collection.List;
+import io.vavr.control.Option;
+
+/**
+ * Claim-check mode for large payload bodies: {@code BinaryBody}, {@code RestRequestBody}
+ * and {@code CompressedBody} bodies larger than the threshold are moved into the store
+ * and the payload only carries a {@link PayloadReference} to them, until the body is
+ * resolved again right before calling the {@code Process} service.
+ *
+ * Over a {@link ContentAddressedStore} (see {@link #deduplicating}), string bodies are
+ * eligible too and identical bodies shared by many messages are stored once. Every
+ * message holding a reference owns one reference count: a message copied during fan-out
+ * should be {@link #retain(PlatformMessage)}ed, and a message done with its bodies
+ * {@link #release(PlatformMessage)}d.
+ *
+ * @param store          the store holding the checked-in bodies
+ * @param thresholdBytes bodies with an encoded size above this threshold are checked in
+ * @param stringBodies   whether {@code StringBody} bodies are checked in as well
+ */
+public record ClaimCheck(PayloadStore store, int thresholdBytes, boolean stringBodies) implements PayloadResolver {
+
+  public static ClaimCheck of(final PayloadStore store, final int thresholdBytes) {
+    return new ClaimCheck(store, thresholdBytes, false);
+  }
+
+  /**
+   * Deduplicates the bodies, string bodies included, shared by many messages.
+   *
+   * @param store          the store holding the bodies by hash
+   * @param thresholdBytes bodies with an encoded size above this threshold are deduplicated
+   * @return claim-check over the content-addressed store
+   */
+  public static ClaimCheck deduplicating(final ContentAddressedStore store, final int thresholdBytes) {
+    return new ClaimCheck(store, thresholdBytes, true);
+  }
+
+  /**
+   * Moves the payload body into the store when it is eligible and above the threshold.
+   *
+   * @param payload the payload to check in
+   * @return the payload with a body reference, or the same payload when not eligible
+   */
+  public Payload checkIn(final Payload payload) {
+    var size = switch (payload.getBodyCase()) {
+      case STRING_BODY -> stringBodies ? payload.getStringBody().getSerializedSize() : 0;
+      case BINARY_BODY -> payload.getBinaryBody().getSerializedSize();
+      case REST_REQUEST -> payload.getRestRequest().getSerializedSize();
+      case COMPRESSED_BODY -> payload.getCompressedBody().getSerializedSize();
+      default -> 0;
+    };
+    if (size <= thresholdBytes) {
+      return payload;
+    }
+
+    return PayloadResolver.encodedBody(payload)
+        .map(bytes -> payload.toBuilder()
+            .setBodyRef(PayloadReference.newBuilder()
+                .setStore(store.name())
+                .setKey(store.put(bytes))
+                .setSize(bytes.size())
+                .setBodyField(payload.getBodyCase().getNumber()))
+            .build())
+        .getOrElse(payload);
+  }
+
+  /**
+   * Checks in every eligible payload of the message.
+   *
+   * @param message the message
+   * @return the message with large bodies replaced by references
+   */
+  public PlatformMessage checkIn(final PlatformMessage message) {
+    var payloads = List.ofAll(message.getPayloadsList()).map(this::checkIn);
+    return message.toBuilder()
+        .clearPayloads()
+        .addAllPayloads(payloads)
+        .build();
+  }
+
+  @Override
+  public Option<ByteString> body(final PayloadReference reference) {
+    return store.name().equals(reference.getStore()) ? store.get(reference.getKey()) : Option.none();
+  }
+
+  /**
+   * Releases the bodies referenced by the message payloads, once the message is done
+   * (completed or dropped).
+   *
+   * @param message the message
+   */
+  public void release(final PlatformMessage message) {
+    references(message).forEach(reference -> store.release(reference.getKey()));
+  }
+
+  /**
+   * Retains the bodies referenced by the message payloads, for a copy of the message
+   * (e.g. during fan-out).
+   *
+   * @param message the message
+   */
+  public void retain(final PlatformMessage message) {
+    references(message).forEach(reference -> store.retain(reference.getKey()));
+  }
+
+  private List<PayloadReference> references(final PlatformMessage message) {
+    return List.ofAll(message.getPayloadsList())
+        .filter(Payload::hasBodyRef)
+        .map(Payload::getBodyRef)
+        .filter(reference -> store.name().equals(reference.getStore()));
+  }
+
+}
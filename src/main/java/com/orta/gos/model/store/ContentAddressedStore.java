@@ -0,0 +1,113 @@
+package com.orta.gos.model.store;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.HexFormat;
+
+import com.google.protobuf.ByteString;
+
+import io.vavr.control.Option;
+
+/**
+ * In-memory {@link PayloadStore} keyed by the SHA-256 hash of the bodies, so identical
+ * bodies put by many messages (e.g. the source payload of a fan-out) are held once.
+ *
+ * Putting a body already stored returns the same key and counts one more reference, as
+ * {@link #retain(String)} does; the body is dropped once every reference was released.
+ */
+public final class ContentAddressedStore implements PayloadStore {
+
+  public record Stats(int entries, long bytes, long deduplicated, long deduplicatedBytes) {
+  }
+
+  private static final class Entry {
+    final ByteString body;
+    int references;
+
+    Entry(final ByteString body) {
+      this.body = body;
+      this.references = 1;
+    }
+  }
+
+  private final String name;
+
+  private final HashMap<String, Entry> entries = new HashMap<>();
+  private long bytes;
+  private long deduplicated;
+  private long deduplicatedBytes;
+
+  public ContentAddressedStore(final String name) {
+    this.name = name;
+  }
+
+  @Override
+  public String name() {
+    return name;
+  }
+
+  /**
+   * @param body the body bytes
+   * @return the hex encoded SHA-256 hash of the body, its key in the store
+   */
+  public static String key(final ByteString body) {
+    try {
+      var digest = MessageDigest.getInstance("SHA-256");
+      digest.update(body.asReadOnlyByteBuffer());
+      return HexFormat.of().formatHex(digest.digest());
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-256 is not available", e);
+    }
+  }
+
+  @Override
+  public String put(final ByteString body) {
+    var key = key(body);
+    synchronized (this) {
+      var entry = entries.get(key);
+      if (entry != null) {
+        entry.references++;
+        deduplicated++;
+        deduplicatedBytes += body.size();
+      } else {
+        entries.put(key, new Entry(body));
+        bytes += body.size();
+      }
+    }
+    return key;
+  }
+
+  @Override
+  public synchronized Option<ByteString> get(final String key) {
+    return Option.of(entries.get(key)).map(entry -> entry.body);
+  }
+
+  @Override
+  public synchronized boolean retain(final String key) {
+    var entry = entries.get(key);
+    if (entry == null) {
+      return false;
+    }
+    entry.references++;
+    return true;
+  }
+
+  @Override
+  public synchronized boolean release(final String key) {
+    var entry = entries.get(key);
+    if (entry == null) {
+      return false;
+    }
+    if (--entry.references == 0) {
+      entries.remove(key);
+      bytes -= entry.body.size();
+    }
+    return true;
+  }
+
+  public synchronized Stats stats() {
+    return new Stats(entries.size(), bytes, deduplicated, deduplicatedBytes);
+  }
+
+}
@@ -0,0 +1,285 @@
+package com.orta.gos.model.store;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.UnsafeByteOperations;
+
+import io.quarkus.logging.Log;
+import io.vavr.control.Option;
+
+/**
+ * Local {@link PayloadStore} keeping bodies in memory-mapped, append-only segment files.
+ *
+ * Bodies are appended to the active segment until it is full, then a new segment is
+ * rolled. Reads wrap the mapped bytes without copying them to the heap. Segments whose
+ * live bytes drop below the compaction ratio have their remaining bodies copied to the
+ * active segment and are deleted. The index (key to location and reference count) is kept
+ * in memory, so the segment files are private to the store instance and are deleted on
+ * {@link #close()}.
+ */
+public final class MappedPayloadStore implements PayloadStore, Closeable {
+
+  public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+  public static final double DEFAULT_COMPACTION_RATIO = 0.5;
+
+  private final String name;
+  private final Path directory;
+  private final int segmentSize;
+  private final double compactionRatio;
+
+  private final HashMap<String, Entry> entries = new HashMap<>();
+  private final ArrayList<Segment> segments = new ArrayList<>();
+  private Segment active;
+  private long nextKey;
+  private long nextSegment;
+  private boolean closed;
+
+  public record Stats(int segments, int entries, long liveBytes, long mappedBytes) {
+  }
+
+  private static final class Segment {
+    final Path path;
+    final MappedByteBuffer buffer;
+    int writePosition;
+    long liveBytes;
+    int liveEntries;
+
+    Segment(final Path path, final MappedByteBuffer buffer) {
+      this.path = path;
+      this.buffer = buffer;
+    }
+
+    int remaining() {
+      return buffer.capacity() - writePosition;
+    }
+  }
+
+  private static final class Entry {
+    Segment segment;
+    int offset;
+    final int length;
+    int references;
+
+    Entry(final Segment segment, final int offset, final int length) {
+      this.segment = segment;
+      this.offset = offset;
+      this.length = length;
+      this.references = 1;
+    }
+  }
+
+  /**
+   * Opens a store in a new private directory under the provided parent.
+   *
+   * @param name            the store name recorded in the references
+   * @param parent          the directory holding the store directory
+   * @param segmentSize     the size of each segment file (bodies larger than that get a
+   *                        dedicated segment)
+   * @param compactionRatio a sealed segment is compacted once its live bytes fall below
+   *                        this ratio of its size
+   * @return the store
+   */
+  public static MappedPayloadStore open(final String name, final Path parent, final int segmentSize,
+      final double compactionRatio) {
+    if (segmentSize <= 0) {
+      throw new IllegalArgumentException(String.format("segmentSize must be positive (was %d)", segmentSize));
+    }
+    if (compactionRatio < 0 || compactionRatio > 1) {
+      throw new IllegalArgumentException(String.format("compactionRatio must be in [0, 1] (was %f)", compactionRatio));
+    }
+    try {
+      Files.createDirectories(parent);
+      return new MappedPayloadStore(name, Files.createTempDirectory(parent, name + "-"), segmentSize,
+          compactionRatio);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  public static MappedPayloadStore open(final String name, final Path parent) {
+    return open(name, parent, DEFAULT_SEGMENT_SIZE, DEFAULT_COMPACTION_RATIO);
+  }
+
+  private MappedPayloadStore(final String name, final Path directory, final int segmentSize,
+      final double compactionRatio) {
+    this.name = name;
+    this.directory = directory;
+    this.segmentSize = segmentSize;
+    this.compactionRatio = compactionRatio;
+  }
+
+  @Override
+  public String name() {
+    return name;
+  }
+
+  public Path directory() {
+    return directory;
+  }
+
+  @Override
+  public synchronized String put(final ByteString body) {
+    ensureOpen();
+    var entry = append(body.asReadOnlyByteBuffer(), body.size());
+    var key = Long.toString(nextKey++, 36);
+    entries.put(key, entry);
+    return key;
+  }
+
+  @Override
+  public synchronized Option<ByteString> get(final String key) {
+    ensureOpen();
+    var entry = entries.get(key);
+    if (entry == null) {
+      return Option.none();
+    }
+    var slice = entry.segment.buffer.asReadOnlyBuffer()
+        .position(entry.offset)
+        .limit(entry.offset + entry.length)
+        .slice();
+    // Segments are append-only, so the mapped bytes of an entry never change
+    return Option.of(UnsafeByteOperations.unsafeWrap(slice));
+  }
+
+  @Override
+  public synchronized boolean retain(final String key) {
+    ensureOpen();
+    var entry = entries.get(key);
+    if (entry == null) {
+      return false;
+    }
+    entry.references++;
+    return true;
+  }
+
+  @Override
+  public synchronized boolean release(final String key) {
+    ensureOpen();
+    var entry = entries.get(key);
+    if (entry == null) {
+      return false;
+    }
+    if (--entry.references == 0) {
+      entries.remove(key);
+      var segment = entry.segment;
+      segment.liveBytes -= entry.length;
+      segment.liveEntries--;
+      if (segment != active && shouldCompact(segment)) {
+        compact(segment);
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Compacts every sealed segment whose live bytes fall below the compaction ratio.
+   *
+   * @return the number of compacted segments
+   */
+  public synchronized int compact() {
+    ensureOpen();
+    var candidates = segments.stream()
+        .filter(segment -> segment != active && shouldCompact(segment))
+        .toList();
+    candidates.forEach(this::compact);
+    return candidates.size();
+  }
+
+  public synchronized Stats stats() {
+    var liveBytes = segments.stream().mapToLong(segment -> segment.liveBytes).sum();
+    var mappedBytes = segments.stream().mapToLong(segment -> segment.buffer.capacity()).sum();
+    return new Stats(segments.size(), entries.size(), liveBytes, mappedBytes);
+  }
+
+  @Override
+  public synchronized void close() {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    entries.clear();
+    new ArrayList<>(segments).forEach(this::drop);
+    active = null;
+    try {
+      Files.deleteIfExists(directory);
+    } catch (IOException e) {
+      Log.warnf("Could not delete payload store directory %s: %s", directory, e.getMessage());
+    }
+  }
+
+  private boolean shouldCompact(final Segment segment) {
+    return segment.liveBytes < (long) (segment.buffer.capacity() * compactionRatio);
+  }
+
+  private void compact(final Segment segment) {
+    if (segment.liveEntries > 0) {
+      entries.values().stream()
+          .filter(entry -> entry.segment == segment)
+          .forEach(entry -> {
+            var source = segment.buffer.asReadOnlyBuffer()
+                .position(entry.offset)
+                .limit(entry.offset + entry.length);
+            var moved = append(source, entry.length);
+            entry.segment = moved.segment;
+            entry.offset = moved.offset;
+          });
+    }
+    drop(segment);
+  }
+
+  private Entry append(final ByteBuffer source, final int length) {
+    if (active == null || active.remaining() < length) {
+      active = roll(Math.max(segmentSize, length));
+    }
+    var offset = active.writePosition;
+    active.buffer.duplicate().position(offset).put(source);
+    active.writePosition += length;
+    active.liveBytes += length;
+    active.liveEntries++;
+    return new Entry(active, offset, length);
+  }
+
+  private Segment roll(final int size) {
+    var id = nextSegment++;
+    var path = directory.resolve(String.format("%016x.seg", id));
+    try (var channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+        StandardOpenOption.WRITE)) {
+      var segment = new Segment(path, channel.map(FileChannel.MapMode.READ_WRITE, 0, size));
+      segments.add(segment);
+      return segment;
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private void drop(final Segment segment) {
+    segments.remove(segment);
+    if (segment == active) {
+      active = null;
+    }
+    try {
+      // The mapping itself is released by the GC once no buffer refers to it
+      Files.deleteIfExists(segment.path);
+    } catch (IOException e) {
+      Log.warnf("Could not delete payload segment %s: %s", segment.path, e.getMessage());
+    }
+  }
+
+  private void ensureOpen() {
+    if (closed) {
+      throw new IllegalStateException(String.format("Payload store [%s] is closed", name));
+    }
+  }
+
+}
@@ -0,0 +1,537 @@
+package com.orta.gos.model.store;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.Parser;
+import com.orta.gos.model.PlatformMessage;
+import com.orta.gos.model.rules.Step;
+import com.orta.gos.model.rules.Tracker;
+import com.orta.gos.model.rules.WorkflowRegistry;
+import com.orta.gos.model.utils.PlatformMessageUtils;
+
+import io.quarkus.logging.Log;
+import io.vavr.collection.Iterator;
+import io.vavr.collection.List;
+import io.vavr.control.Option;
+
+/**
+ * Store of in-flight messages keyed by {@link PlatformMessage#getId()}, keeping the
+ * serialized messages off heap, so the heap usage does not grow with the number of
+ * messages waiting on their steps.
+ *
+ * Records are appended to direct memory slabs as
+ * {@code [header][id][tracker][addresses][message]}, with the tracker serialized
+ * deterministically so {@link #compareAndSet(Tracker, PlatformMessage)} compares bytes,
+ * and the addresses of the running steps so {@link #atAddress(String)} does not parse the
+ * messages. A message replaced by a smaller or equal one is overwritten in place,
+ * otherwise it is appended again; slabs whose live bytes drop below the compaction ratio
+ * have their remaining records copied to the active slab and are released.
+ *
+ * The index is an open addressing (linear probing) hash table, also off heap, holding the
+ * hash of the id and the location of its record; deletions shift the following entries
+ * back instead of leaving tombstones.
+ */
+public final class OffHeapStateStore implements Closeable {
+
+  /**
+   * @param slabSize        the size of each direct memory slab (records larger than that
+   *                        get a dedicated slab)
+   * @param compactionRatio a sealed slab is compacted once its live bytes fall below this
+   *                        ratio of its size, and freed once it holds no live record
+   *                        whatever the ratio (0 only frees empty slabs)
+   */
+  public record Options(int slabSize, double compactionRatio) {
+
+    public static final Options DEFAULT = new Options(16 * 1024 * 1024, 0.5);
+
+    public Options {
+      if (slabSize <= 0) {
+        throw new IllegalArgumentException(String.format("slabSize must be positive (was %d)", slabSize));
+      }
+      if (compactionRatio < 0 || compactionRatio > 1) {
+        throw new IllegalArgumentException(
+            String.format("compactionRatio must be in [0, 1] (was %f)", compactionRatio));
+      }
+    }
+  }
+
+  public record Stats(int entries, int slabs, long liveBytes, long allocatedBytes, int indexCapacity) {
+  }
+
+  // Record header: size, id length, tracker length, addresses length, message length
+  private static final int HEADER = 5 * Integer.BYTES;
+  private static final int SIZE = 0;
+  private static final int ID_LENGTH = 4;
+  private static final int TRACKER_LENGTH = 8;
+  private static final int ADDRESSES_LENGTH = 12;
+  private static final int MESSAGE_LENGTH = 16;
+
+  // Index slot: location (slab id << 32 | offset, 0 when empty), id hash, padding
+  private static final int SLOT = 16;
+  private static final int INITIAL_CAPACITY = 1024;
+  private static final double MAX_LOAD = 0.7;
+
+  private static final byte ADDRESS_SEPARATOR = 0;
+
+  private final Options options;
+  private final WorkflowRegistry registry;
+
+  private final HashMap<Integer, Slab> slabs = new HashMap<>();
+  private Slab active;
+  private int nextSlab = 1;
+
+  private ByteBuffer index;
+  private int mask;
+  private int size;
+  private boolean closed;
+
+  private static final class Slab {
+    final int id;
+    final ByteBuffer buffer;
+    int writePosition;
+    long liveBytes;
+
+    Slab(final int id, final int size) {
+      this.id = id;
+      this.buffer = ByteBuffer.allocateDirect(size);
+    }
+
+    int remaining() {
+      return buffer.capacity() - writePosition;
+    }
+  }
+
+  /**
+   * Serialized parts of a message.
+   */
+  private record Encoded(PlatformMessage message, byte[] id, byte[] tracker, byte[] addresses, int messageLength) {
+
+    int length() {
+      return HEADER + id.length + tracker.length + addresses.length + messageLength;
+    }
+  }
+
+  public OffHeapStateStore(final Options options) {
+    this(options, new WorkflowRegistry());
+  }
+
+  /**
+   * @param options  slab size and compaction ratio
+   * @param registry registry resolving the running steps of messages carrying a workflow
+   *                 reference, to index their addresses
+   */
+  public OffHeapStateStore(final Options options, final WorkflowRegistry registry) {
+    this.options = options;
+    this.registry = registry;
+    allocateIndex(INITIAL_CAPACITY);
+  }
+
+  /**
+   * Stores the message, replacing the message with the same id.
+   *
+   * @param message the message
+   * @return whether the message was not stored yet
+   */
+  public synchronized boolean put(final PlatformMessage message) {
+    ensureOpen();
+    var encoded = encode(message);
+    var hash = hash(encoded.id());
+    var slot = find(encoded.id(), hash);
+    if (slot >= 0) {
+      replace(slot, encoded);
+      return false;
+    }
+
+    if (size + 1 > (mask + 1) * MAX_LOAD) {
+      allocateIndex((mask + 1) * 2);
+    }
+    setSlot(freeSlot(hash), append(encoded), hash);
+    size++;
+    return true;
+  }
+
+  public synchronized Option<PlatformMessage> get(final String id) {
+    ensureOpen();
+    var key = bytes(id);
+    var slot = find(key, hash(key));
+    if (slot < 0) {
+      return Option.none();
+    }
+    var location = index.getLong(slot);
+    var buffer = slab(location).buffer;
+    var offset = offset(location);
+    return Option.of(parse(buffer.slice(offset + HEADER + buffer.getInt(offset + ID_LENGTH)
+        + buffer.getInt(offset + TRACKER_LENGTH) + buffer.getInt(offset + ADDRESSES_LENGTH),
+        buffer.getInt(offset + MESSAGE_LENGTH)), PlatformMessage.parser()));
+  }
+
+  /**
+   * Reads the tracker of the message without parsing the message.
+   *
+   * @param id the message id
+   * @return the tracker, if the message is stored
+   */
+  public synchronized Option<Tracker> tracker(final String id) {
+    ensureOpen();
+    var key = bytes(id);
+    var slot = find(key, hash(key));
+    if (slot < 0) {
+      return Option.none();
+    }
+    var location = index.getLong(slot);
+    var buffer = slab(location).buffer;
+    var offset = offset(location);
+    return Option.of(parse(buffer.slice(offset + HEADER + buffer.getInt(offset + ID_LENGTH),
+        buffer.getInt(offset + TRACKER_LENGTH)), Tracker.parser()));
+  }
+
+  /**
+   * Replaces the stored message only if its tracker is still the expected one, so
+   * concurrent outcomes of the same message do not overwrite each other.
+   *
+   * @param expected the tracker the update was computed from
+   * @param updated  the new state of the message
+   * @return whether the message was stored with the expected tracker and replaced
+   */
+  public synchronized boolean compareAndSet(final Tracker expected, final PlatformMessage updated) {
+    ensureOpen();
+    var encoded = encode(updated);
+    var slot = find(encoded.id(), hash(encoded.id()));
+    if (slot < 0) {
+      return false;
+    }
+    var location = index.getLong(slot);
+    var buffer = slab(location).buffer;
+    var offset = offset(location);
+    var stored = buffer.slice(offset + HEADER + buffer.getInt(offset + ID_LENGTH),
+        buffer.getInt(offset + TRACKER_LENGTH));
+    if (!stored.equals(ByteBuffer.wrap(deterministic(expected)))) {
+      return false;
+    }
+    replace(slot, encoded);
+    return true;
+  }
+
+  /**
+   * Removes the message.
+   *
+   * @param id the message id
+   * @return whether the message was stored
+   */
+  public synchronized boolean remove(final String id) {
+    ensureOpen();
+    var key = bytes(id);
+    var slot = find(key, hash(key));
+    if (slot < 0) {
+      return false;
+    }
+    var location = index.getLong(slot);
+    deleteSlot(slot);
+    size--;
+    release(location);
+    return true;
+  }
+
+  /**
+   * Iterates the messages with a running step at the address. The matching ids are
+   * collected when called; the messages are read as iterated, skipping the ones removed
+   * meanwhile.
+   *
+   * @param address the step address
+   * @return the messages waiting on the address
+   */
+  public Iterator<PlatformMessage> atAddress(final String address) {
+    var target = ByteBuffer.wrap(bytes(address));
+    var ids = new ArrayList<String>();
+    synchronized (this) {
+      ensureOpen();
+      for (int slot = 0; slot <= mask; slot++) {
+        var location = index.getLong(slot * SLOT);
+        if (location != 0 && hasAddress(location, target)) {
+          ids.add(id(location));
+        }
+      }
+    }
+    return Iterator.ofAll(ids).flatMap(this::get);
+  }
+
+  public synchronized int size() {
+    return size;
+  }
+
+  public synchronized Stats stats() {
+    var liveBytes = slabs.values().stream().mapToLong(slab -> slab.liveBytes).sum();
+    var allocatedBytes = slabs.values().stream().mapToLong(slab -> slab.buffer.capacity()).sum();
+    return new Stats(size, slabs.size(), liveBytes, allocatedBytes, mask + 1);
+  }
+
+  @Override
+  public synchronized void close() {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    // The direct memory is released by the GC once no buffer refers to it
+    slabs.clear();
+    active = null;
+    index = null;
+    size = 0;
+  }
+
+  private Encoded encode(final PlatformMessage message) {
+    var addresses = PlatformMessageUtils.withMessage(message).runningSteps(registry)
+        .peekLeft(error -> Log.debugf("Not indexing the addresses of message %s: %s", message.getId(), error))
+        .getOrElse(List.empty())
+        .map(step -> step._2)
+        .map(Step::getAddress)
+        .filter(address -> !address.isEmpty())
+        .distinct()
+        .mkString(String.valueOf((char) ADDRESS_SEPARATOR));
+    return new Encoded(message, bytes(message.getId()), deterministic(message.getWorkflowLog().getTracker()),
+        bytes(addresses), message.getSerializedSize());
+  }
+
+  private void replace(final int slot, final Encoded encoded) {
+    var location = index.getLong(slot);
+    var buffer = slab(location).buffer;
+    var offset = offset(location);
+    if (buffer.getInt(offset + SIZE) >= encoded.length()) {
+      write(buffer, offset, buffer.getInt(offset + SIZE), encoded);
+      return;
+    }
+    index.putLong(slot, append(encoded));
+    release(location);
+  }
+
+  private long append(final Encoded encoded) {
+    var length = encoded.length();
+    var slab = reserve(length);
+    var offset = slab.writePosition;
+    write(slab.buffer, offset, length, encoded);
+    slab.writePosition += length;
+    slab.liveBytes += length;
+    return location(slab.id, offset);
+  }
+
+  private static void write(final ByteBuffer buffer, final int offset, final int size, final Encoded encoded) {
+    var position = offset + HEADER;
+    buffer.putInt(offset + SIZE, size)
+        .putInt(offset + ID_LENGTH, encoded.id().length)
+        .putInt(offset + TRACKER_LENGTH, encoded.tracker().length)
+        .putInt(offset + ADDRESSES_LENGTH, encoded.addresses().length)
+        .putInt(offset + MESSAGE_LENGTH, encoded.messageLength())
+        .put(position, encoded.id());
+    position += encoded.id().length;
+    buffer.put(position, encoded.tracker());
+    position += encoded.tracker().length;
+    buffer.put(position, encoded.addresses());
+    position += encoded.addresses().length;
+    try {
+      var output = CodedOutputStream.newInstance(buffer.slice(position, encoded.messageLength()));
+      encoded.message().writeTo(output);
+      output.flush();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private Slab reserve(final int length) {
+    if (active == null || active.remaining() < length) {
+      active = new Slab(nextSlab++, Math.max(options.slabSize(), length));
+      slabs.put(active.id, active);
+    }
+    return active;
+  }
+
+  private void release(final long location) {
+    var slab = slab(location);
+    slab.liveBytes -= slab.buffer.getInt(offset(location) + SIZE);
+    if (slab != active
+        && (slab.liveBytes == 0 || slab.liveBytes < (long) (slab.buffer.capacity() * options.compactionRatio()))) {
+      compact(slab);
+    }
+  }
+
+  /**
+   * Copies the live records of the slab to the active slab and releases it. A record is
+   * live when the index slot of its id still points to it.
+   */
+  private void compact(final Slab slab) {
+    var buffer = slab.buffer;
+    var offset = 0;
+    while (slab.liveBytes > 0 && offset < slab.writePosition) {
+      var recordSize = buffer.getInt(offset + SIZE);
+      var location = location(slab.id, offset);
+      var id = new byte[buffer.getInt(offset + ID_LENGTH)];
+      buffer.get(offset + HEADER, id);
+      var slot = find(id, hash(id));
+      if (slot >= 0 && index.getLong(slot) == location) {
+        var used = HEADER + id.length + buffer.getInt(offset + TRACKER_LENGTH)
+            + buffer.getInt(offset + ADDRESSES_LENGTH) + buffer.getInt(offset + MESSAGE_LENGTH);
+        var target = reserve(used);
+        target.buffer.put(target.writePosition, buffer, offset, used)
+            .putInt(target.writePosition + SIZE, used);
+        index.putLong(slot, location(target.id, target.writePosition));
+        target.writePosition += used;
+        target.liveBytes += used;
+        slab.liveBytes -= recordSize;
+      }
+      offset += recordSize;
+    }
+    slabs.remove(slab.id);
+  }
+
+  private boolean hasAddress(final long location, final ByteBuffer target) {
+    var buffer = slab(location).buffer;
+    var offset = offset(location);
+    var start = offset + HEADER + buffer.getInt(offset + ID_LENGTH) + buffer.getInt(offset + TRACKER_LENGTH);
+    var end = start + buffer.getInt(offset + ADDRESSES_LENGTH);
+    var length = target.remaining();
+    for (int position = start; position < end;) {
+      var next = position;
+      while (next < end && buffer.get(next) != ADDRESS_SEPARATOR) {
+        next++;
+      }
+      if (next - position == length && buffer.slice(position, length).equals(target)) {
+        return true;
+      }
+      position = next + 1;
+    }
+    return false;
+  }
+
+  private String id(final long location) {
+    var buffer = slab(location).buffer;
+    var offset = offset(location);
+    var id = new byte[buffer.getInt(offset + ID_LENGTH)];
+    buffer.get(offset + HEADER, id);
+    return new String(id, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * @return the byte position of the slot holding the id, or -1
+   */
+  private int find(final byte[] id, final int hash) {
+    var key = ByteBuffer.wrap(id);
+    for (int slot = hash & mask;; slot = (slot + 1) & mask) {
+      var location = index.getLong(slot * SLOT);
+      if (location == 0) {
+        return -1;
+      }
+      if (index.getInt(slot * SLOT + Long.BYTES) == hash && matches(location, key)) {
+        return slot * SLOT;
+      }
+    }
+  }
+
+  private boolean matches(final long location, final ByteBuffer key) {
+    var buffer = slab(location).buffer;
+    var offset = offset(location);
+    return buffer.getInt(offset + ID_LENGTH) == key.remaining()
+        && buffer.slice(offset + HEADER, key.remaining()).equals(key);
+  }
+
+  private int freeSlot(final int hash) {
+    var slot = hash & mask;
+    while (index.getLong(slot * SLOT) != 0) {
+      slot = (slot + 1) & mask;
+    }
+    return slot * SLOT;
+  }
+
+  private void setSlot(final int position, final long location, final int hash) {
+    index.putLong(position, location).putInt(position + Long.BYTES, hash);
+  }
+
+  /**
+   * Backward shift deletion: the following entries of the probe sequence that may move
+   * closer to their home slot fill the hole.
+   */
+  private void deleteSlot(final int position) {
+    var hole = position / SLOT;
+    for (int slot = (hole + 1) & mask; index.getLong(slot * SLOT) != 0; slot = (slot + 1) & mask) {
+      var home = index.getInt(slot * SLOT + Long.BYTES) & mask;
+      var between = hole <= slot ? hole < home && home <= slot : hole < home || home <= slot;
+      if (!between) {
+        setSlot(hole * SLOT, index.getLong(slot * SLOT), index.getInt(slot * SLOT + Long.BYTES));
+        hole = slot;
+      }
+    }
+    setSlot(hole * SLOT, 0, 0);
+  }
+
+  private void allocateIndex(final int capacity) {
+    var previous = index;
+    var previousMask = mask;
+    index = ByteBuffer.allocateDirect(capacity * SLOT);
+    mask = capacity - 1;
+    if (previous != null) {
+      for (int slot = 0; slot <= previousMask; slot++) {
+        var location = previous.getLong(slot * SLOT);
+        if (location != 0) {
+          var hash = previous.getInt(slot * SLOT + Long.BYTES);
+          setSlot(freeSlot(hash), location, hash);
+        }
+      }
+    }
+  }
+
+  private Slab slab(final long location) {
+    return slabs.get((int) (location >>> 32));
+  }
+
+  private static int offset(final long location) {
+    return (int) location;
+  }
+
+  private static long location(final int slab, final int offset) {
+    return (long) slab << 32 | offset;
+  }
+
+  private static int hash(final byte[] id) {
+    var hash = Arrays.hashCode(id);
+    hash ^= hash >>> 16;
+    hash *= 0x85ebca6b;
+    return hash ^ (hash >>> 13);
+  }
+
+  private static byte[] bytes(final String value) {
+    return value.getBytes(StandardCharsets.UTF_8);
+  }
+
+  private static byte[] deterministic(final Tracker tracker) {
+    try {
+      var bytes = new byte[tracker.getSerializedSize()];
+      var output = CodedOutputStream.newInstance(bytes);
+      output.useDeterministicSerialization();
+      tracker.writeTo(output);
+      return bytes;
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private static <T> T parse(final ByteBuffer bytes, final Parser<T> parser) {
+    try {
+      return parser.parseFrom(bytes);
+    } catch (InvalidProtocolBufferException e) {
+      throw new IllegalStateException("Corrupted off-heap record", e);
+    }
+  }
+
+  private void ensureOpen() {
+    if (closed) {
+      throw new IllegalStateException("State store is closed");
+    }
+  }
+
+}
@@ -0,0 +1,171 @@
+package com.orta.gos.model.store;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.ServiceLoader;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.UnsafeByteOperations;
+
+import io.vavr.control.Option;
+
+/**
+ * Compression codec of payload bodies, see {@link BodyCompression}.
+ *
+ * Codecs are looked up by the name recorded in every {@code CompressedBody}. The JDK
+ * {@link #DEFLATE} and {@link #GZIP} codecs are always available; other codecs are
+ * discovered with the {@link ServiceLoader} or added with {@link #register(PayloadCodec)}.
+ */
+public interface PayloadCodec {
+
+  /**
+   * @return the codec name, recorded in every {@code CompressedBody} produced by it
+   */
+  String name();
+
+  /**
+   * @param body the bytes to compress
+   * @return the compressed bytes
+   */
+  ByteString compress(ByteString body);
+
+  /**
+   * @param compressed the compressed bytes
+   * @return the original bytes
+   * @throws IllegalStateException when the bytes are corrupted
+   */
+  ByteString decompress(ByteString compressed);
+
+  /**
+   * Decompresses bytes of a known original size, as recorded in a {@code CompressedBody}.
+   * Codecs able to stop inflating past the size override this method; the default
+   * decompresses fully and only then checks the size.
+   *
+   * @param compressed the compressed bytes
+   * @param size       the size of the original bytes
+   * @return the original bytes
+   * @throws IllegalStateException when the bytes are corrupted or do not inflate to exactly
+   *                               {@code size} bytes
+   */
+  default ByteString decompress(final ByteString compressed, final long size) {
+    var body = decompress(compressed);
+    if (body.size() != size) {
+      throw new IllegalStateException(String.format(
+          "Compressed %s body inflates to %d bytes instead of %d", name(), body.size(), size));
+    }
+    return body;
+  }
+
+  PayloadCodec DEFLATE = new StreamCodec("deflate") {
+    @Override
+    protected OutputStream compressing(final OutputStream output) {
+      return new DeflaterOutputStream(output);
+    }
+
+    @Override
+    protected InputStream decompressing(final InputStream input) {
+      return new InflaterInputStream(input);
+    }
+  };
+
+  PayloadCodec GZIP = new StreamCodec("gzip") {
+    @Override
+    protected OutputStream compressing(final OutputStream output) throws IOException {
+      return new GZIPOutputStream(output);
+    }
+
+    @Override
+    protected InputStream decompressing(final InputStream input) throws IOException {
+      return new GZIPInputStream(input);
+    }
+  };
+
+  /**
+   * @param name the codec name
+   * @return the codec, or none when no codec has the name
+   */
+  static Option<PayloadCodec> forName(final String name) {
+    return Option.of(PayloadCodecs.CODECS.get(name));
+  }
+
+  /**
+   * Makes the codec available to {@link #forName(String)}, replacing a codec with the same
+   * name.
+   *
+   * @param codec the codec
+   */
+  static void register(final PayloadCodec codec) {
+    PayloadCodecs.CODECS.put(codec.name(), codec);
+  }
+
+  /**
+   * Codec over the JDK compression streams, which release their native resources when
+   * closed. Decompressing to a known size reads at most one byte past it, so a body
+   * inflating far beyond its recorded size is rejected without being inflated.
+   */
+  abstract class StreamCodec implements PayloadCodec {
+
+    private final String name;
+
+    protected StreamCodec(final String name) {
+      this.name = name;
+    }
+
+    protected abstract OutputStream compressing(OutputStream output) throws IOException;
+
+    protected abstract InputStream decompressing(InputStream input) throws IOException;
+
+    @Override
+    public String name() {
+      return name;
+    }
+
+    @Override
+    public ByteString compress(final ByteString body) {
+      var output = ByteString.newOutput(Math.max(body.size() / 4, 64));
+      try (var compressing = compressing(output)) {
+        body.writeTo(compressing);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+      return output.toByteString();
+    }
+
+    @Override
+    public ByteString decompress(final ByteString compressed) {
+      try (var decompressing = decompressing(compressed.newInput())) {
+        return ByteString.readFrom(decompressing);
+      } catch (IOException e) {
+        throw new IllegalStateException(String.format("Corrupted %s compressed body", name), e);
+      }
+    }
+
+    @Override
+    public ByteString decompress(final ByteString compressed, final long size) {
+      if (size < 0 || size > Integer.MAX_VALUE - 8) {
+        throw new IllegalStateException(String.format("Invalid size %d of a %s compressed body", size, name));
+      }
+      try (var decompressing = decompressing(compressed.newInput())) {
+        var body = decompressing.readNBytes((int) size);
+        if (body.length < size) {
+          throw new IllegalStateException(String.format(
+              "Compressed %s body inflates to %d bytes instead of %d", name, body.length, size));
+        }
+        if (decompressing.read() != -1) {
+          throw new IllegalStateException(String.format(
+              "Compressed %s body inflates beyond its size of %d bytes", name, size));
+        }
+        return UnsafeByteOperations.unsafeWrap(body);
+      } catch (IOException e) {
+        throw new IllegalStateException(String.format("Corrupted %s compressed body", name), e);
+      }
+    }
+  }
+
+}
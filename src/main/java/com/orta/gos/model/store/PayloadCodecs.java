@@ -0,0 +1,23 @@
+package com.orta.gos.model.store;
+
+import java.util.ServiceLoader;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Codecs available to {@link PayloadCodec#forName(String)}.
+ */
+final class PayloadCodecs {
+
+  static final ConcurrentHashMap<String, PayloadCodec> CODECS = new ConcurrentHashMap<>();
+
+  static {
+    CODECS.put(PayloadCodec.DEFLATE.name(), PayloadCodec.DEFLATE);
+    CODECS.put(PayloadCodec.GZIP.name(), PayloadCodec.GZIP);
+    ServiceLoader.load(PayloadCodec.class).forEach(codec -> CODECS.put(codec.name(), codec));
+  }
+
+  private PayloadCodecs() {
+    // Private constructor to prevent instantiation
+  }
+
+}
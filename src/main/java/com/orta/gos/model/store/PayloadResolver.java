@@ -0,0 +1,114 @@
+package com.orta.gos.model.store;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.orta.gos.model.BinaryBody;
+import com.orta.gos.model.CompressedBody;
+import com.orta.gos.model.EmptyBody;
+import com.orta.gos.model.Payload;
+import com.orta.gos.model.PayloadReference;
+import com.orta.gos.model.RestRequestBody;
+import com.orta.gos.model.StringBody;
+
+import io.vavr.collection.List;
+import io.vavr.control.Option;
+
+/**
+ * Resolves {@link PayloadReference}s back to the bodies they stand for.
+ */
+@FunctionalInterface
+public interface PayloadResolver {
+
+  /**
+   * Leaves references unresolved.
+   */
+  PayloadResolver NONE = reference -> Option.none();
+
+  /**
+   * @param reference the reference to resolve
+   * @return the encoded body message, or none when this resolver does not know the
+   *         reference
+   */
+  Option<ByteString> body(PayloadReference reference);
+
+  /**
+   * Replaces a referenced body with the body it stands for, and a compressed body with the
+   * body it was compressed from (see {@link BodyCompression}). Payloads with an inline body
+   * are returned as is.
+   *
+   * @param payload the payload to resolve
+   * @return the payload with its body inlined
+   * @throws IllegalStateException when the reference cannot be resolved or the body cannot
+   *                               be decompressed
+   */
+  default Payload resolve(final Payload payload) {
+    if (payload.getBodyCase() != Payload.BodyCase.BODY_REF) {
+      return BodyCompression.decompress(payload);
+    }
+
+    var reference = payload.getBodyRef();
+    var body = body(reference).getOrElseThrow(() -> new IllegalStateException(
+        String.format("Payload reference [%s/%s] could not be resolved", reference.getStore(), reference.getKey())));
+
+    return BodyCompression.decompress(inline(payload.toBuilder(), reference.getBodyField(), body).build());
+  }
+
+  /**
+   * Chains resolvers, using the first one able to resolve a reference.
+   */
+  default PayloadResolver orElse(final PayloadResolver other) {
+    return reference -> body(reference).orElse(() -> other.body(reference));
+  }
+
+  /**
+   * Creates a resolver for the references produced by the provided stores.
+   *
+   * @param stores the stores, matched by {@link PayloadStore#name()}
+   * @return resolver over the stores
+   */
+  static PayloadResolver of(final PayloadStore... stores) {
+    var byName = List.of(stores).toMap(PayloadStore::name, store -> store);
+    return reference -> byName.get(reference.getStore()).flatMap(store -> store.get(reference.getKey()));
+  }
+
+  /**
+   * Sets the encoded body message as the payload body.
+   *
+   * @param builder   the payload to update
+   * @param bodyField the Payload.body field number the body was encoded from
+   * @param body      the encoded body message
+   * @return the payload builder
+   */
+  static Payload.Builder inline(final Payload.Builder builder, final int bodyField, final ByteString body) {
+    try {
+      return switch (bodyField) {
+        case Payload.EMPTY_BODY_FIELD_NUMBER -> builder.setEmptyBody(EmptyBody.parseFrom(body));
+        case Payload.STRING_BODY_FIELD_NUMBER -> builder.setStringBody(StringBody.parseFrom(body));
+        case Payload.BINARY_BODY_FIELD_NUMBER -> builder.setBinaryBody(BinaryBody.parseFrom(body));
+        case Payload.REST_REQUEST_FIELD_NUMBER -> builder.setRestRequest(RestRequestBody.parseFrom(body));
+        case Payload.COMPRESSED_BODY_FIELD_NUMBER -> builder.setCompressedBody(CompressedBody.parseFrom(body));
+        default -> throw new IllegalStateException(String.format("Unsupported payload body field %d", bodyField));
+      };
+    } catch (InvalidProtocolBufferException e) {
+      throw new IllegalStateException(String.format("Corrupted payload body (field %d)", bodyField), e);
+    }
+  }
+
+  /**
+   * Encodes the payload body as a standalone message.
+   *
+   * @param payload the payload
+   * @return the encoded body message, or none for payloads without an inline body
+   */
+  static Option<ByteString> encodedBody(final Payload payload) {
+    return switch (payload.getBodyCase()) {
+      case EMPTY_BODY -> Option.of(payload.getEmptyBody().toByteString());
+      case STRING_BODY -> Option.of(payload.getStringBody().toByteString());
+      case BINARY_BODY -> Option.of(payload.getBinaryBody().toByteString());
+      case REST_REQUEST -> Option.of(payload.getRestRequest().toByteString());
+      case COMPRESSED_BODY -> Option.of(payload.getCompressedBody().toByteString());
+      case BODY_REF, BODY_NOT_SET -> Option.none();
+    };
+  }
+
+}
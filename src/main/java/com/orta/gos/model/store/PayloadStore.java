@@ -0,0 +1,52 @@
+package com.orta.gos.model.store;
+
+import com.google.protobuf.ByteString;
+
+import io.vavr.control.Option;
+
+/**
+ * Reference counted store of payload bodies kept outside of the {@code PlatformMessage}.
+ *
+ * A body is stored with a reference count of one; every additional holder of its key
+ * (e.g. a message copied during fan-out) should {@link #retain(String)} it and every holder
+ * done with it should {@link #release(String)} it. The body is dropped once its count
+ * reaches zero.
+ */
+public interface PayloadStore {
+
+  /**
+   * @return the store name, recorded in every {@code PayloadReference} produced by it
+   */
+  String name();
+
+  /**
+   * Stores a body.
+   *
+   * @param body the body bytes
+   * @return the key of the stored body
+   */
+  String put(ByteString body);
+
+  /**
+   * @param key the key returned by {@link #put(ByteString)}
+   * @return the body, or none when the key is unknown or was released
+   */
+  Option<ByteString> get(String key);
+
+  /**
+   * Increments the reference count of a body.
+   *
+   * @param key the body key
+   * @return false when the key is unknown
+   */
+  boolean retain(String key);
+
+  /**
+   * Decrements the reference count of a body, dropping it when it reaches zero.
+   *
+   * @param key the body key
+   * @return false when the key is unknown
+   */
+  boolean release(String key);
+
+}
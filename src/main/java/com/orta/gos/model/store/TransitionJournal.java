@@ -0,0 +1,499 @@
+package com.orta.gos.model.store;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.zip.CRC32C;
+
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.orta.gos.model.JournalRecord;
+import com.orta.gos.model.PlatformMessage;
+import com.orta.gos.model.ProcessOutcome;
+import com.orta.gos.model.rules.BlockType;
+import com.orta.gos.model.utils.PlatformMessageDeltas;
+
+import io.quarkus.logging.Log;
+import io.vavr.collection.List;
+import io.vavr.collection.Map;
+
+/**
+ * Append-only journal of the transitions of in-flight messages, kept in memory-mapped
+ * segment files, so the messages of a crashed orchestrator can be recovered instead of
+ * replayed from their source.
+ *
+ * A message is journaled as a snapshot ({@link #begin(PlatformMessage)}) followed by the
+ * {@link com.orta.gos.model.PlatformMessageDelta} of every step outcome
+ * ({@link #record(PlatformMessage, ProcessOutcome, PlatformMessage)}): its tracker before
+ * and after, the appended payloads (references when claim-checked) and the new headers.
+ * A transition that cannot be delta-encoded is journaled as a new snapshot.
+ *
+ * Appending only copies the encoded record to the mapped segment, which survives a crash
+ * of the process as soon as it is written. Writing the pages to the disk, to survive a
+ * crash of the host, is a group commit: {@link #sync(long)} waits for a single
+ * {@code force} covering all the records appended so far, run by the first waiting
+ * thread or by the background flusher every flush interval. When the {@code force} fails,
+ * the records it covered stay unforced for the next one and every thread waiting for
+ * them fails as well.
+ *
+ * Every record is framed as {@code [length][crc32c][JournalRecord]}; {@link #recover(Path)}
+ * stops reading a segment at the first empty or torn frame.
+ */
+public final class TransitionJournal implements Closeable {
+
+  public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+  private static final int FRAME_HEADER = 2 * Integer.BYTES;
+
+  /**
+   * @param segmentSize   the size of each segment file (larger records get a dedicated
+   *                      segment)
+   * @param flushInterval period of the background flush to the disk
+   */
+  public record Options(int segmentSize, Duration flushInterval) {
+
+    public static final Options DEFAULT = new Options(DEFAULT_SEGMENT_SIZE, Duration.ofMillis(10));
+
+    public Options {
+      if (segmentSize <= FRAME_HEADER || flushInterval.isNegative() || flushInterval.isZero()) {
+        throw new IllegalArgumentException(String.format(
+            "segmentSize and flushInterval must be positive (were %d, %s)", segmentSize, flushInterval));
+      }
+    }
+  }
+
+  public record Stats(int segments, long appended, long durable) {
+  }
+
+  private static final class Segment {
+    final Path path;
+    final MappedByteBuffer buffer;
+    int writePosition;
+
+    Segment(final Path path, final MappedByteBuffer buffer) {
+      this.path = path;
+      this.buffer = buffer;
+    }
+
+    int remaining() {
+      return buffer.capacity() - writePosition;
+    }
+  }
+
+  private final Path directory;
+  private final Options options;
+  private final ScheduledExecutorService flusher;
+  private final Consumer<MappedByteBuffer> forcer;
+
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition forced = lock.newCondition();
+  private final ArrayList<Segment> segments = new ArrayList<>();
+  private final ArrayList<Segment> unforced = new ArrayList<>();
+  private Segment active;
+  private long nextSegment;
+  private long appended;
+  private long durable;
+  private boolean forcing;
+  private long failedForces;
+  private Throwable forceFailure;
+  private boolean closed;
+
+  /**
+   * Opens the journal in the directory; records are appended to new segments after the
+   * existing ones, which are left for {@link #recover(Path)} until the next
+   * {@link #checkpoint(Iterable)}.
+   *
+   * @param directory the journal directory
+   * @param options   segment size and flush interval
+   * @return the journal
+   */
+  public static TransitionJournal open(final Path directory, final Options options) {
+    return open(directory, options, MappedByteBuffer::force);
+  }
+
+  static TransitionJournal open(final Path directory, final Options options, final Consumer<MappedByteBuffer> forcer) {
+    try {
+      Files.createDirectories(directory);
+      return new TransitionJournal(directory, options, forcer, List.ofAll(segmentPaths(directory)));
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  public static TransitionJournal open(final Path directory) {
+    return open(directory, Options.DEFAULT);
+  }
+
+  private TransitionJournal(final Path directory, final Options options, final Consumer<MappedByteBuffer> forcer,
+      final List<Path> existing) {
+    this.directory = directory;
+    this.options = options;
+    this.forcer = forcer;
+    this.nextSegment = existing.map(TransitionJournal::segmentId).max().map(id -> id + 1).getOrElse(0L);
+    existing.forEach(path -> segments.add(new Segment(path, null)));
+
+    this.flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      var thread = new Thread(runnable, "transition-journal-flusher");
+      thread.setDaemon(true);
+      return thread;
+    });
+    var interval = options.flushInterval().toNanos();
+    flusher.scheduleWithFixedDelay(this::flushQuietly, interval, interval, TimeUnit.NANOSECONDS);
+  }
+
+  public Path directory() {
+    return directory;
+  }
+
+  /**
+   * Journals the message as it enters the orchestrator.
+   *
+   * @param message the message
+   * @return the sequence of the record, see {@link #sync(long)}
+   */
+  public long begin(final PlatformMessage message) {
+    return append(JournalRecord.newBuilder().setSnapshot(message));
+  }
+
+  /**
+   * Journals the transition of the message caused by a step outcome.
+   *
+   * @param before  the message before the outcome
+   * @param outcome the step outcome
+   * @param after   the message with the outcome appended
+   * @return the sequence of the record, see {@link #sync(long)}
+   */
+  public long record(final PlatformMessage before, final ProcessOutcome outcome, final PlatformMessage after) {
+    var record = JournalRecord.newBuilder()
+        .setFailed(outcome.hasFailure())
+        .setErrorMessage(outcome.getFailure().getErrorMessage());
+    PlatformMessageDeltas.diff(before, after)
+        .peek(record::setTransition)
+        .peekLeft(error -> {
+          Log.debugf("Journaling a snapshot of message %s: %s", after.getId(), error);
+          record.setSnapshot(after);
+        });
+    return append(record);
+  }
+
+  /**
+   * Journals that the message left the orchestrator (terminated or handed over); it is
+   * not recovered anymore.
+   *
+   * @param messageId the message id
+   * @return the sequence of the record, see {@link #sync(long)}
+   */
+  public long complete(final String messageId) {
+    return append(JournalRecord.newBuilder().setCompleted(messageId));
+  }
+
+  /**
+   * Waits until the record is written to the disk, forcing the mapped segments when no
+   * other thread is doing it already; records appended meanwhile are forced together.
+   *
+   * @param sequence sequence of the record
+   * @throws IllegalStateException when the force covering the record failed; the record
+   *                               is forced again by the next sync
+   */
+  public void sync(final long sequence) {
+    lock.lock();
+    try {
+      while (durable < sequence) {
+        if (forcing) {
+          var failures = failedForces;
+          forced.awaitUninterruptibly();
+          if (failedForces != failures && durable < sequence) {
+            throw new IllegalStateException(String.format(
+                "Could not write the transition journal %s to the disk", directory), forceFailure);
+          }
+          continue;
+        }
+
+        forcing = true;
+        var target = appended;
+        var toForce = new ArrayList<>(unforced);
+        unforced.clear();
+        if (active != null) {
+          unforced.add(active);
+        }
+        lock.unlock();
+        Throwable failure = null;
+        try {
+          toForce.forEach(segment -> forcer.accept(segment.buffer));
+        } catch (RuntimeException | Error e) {
+          failure = e;
+          throw e;
+        } finally {
+          lock.lock();
+          forcing = false;
+          if (failure == null) {
+            durable = Math.max(durable, target);
+          } else {
+            // The records are not durable: force their segments again on the next sync
+            toForce.stream()
+                .filter(segment -> segments.contains(segment) && !unforced.contains(segment))
+                .forEach(unforced::add);
+            failedForces++;
+            forceFailure = failure;
+          }
+          forced.signalAll();
+        }
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Writes all the appended records to the disk.
+   */
+  public void flush() {
+    long target;
+    lock.lock();
+    try {
+      target = appended;
+    } finally {
+      lock.unlock();
+    }
+    sync(target);
+  }
+
+  /**
+   * Journals snapshots of the in-flight messages in a new segment and deletes all the
+   * previous segments, bounding the journal to the in-flight state. The messages must not
+   * transition while the checkpoint runs, or their transitions recorded meanwhile are lost.
+   *
+   * @param inFlight all the messages in flight
+   * @return the number of deleted segments
+   */
+  public int checkpoint(final Iterable<PlatformMessage> inFlight) {
+    List<Segment> previous;
+    lock.lock();
+    try {
+      ensureOpen();
+      previous = List.ofAll(segments);
+      active = null;
+    } finally {
+      lock.unlock();
+    }
+
+    long last = 0;
+    for (var message : inFlight) {
+      last = begin(message);
+    }
+    sync(last);
+    flush();
+
+    lock.lock();
+    try {
+      previous.forEach(segment -> {
+        segments.remove(segment);
+        unforced.remove(segment);
+        delete(segment.path);
+      });
+    } finally {
+      lock.unlock();
+    }
+    return previous.size();
+  }
+
+  public Stats stats() {
+    lock.lock();
+    try {
+      return new Stats(segments.size(), appended, durable);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Flushes the appended records and stops the background flusher; the segment files are
+   * kept.
+   */
+  @Override
+  public void close() {
+    flusher.shutdownNow();
+    flush();
+    lock.lock();
+    try {
+      closed = true;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Rebuilds the latest state of every message journaled in the directory and not
+   * completed.
+   *
+   * @param directory the journal directory
+   * @return the recovered messages by id, in the order they were first journaled
+   */
+  public static Map<String, PlatformMessage> recover(final Path directory) {
+    var messages = new LinkedHashMap<String, PlatformMessage>();
+    if (!Files.isDirectory(directory)) {
+      return io.vavr.collection.LinkedHashMap.empty();
+    }
+
+    try {
+      for (var path : segmentPaths(directory)) {
+        try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+          var buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+          readSegment(path, buffer).forEach(record -> apply(messages, record));
+        }
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return io.vavr.collection.LinkedHashMap.ofAll(messages);
+  }
+
+  private long append(final JournalRecord.Builder builder) {
+    lock.lock();
+    try {
+      ensureOpen();
+      var record = builder.setSequence(appended + 1).build();
+      var size = record.getSerializedSize();
+      if (active == null || active.remaining() < FRAME_HEADER + size) {
+        roll(Math.max(options.segmentSize(), FRAME_HEADER + size));
+      }
+
+      var offset = active.writePosition;
+      var frame = active.buffer.duplicate().position(offset + FRAME_HEADER).limit(offset + FRAME_HEADER + size)
+          .slice();
+      var output = CodedOutputStream.newInstance(frame);
+      record.writeTo(output);
+      output.flush();
+
+      var crc = new CRC32C();
+      crc.update(frame.rewind());
+      // The length is written last, so a torn frame reads as the end of the segment
+      active.buffer.putInt(offset + Integer.BYTES, (int) crc.getValue());
+      active.buffer.putInt(offset, size);
+      active.writePosition += FRAME_HEADER + size;
+      return ++appended;
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private void roll(final int size) {
+    if (active != null && !unforced.contains(active)) {
+      unforced.add(active);
+    }
+    var path = directory.resolve(String.format("%016x.journal", nextSegment++));
+    try (var channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+        StandardOpenOption.WRITE)) {
+      active = new Segment(path, channel.map(FileChannel.MapMode.READ_WRITE, 0, size));
+      segments.add(active);
+      unforced.add(active);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private void flushQuietly() {
+    try {
+      flush();
+    } catch (RuntimeException e) {
+      Log.errorf("Could not flush the transition journal %s: %s", directory, e.getMessage());
+    }
+  }
+
+  private void ensureOpen() {
+    if (closed) {
+      throw new IllegalStateException(String.format("Transition journal %s is closed", directory));
+    }
+  }
+
+  private static List<JournalRecord> readSegment(final Path path, final MappedByteBuffer buffer) {
+    var records = new ArrayList<JournalRecord>();
+    var position = 0;
+    while (buffer.capacity() - position >= FRAME_HEADER) {
+      var size = buffer.getInt(position);
+      if (size <= 0 || size > buffer.capacity() - position - FRAME_HEADER) {
+        break;
+      }
+
+      var frame = buffer.duplicate().position(position + FRAME_HEADER).limit(position + FRAME_HEADER + size).slice();
+      var crc = new CRC32C();
+      crc.update(frame.duplicate());
+      if ((int) crc.getValue() != buffer.getInt(position + Integer.BYTES)) {
+        Log.warnf("Torn record at offset %d of journal segment %s, ignoring the rest of the segment", position, path);
+        break;
+      }
+
+      try {
+        records.add(JournalRecord.parseFrom(frame));
+      } catch (InvalidProtocolBufferException e) {
+        Log.warnf("Invalid record at offset %d of journal segment %s: %s", position, path, e.getMessage());
+        break;
+      }
+      position += FRAME_HEADER + size;
+    }
+    return List.ofAll(records);
+  }
+
+  private static void apply(final LinkedHashMap<String, PlatformMessage> messages, final JournalRecord record) {
+    switch (record.getEntryCase()) {
+      case SNAPSHOT -> put(messages, record.getSnapshot());
+      case TRANSITION -> {
+        var delta = record.getTransition();
+        var base = messages.get(delta.getId());
+        if (base == null) {
+          Log.warnf("Ignoring journaled transition of unknown message %s", delta.getId());
+          return;
+        }
+        PlatformMessageDeltas.apply(base, delta)
+            .peek(updated -> put(messages, updated))
+            .peekLeft(error -> Log.warnf("Ignoring journaled transition %d: %s", record.getSequence(), error));
+      }
+      case COMPLETED -> messages.remove(record.getCompleted());
+      case ENTRY_NOT_SET -> Log.warnf("Ignoring empty journal record %d", record.getSequence());
+    }
+  }
+
+  private static void put(final LinkedHashMap<String, PlatformMessage> messages, final PlatformMessage message) {
+    if (message.getWorkflowLog().getTracker().getCurrentBlock() == BlockType.TYPE_NA) {
+      messages.remove(message.getId());
+    } else {
+      messages.put(message.getId(), message);
+    }
+  }
+
+  private static java.util.List<Path> segmentPaths(final Path directory) throws IOException {
+    try (var files = Files.list(directory)) {
+      return files.filter(path -> path.getFileName().toString().endsWith(".journal")).sorted().toList();
+    }
+  }
+
+  private static long segmentId(final Path path) {
+    var name = path.getFileName().toString();
+    return Long.parseUnsignedLong(name.substring(0, name.indexOf('.')), 16);
+  }
+
+  private static void delete(final Path path) {
+    try {
+      Files.deleteIfExists(path);
+    } catch (IOException e) {
+      Log.warnf("Could not delete journal segment %s: %s", path, e.getMessage());
+    }
+  }
+
+}
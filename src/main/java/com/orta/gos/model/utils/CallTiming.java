@@ -0,0 +1,57 @@
+package com.orta.gos.model.utils;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+
+/**
+ * Timing of the calls made to complete a step, as measured by the driver calling the
+ * {@code Process} service.
+ *
+ * The dispatch time is read from the wall clock, but the outcome time is the dispatch
+ * time plus the elapsed {@link System#nanoTime()}, so a clock adjustment during the call
+ * does not skew its duration.
+ *
+ * @param dispatchedMicros epoch microseconds the step was dispatched at
+ * @param completedMicros  epoch microseconds its outcome was received at
+ * @param attempts         number of calls made to complete the step (the scattered calls
+ *                         of a scatter-gather step)
+ */
+public record CallTiming(long dispatchedMicros, long completedMicros, int attempts) {
+
+  public CallTiming {
+    if (attempts <= 0) {
+      throw new IllegalArgumentException(String.format("attempts must be positive (was %d)", attempts));
+    }
+  }
+
+  /**
+   * Dispatch of a step, see {@link CallTiming#dispatch()}.
+   *
+   * @param epochMicros epoch microseconds the step was dispatched at
+   * @param nanoTime    {@link System#nanoTime()} at the dispatch
+   */
+  public record Dispatch(long epochMicros, long nanoTime) {
+  }
+
+  /**
+   * @return the dispatch of a step dispatched now
+   */
+  public static Dispatch dispatch() {
+    return new Dispatch(nowMicros(), System.nanoTime());
+  }
+
+  /**
+   * @param dispatch the dispatch of the step
+   * @param attempts number of calls made to complete the step
+   * @return the timing of a step completing now
+   */
+  public static CallTiming since(final Dispatch dispatch, final int attempts) {
+    var elapsedMicros = (System.nanoTime() - dispatch.nanoTime()) / 1_000;
+    return new CallTiming(dispatch.epochMicros(), dispatch.epochMicros() + elapsedMicros, attempts);
+  }
+
+  public static long nowMicros() {
+    return ChronoUnit.MICROS.between(Instant.EPOCH, Instant.now());
+  }
+
+}
@@ -0,0 +1,129 @@
+package com.orta.gos.model.utils;
+
+import com.orta.gos.model.PlatformMessage;
+import com.orta.gos.model.ProcessInput;
+import com.orta.gos.model.ProcessOutcome;
+import com.orta.gos.model.rules.Scatter;
+import com.orta.gos.model.rules.Step;
+import com.orta.gos.model.store.PayloadResolver;
+
+import io.vavr.collection.Seq;
+
+/**
+ * A {@link PlatformMessage} held together with the {@link PayloadIndex} of its payloads,
+ * so the index is built once per message and then maintained incrementally as outcomes
+ * are appended.
+ *
+ * @param message the message
+ * @param index   index of the message payloads
+ */
+public record IndexedMessage(PlatformMessage message, PayloadIndex index) {
+
+  public static IndexedMessage of(final PlatformMessage message) {
+    return new IndexedMessage(message, PayloadIndex.of(message.getPayloadsList()));
+  }
+
+  public ProcessInput processInput(final PayloadResolver resolver) {
+    return PlatformMessageUtils.withMessage(message).processInput(index, resolver);
+  }
+
+  public ProcessInput processInput() {
+    return processInput(PayloadResolver.NONE);
+  }
+
+  public ProcessInput processInput(final Step step, final PayloadResolver resolver) {
+    return PlatformMessageUtils.withMessage(message).processInput(step, index, resolver);
+  }
+
+  /**
+   * Appends the process outcome, indexing the output payload only.
+   *
+   * @param outcome the process outcome to append
+   * @return the updated message and its index
+   */
+  public IndexedMessage appendOutcome(final ProcessOutcome outcome) {
+    return appendOutcome(message.getWorkflowLog().getTracker().getCurrentStep(), outcome);
+  }
+
+  /**
+   * Appends the outcome of one of the running steps, indexing the output payload only.
+   *
+   * @param stepIdx index of the step the outcome belongs to
+   * @param outcome the process outcome to append
+   * @return the updated message and its index
+   */
+  public IndexedMessage appendOutcome(final int stepIdx, final ProcessOutcome outcome) {
+    return indexAppended(PlatformMessageUtils.withMessage(message).appendOutcome(stepIdx, outcome));
+  }
+
+  /**
+   * Appends the outcome of one of the running steps and records its timing, indexing the
+   * output payload only.
+   *
+   * @param stepIdx index of the step the outcome belongs to
+   * @param outcome the process outcome to append
+   * @param timing  the timing of the step call
+   * @return the updated message and its index
+   */
+  public IndexedMessage appendOutcome(final int stepIdx, final ProcessOutcome outcome, final CallTiming timing) {
+    return indexAppended(PlatformMessageUtils.withMessage(message).appendOutcome(stepIdx, outcome, timing));
+  }
+
+  private IndexedMessage indexAppended(final PlatformMessage updated) {
+    return updated.getPayloadsCount() > index.size()
+        ? new IndexedMessage(updated, index.append(updated.getPayloadsList().getLast()))
+        : new IndexedMessage(updated, index);
+  }
+
+  /**
+   * Appends the outcomes of a scatter-gather step, indexing the appended outputs only.
+   *
+   * @param stepIdx  index of the scatter-gather step
+   * @param outcomes the outcomes, in the order of the scattered inputs
+   * @param scatter  the step scatter definition
+   * @return the updated message and its index
+   */
+  public IndexedMessage appendOutcomes(final int stepIdx, final Seq<ProcessOutcome> outcomes,
+      final Scatter scatter) {
+    return indexGathered(PlatformMessageUtils.withMessage(message).appendOutcomes(stepIdx, outcomes, scatter));
+  }
+
+  /**
+   * Appends the outcomes of a scatter-gather step and records its timing, indexing the
+   * appended outputs only.
+   *
+   * @param stepIdx  index of the scatter-gather step
+   * @param outcomes the outcomes, in the order of the scattered inputs
+   * @param scatter  the step scatter definition
+   * @param timing   the timing of the scattered calls
+   * @return the updated message and its index
+   */
+  public IndexedMessage appendOutcomes(final int stepIdx, final Seq<ProcessOutcome> outcomes,
+      final Scatter scatter, final CallTiming timing) {
+    return indexGathered(
+        PlatformMessageUtils.withMessage(message).appendOutcomes(stepIdx, outcomes, scatter, timing));
+  }
+
+  private IndexedMessage indexGathered(final PlatformMessage updated) {
+    var updatedIndex = index;
+    for (var payload : updated.getPayloadsList().subList(index.size(), updated.getPayloadsCount())) {
+      updatedIndex = updatedIndex.append(payload);
+    }
+    return new IndexedMessage(updated, updatedIndex);
+  }
+
+  /**
+   * Appends the process outcome and prunes the payload history; the index is rebuilt
+   * only when payloads were dropped.
+   *
+   * @param outcome   the process outcome to append
+   * @param retention the payload retention policy
+   * @return the updated message and its index
+   */
+  public IndexedMessage appendOutcome(final ProcessOutcome outcome, final RetentionPolicy retention) {
+    var appended = appendOutcome(outcome);
+    var retained = retention.apply(appended.message());
+    return retained == appended.message() ? appended : of(retained);
+  }
+
+}
@@ -0,0 +1,173 @@
+package com.orta.gos.model.utils;
+
+import java.util.ArrayList;
+
+import com.orta.gos.model.Payload;
+import com.orta.gos.model.rules.PayloadAttributes;
+import com.orta.gos.model.rules.PicSelector;
+
+import io.vavr.collection.HashMap;
+import io.vavr.collection.List;
+import io.vavr.collection.Map;
+import io.vavr.collection.Seq;
+import io.vavr.collection.SortedSet;
+import io.vavr.collection.TreeSet;
+import io.vavr.collection.Vector;
+import io.vavr.control.Option;
+
+/**
+ * Immutable inverted index of the payload history attributes, mapping every
+ * {@code key=value} attribute pair to the ascending indices of the payloads holding it.
+ *
+ * Evaluates a {@link PicSelector} with the same semantics as
+ * {@link PicSelectorUtils#selectedIndices(Seq, PicSelector)}, walking the posting lists
+ * of the entry attributes from the most recent payload instead of scanning the whole
+ * history. The index is persistent: {@link #append(Payload)} shares the postings of the
+ * previous index.
+ */
+public final class PayloadIndex {
+
+  private static final PayloadIndex EMPTY = new PayloadIndex(HashMap.empty(), 0);
+
+  private final Map<String, Vector<Integer>> postings;
+  private final int size;
+
+  private PayloadIndex(final Map<String, Vector<Integer>> postings, final int size) {
+    this.postings = postings;
+    this.size = size;
+  }
+
+  public static PayloadIndex empty() {
+    return EMPTY;
+  }
+
+  public static PayloadIndex of(final Iterable<Payload> payloads) {
+    var index = EMPTY;
+    for (var payload : payloads) {
+      index = index.append(payload);
+    }
+    return index;
+  }
+
+  /**
+   * @return the number of indexed payloads
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Indexes the payload appended at the end of the history.
+   *
+   * @param payload the appended payload
+   * @return the index including the payload
+   */
+  public PayloadIndex append(final Payload payload) {
+    var idx = size;
+    var updated = postings;
+    for (var attribute : payload.getAttributesMap().entrySet()) {
+      updated = updated.put(term(attribute.getKey(), attribute.getValue()), Vector.of(idx),
+          (existing, added) -> existing.append(idx));
+    }
+    return new PayloadIndex(updated, size + 1);
+  }
+
+  /**
+   * Finds the most recent payload holding all the entry attributes.
+   *
+   * @param desc the selector entry
+   * @return index of the matching payload, if any
+   */
+  public Option<Integer> latest(final PayloadAttributes desc) {
+    if (size == 0) {
+      return Option.none();
+    }
+    if (desc.getPicAttributesCount() == 0) {
+      return Option.of(size - 1);
+    }
+
+    var lists = new ArrayList<Vector<Integer>>(desc.getPicAttributesCount());
+    for (var attribute : desc.getPicAttributesMap().entrySet()) {
+      var list = postings.get(term(attribute.getKey(), attribute.getValue()));
+      if (list.isEmpty()) {
+        return Option.none();
+      }
+      lists.add(list.get());
+    }
+
+    return latestCommon(lists);
+  }
+
+  /**
+   * Indices of the payloads selected by the selector, in payload order.
+   *
+   * @param selector the step selector
+   * @return selected payload indices (an entry without a match selects nothing)
+   */
+  public SortedSet<Integer> selectedIndices(final PicSelector selector) {
+    if (size == 0) {
+      return TreeSet.empty();
+    }
+
+    return switch (selector.getSelectorCase()) {
+      case BY_ATTRIBUTES -> TreeSet.ofAll(List.ofAll(selector.getByAttributes().getPayloadDescList())
+          .flatMap(this::latest));
+      case LAST_PAYLOAD, SELECTOR_NOT_SET -> TreeSet.of(size - 1);
+    };
+  }
+
+  /**
+   * Largest index present in all the ascending lists: every list is moved down to the
+   * current candidate (the smallest of their tails) until they all agree.
+   */
+  private static Option<Integer> latestCommon(final java.util.List<Vector<Integer>> lists) {
+    var ends = new int[lists.size()];
+    for (int i = 0; i < ends.length; i++) {
+      ends[i] = lists.get(i).size() - 1;
+    }
+
+    while (true) {
+      int candidate = Integer.MAX_VALUE;
+      for (int i = 0; i < ends.length; i++) {
+        candidate = Math.min(candidate, lists.get(i).get(ends[i]));
+      }
+
+      var agreed = true;
+      for (int i = 0; i < ends.length; i++) {
+        ends[i] = floor(lists.get(i), ends[i], candidate);
+        if (ends[i] < 0) {
+          return Option.none();
+        }
+        agreed &= lists.get(i).get(ends[i]) == candidate;
+      }
+      if (agreed) {
+        return Option.of(candidate);
+      }
+    }
+  }
+
+  /**
+   * Position of the largest value not above the target within {@code list[0..end]}, or -1.
+   */
+  private static int floor(final Vector<Integer> list, final int end, final int target) {
+    int low = 0;
+    int high = end;
+    int found = -1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      if (list.get(mid) <= target) {
+        found = mid;
+        low = mid + 1;
+      } else {
+        high = mid - 1;
+      }
+    }
+    return found;
+  }
+
+  private static String term(final String key, final String value) {
+    // NUL cannot be confused with a character of the key, unlike '='
+    return key + '\u0000' + value;
+  }
+
+}
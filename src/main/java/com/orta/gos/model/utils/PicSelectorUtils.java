@@ -0,0 +1,52 @@
+package com.orta.gos.model.utils;
+
+import com.orta.gos.model.Payload;
+import com.orta.gos.model.rules.PayloadAttributes;
+import com.orta.gos.model.rules.PicSelector;
+
+import io.vavr.collection.List;
+import io.vavr.collection.Seq;
+import io.vavr.collection.SortedSet;
+import io.vavr.collection.TreeSet;
+
+/**
+ * Utility class for evaluating a step {@link PicSelector} against the payload history.
+ *
+ * A {@link PayloadAttributes} entry matches a payload when every one of its
+ * {@code pic_attributes} is present, with the same value, in the payload attributes; the
+ * entry selects the most recent matching payload. The last payload is selected when the
+ * selector is {@code last_payload} or not set.
+ */
+public class PicSelectorUtils {
+
+  private PicSelectorUtils() {
+    // Private constructor to prevent instantiation
+  }
+
+  public static boolean matches(final Payload payload, final PayloadAttributes desc) {
+    var attributes = payload.getAttributesMap();
+    return desc.getPicAttributesMap().entrySet().stream()
+        .allMatch(entry -> entry.getValue().equals(attributes.get(entry.getKey())));
+  }
+
+  /**
+   * Indices of the payloads selected by the selector, in payload order.
+   *
+   * @param payloads the payload history
+   * @param selector the step selector
+   * @return selected payload indices (an entry without a match selects nothing)
+   */
+  public static SortedSet<Integer> selectedIndices(final Seq<Payload> payloads, final PicSelector selector) {
+    if (payloads.isEmpty()) {
+      return TreeSet.empty();
+    }
+
+    return switch (selector.getSelectorCase()) {
+      case BY_ATTRIBUTES -> TreeSet.ofAll(List.ofAll(selector.getByAttributes().getPayloadDescList())
+          .map(desc -> payloads.lastIndexWhere(payload -> matches(payload, desc)))
+          .filter(idx -> idx >= 0));
+      case LAST_PAYLOAD, SELECTOR_NOT_SET -> TreeSet.of(payloads.size() - 1);
+    };
+  }
+
+}
@@ -0,0 +1,206 @@
+package com.orta.gos.model.utils;
+
+import static io.vavr.control.Either.left;
+import static io.vavr.control.Either.right;
+
+import com.orta.gos.model.Payload;
+import com.orta.gos.model.PlatformMessage;
+import com.orta.gos.model.PlatformMessageDelta;
+import com.orta.gos.model.ProcessOutcome;
+import com.orta.gos.model.StepTimings;
+
+import io.vavr.collection.HashSet;
+import io.vavr.collection.List;
+import io.vavr.collection.Vector;
+import io.vavr.control.Either;
+
+/**
+ * Utility class for shipping the changes of a step outcome instead of the whole
+ * {@link PlatformMessage}, when the receiving pod already holds the base message.
+ *
+ * A delta can express what {@link PlatformMessageUtils#appendOutcome(ProcessOutcome)}
+ * changes: the tracker, the entries appended to the timing trace, payloads appended (and
+ * dropped by a {@link RetentionPolicy}), new headers and the last update time. Any other
+ * difference cannot be delta-encoded and the whole message should be sent instead.
+ */
+public class PlatformMessageDeltas {
+
+  private PlatformMessageDeltas() {
+    // Private constructor to prevent instantiation
+  }
+
+  /**
+   * Creates the delta of a step outcome applied on the base message.
+   *
+   * @param base    the message before the outcome
+   * @param outcome the step outcome
+   * @return the delta, or an error message when the change cannot be delta-encoded
+   */
+  public static Either<String, PlatformMessageDelta> diff(final PlatformMessage base, final ProcessOutcome outcome) {
+    return diff(base, PlatformMessageUtils.withMessage(base).appendOutcome(outcome));
+  }
+
+  /**
+   * Creates the delta turning the base message into the updated one.
+   *
+   * @param base    the message held by the receiving pod
+   * @param updated the message to ship
+   * @return the delta, or an error message when the change cannot be delta-encoded
+   */
+  public static Either<String, PlatformMessageDelta> diff(final PlatformMessage base, final PlatformMessage updated) {
+    if (!base.getId().equals(updated.getId()) || base.getCreationTime() != updated.getCreationTime()) {
+      return left(String.format("Message identity changed (%s -> %s)", base.getId(), updated.getId()));
+    }
+
+    var baseWorkflow = base.getWorkflowLog();
+    var updatedWorkflow = updated.getWorkflowLog();
+    var expectedWorkflow = baseWorkflow.toBuilder().setTracker(updatedWorkflow.getTracker());
+    if (updatedWorkflow.hasTimings()) {
+      expectedWorkflow.setTimings(updatedWorkflow.getTimings());
+    }
+    if (!expectedWorkflow.build().equals(updatedWorkflow)) {
+      return left("Workflow changed beyond its tracker and timings");
+    }
+
+    var baseHeaders = base.getHeadersMap();
+    var updatedHeaders = updated.getHeadersMap();
+    var changedHeader = List.ofAll(baseHeaders.entrySet())
+        .find(entry -> !entry.getValue().equals(updatedHeaders.get(entry.getKey())));
+    if (changedHeader.isDefined()) {
+      return left(String.format("Header [%s] was changed or removed", changedHeader.get().getKey()));
+    }
+
+    var delta = PlatformMessageDelta.newBuilder()
+        .setId(base.getId())
+        .setBaseTracker(baseWorkflow.getTracker())
+        .setBasePayloadCount(base.getPayloadsCount())
+        .setTracker(updatedWorkflow.getTracker())
+        .setLastUpdated(updated.getLastUpdated());
+
+    if (updatedWorkflow.hasTimings() && !updatedWorkflow.getTimings().equals(baseWorkflow.getTimings())) {
+      var baseTimings = baseWorkflow.getTimings();
+      var updatedTimings = updatedWorkflow.getTimings();
+      if (isExtension(baseTimings, updatedTimings)) {
+        delta.setAppendedTimings(appended(baseTimings.getStepsCount(), updatedTimings));
+      } else {
+        delta.setTimings(updatedTimings);
+      }
+    }
+
+    diffPayloads(delta, base.getPayloadsList(), updated.getPayloadsList());
+
+    updatedHeaders.forEach((key, value) -> {
+      if (!baseHeaders.containsKey(key)) {
+        delta.putAddedHeaders(key, value);
+      }
+    });
+
+    return right(delta.build());
+  }
+
+  /**
+   * Applies a delta on the base message.
+   *
+   * @param base  the cached base message
+   * @param delta the delta created against the same base
+   * @return the updated message, or an error message when the base does not match
+   */
+  public static Either<String, PlatformMessage> apply(final PlatformMessage base, final PlatformMessageDelta delta) {
+    if (!base.getId().equals(delta.getId())) {
+      return left(String.format("Delta of message %s applied on message %s", delta.getId(), base.getId()));
+    }
+    if (base.getPayloadsCount() != delta.getBasePayloadCount()
+        || !base.getWorkflowLog().getTracker().equals(delta.getBaseTracker())) {
+      return left(String.format("Base of message %s does not match the delta base", base.getId()));
+    }
+
+    var removed = HashSet.ofAll(delta.getRemovedPayloadsList());
+    var workflow = base.getWorkflowLog().toBuilder().setTracker(delta.getTracker());
+    if (delta.hasTimings()) {
+      workflow.setTimings(delta.getTimings());
+    }
+    if (delta.hasAppendedTimings()) {
+      var appended = delta.getAppendedTimings();
+      var timings = workflow.getTimingsBuilder()
+          .setBaseMicros(appended.getBaseMicros())
+          .addAllSteps(appended.getStepsList())
+          .addAllDispatchDeltas(appended.getDispatchDeltasList())
+          .addAllDurations(appended.getDurationsList())
+          .addAllAttempts(appended.getAttemptsList())
+          .addAllFailed(appended.getFailedList());
+      if (appended.hasLastDispatchOffset()) {
+        timings.setLastDispatchOffset(appended.getLastDispatchOffset());
+      }
+    }
+    var builder = base.toBuilder()
+        .setLastUpdated(delta.getLastUpdated())
+        .setWorkflowLog(workflow)
+        .putAllHeaders(delta.getAddedHeadersMap());
+
+    if (!removed.isEmpty()) {
+      var kept = Vector.ofAll(base.getPayloadsList()).zipWithIndex()
+          .filter(tuple -> !removed.contains(tuple._2))
+          .map(tuple -> tuple._1);
+      builder.clearPayloads().addAllPayloads(kept);
+    }
+
+    return right(builder.addAllPayloads(delta.getAppendedPayloadsList()).build());
+  }
+
+  /**
+   * Whether the updated trace is the base trace with entries appended.
+   */
+  private static boolean isExtension(final StepTimings base, final StepTimings updated) {
+    return (base.getStepsCount() == 0 || base.getBaseMicros() == updated.getBaseMicros())
+        && isPrefix(base.getStepsList(), updated.getStepsList())
+        && isPrefix(base.getDispatchDeltasList(), updated.getDispatchDeltasList())
+        && isPrefix(base.getDurationsList(), updated.getDurationsList())
+        && isPrefix(base.getAttemptsList(), updated.getAttemptsList())
+        && isPrefix(base.getFailedList(), updated.getFailedList());
+  }
+
+  private static boolean isPrefix(final java.util.List<?> prefix, final java.util.List<?> list) {
+    return prefix.size() <= list.size() && list.subList(0, prefix.size()).equals(prefix);
+  }
+
+  /**
+   * @return the entries of the trace from the given one on
+   */
+  private static StepTimings appended(final int from, final StepTimings timings) {
+    var count = timings.getStepsCount();
+    var appended = StepTimings.newBuilder()
+        .setBaseMicros(timings.getBaseMicros())
+        .addAllSteps(timings.getStepsList().subList(from, count))
+        .addAllDispatchDeltas(timings.getDispatchDeltasList().subList(from, count))
+        .addAllDurations(timings.getDurationsList().subList(from, count))
+        .addAllAttempts(timings.getAttemptsList().subList(from, count))
+        .addAllFailed(timings.getFailedList().subList(from, count));
+    if (timings.hasLastDispatchOffset()) {
+      appended.setLastDispatchOffset(timings.getLastDispatchOffset());
+    }
+    return appended.build();
+  }
+
+  /**
+   * Matches the updated payloads against the base ones in order: unmatched base payloads
+   * are recorded as removed and the unmatched tail of the updated payloads as appended.
+   */
+  private static void diffPayloads(final PlatformMessageDelta.Builder delta, final java.util.List<Payload> base,
+      final java.util.List<Payload> updated) {
+    int baseIdx = 0;
+    int updatedIdx = 0;
+    while (baseIdx < base.size() && updatedIdx < updated.size()) {
+      if (base.get(baseIdx).equals(updated.get(updatedIdx))) {
+        updatedIdx++;
+      } else {
+        delta.addRemovedPayloads(baseIdx);
+      }
+      baseIdx++;
+    }
+    for (; baseIdx < base.size(); baseIdx++) {
+      delta.addRemovedPayloads(baseIdx);
+    }
+    delta.addAllAppendedPayloads(updated.subList(updatedIdx, updated.size()));
+  }
+
+}
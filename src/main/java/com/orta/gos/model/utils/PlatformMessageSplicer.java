@@ -0,0 +1,203 @@
+package com.orta.gos.model.utils;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.WireFormat;
+import com.orta.gos.model.PlatformMessage;
+import com.orta.gos.model.PlatformWorkflow;
+import com.orta.gos.model.ProcessOutcome;
+import com.orta.gos.model.rules.Tracker;
+
+import io.quarkus.logging.Log;
+
+/**
+ * Applies a step outcome on a serialized {@link PlatformMessage} at the wire level,
+ * producing the same message as {@link PlatformMessageUtils#appendOutcome(ProcessOutcome)}
+ * without parsing nor re-encoding the unchanged steps and payloads.
+ *
+ * The changes are appended after the original bytes, relying on the protobuf merge
+ * semantics: repeated payloads and map headers are appended, and an appended
+ * {@code workflow_log.tracker} is merged into the existing one. Every scalar of the
+ * tracker is written explicitly, zero values included, since a proto3 default value is
+ * otherwise omitted and would not override the previous one.
+ *
+ * Each hop adds a small tracker patch to the message; {@link #compact(ByteString)}
+ * re-encodes it when the accumulated patches should be folded.
+ */
+public class PlatformMessageSplicer {
+
+  private static final int HEADER_TAG = (PlatformMessage.HEADERS_FIELD_NUMBER << 3)
+      | WireFormat.WIRETYPE_LENGTH_DELIMITED;
+  private static final int HEADER_KEY_TAG = (1 << 3) | WireFormat.WIRETYPE_LENGTH_DELIMITED;
+
+  private PlatformMessageSplicer() {
+    // Private constructor to prevent instantiation
+  }
+
+  /**
+   * Appends the process outcome to the serialized message.
+   *
+   * @param message the serialized message
+   * @param outcome the process outcome to append
+   * @return the serialized updated message
+   * @throws InvalidProtocolBufferException when the bytes are not a valid message
+   */
+  public static ByteString appendOutcome(final ByteString message, final ProcessOutcome outcome)
+      throws InvalidProtocolBufferException {
+    return appendOutcome(PlatformMessageView.parse(message), outcome);
+  }
+
+  /**
+   * Appends the process outcome to the message viewed by the routing view.
+   *
+   * @param view    view over the serialized message
+   * @param outcome the process outcome to append
+   * @return the serialized updated message
+   */
+  public static ByteString appendOutcome(final PlatformMessageView view, final ProcessOutcome outcome) {
+    var tracker = view.tracker();
+    var newTracker = PlatformWorkflowUtils.updateTracker(PlatformWorkflow.newBuilder().setTracker(tracker).build(),
+        outcome);
+
+    var inFlightChanged = !newTracker.getInFlightStepsList().equals(tracker.getInFlightStepsList());
+    if (!newTracker.getRangesMap().equals(tracker.getRangesMap())
+        || !newTracker.getBlockBoundsList().equals(tracker.getBlockBoundsList())
+        || inFlightChanged && tracker.getInFlightStepsCount() > 0) {
+      // Removed ranges and in-flight steps cannot be expressed by appending, as appended
+      // repeated values add up; re-encode the whole message
+      return PlatformMessageUtils.withMessage(view.message()).appendOutcome(outcome).toByteString();
+    }
+
+    try {
+      var patch = ByteString.newOutput();
+      var out = CodedOutputStream.newInstance(patch);
+
+      if (outcome.hasSuccess()) {
+        var success = outcome.getSuccess();
+        if (success.hasOutputPayload()) {
+          out.writeMessage(PlatformMessage.PAYLOADS_FIELD_NUMBER, success.getOutputPayload());
+        }
+        if (success.getHeadersCount() > 0) {
+          writeNewHeaders(out, view.bytes(), success.getHeadersMap());
+        }
+      } else {
+        Log.errorf("ProcessOutcome returned with error: %s", outcome.getFailure().getErrorMessage());
+      }
+
+      writeTracker(out, newTracker, inFlightChanged);
+      out.flush();
+
+      return view.bytes().concat(patch.toByteString());
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Re-encodes the message, folding the appended patches.
+   *
+   * @param message the serialized message
+   * @return the canonical encoding of the message
+   * @throws InvalidProtocolBufferException when the bytes are not a valid message
+   */
+  public static ByteString compact(final ByteString message) throws InvalidProtocolBufferException {
+    return PlatformMessage.parseFrom(message).toByteString();
+  }
+
+  /**
+   * Writes {@code workflow_log { tracker { ... } }} with every scalar field set, leaving
+   * the ranges untouched. The in-flight steps are written only when dispatched, i.e. when
+   * the message has none yet.
+   */
+  private static void writeTracker(final CodedOutputStream out, final Tracker tracker, final boolean withInFlight)
+      throws IOException {
+    int inFlightSize = 0;
+    if (withInFlight) {
+      for (var step : tracker.getInFlightStepsList()) {
+        inFlightSize += CodedOutputStream.computeUInt32SizeNoTag(step);
+      }
+    }
+    int trackerSize = CodedOutputStream.computeUInt32Size(Tracker.CURRENT_STEP_FIELD_NUMBER, tracker.getCurrentStep())
+        + CodedOutputStream.computeEnumSize(Tracker.CURRENT_BLOCK_FIELD_NUMBER, tracker.getCurrentBlockValue())
+        + CodedOutputStream.computeBoolSize(Tracker.ERROR_RAISED_FIELD_NUMBER, tracker.getErrorRaised())
+        + CodedOutputStream.computeUInt32Size(Tracker.ERROR_RAISED_STEP_FIELD_NUMBER, tracker.getErrorRaisedStep())
+        + CodedOutputStream.computeUInt32Size(Tracker.TERMINATION_FIELD_NUMBER, tracker.getTermination())
+        + (inFlightSize > 0 ? CodedOutputStream.computeTagSize(Tracker.IN_FLIGHT_STEPS_FIELD_NUMBER)
+            + CodedOutputStream.computeUInt32SizeNoTag(inFlightSize) + inFlightSize : 0);
+    int workflowSize = CodedOutputStream.computeTagSize(PlatformWorkflow.TRACKER_FIELD_NUMBER)
+        + CodedOutputStream.computeUInt32SizeNoTag(trackerSize) + trackerSize;
+
+    out.writeTag(PlatformMessage.WORKFLOW_LOG_FIELD_NUMBER, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+    out.writeUInt32NoTag(workflowSize);
+    out.writeTag(PlatformWorkflow.TRACKER_FIELD_NUMBER, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+    out.writeUInt32NoTag(trackerSize);
+    out.writeUInt32(Tracker.CURRENT_STEP_FIELD_NUMBER, tracker.getCurrentStep());
+    out.writeEnum(Tracker.CURRENT_BLOCK_FIELD_NUMBER, tracker.getCurrentBlockValue());
+    out.writeBool(Tracker.ERROR_RAISED_FIELD_NUMBER, tracker.getErrorRaised());
+    out.writeUInt32(Tracker.ERROR_RAISED_STEP_FIELD_NUMBER, tracker.getErrorRaisedStep());
+    out.writeUInt32(Tracker.TERMINATION_FIELD_NUMBER, tracker.getTermination());
+    if (inFlightSize > 0) {
+      // Packed encoding, as the protobuf serializer writes repeated scalars
+      out.writeTag(Tracker.IN_FLIGHT_STEPS_FIELD_NUMBER, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+      out.writeUInt32NoTag(inFlightSize);
+      for (var step : tracker.getInFlightStepsList()) {
+        out.writeUInt32NoTag(step);
+      }
+    }
+  }
+
+  /**
+   * Appends the headers whose key is not set in the message yet; a map entry appended
+   * for an existing key would override its value.
+   */
+  private static void writeNewHeaders(final CodedOutputStream out, final ByteString message,
+      final java.util.Map<String, String> headers) throws IOException {
+    var existing = headerKeys(message);
+    var added = new LinkedHashMap<String, String>();
+    headers.forEach((key, value) -> {
+      if (!existing.contains(key)) {
+        added.put(key, value);
+      }
+    });
+
+    for (var header : added.entrySet()) {
+      int entrySize = CodedOutputStream.computeStringSize(1, header.getKey())
+          + CodedOutputStream.computeStringSize(2, header.getValue());
+      out.writeTag(PlatformMessage.HEADERS_FIELD_NUMBER, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+      out.writeUInt32NoTag(entrySize);
+      out.writeString(1, header.getKey());
+      out.writeString(2, header.getValue());
+    }
+  }
+
+  private static java.util.Set<String> headerKeys(final ByteString message) throws IOException {
+    var keys = new HashSet<String>();
+    var input = message.newCodedInput();
+    input.enableAliasing(true);
+    for (int tag = input.readTag(); tag != 0; tag = input.readTag()) {
+      if (tag != HEADER_TAG) {
+        input.skipField(tag);
+        continue;
+      }
+
+      var entry = input.readBytes().newCodedInput();
+      var key = "";
+      for (int entryTag = entry.readTag(); entryTag != 0; entryTag = entry.readTag()) {
+        if (entryTag == HEADER_KEY_TAG) {
+          key = entry.readStringRequireUtf8();
+        } else {
+          entry.skipField(entryTag);
+        }
+      }
+      keys.add(key);
+    }
+    return keys;
+  }
+
+}
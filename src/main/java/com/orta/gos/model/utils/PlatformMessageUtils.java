@@ -3,16 +3,34 @@ package com.orta.gos.model.utils;
 import com.orta.gos.model.Payload;
 import com.orta.gos.model.PlatformMessage;
 import com.orta.gos.model.PlatformWorkflow;
+import com.orta.gos.model.ProcessBatchInput;
+import com.orta.gos.model.ProcessBatchOutcome;
 import com.orta.gos.model.ProcessInput;
 import com.orta.gos.model.ProcessOutcome;
 import com.orta.gos.model.ProcessOutcomeSucces;
+import com.orta.gos.model.ProcessRequest;
+import com.orta.gos.model.ProcessResponse;
+import com.orta.gos.model.metrics.EngineMetrics;
+import com.orta.gos.model.rules.PicSelector;
+import com.orta.gos.model.rules.Scatter;
 import com.orta.gos.model.rules.Step;
+import com.orta.gos.model.rules.TrackerUtils;
+import com.orta.gos.model.rules.WorkflowRef;
+import com.orta.gos.model.rules.WorkflowRegistry;
+import com.orta.gos.model.store.ClaimCheck;
+import com.orta.gos.model.store.PayloadResolver;
 
 import io.quarkus.logging.Log;
 import io.vavr.Function1;
+import io.vavr.Tuple;
+import io.vavr.Tuple2;
 import io.vavr.collection.List;
 import io.vavr.collection.HashMap;
 import io.vavr.collection.Map;
+import io.vavr.collection.Seq;
+import io.vavr.collection.SortedSet;
+import io.vavr.collection.TreeSet;
+import io.vavr.collection.Vector;
 import io.vavr.control.Either;
 import io.vavr.control.Option;
 import io.vavr.control.Try;
@@ -23,13 +41,133 @@ public record PlatformMessageUtils(PlatformMessage message) {
     return new PlatformMessageUtils(message);
   }
 
+  /**
+   * Creates the input of the current step from the inline steps; messages carrying only a
+   * {@code workflow_ref} need {@link #processInput(WorkflowRegistry, PayloadResolver)}.
+   *
+   * @return the process input
+   * @throws IllegalStateException when the current step cannot be resolved
+   */
   public ProcessInput processInput() {
-    return ProcessInput.newBuilder()
-        .addPayloads(message.getPayloadsList().getLast())
-        .putAllAttributes(message.getWorkflowLog().getStepsList().getFirst().getAttributesMap())
+    return processInput(PayloadResolver.NONE);
+  }
+
+  /**
+   * Creates the input of the current step, with its attributes and the payloads selected
+   * by its {@code pic_selector} (the last payload when the step has no selector),
+   * resolving referenced (claim-checked) payload bodies right before they are sent to the
+   * Process service.
+   *
+   * The payload history is scanned for an attributes selector; messages processed by
+   * several steps should be held as an {@link IndexedMessage} instead.
+   *
+   * @param resolver resolver of payload references
+   * @return the process input with inlined payload bodies
+   * @throws IllegalStateException when the current step cannot be resolved
+   */
+  public ProcessInput processInput(PayloadResolver resolver) {
+    var step = requireCurrentStep();
+    return input(step.getAttributesMap(), scanSelected(step.getPicSelector()), resolver);
+  }
+
+  /**
+   * Creates the input of the current step, with its attributes and the payloads selected
+   * by its {@code pic_selector} (the last payload when the step has no selector), looked
+   * up in an index of the message payloads.
+   *
+   * @param index    index of the message payloads, see {@link IndexedMessage}
+   * @param resolver resolver of payload references
+   * @return the process input with inlined payload bodies
+   * @throws IllegalStateException when the current step cannot be resolved
+   */
+  public ProcessInput processInput(PayloadIndex index, PayloadResolver resolver) {
+    return processInput(requireCurrentStep(), index, resolver);
+  }
+
+  private Step requireCurrentStep() {
+    return currentStep().getOrElseThrow(error -> new IllegalStateException(
+        String.format("Could not resolve the current step of message %s: %s", message.getId(), error)));
+  }
+
+  private SortedSet<Integer> scanSelected(PicSelector selector) {
+    var payloads = message.getPayloadsList();
+    return selector.hasByAttributes() ? PicSelectorUtils.selectedIndices(Vector.ofAll(payloads), selector)
+        : payloads.isEmpty() ? TreeSet.empty() : TreeSet.of(payloads.size() - 1);
+  }
+
+  private ProcessInput input(java.util.Map<String, String> attributes, SortedSet<Integer> selected,
+      PayloadResolver resolver) {
+    var payloads = message.getPayloadsList();
+    var builder = ProcessInput.newBuilder().putAllAttributes(attributes);
+    selected.forEach(idx -> builder.addPayloads(resolver.resolve(payloads.get(idx))));
+    return builder.build();
+  }
+
+  /**
+   * Creates the step input as a request correlated by the message id, for the batched
+   * and streaming variants of the Process service.
+   *
+   * @param resolver resolver of payload references
+   * @return the correlated process request
+   */
+  public ProcessRequest processRequest(PayloadResolver resolver) {
+    return ProcessRequest.newBuilder()
+        .setCorrelationId(message.getId())
+        .setInput(processInput(resolver))
         .build();
   }
 
+  public ProcessRequest processRequest() {
+    return processRequest(PayloadResolver.NONE);
+  }
+
+  /**
+   * Creates a single batched input for the current step of each message. Requests are
+   * correlated by message id, so the ids must be unique within the batch.
+   *
+   * @param messages the messages to process
+   * @param resolver resolver of payload references
+   * @return the batched process input
+   */
+  public static ProcessBatchInput batchInput(Seq<PlatformMessage> messages, PayloadResolver resolver) {
+    var duplicate = messages.map(PlatformMessage::getId).groupBy(id -> id).find(group -> group._2.size() > 1);
+    if (duplicate.isDefined()) {
+      throw new IllegalArgumentException(String.format("Message id [%s] appears more than once in the batch",
+          duplicate.get()._1));
+    }
+
+    return ProcessBatchInput.newBuilder()
+        .addAllRequests(messages.map(m -> withMessage(m).processRequest(resolver)))
+        .build();
+  }
+
+  public static ProcessBatchInput batchInput(Seq<PlatformMessage> messages) {
+    return batchInput(messages, PayloadResolver.NONE);
+  }
+
+  /**
+   * Fans the outcomes of a batch back into their messages via
+   * {@link #appendOutcome(ProcessOutcome)}.
+   *
+   * @param messages     the messages the batch was created from
+   * @param batchOutcome the batch outcome, in any order
+   * @return the updated messages in the order of the provided messages, or an error
+   *         message for a message without a (valid) outcome or with more than one
+   */
+  public static List<Either<String, PlatformMessage>> appendBatchOutcome(Seq<PlatformMessage> messages,
+      ProcessBatchOutcome batchOutcome) {
+    var responses = List.ofAll(batchOutcome.getResponsesList()).groupBy(ProcessResponse::getCorrelationId);
+
+    return List.ofAll(messages).map(m -> responses.get(m.getId())
+        .toEither(() -> String.format("No outcome for message %s", m.getId()))
+        .filterOrElse(matching -> matching.size() == 1,
+            matching -> String.format("%d outcomes for message %s", matching.size(), m.getId()))
+        .map(matching -> matching.head().getOutcome())
+        .flatMap(outcome -> Try.of(() -> withMessage(m).appendOutcome(outcome))
+            .toEither()
+            .mapLeft(Throwable::getMessage)));
+  }
+
   /**
    * Appends the process outcome to the platform message.
    * Updates the workflow tracker, payloads, and headers based on the outcome.
@@ -38,27 +176,186 @@ public record PlatformMessageUtils(PlatformMessage message) {
    * @return a new PlatformMessage with updated state
    */
   public PlatformMessage appendOutcome(ProcessOutcome outcome) {
-    // Update tracker in workflow log
-    var newTracker = PlatformWorkflowUtils.updateTracker(message.getWorkflowLog(), outcome);
+    return appendOutcome(message.getWorkflowLog().getTracker().getCurrentStep(), outcome);
+  }
+
+  /**
+   * Appends the outcome of the given step, which may be any of the running steps of a
+   * PARALLEL block. The outcome of a step that is not running anymore (e.g. a parallel
+   * step completing after the block failed) is dropped and the message returned as is.
+   *
+   * @param stepIdx index of the step the outcome belongs to
+   * @param outcome the process outcome to append
+   * @return a new PlatformMessage with updated state
+   */
+  public PlatformMessage appendOutcome(int stepIdx, ProcessOutcome outcome) {
+    return appendOutcome(stepIdx, outcome, Option.none());
+  }
+
+  /**
+   * Appends the outcome of the given step as {@link #appendOutcome(int, ProcessOutcome)}
+   * does, recording the step timing in the workflow timing trace (see
+   * {@link StepTimingUtils}) and setting {@code lastUpdated} to its outcome time.
+   *
+   * @param stepIdx index of the step the outcome belongs to
+   * @param outcome the process outcome to append
+   * @param timing  the timing of the step call
+   * @return a new PlatformMessage with updated state
+   */
+  public PlatformMessage appendOutcome(int stepIdx, ProcessOutcome outcome, CallTiming timing) {
+    return appendOutcome(stepIdx, outcome, Option.of(timing));
+  }
+
+  private PlatformMessage appendOutcome(int stepIdx, ProcessOutcome outcome, Option<CallTiming> timing) {
+    if (!TrackerUtils.isRunning(message.getWorkflowLog().getTracker(), stepIdx)) {
+      Log.warnf("Dropping outcome of step %d of message %s, not running", stepIdx, message.getId());
+      return message;
+    }
+
+    var started = EngineMetrics.appendStarted();
+    try {
+      var builder = advanced(stepIdx, outcome, timing);
+
+      // Handle payloads and headers based on outcome type
+      switch (outcome.getOutcomeCase()) {
+        case SUCCESS:
+          return handleSuccess(builder, outcome.getSuccess());
+        case FAILURE:
+          Log.errorf("ProcessOutcome returned with error: %s", outcome.getFailure().getErrorMessage());
+          return builder.build(); // No changes to payloads or headers
+        case OUTCOME_NOT_SET:
+        default:
+          throw new IllegalStateException("Outcome was not set");
+      }
+    } finally {
+      EngineMetrics.appendOutcome(started);
+    }
+  }
+
+  /**
+   * Appends the outcomes of the scattered calls of a scatter-gather step with a single
+   * tracker advance, decided by the failure policy of the step. When the step succeeds,
+   * the outputs of the successful calls are appended in the order of the calls; when it
+   * fails, nothing but the tracker is changed.
+   *
+   * @param stepIdx  index of the scatter-gather step
+   * @param outcomes the outcomes, in the order of the scattered inputs
+   * @param scatter  the step scatter definition
+   * @return a new PlatformMessage with updated state
+   */
+  public PlatformMessage appendOutcomes(int stepIdx, Seq<ProcessOutcome> outcomes, Scatter scatter) {
+    return appendOutcomes(stepIdx, outcomes, scatter, Option.none());
+  }
+
+  /**
+   * Appends the outcomes of a scatter-gather step as
+   * {@link #appendOutcomes(int, Seq, Scatter)} does, recording the step timing in the
+   * workflow timing trace and setting {@code lastUpdated} to its outcome time.
+   *
+   * @param stepIdx  index of the scatter-gather step
+   * @param outcomes the outcomes, in the order of the scattered inputs
+   * @param scatter  the step scatter definition
+   * @param timing   the timing of the scattered calls
+   * @return a new PlatformMessage with updated state
+   */
+  public PlatformMessage appendOutcomes(int stepIdx, Seq<ProcessOutcome> outcomes, Scatter scatter,
+      CallTiming timing) {
+    return appendOutcomes(stepIdx, outcomes, scatter, Option.of(timing));
+  }
+
+  private PlatformMessage appendOutcomes(int stepIdx, Seq<ProcessOutcome> outcomes, Scatter scatter,
+      Option<CallTiming> timing) {
+    if (!TrackerUtils.isRunning(message.getWorkflowLog().getTracker(), stepIdx)) {
+      Log.warnf("Dropping outcomes of step %d of message %s, not running", stepIdx, message.getId());
+      return message;
+    }
+
+    var started = EngineMetrics.appendStarted();
+    try {
+      var gathered = ScatterUtils.gather(outcomes, scatter);
+      var builder = advanced(stepIdx, gathered, timing);
+      if (gathered.hasFailure()) {
+        Log.errorf("Scattered ProcessOutcomes returned with error: %s", gathered.getFailure().getErrorMessage());
+        return builder.build();
+      }
+
+      ScatterUtils.outputs(outcomes).forEach(builder::addPayloads);
+      return handleSuccess(builder, gathered.getSuccess());
+    } finally {
+      EngineMetrics.appendOutcome(started);
+    }
+  }
+
+  /**
+   * Copies the message with the tracker advanced by the outcome of the step, and the step
+   * timing recorded when measured.
+   */
+  private PlatformMessage.Builder advanced(int stepIdx, ProcessOutcome outcome, Option<CallTiming> timing) {
+    var newTracker = PlatformWorkflowUtils.updateTracker(message.getWorkflowLog(), stepIdx, outcome);
     var newWorkflow = PlatformWorkflow.newBuilder(message.getWorkflowLog())
-        .setTracker(newTracker)
-        .build();
+        .setTracker(newTracker);
+    timing.forEach(measured -> StepTimingUtils.append(newWorkflow, stepIdx, measured, outcome.hasFailure()));
 
-    // Start building new message with updated workflow
     var builder = PlatformMessage.newBuilder(message)
         .setWorkflowLog(newWorkflow);
+    timing.forEach(measured -> builder.setLastUpdated(measured.completedMicros() / 1000));
+    return builder;
+  }
 
-    // Handle payloads and headers based on outcome type
-    switch (outcome.getOutcomeCase()) {
-      case SUCCESS:
-        return handleSuccess(builder, outcome.getSuccess());
-      case FAILURE:
-        Log.errorf("ProcessOutcome returned with error: %s", outcome.getFailure().getErrorMessage());
-        return builder.build(); // No changes to payloads or headers
-      case OUTCOME_NOT_SET:
-      default:
-        throw new IllegalStateException("Outcome was not set");
+  /**
+   * Appends the process outcome to the platform message, checking in the output payload
+   * body when it is above the claim-check threshold. The bodies are rehydrated by
+   * {@link #processInput(PayloadResolver)} given the same claim-check.
+   *
+   * @param outcome    the process outcome to append
+   * @param claimCheck the claim-check store and threshold
+   * @return a new PlatformMessage with updated state
+   */
+  public PlatformMessage appendOutcome(ProcessOutcome outcome, ClaimCheck claimCheck) {
+    if (!outcome.hasSuccess() || !outcome.getSuccess().hasOutputPayload()) {
+      return appendOutcome(outcome);
     }
+
+    var output = outcome.getSuccess().getOutputPayload();
+    var checkedIn = claimCheck.checkIn(output);
+    return checkedIn == output ? appendOutcome(outcome)
+        : appendOutcome(outcome.toBuilder()
+            .setSuccess(outcome.getSuccess().toBuilder().setOutputPayload(checkedIn))
+            .build());
+  }
+
+  /**
+   * Checks in the payload bodies above the claim-check threshold, e.g. deduplicating the
+   * source message of a fan-out (see {@link ClaimCheck#deduplicating}) before copying it.
+   *
+   * @param claimCheck the claim-check store and threshold
+   * @return the message with large bodies replaced by references
+   */
+  public PlatformMessage checkIn(ClaimCheck claimCheck) {
+    return claimCheck.checkIn(message);
+  }
+
+  /**
+   * Appends the process outcome to the platform message and prunes the payload history
+   * according to the retention policy, evaluated against the updated tracker.
+   *
+   * @param outcome   the process outcome to append
+   * @param retention the payload retention policy
+   * @return a new PlatformMessage with updated state
+   */
+  public PlatformMessage appendOutcome(ProcessOutcome outcome, RetentionPolicy retention) {
+    return retention.apply(appendOutcome(outcome));
+  }
+
+  /**
+   * Prunes the payload history according to the retention policy. Bodies of dropped
+   * claim-checked payloads are not released.
+   *
+   * @param retention the payload retention policy
+   * @return the message with the retained payloads only
+   */
+  public PlatformMessage retain(RetentionPolicy retention) {
+    return retention.apply(message);
   }
 
   private static final Function1<ProcessOutcomeSucces, List<Payload>> successPayloads = po -> po.hasOutputPayload()
@@ -90,29 +387,127 @@ public record PlatformMessageUtils(PlatformMessage message) {
     return builder.build();
   }
 
+  /**
+   * Gets the address of the current step from the inline steps; messages carrying only a
+   * {@code workflow_ref} need {@link #maybeCurrentAddress(WorkflowRegistry)}.
+   *
+   * @return the address, or none when the current step cannot be resolved
+   */
   public Option<String> maybeCurrentAddress() {
+    return currentStep()
+        .peekLeft(error -> Log.errorf("Could not get current address of message %s: %s", message.getId(), error))
+        .map(Step::getAddress)
+        .toOption();
+  }
+
+  /**
+   * Gets the current step from the inline steps; messages carrying only a
+   * {@code workflow_ref} need {@link #currentStep(WorkflowRegistry)}.
+   *
+   * @return the current step, or an error message
+   */
+  public Either<String, Step> currentStep() {
     var workflow = message.getWorkflowLog();
-    var currStepIdx = workflow.getTracker().getCurrentStep();
-    var steps = workflow.getStepsList();
+    if (workflow.getStepsCount() == 0 && workflow.hasWorkflowRef()) {
+      return Either.left(String.format("Message %s carries a workflow reference only, resolve it with the registry",
+          message.getId()));
+    }
+    return Try.of(() -> workflow.getStepsList().get(workflow.getTracker().getCurrentStep()))
+        .toEither()
+        .mapLeft(Throwable::getMessage);
+  }
+
+  /**
+   * Replaces the inline steps of the message workflow by a reference to its registered
+   * definition.
+   *
+   * @param ref reference returned by {@link WorkflowRegistry#register}
+   * @return the message without inline steps
+   */
+  public PlatformMessage referencing(WorkflowRef ref) {
+    return message.toBuilder()
+        .setWorkflowLog(message.getWorkflowLog().toBuilder()
+            .clearSteps()
+            .setWorkflowRef(ref))
+        .build();
+  }
+
+  /**
+   * Gets the current step, resolving the workflow reference through the registry when
+   * the message does not carry its steps inline.
+   *
+   * @param registry registry of workflow definitions
+   * @return the current step, or an error message
+   */
+  public Either<String, Step> currentStep(WorkflowRegistry registry) {
+    return step(message.getWorkflowLog().getTracker().getCurrentStep(), registry);
+  }
 
-    return Try.of(() -> steps.get(currStepIdx))
+  /**
+   * Gets the step at the given index, resolving the workflow reference through the
+   * registry when the message does not carry its steps inline.
+   *
+   * @param stepIdx  index of the step
+   * @param registry registry of workflow definitions
+   * @return the step, or an error message
+   */
+  public Either<String, Step> step(int stepIdx, WorkflowRegistry registry) {
+    var workflow = message.getWorkflowLog();
+    if (workflow.getStepsCount() > 0 || !workflow.hasWorkflowRef()) {
+      return stepIdx < workflow.getStepsCount() ? Either.right(workflow.getSteps(stepIdx))
+          : Either.left(String.format("Index %d out of bounds for length %d", stepIdx, workflow.getStepsCount()));
+    }
+
+    return registry.resolve(workflow.getWorkflowRef())
+        .flatMap(plan -> stepIdx < plan.size() ? Either.right(plan.step(stepIdx))
+            : Either.left(String.format("Could not get step (currStepIdx: %d, steps.size = %d)", stepIdx,
+                plan.size())));
+  }
+
+  /**
+   * Gets the steps to run next: all the in-flight steps of a PARALLEL block, the current
+   * step otherwise, and none once the workflow terminated.
+   *
+   * @param registry registry of workflow definitions
+   * @return the running steps with their index, or an error message
+   */
+  public Either<String, List<Tuple2<Integer, Step>>> runningSteps(WorkflowRegistry registry) {
+    return Either.sequenceRight(TrackerUtils.runningSteps(message.getWorkflowLog().getTracker())
+        .map(idx -> step(idx, registry).map(step -> Tuple.of(idx, step))))
+        .map(List::ofAll);
+  }
+
+  public Option<String> maybeCurrentAddress(WorkflowRegistry registry) {
+    return currentStep(registry)
+        .peekLeft(error -> Log.errorf("Could not get current address of message %s: %s", message.getId(), error))
         .map(Step::getAddress)
-        .recoverWith(error -> {
-          Log.errorf("Could not get step (currStepIdx: %d, steps.size = %d)", currStepIdx,
-              steps == null ? -1 : steps.size());
-          return Try.failure(error);
-        })
         .toOption();
   }
 
-  public Either<String, Step> currentStep() {
-    return Try.of(() -> {
-      PlatformWorkflow workflow = message.getWorkflowLog();
-      int currStepIdx = workflow.getTracker().getCurrentStep();
+  /**
+   * Creates the input of the current step, taking the step attributes and payload
+   * selector from the current step resolved through the registry.
+   *
+   * @param registry registry of workflow definitions
+   * @param resolver resolver of payload references
+   * @return the process input, or an error message when the step cannot be resolved
+   */
+  public Either<String, ProcessInput> processInput(WorkflowRegistry registry, PayloadResolver resolver) {
+    return currentStep(registry)
+        .map(step -> input(step.getAttributesMap(), scanSelected(step.getPicSelector()), resolver));
+  }
 
-      return workflow.getStepsList().get(currStepIdx);
-    }).toEither()
-        .mapLeft(Throwable::getMessage);
+  /**
+   * Creates the input of the given step, with its attributes and the payloads selected
+   * by its {@code pic_selector}.
+   *
+   * @param step     the step to run, usually the resolved current step
+   * @param index    index of the message payloads, see {@link IndexedMessage}
+   * @param resolver resolver of payload references
+   * @return the process input
+   */
+  public ProcessInput processInput(Step step, PayloadIndex index, PayloadResolver resolver) {
+    return input(step.getAttributesMap(), index.selectedIndices(step.getPicSelector()), resolver);
   }
 
 }
@@ -0,0 +1,251 @@
+package com.orta.gos.model.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.UnsafeByteOperations;
+import com.google.protobuf.WireFormat;
+import com.orta.gos.model.PlatformMessage;
+import com.orta.gos.model.PlatformWorkflow;
+import com.orta.gos.model.rules.Step;
+import com.orta.gos.model.rules.Tracker;
+import com.orta.gos.model.rules.WorkflowRef;
+import com.orta.gos.model.rules.WorkflowRegistry;
+
+import io.grpc.MethodDescriptor;
+import io.quarkus.logging.Log;
+import io.vavr.Lazy;
+import io.vavr.control.Either;
+import io.vavr.control.Option;
+import io.vavr.control.Try;
+
+/**
+ * Read-only view of a serialized {@link PlatformMessage} for routing decisions.
+ *
+ * Only the message identity and the workflow log are read from the wire bytes; payloads
+ * and headers are skipped without being parsed or copied. Of the workflow log, only the
+ * tracker, the workflow reference and the current step are parsed. The original bytes
+ * are kept, so a router can forward the message unchanged (see {@link #MARSHALLER}).
+ *
+ * Repeated occurrences of a message field are merged, as the protobuf parser does.
+ */
+public final class PlatformMessageView {
+
+  private static final int ID_TAG = (PlatformMessage.ID_FIELD_NUMBER << 3) | WireFormat.WIRETYPE_LENGTH_DELIMITED;
+  private static final int CREATION_TIME_TAG = (PlatformMessage.CREATIONTIME_FIELD_NUMBER << 3)
+      | WireFormat.WIRETYPE_VARINT;
+  private static final int LAST_UPDATED_TAG = (PlatformMessage.LASTUPDATED_FIELD_NUMBER << 3)
+      | WireFormat.WIRETYPE_VARINT;
+  private static final int WORKFLOW_LOG_TAG = (PlatformMessage.WORKFLOW_LOG_FIELD_NUMBER << 3)
+      | WireFormat.WIRETYPE_LENGTH_DELIMITED;
+  private static final int STEPS_TAG = (PlatformWorkflow.STEPS_FIELD_NUMBER << 3)
+      | WireFormat.WIRETYPE_LENGTH_DELIMITED;
+  private static final int TRACKER_TAG = (PlatformWorkflow.TRACKER_FIELD_NUMBER << 3)
+      | WireFormat.WIRETYPE_LENGTH_DELIMITED;
+  private static final int WORKFLOW_REF_TAG = (PlatformWorkflow.WORKFLOW_REF_FIELD_NUMBER << 3)
+      | WireFormat.WIRETYPE_LENGTH_DELIMITED;
+
+  /**
+   * gRPC marshaller exchanging the view as raw bytes, to declare routing methods that
+   * never parse nor re-serialize the whole message.
+   */
+  public static final MethodDescriptor.Marshaller<PlatformMessageView> MARSHALLER =
+      new MethodDescriptor.Marshaller<>() {
+        @Override
+        public InputStream stream(final PlatformMessageView view) {
+          return view.bytes().newInput();
+        }
+
+        @Override
+        public PlatformMessageView parse(final InputStream stream) {
+          try {
+            return PlatformMessageView.parse(ByteString.readFrom(stream));
+          } catch (IOException e) {
+            throw new UncheckedIOException(e);
+          }
+        }
+      };
+
+  private final ByteString bytes;
+  private final String id;
+  private final long creationTime;
+  private final long lastUpdated;
+  private final Tracker tracker;
+  private final Option<WorkflowRef> workflowRef;
+  private final java.util.List<ByteString> steps;
+  private final Lazy<PlatformMessage> message;
+
+  private PlatformMessageView(final ByteString bytes, final String id, final long creationTime,
+      final long lastUpdated, final Tracker tracker, final Option<WorkflowRef> workflowRef,
+      final java.util.List<ByteString> steps) {
+    this.bytes = bytes;
+    this.id = id;
+    this.creationTime = creationTime;
+    this.lastUpdated = lastUpdated;
+    this.tracker = tracker;
+    this.workflowRef = workflowRef;
+    this.steps = steps;
+    this.message = Lazy.of(() -> Try.of(() -> PlatformMessage.parseFrom(bytes)).get());
+  }
+
+  /**
+   * Reads the routing fields of a serialized message.
+   *
+   * @param bytes the serialized PlatformMessage
+   * @return the view over the bytes
+   * @throws InvalidProtocolBufferException when the bytes are not a valid message
+   */
+  public static PlatformMessageView parse(final ByteString bytes) throws InvalidProtocolBufferException {
+    try {
+      var input = bytes.newCodedInput();
+      input.enableAliasing(true);
+
+      String id = "";
+      long creationTime = 0;
+      long lastUpdated = 0;
+      var workflows = new ArrayList<ByteString>(1);
+      for (int tag = input.readTag(); tag != 0; tag = input.readTag()) {
+        switch (tag) {
+          case ID_TAG -> id = input.readStringRequireUtf8();
+          case CREATION_TIME_TAG -> creationTime = input.readInt64();
+          case LAST_UPDATED_TAG -> lastUpdated = input.readInt64();
+          case WORKFLOW_LOG_TAG -> workflows.add(input.readBytes());
+          default -> input.skipField(tag);
+        }
+      }
+
+      var tracker = Tracker.newBuilder();
+      WorkflowRef.Builder workflowRef = null;
+      var steps = new ArrayList<ByteString>();
+      for (var workflow : workflows) {
+        var workflowInput = workflow.newCodedInput();
+        workflowInput.enableAliasing(true);
+        for (int tag = workflowInput.readTag(); tag != 0; tag = workflowInput.readTag()) {
+          switch (tag) {
+            case STEPS_TAG -> steps.add(workflowInput.readBytes());
+            case TRACKER_TAG -> tracker.mergeFrom(workflowInput.readBytes());
+            case WORKFLOW_REF_TAG -> {
+              workflowRef = workflowRef == null ? WorkflowRef.newBuilder() : workflowRef;
+              workflowRef.mergeFrom(workflowInput.readBytes());
+            }
+            default -> workflowInput.skipField(tag);
+          }
+        }
+      }
+
+      return new PlatformMessageView(bytes, id, creationTime, lastUpdated, tracker.build(),
+          Option.of(workflowRef).map(WorkflowRef.Builder::build), steps);
+    } catch (InvalidProtocolBufferException e) {
+      throw e;
+    } catch (IOException e) {
+      throw new InvalidProtocolBufferException(e);
+    }
+  }
+
+  /**
+   * Reads the routing fields of a serialized message without copying it: the view and
+   * every step it hands out alias the array, which must not be modified afterwards.
+   *
+   * @param bytes the serialized PlatformMessage
+   * @return the view over the bytes
+   * @throws InvalidProtocolBufferException when the bytes are not a valid message
+   */
+  public static PlatformMessageView parse(final byte[] bytes) throws InvalidProtocolBufferException {
+    return parse(UnsafeByteOperations.unsafeWrap(bytes));
+  }
+
+  /**
+   * @return the original wire bytes, to be forwarded unchanged
+   */
+  public ByteString bytes() {
+    return bytes;
+  }
+
+  public String id() {
+    return id;
+  }
+
+  public long creationTime() {
+    return creationTime;
+  }
+
+  public long lastUpdated() {
+    return lastUpdated;
+  }
+
+  public Tracker tracker() {
+    return tracker;
+  }
+
+  public Option<WorkflowRef> workflowRef() {
+    return workflowRef;
+  }
+
+  /**
+   * @return number of steps carried inline by the workflow log
+   */
+  public int stepsCount() {
+    return steps.size();
+  }
+
+  /**
+   * Gets the step pointed by the tracker, parsing that step only.
+   *
+   * @return the current step, or an error message
+   */
+  public Either<String, Step> currentStep() {
+    int currStepIdx = tracker.getCurrentStep();
+    if (currStepIdx >= steps.size()) {
+      return Either.left(String.format("Index %d out of bounds for length %d", currStepIdx, steps.size()));
+    }
+
+    return Try.of(() -> Step.parseFrom(steps.get(currStepIdx))).toEither().mapLeft(Throwable::getMessage);
+  }
+
+  /**
+   * Gets the current step, resolving the workflow reference through the registry when
+   * the message does not carry its steps inline.
+   *
+   * @param registry registry of workflow definitions
+   * @return the current step, or an error message
+   */
+  public Either<String, Step> currentStep(final WorkflowRegistry registry) {
+    if (!steps.isEmpty() || workflowRef.isEmpty()) {
+      return currentStep();
+    }
+
+    int currStepIdx = tracker.getCurrentStep();
+    return registry.resolve(workflowRef.get())
+        .flatMap(plan -> currStepIdx < plan.size() ? Either.right(plan.step(currStepIdx))
+            : Either.left(String.format("Index %d out of bounds for length %d", currStepIdx, plan.size())));
+  }
+
+  public Option<String> maybeCurrentAddress() {
+    return address(currentStep());
+  }
+
+  public Option<String> maybeCurrentAddress(final WorkflowRegistry registry) {
+    return address(currentStep(registry));
+  }
+
+  /**
+   * Parses the whole message, once, for the consumers that need more than routing.
+   *
+   * @return the fully parsed message
+   */
+  public PlatformMessage message() {
+    return message.get();
+  }
+
+  private Option<String> address(final Either<String, Step> step) {
+    return step
+        .peekLeft(error -> Log.errorf("Could not get current address of message %s: %s", id, error))
+        .map(Step::getAddress)
+        .toOption();
+  }
+
+}
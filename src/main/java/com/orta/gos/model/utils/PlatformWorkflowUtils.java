@@ -6,13 +6,17 @@ import static com.orta.gos.model.rules.TrackerUtils.nextStepOnFailure;
 import static com.orta.gos.model.rules.TrackerUtils.nextStepOnSuccess;
 
 import com.orta.gos.model.PlatformWorkflow;
+import com.orta.gos.model.PlatformWorkflowOrBuilder;
 import com.orta.gos.model.ProcessOutcome;
 import com.orta.gos.model.rules.BlockIndicator;
 import com.orta.gos.model.rules.BlockType;
 import com.orta.gos.model.rules.Step;
 import com.orta.gos.model.rules.Tracker;
 
+import io.vavr.collection.HashSet;
 import io.vavr.collection.List;
+import io.vavr.collection.SortedSet;
+import io.vavr.collection.TreeSet;
 import io.vavr.control.Option;
 
 /**
@@ -32,11 +36,24 @@ public class PlatformWorkflowUtils {
    * @return updated tracker
    */
   public static Tracker updateTracker(PlatformWorkflow workflow, ProcessOutcome outcome) {
+    return updateTracker(workflow, workflow.getTracker().getCurrentStep(), outcome);
+  }
+
+  /**
+   * Updates the tracker based on the outcome of the given step, which may be any of the
+   * running steps of a PARALLEL block.
+   *
+   * @param workflow the current workflow
+   * @param stepIdx  index of the step the outcome belongs to
+   * @param outcome  the process outcome
+   * @return updated tracker
+   */
+  public static Tracker updateTracker(PlatformWorkflow workflow, int stepIdx, ProcessOutcome outcome) {
     var updatedTracker = switch (outcome.getOutcomeCase()) {
       case SUCCESS:
-        yield nextStepOnSuccess(workflow.getTracker());
+        yield nextStepOnSuccess(workflow.getTracker(), stepIdx);
       case FAILURE:
-        yield nextStepOnFailure(workflow.getTracker());
+        yield nextStepOnFailure(workflow.getTracker(), stepIdx);
       default:
         throw new IllegalStateException("Attempt to handle ProcessOutcome is not SUCCESS/FAILURE");
     };
@@ -44,6 +61,85 @@ public class PlatformWorkflowUtils {
     return updatedTracker.build();
   }
 
+  /**
+   * Whether the step completed, read from the {@code completed_steps_bits} bitset, or
+   * from the {@code completed_steps} names of workflows written before it and of the
+   * names the bitset could not take over (see {@link #markCompleted}).
+   *
+   * @param workflow the workflow
+   * @param stepIdx  index of the step
+   * @return true when the step completed
+   */
+  public static boolean isCompleted(PlatformWorkflowOrBuilder workflow, int stepIdx) {
+    var word = stepIdx >>> 6;
+    if (word < workflow.getCompletedStepsBitsCount() && (workflow.getCompletedStepsBits(word) & (1L << stepIdx)) != 0) {
+      return true;
+    }
+    return workflow.getCompletedStepsCount() > 0 && stepIdx < workflow.getStepsCount()
+        && workflow.getCompletedStepsList().contains(workflow.getSteps(stepIdx).getName());
+  }
+
+  /**
+   * @param workflow the workflow
+   * @return indices of the completed steps, ascending (see {@link #isCompleted})
+   */
+  public static SortedSet<Integer> completedSteps(PlatformWorkflowOrBuilder workflow) {
+    var completed = TreeSet.ofAll(byName(workflow));
+    for (int word = 0; word < workflow.getCompletedStepsBitsCount(); word++) {
+      var bits = workflow.getCompletedStepsBits(word);
+      while (bits != 0) {
+        completed = completed.add(word * 64 + Long.numberOfTrailingZeros(bits));
+        bits &= bits - 1;
+      }
+    }
+    return completed;
+  }
+
+  /**
+   * Marks the step completed in the {@code completed_steps_bits} bitset, moving the
+   * {@code completed_steps} names of a workflow written before it to the bitset. Names
+   * matching none of the workflow steps (the steps of a workflow carrying a reference
+   * only, or steps removed by {@link Navigation#updateWorkflow}) have no index to move to
+   * and are kept as names.
+   *
+   * Not called by {@code PlatformMessageUtils.appendOutcome}, whose changes are limited to
+   * the tracker and timings a {@code PlatformMessageDelta} carries.
+   *
+   * @param builder the workflow to update
+   * @param stepIdx index of the completed step
+   * @return the workflow builder
+   */
+  public static PlatformWorkflow.Builder markCompleted(PlatformWorkflow.Builder builder, int stepIdx) {
+    if (builder.getCompletedStepsCount() > 0) {
+      var mapped = byName(builder);
+      var stepNames = mapped.map(idx -> builder.getSteps(idx).getName()).toSet();
+      var unmapped = List.ofAll(builder.getCompletedStepsList()).filter(name -> !stepNames.contains(name));
+      builder.clearCompletedSteps().addAllCompletedSteps(unmapped);
+      mapped.forEach(idx -> setBit(builder, idx));
+    }
+    return setBit(builder, stepIdx);
+  }
+
+  /**
+   * @return indices of the steps whose name is in {@code completed_steps}
+   */
+  private static List<Integer> byName(PlatformWorkflowOrBuilder workflow) {
+    if (workflow.getCompletedStepsCount() == 0) {
+      return List.empty();
+    }
+    var names = HashSet.ofAll(workflow.getCompletedStepsList());
+    return List.range(0, workflow.getStepsCount())
+        .filter(idx -> names.contains(workflow.getSteps(idx).getName()));
+  }
+
+  private static PlatformWorkflow.Builder setBit(PlatformWorkflow.Builder builder, int stepIdx) {
+    var word = stepIdx >>> 6;
+    while (builder.getCompletedStepsBitsCount() <= word) {
+      builder.addCompletedStepsBits(0L);
+    }
+    return builder.setCompletedStepsBits(word, builder.getCompletedStepsBits(word) | (1L << stepIdx));
+  }
+
   private static Tracker.Builder handleSuccess(Tracker tracker, List<Step> steps) {
     var builder = Tracker.newBuilder(tracker);
 
@@ -77,7 +173,7 @@ public class PlatformWorkflowUtils {
 
     int nextStep = switch (tracker.getCurrentBlock()) {
       case TYPE_NA, UNRECOGNIZED -> 0;
-      case MAIN ->
+      case MAIN, PARALLEL ->
         findNextBlockFirstStep(steps, 0, BlockType.GENERAL_ERROR).fold(() -> tracker.getCurrentStep() + 1, v -> v);
       case GENERAL_ERROR, FINALLY -> tracker.getCurrentStep() + 1;
     };
@@ -0,0 +1,142 @@
+package com.orta.gos.model.utils;
+
+import java.util.regex.Pattern;
+
+import com.orta.gos.model.Payload;
+import com.orta.gos.model.PlatformMessage;
+import com.orta.gos.model.PlatformWorkflow;
+import com.orta.gos.model.rules.BlockType;
+import com.orta.gos.model.rules.Step;
+import com.orta.gos.model.rules.WorkflowRegistry;
+
+import io.quarkus.logging.Log;
+import io.vavr.collection.List;
+import io.vavr.collection.Seq;
+import io.vavr.collection.Set;
+import io.vavr.collection.TreeSet;
+import io.vavr.collection.Vector;
+
+/**
+ * Decides which payloads of a message are kept in its payload history.
+ *
+ * Policies are combined with {@link #or(RetentionPolicy)}, keeping every payload retained
+ * by any of them. A policy that must never drop a payload a later step selects should
+ * include {@link #keepSelected()}.
+ */
+@FunctionalInterface
+public interface RetentionPolicy {
+
+  /**
+   * @param payloads the payload history
+   * @param workflow the workflow, with the tracker already pointing to the next step
+   * @return indices of the payloads to keep
+   */
+  Set<Integer> retained(Seq<Payload> payloads, PlatformWorkflow workflow);
+
+  default RetentionPolicy or(final RetentionPolicy other) {
+    return (payloads, workflow) -> retained(payloads, workflow).union(other.retained(payloads, workflow));
+  }
+
+  /**
+   * Applies the policy to the message payloads.
+   *
+   * @param message the message
+   * @return the message without the dropped payloads (the same message when nothing is
+   *         dropped)
+   */
+  default PlatformMessage apply(final PlatformMessage message) {
+    var payloads = Vector.ofAll(message.getPayloadsList());
+    var retained = retained(payloads, message.getWorkflowLog());
+    if (retained.size() >= payloads.size()) {
+      return message;
+    }
+
+    return message.toBuilder()
+        .clearPayloads()
+        .addAllPayloads(payloads.zipWithIndex()
+            .filter(tuple -> retained.contains(tuple._2))
+            .map(tuple -> tuple._1))
+        .build();
+  }
+
+  static RetentionPolicy keepAll() {
+    return (payloads, workflow) -> TreeSet.ofAll(List.range(0, payloads.size()));
+  }
+
+  /**
+   * Keeps the most recent payloads.
+   *
+   * @param count number of payloads to keep
+   */
+  static RetentionPolicy keepLast(final int count) {
+    return (payloads, workflow) -> TreeSet.ofAll(List.range(Math.max(0, payloads.size() - count), payloads.size()));
+  }
+
+  /**
+   * Keeps the payloads selected (by their {@code PicSelector}) by any step that is still
+   * to run, i.e. the current step and every step after it. Steps before the current one
+   * are never revisited since the tracker does not move backwards.
+   *
+   * The steps of a message carrying a workflow reference only are not known to this
+   * policy, so all its payloads are kept; use {@link #keepSelected(WorkflowRegistry)} to
+   * resolve them.
+   */
+  static RetentionPolicy keepSelected() {
+    return (payloads, workflow) -> isReferenceOnly(workflow) ? keepAll().retained(payloads, workflow)
+        : selected(payloads, workflow, List.ofAll(workflow.getStepsList()));
+  }
+
+  /**
+   * Keeps the payloads selected by any step that is still to run as
+   * {@link #keepSelected()} does, resolving the steps of a message carrying a workflow
+   * reference through the registry. All the payloads are kept when the reference cannot
+   * be resolved.
+   *
+   * @param registry registry of workflow definitions
+   */
+  static RetentionPolicy keepSelected(final WorkflowRegistry registry) {
+    return (payloads, workflow) -> {
+      if (!isReferenceOnly(workflow)) {
+        return selected(payloads, workflow, List.ofAll(workflow.getStepsList()));
+      }
+      return registry.resolve(workflow.getWorkflowRef())
+          .peekLeft(error -> Log.warnf("Keeping all the payloads, could not resolve the workflow: %s", error))
+          .fold(error -> keepAll().retained(payloads, workflow), plan -> selected(payloads, workflow, plan.steps()));
+    };
+  }
+
+  /**
+   * Keeps the payloads having an attribute whose value matches the pattern.
+   *
+   * @param key          the attribute key
+   * @param valuePattern pattern the whole attribute value should match
+   */
+  static RetentionPolicy keepByAttribute(final String key, final Pattern valuePattern) {
+    return (payloads, workflow) -> TreeSet.ofAll(payloads.zipWithIndex()
+        .filter(tuple -> {
+          var value = tuple._1.getAttributesMap().get(key);
+          return value != null && valuePattern.matcher(value).matches();
+        })
+        .map(tuple -> tuple._2));
+  }
+
+  private static boolean isReferenceOnly(final PlatformWorkflow workflow) {
+    return workflow.getStepsCount() == 0 && workflow.hasWorkflowRef();
+  }
+
+  private static Set<Integer> selected(final Seq<Payload> payloads, final PlatformWorkflow workflow,
+      final List<Step> steps) {
+    var tracker = workflow.getTracker();
+    if (tracker.getCurrentBlock() == BlockType.TYPE_NA) {
+      return TreeSet.empty();
+    }
+
+    return steps
+        .drop(tracker.getCurrentStep())
+        .map(step -> step.getPicSelector())
+        .distinct()
+        .foldLeft(TreeSet.<Integer>empty(),
+            (kept, selector) -> kept.union(PicSelectorUtils.selectedIndices(payloads, selector)));
+  }
+
+}
@@ -0,0 +1,101 @@
+package com.orta.gos.model.utils;
+
+import com.orta.gos.model.Payload;
+import com.orta.gos.model.ProcessInput;
+import com.orta.gos.model.ProcessOutcome;
+import com.orta.gos.model.ProcessOutcomeFailure;
+import com.orta.gos.model.ProcessOutcomeSucces;
+import com.orta.gos.model.rules.Scatter;
+import com.orta.gos.model.rules.ScatterFailurePolicy;
+
+import io.vavr.collection.List;
+import io.vavr.collection.Seq;
+
+/**
+ * Utility class for the scatter-gather execution of a step (see {@link Scatter}).
+ *
+ * The input of the step is split into one input per selected payload, each holding the
+ * step attributes. The outcomes of the calls are gathered, in the order of the inputs,
+ * into a single verdict deciding how the tracker advances, and the list of outputs to
+ * append.
+ */
+public class ScatterUtils {
+
+  private ScatterUtils() {
+    // Private constructor to prevent instantiation
+  }
+
+  /**
+   * Splits the step input into one input per payload.
+   *
+   * @param input the step input with all the selected payloads
+   * @return the inputs, in payload order; empty when no payload was selected
+   */
+  public static List<ProcessInput> scatter(final ProcessInput input) {
+    return List.ofAll(input.getPayloadsList())
+        .map(payload -> ProcessInput.newBuilder()
+            .putAllAttributes(input.getAttributesMap())
+            .addPayloads(payload)
+            .build());
+  }
+
+  /**
+   * Number of calls to run concurrently for the given number of inputs.
+   *
+   * @param scatter  the step scatter definition
+   * @param requests number of scattered inputs
+   * @return the effective parallelism, at least 1
+   */
+  public static int parallelism(final Scatter scatter, final int requests) {
+    var limit = scatter.getMaxParallelism() == 0 ? requests : Math.min(scatter.getMaxParallelism(), requests);
+    return Math.max(limit, 1);
+  }
+
+  /**
+   * Gathers the outcomes of the scattered calls into the outcome of the step, according
+   * to the failure policy. A successful verdict carries the headers of the successful
+   * calls (the first value of a key wins) but no payload, see {@link #outputs(Seq)}.
+   *
+   * @param outcomes the outcomes, in the order of the scattered inputs
+   * @param scatter  the step scatter definition
+   * @return the outcome of the step
+   */
+  public static ProcessOutcome gather(final Seq<ProcessOutcome> outcomes, final Scatter scatter) {
+    var failures = outcomes.filter(ProcessOutcome::hasFailure);
+    var failed = scatter.getOnFailure() == ScatterFailurePolicy.FAIL_ON_ALL
+        ? !outcomes.isEmpty() && failures.size() == outcomes.size()
+        : !failures.isEmpty();
+
+    if (failed) {
+      var errors = failures.map(outcome -> outcome.getFailure().getErrorMessage()).mkString("; ");
+      return ProcessOutcome.newBuilder()
+          .setFailure(ProcessOutcomeFailure.newBuilder()
+              .setErrorMessage(String.format("%d of %d scattered calls failed: %s", failures.size(),
+                  outcomes.size(), errors)))
+          .build();
+    }
+
+    var success = ProcessOutcomeSucces.newBuilder();
+    outcomes.filter(ProcessOutcome::hasSuccess)
+        .forEach(outcome -> outcome.getSuccess().getHeadersMap()
+            .forEach((key, value) -> {
+              if (!success.containsHeaders(key)) {
+                success.putHeaders(key, value);
+              }
+            }));
+    return ProcessOutcome.newBuilder().setSuccess(success).build();
+  }
+
+  /**
+   * Output payloads of the successful calls, in the order of the scattered inputs.
+   *
+   * @param outcomes the outcomes, in the order of the scattered inputs
+   * @return the payloads to append
+   */
+  public static List<Payload> outputs(final Seq<ProcessOutcome> outcomes) {
+    return List.ofAll(outcomes)
+        .filter(outcome -> outcome.hasSuccess() && outcome.getSuccess().hasOutputPayload())
+        .map(outcome -> outcome.getSuccess().getOutputPayload());
+  }
+
+}
@@ -0,0 +1,18 @@
+package com.orta.gos.model.utils;
+
+/**
+ * Entry of the timing trace of a workflow, see {@link StepTimingUtils}.
+ *
+ * @param stepIdx          index of the step
+ * @param dispatchedMicros epoch microseconds the step was dispatched at
+ * @param completedMicros  epoch microseconds its outcome was received at
+ * @param attempts         number of calls made to complete the step
+ * @param failed           whether the outcome was a failure
+ */
+public record StepTiming(int stepIdx, long dispatchedMicros, long completedMicros, int attempts, boolean failed) {
+
+  public long durationMicros() {
+    return completedMicros - dispatchedMicros;
+  }
+
+}
@@ -0,0 +1,78 @@
+package com.orta.gos.model.utils;
+
+import com.orta.gos.model.PlatformWorkflow;
+import com.orta.gos.model.PlatformWorkflowOrBuilder;
+import com.orta.gos.model.StepTimingsOrBuilder;
+
+import io.vavr.collection.List;
+
+/**
+ * Utility class writing and reading the timing trace of a workflow, one entry per appended
+ * step outcome.
+ *
+ * The trace is kept as packed columns of varints: the dispatch times are delta encoded
+ * against the previous entry and the outcome times are stored as durations, so an entry
+ * takes a few bytes instead of two 8 bytes timestamps. The dispatch time of the last
+ * entry is kept as well, so appending does not read the whole trace.
+ */
+public class StepTimingUtils {
+
+  private StepTimingUtils() {
+    // Private constructor to prevent instantiation
+  }
+
+  /**
+   * Appends an entry to the timing trace of the workflow.
+   *
+   * @param builder the workflow to update
+   * @param stepIdx index of the step
+   * @param timing  the timing of the step calls
+   * @param failed  whether the outcome was a failure
+   * @return the workflow builder
+   */
+  public static PlatformWorkflow.Builder append(final PlatformWorkflow.Builder builder, final int stepIdx,
+      final CallTiming timing, final boolean failed) {
+    var timings = builder.getTimingsBuilder();
+    if (timings.getStepsCount() == 0) {
+      timings.setBaseMicros(timing.dispatchedMicros());
+    }
+    timings.addDispatchDeltas(timing.dispatchedMicros() - lastDispatched(timings))
+        .addSteps(stepIdx)
+        .addDurations(Math.max(0, timing.completedMicros() - timing.dispatchedMicros()))
+        .addAttempts(timing.attempts())
+        .addFailed(failed)
+        .setLastDispatchOffset(timing.dispatchedMicros() - timings.getBaseMicros());
+    return builder;
+  }
+
+  /**
+   * @param workflow the workflow
+   * @return the entries of the timing trace, in the order the outcomes were appended
+   */
+  public static List<StepTiming> timings(final PlatformWorkflowOrBuilder workflow) {
+    var timings = workflow.getTimings();
+    var entries = new StepTiming[timings.getStepsCount()];
+    var dispatched = timings.getBaseMicros();
+    for (int i = 0; i < entries.length; i++) {
+      dispatched += timings.getDispatchDeltas(i);
+      entries[i] = new StepTiming(timings.getSteps(i), dispatched, dispatched + timings.getDurations(i),
+          timings.getAttempts(i), timings.getFailed(i));
+    }
+    return List.of(entries);
+  }
+
+  /**
+   * Sums the deltas only for a trace written before {@code last_dispatch_offset}.
+   */
+  private static long lastDispatched(final StepTimingsOrBuilder timings) {
+    if (timings.getStepsCount() == 0 || timings.hasLastDispatchOffset()) {
+      return timings.getBaseMicros() + timings.getLastDispatchOffset();
+    }
+    var dispatched = timings.getBaseMicros();
+    for (int i = 0; i < timings.getDispatchDeltasCount(); i++) {
+      dispatched += timings.getDispatchDeltas(i);
+    }
+    return dispatched;
+  }
+
+}
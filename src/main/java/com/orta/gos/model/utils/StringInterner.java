@@ -0,0 +1,185 @@
+package com.orta.gos.model.utils;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.orta.gos.model.Payload;
+import com.orta.gos.model.PlatformMessage;
+import com.orta.gos.model.PlatformWorkflow;
+import com.orta.gos.model.rules.Step;
+
+/**
+ * Bounded, lock-free interner of the identifiers repeated across messages: step names,
+ * addresses and attributes, header keys and payload attribute keys.
+ *
+ * A parsed message holds its own copy of every string; {@link #intern(PlatformMessage)}
+ * rebuilds it over the canonical instances so the copies are collected while the message
+ * is young, before it waits in flight. The interner is a direct-mapped table: an
+ * identifier whose slot is taken by another one replaces it, so rare identifiers evict
+ * each other while frequent ones stay. Strings longer than {@code maxLength} (rather
+ * values than identifiers) are left alone.
+ */
+public final class StringInterner {
+
+  /**
+   * @param capacity  number of slots of the table, rounded up to a power of two
+   * @param maxLength strings longer than this are not interned
+   */
+  public record Options(int capacity, int maxLength) {
+
+    public static final Options DEFAULT = new Options(4096, 256);
+
+    public Options {
+      if (capacity <= 0 || maxLength <= 0) {
+        throw new IllegalArgumentException(String.format(
+            "capacity and maxLength must be positive (were %d, %d)", capacity, maxLength));
+      }
+    }
+  }
+
+  /**
+   * Memory savings report.
+   *
+   * @param hits       strings replaced by (or already being) their canonical instance
+   * @param misses     strings becoming the canonical instance of their slot
+   * @param savedBytes estimated heap bytes of the replaced copies (string and Latin-1 byte
+   *                   array), reclaimed once the original message is collected
+   * @param size       number of canonical instances held
+   */
+  public record Stats(long hits, long misses, long savedBytes, int size) {
+  }
+
+  private static final StringInterner SHARED = new StringInterner(Options.DEFAULT);
+
+  private final Options options;
+  private final AtomicReferenceArray<String> table;
+  private final int mask;
+
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder savedBytes = new LongAdder();
+
+  public StringInterner(final Options options) {
+    this.options = options;
+    var capacity = Integer.highestOneBit(Math.max(options.capacity() - 1, 1)) << 1;
+    this.table = new AtomicReferenceArray<>(capacity);
+    this.mask = capacity - 1;
+  }
+
+  /**
+   * @return the interner shared by the workflow plans and the callers not holding their own
+   */
+  public static StringInterner shared() {
+    return SHARED;
+  }
+
+  /**
+   * @param value the string
+   * @return the canonical instance equal to the string, or the string itself
+   */
+  public String intern(final String value) {
+    if (value.isEmpty() || value.length() > options.maxLength()) {
+      return value;
+    }
+    var hash = value.hashCode();
+    var slot = (hash ^ (hash >>> 16)) & mask;
+    var canonical = table.getAcquire(slot);
+    if (value.equals(canonical)) {
+      hits.increment();
+      if (canonical != value) {
+        savedBytes.add(footprint(value));
+      }
+      return canonical;
+    }
+    table.setRelease(slot, value);
+    misses.increment();
+    return value;
+  }
+
+  /**
+   * Rebuilds the step over canonical strings: name, address and attributes.
+   *
+   * @param step the step
+   * @return the equal step
+   */
+  public Step intern(final Step step) {
+    var builder = step.toBuilder()
+        .setName(intern(step.getName()))
+        .setAddress(intern(step.getAddress()))
+        .clearAttributes();
+    step.getAttributesMap().forEach((key, value) -> builder.putAttributes(intern(key), intern(value)));
+    return builder.build();
+  }
+
+  /**
+   * Rebuilds the message over canonical strings: its steps and completed step names, the
+   * header keys and the payload attribute keys. Values carried by a single message (ids,
+   * bodies, header values) are kept as parsed.
+   *
+   * @param message the message
+   * @return the equal message
+   */
+  public PlatformMessage intern(final PlatformMessage message) {
+    var builder = message.toBuilder().clearHeaders().clearPayloads();
+    message.getHeadersMap().forEach((key, value) -> builder.putHeaders(intern(key), value));
+    message.getPayloadsList().forEach(payload -> builder.addPayloads(intern(payload)));
+    if (message.hasWorkflowLog()) {
+      builder.setWorkflowLog(intern(message.getWorkflowLog()));
+    }
+    return builder.build();
+  }
+
+  /**
+   * Parses the message and interns its identifiers.
+   *
+   * @param bytes the serialized message
+   * @return the message over canonical strings
+   * @throws InvalidProtocolBufferException when the bytes are not a valid message
+   */
+  public PlatformMessage parse(final ByteString bytes) throws InvalidProtocolBufferException {
+    return intern(PlatformMessage.parseFrom(bytes));
+  }
+
+  public Stats stats() {
+    var size = 0;
+    for (int slot = 0; slot <= mask; slot++) {
+      if (table.getPlain(slot) != null) {
+        size++;
+      }
+    }
+    return new Stats(hits.sum(), misses.sum(), savedBytes.sum(), size);
+  }
+
+  private Payload intern(final Payload payload) {
+    if (payload.getAttributesCount() == 0) {
+      return payload;
+    }
+    var builder = payload.toBuilder().clearAttributes();
+    payload.getAttributesMap().forEach((key, value) -> builder.putAttributes(intern(key), value));
+    return builder.build();
+  }
+
+  private PlatformWorkflow intern(final PlatformWorkflow workflow) {
+    var builder = workflow.toBuilder().clearSteps().clearCompletedSteps().clearSelectedWorkflows();
+    workflow.getStepsList().forEach(step -> builder.addSteps(intern(step)));
+    workflow.getCompletedStepsList().forEach(name -> builder.addCompletedSteps(intern(name)));
+    workflow.getSelectedWorkflowsList().forEach(name -> builder.addSelectedWorkflows(intern(name)));
+    if (workflow.hasWorkflowRef()) {
+      builder.setWorkflowRef(workflow.getWorkflowRef().toBuilder()
+          .setId(intern(workflow.getWorkflowRef().getId()))
+          .setHash(intern(workflow.getWorkflowRef().getHash())));
+    }
+    return builder.build();
+  }
+
+  /**
+   * Shallow size of a compact string: 24 bytes of String object and its byte array (16
+   * bytes header plus one byte per Latin-1 character, 8 bytes aligned).
+   */
+  private static long footprint(final String value) {
+    return 24 + ((16 + value.length() + 7) & ~7);
+  }
+
+}
@@ -0,0 +1,134 @@
+package com.orta.gos.model.metrics;
+
+import static com.orta.gos.model.rules.BlockType.FINALLY;
+import static com.orta.gos.model.rules.BlockType.FINALLY_VALUE;
+import static com.orta.gos.model.rules.BlockType.GENERAL_ERROR;
+import static com.orta.gos.model.rules.BlockType.GENERAL_ERROR_VALUE;
+import static com.orta.gos.model.rules.BlockType.MAIN;
+import static com.orta.gos.model.rules.BlockType.MAIN_VALUE;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import com.orta.gos.model.PlatformMessage;
+import com.orta.gos.model.PlatformWorkflow;
+import com.orta.gos.model.ProcessOutcome;
+import com.orta.gos.model.ProcessOutcomeFailure;
+import com.orta.gos.model.ProcessOutcomeSucces;
+import com.orta.gos.model.metrics.MetricsRegistry.MeterId;
+import com.orta.gos.model.rules.BlockRange;
+import com.orta.gos.model.rules.BlockType;
+import com.orta.gos.model.rules.Tracker;
+import com.orta.gos.model.rules.TrackerState;
+import com.orta.gos.model.rules.TrackerUtils;
+import com.orta.gos.model.rules.TransitionTable;
+import com.orta.gos.model.utils.PlatformMessageUtils;
+
+@DisplayName("EngineMetrics")
+class EngineMetricsTest {
+
+  static final Tracker TRACKER = Tracker.newBuilder()
+      .setCurrentBlock(MAIN)
+      .putRanges(MAIN_VALUE, range(MAIN, 0, 1))
+      .putRanges(GENERAL_ERROR_VALUE, range(GENERAL_ERROR, 2, 2))
+      .putRanges(FINALLY_VALUE, range(FINALLY, 3, 3))
+      .setTermination(4)
+      .build();
+
+  /**
+   * GENERAL_ERROR placed before MAIN: a failure in MAIN would jump backwards.
+   */
+  static final Tracker BACKWARD_TRACKER = Tracker.newBuilder()
+      .setCurrentStep(1)
+      .setCurrentBlock(MAIN)
+      .putRanges(GENERAL_ERROR_VALUE, range(GENERAL_ERROR, 0, 0))
+      .putRanges(MAIN_VALUE, range(MAIN, 1, 2))
+      .setTermination(3)
+      .build();
+
+  static BlockRange range(final BlockType type, final int start, final int end) {
+    return BlockRange.newBuilder().setType(type).setStartIdx(start).setEndIdx(end).build();
+  }
+
+  static long count(final SimpleMetricsRegistry registry, final String name, final BlockType block) {
+    return registry.counters().get(MeterId.of(name, "block", block.name())).getOrElse(0L);
+  }
+
+  @AfterEach
+  void uninstall() {
+    EngineMetrics.uninstall();
+  }
+
+  @Test
+  @DisplayName("should count the tracker transitions, failures and early terminations by block")
+  void test0() {
+    var registry = new SimpleMetricsRegistry();
+    EngineMetrics.install(registry);
+
+    var main = TrackerUtils.nextStepOnSuccess(TRACKER).build();
+    var error = TrackerUtils.nextStepOnFailure(main).build();
+    var terminated = TrackerUtils.nextStepOnFailure(error).build();
+
+    assertThat(terminated.getCurrentBlock()).isEqualTo(BlockType.TYPE_NA);
+    assertThat(count(registry, EngineMetrics.TRANSITIONS, MAIN)).isEqualTo(2);
+    assertThat(count(registry, EngineMetrics.TRANSITIONS, GENERAL_ERROR)).isEqualTo(1);
+    assertThat(count(registry, EngineMetrics.FAILURES, MAIN)).isEqualTo(1);
+    assertThat(count(registry, EngineMetrics.FAILURES, GENERAL_ERROR)).isEqualTo(1);
+    assertThat(count(registry, EngineMetrics.EARLY_TERMINATIONS, MAIN)).isZero();
+    assertThat(count(registry, EngineMetrics.EARLY_TERMINATIONS, GENERAL_ERROR)).isEqualTo(1);
+  }
+
+  @Test
+  @DisplayName("should count the same events from the transition table")
+  void test1() {
+    var registry = new SimpleMetricsRegistry();
+    EngineMetrics.install(registry);
+
+    var table = TransitionTable.of(TRACKER);
+    var state = TrackerState.of(TRACKER);
+    table.onFailure(table.onFailure(table.onSuccess(state)));
+
+    assertThat(state.terminated()).isTrue();
+    assertThat(count(registry, EngineMetrics.TRANSITIONS, MAIN)).isEqualTo(2);
+    assertThat(count(registry, EngineMetrics.FAILURES, GENERAL_ERROR)).isEqualTo(1);
+    assertThat(count(registry, EngineMetrics.EARLY_TERMINATIONS, GENERAL_ERROR)).isEqualTo(1);
+  }
+
+  @Test
+  @DisplayName("should count the rejected backward jumps")
+  void test2() {
+    var registry = new SimpleMetricsRegistry();
+    EngineMetrics.install(registry);
+
+    TrackerUtils.nextStepOnFailure(BACKWARD_TRACKER);
+    TransitionTable.of(BACKWARD_TRACKER).onFailure(TrackerState.of(BACKWARD_TRACKER));
+
+    assertThat(registry.counters().get(MeterId.of(EngineMetrics.BACKWARD_JUMPS))).contains(2L);
+    assertThat(count(registry, EngineMetrics.EARLY_TERMINATIONS, MAIN)).isEqualTo(2);
+  }
+
+  @Test
+  @DisplayName("should time appendOutcome, and meter nothing once uninstalled")
+  void test3() {
+    var registry = new SimpleMetricsRegistry();
+    EngineMetrics.install(registry);
+    var message = PlatformMessage.newBuilder()
+        .setWorkflowLog(PlatformWorkflow.newBuilder().setTracker(TRACKER))
+        .build();
+    var success = ProcessOutcome.newBuilder().setSuccess(ProcessOutcomeSucces.getDefaultInstance()).build();
+    var failure = ProcessOutcome.newBuilder().setFailure(ProcessOutcomeFailure.getDefaultInstance()).build();
+
+    PlatformMessageUtils.withMessage(message).appendOutcome(success);
+    PlatformMessageUtils.withMessage(message).appendOutcome(failure);
+    EngineMetrics.uninstall();
+    PlatformMessageUtils.withMessage(message).appendOutcome(success);
+
+    var appendOutcome = registry.histograms().get(MeterId.of(EngineMetrics.APPEND_OUTCOME)).get();
+    assertThat(appendOutcome.count()).isEqualTo(2);
+    assertThat(appendOutcome.max()).isPositive();
+    assertThat(count(registry, EngineMetrics.TRANSITIONS, MAIN)).isEqualTo(2);
+  }
+
+}
@@ -0,0 +1,62 @@
+package com.orta.gos.model.metrics;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+@DisplayName("LatencyHistogram")
+class LatencyHistogramTest {
+
+  @Test
+  @DisplayName("should report percentiles within the bucket precision")
+  void test0() {
+    var histogram = new LatencyHistogram();
+    IntStream.rangeClosed(1, 10_000).forEach(histogram::record);
+
+    assertThat(histogram.count()).isEqualTo(10_000);
+    assertThat(histogram.max()).isEqualTo(10_000);
+    assertThat(histogram.mean()).isCloseTo(5_000.5, within(0.001));
+    assertThat(histogram.percentile(50)).isCloseTo(5_000L, within(5_000L / 32));
+    assertThat(histogram.percentile(99)).isCloseTo(9_900L, within(9_900L / 32));
+    assertThat(histogram.percentile(100)).isEqualTo(10_000);
+  }
+
+  @Test
+  @DisplayName("should map every value into a bucket holding it")
+  void test1() {
+    for (var value : new long[] { 0, 1, 31, 32, 33, 63, 64, 65, 1_000, 123_456_789, Long.MAX_VALUE }) {
+      var bucket = LatencyHistogram.bucket(value);
+      assertThat(LatencyHistogram.highest(bucket)).isGreaterThanOrEqualTo(value);
+      assertThat(bucket == 0 || LatencyHistogram.highest(bucket - 1) < value).isTrue();
+    }
+  }
+
+  @Test
+  @DisplayName("should merge the values of another histogram")
+  void test2() {
+    var first = new LatencyHistogram();
+    var second = new LatencyHistogram();
+    first.record(10);
+    second.record(20);
+    second.record(30);
+
+    first.merge(second);
+
+    assertThat(first.summary()).isEqualTo(new LatencyHistogram.Summary(3, 20, 20, 30, 30, 30));
+  }
+
+  @Test
+  @DisplayName("should report an empty histogram as zeros and reject invalid percentiles")
+  void test3() {
+    var histogram = new LatencyHistogram();
+
+    assertThat(histogram.summary()).isEqualTo(new LatencyHistogram.Summary(0, 0, 0, 0, 0, 0));
+    assertThrows(IllegalArgumentException.class, () -> histogram.percentile(101));
+  }
+
+}
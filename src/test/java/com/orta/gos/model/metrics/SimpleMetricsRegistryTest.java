@@ -0,0 +1,35 @@
+package com.orta.gos.model.metrics;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import com.orta.gos.model.metrics.MetricsRegistry.MeterId;
+
+@DisplayName("SimpleMetricsRegistry")
+class SimpleMetricsRegistryTest {
+
+  @Test
+  @DisplayName("should return the same meter for the same name and tags")
+  void test0() {
+    var registry = new SimpleMetricsRegistry();
+
+    registry.counter(MeterId.of("calls", "step", "a")).increment();
+    registry.counter(MeterId.of("calls", "step", "a")).increment();
+    registry.counter(MeterId.of("calls", "step", "b")).increment();
+    registry.histogram(MeterId.of("latency")).record(42);
+
+    assertThat(registry.counters().get(MeterId.of("calls", "step", "a"))).contains(2L);
+    assertThat(registry.counters().get(MeterId.of("calls", "step", "b"))).contains(1L);
+    assertThat(registry.histograms().get(MeterId.of("latency")).map(LatencyHistogram.Summary::max)).contains(42L);
+  }
+
+  @Test
+  @DisplayName("should reject tags that are not key/value pairs")
+  void test1() {
+    assertThrows(IllegalArgumentException.class, () -> MeterId.of("calls", "step"));
+  }
+
+}
@@ -0,0 +1,67 @@
+package com.orta.gos.model.metrics;
+
+import static com.orta.gos.model.rules.BlockType.MAIN;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import com.orta.gos.model.PlatformMessage;
+import com.orta.gos.model.PlatformWorkflow;
+import com.orta.gos.model.rules.BlockType;
+import com.orta.gos.model.rules.Step;
+import com.orta.gos.model.rules.WorkflowRegistry;
+import com.orta.gos.model.utils.CallTiming;
+import com.orta.gos.model.utils.StepTimingUtils;
+
+import io.vavr.collection.HashMap;
+import io.vavr.collection.List;
+import io.vavr.collection.Map;
+
+@DisplayName("StepLatencies")
+class StepLatenciesTest {
+
+  private static final Map<BlockType, List<Step>> RULES = HashMap.of(MAIN, List.of(
+      Step.newBuilder().setName("validate").build(),
+      Step.newBuilder().setName("enrich").build()));
+
+  private static PlatformMessage message(final PlatformWorkflow.Builder workflow, final long validateMicros,
+      final long enrichMicros, final boolean enrichFailed) {
+    StepTimingUtils.append(workflow, 0, new CallTiming(0, validateMicros, 1), false);
+    StepTimingUtils.append(workflow, 1, new CallTiming(validateMicros, validateMicros + enrichMicros, 3),
+        enrichFailed);
+    return PlatformMessage.newBuilder().setId("m").setWorkflowLog(workflow).build();
+  }
+
+  @Test
+  @DisplayName("should aggregate the latencies of every step by name")
+  void test0() {
+    var registry = new WorkflowRegistry();
+    var ref = registry.register("wf", 1, RULES);
+    var latencies = new StepLatencies(registry);
+
+    latencies.recordAll(List.range(1, 101).map(i -> message(PlatformWorkflow.newBuilder().setWorkflowRef(ref),
+        i, 100 * i, i % 10 == 0)));
+
+    var summaries = latencies.summaries();
+    assertThat(summaries.keySet()).containsExactly("enrich", "validate");
+    assertThat(summaries.get("validate").get().latency().max()).isEqualTo(100);
+    assertThat(summaries.get("enrich").get().latency().p50()).isCloseTo(5_000L, within(5_000L / 32));
+    assertThat(summaries.get("enrich").get().failures()).isEqualTo(10);
+    assertThat(summaries.get("enrich").get().attempts()).isEqualTo(300);
+  }
+
+  @Test
+  @DisplayName("should resolve the names of inline steps and skip unknown steps")
+  void test1() {
+    var latencies = new StepLatencies(new WorkflowRegistry());
+    var inline = PlatformWorkflow.newBuilder().addSteps(Step.newBuilder().setName("only"));
+
+    latencies.record(message(inline, 10, 20, false));
+
+    assertThat(latencies.summaries().keySet()).containsExactly("only");
+    assertThat(latencies.histogram("only").map(LatencyHistogram::count)).contains(1L);
+  }
+
+}
@@ -0,0 +1,99 @@
+package com.orta.gos.model.rules;
+
+import static com.orta.gos.model.rules.BlockType.FINALLY;
+import static com.orta.gos.model.rules.BlockType.GENERAL_ERROR;
+import static com.orta.gos.model.rules.BlockType.MAIN;
+import static com.orta.gos.model.rules.BlockType.PARALLEL;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+
+import io.vavr.collection.HashMap;
+import io.vavr.collection.Map;
+
+@DisplayName("BlockBounds")
+class BlockBoundsTest {
+
+  static BlockRange range(final BlockType type, final int start, final int end) {
+    return BlockRange.newBuilder().setType(type).setStartIdx(start).setEndIdx(end).build();
+  }
+
+  static final Map<Integer, BlockRange> RANGES = HashMap.of(
+      MAIN.getNumber(), range(MAIN, 0, 2),
+      GENERAL_ERROR.getNumber(), range(GENERAL_ERROR, 3, 3),
+      FINALLY.getNumber(), range(FINALLY, 4, 5));
+
+  static final Tracker LEGACY = Tracker.newBuilder().putAllRanges(RANGES.toJavaMap()).build();
+
+  static final Tracker COMPACT = BlockBounds.setRanges(Tracker.newBuilder(), RANGES).build();
+
+  @Nested
+  @DisplayName("read")
+  class ReadTest {
+
+    @Test
+    @DisplayName("should read the same bounds from both encodings")
+    void test0() {
+      for (var tracker : java.util.List.of(LEGACY, COMPACT)) {
+        assertThat(BlockBounds.start(tracker, MAIN.getNumber())).isZero();
+        assertThat(BlockBounds.end(tracker, MAIN.getNumber())).isEqualTo(2);
+        assertThat(BlockBounds.start(tracker, FINALLY.getNumber())).isEqualTo(4);
+        assertThat(BlockBounds.end(tracker, FINALLY.getNumber())).isEqualTo(5);
+        assertThat(BlockBounds.hasBlock(tracker, GENERAL_ERROR.getNumber())).isTrue();
+        assertThat(BlockBounds.hasBlock(tracker, PARALLEL.getNumber())).isFalse();
+        assertThat(BlockBounds.range(tracker, GENERAL_ERROR).get()).isEqualTo(range(GENERAL_ERROR, 3, 3));
+        assertThat(BlockBounds.ranges(tracker)).isEqualTo(RANGES);
+      }
+    }
+
+    @Test
+    @DisplayName("should report blocks beyond the array as absent")
+    void test1() {
+      var tracker = BlockBounds.setRanges(Tracker.newBuilder(), HashMap.of(MAIN.getNumber(), range(MAIN, 0, 1)));
+
+      assertThat(tracker.getBlockBoundsList()).containsExactly(0, 0, 1, 2);
+      assertThat(BlockBounds.hasBlock(tracker, FINALLY.getNumber())).isFalse();
+      assertThat(BlockBounds.end(tracker, FINALLY.getNumber())).isEqualTo(-1);
+    }
+  }
+
+  @Nested
+  @DisplayName("write")
+  class WriteTest {
+
+    @Test
+    @DisplayName("should move the ranges map to the compact encoding")
+    void test0() {
+      var compacted = BlockBounds.compact(LEGACY.toBuilder()).build();
+
+      assertThat(compacted).isEqualTo(COMPACT);
+      assertThat(compacted.getRangesCount()).isZero();
+      assertThat(compacted.getSerializedSize()).isLessThan(LEGACY.getSerializedSize());
+    }
+
+    @Test
+    @DisplayName("should keep trackers already compact")
+    void test1() {
+      var builder = COMPACT.toBuilder();
+
+      assertThat(BlockBounds.compact(builder).build()).isEqualTo(COMPACT);
+    }
+
+    @Test
+    @DisplayName("should transition compact trackers as legacy ones")
+    void test2() {
+      var legacy = LEGACY.toBuilder().setCurrentBlock(MAIN).setCurrentStep(2).setTermination(6).build();
+      var compact = COMPACT.toBuilder().setCurrentBlock(MAIN).setCurrentStep(2).setTermination(6).build();
+
+      var fromLegacy = TrackerUtils.nextStepOnFailure(legacy).build();
+      var fromCompact = TrackerUtils.nextStepOnFailure(compact).build();
+
+      assertThat(fromCompact.getCurrentStep()).isEqualTo(fromLegacy.getCurrentStep()).isEqualTo(3);
+      assertThat(fromCompact.getCurrentBlock()).isEqualTo(fromLegacy.getCurrentBlock()).isEqualTo(GENERAL_ERROR);
+      assertThat(TrackerDetails.instance(fromCompact).lastStepInBlock()).isTrue();
+    }
+  }
+
+}
@@ -366,6 +366,75 @@ public class TrackerUtilsTest {
     }
   }
 
+  @Nested
+  @DisplayName("PARALLEL block")
+  public class ParallelTest {
+
+    static final Tracker tracker = Tracker.newBuilder()
+        .setCurrentStep(2)
+        .setCurrentBlock(BlockType.MAIN)
+        .putRanges(BlockType.MAIN_VALUE, range(BlockType.MAIN, 0, 2))
+        .putRanges(BlockType.PARALLEL_VALUE, range(BlockType.PARALLEL, 3, 5))
+        .putRanges(BlockType.GENERAL_ERROR_VALUE, range(BlockType.GENERAL_ERROR, 6, 7))
+        .putRanges(BlockType.FINALLY_VALUE, range(BlockType.FINALLY, 8, 8))
+        .setTermination(9)
+        .build();
+
+    @Test
+    @DisplayName("should dispatch all the PARALLEL steps when completing MAIN")
+    void test0() {
+      var nextTracker = nextStepOnSuccess(tracker).build();
+
+      org.assertj.core.api.Assertions.assertThat(nextTracker.getCurrentBlock()).isEqualTo(BlockType.PARALLEL);
+      org.assertj.core.api.Assertions.assertThat(nextTracker.getCurrentStep()).isEqualTo(3);
+      org.assertj.core.api.Assertions.assertThat(nextTracker.getInFlightStepsList()).containsExactly(3, 4, 5);
+      assertThat(TrackerUtils.runningSteps(nextTracker)).containsExactly(3, 4, 5);
+    }
+
+    @Test
+    @DisplayName("should move to FINALLY once all the PARALLEL steps completed, in any order")
+    void test1() {
+      var dispatched = nextStepOnSuccess(tracker).build();
+
+      var afterFive = nextStepOnSuccess(dispatched, 5).build();
+      org.assertj.core.api.Assertions.assertThat(afterFive.getCurrentBlock()).isEqualTo(BlockType.PARALLEL);
+      org.assertj.core.api.Assertions.assertThat(afterFive.getInFlightStepsList()).containsExactly(3, 4);
+
+      var afterThree = nextStepOnSuccess(afterFive, 3).build();
+      org.assertj.core.api.Assertions.assertThat(afterThree.getCurrentStep()).isEqualTo(4);
+
+      var completed = nextStepOnSuccess(afterThree, 4).build();
+      org.assertj.core.api.Assertions.assertThat(completed.getCurrentBlock()).isEqualTo(BlockType.FINALLY);
+      org.assertj.core.api.Assertions.assertThat(completed.getCurrentStep()).isEqualTo(8);
+      org.assertj.core.api.Assertions.assertThat(completed.getInFlightStepsList()).isEmpty();
+    }
+
+    @Test
+    @DisplayName("should move to error block on the first failed PARALLEL step and ignore the others")
+    void test2() {
+      var dispatched = nextStepOnSuccess(tracker).build();
+
+      var failed = nextStepOnFailure(dispatched, 4).build();
+      org.assertj.core.api.Assertions.assertThat(failed.getCurrentBlock()).isEqualTo(BlockType.GENERAL_ERROR);
+      org.assertj.core.api.Assertions.assertThat(failed.getCurrentStep()).isEqualTo(6);
+      org.assertj.core.api.Assertions.assertThat(failed.getErrorRaisedStep()).isEqualTo(4);
+      org.assertj.core.api.Assertions.assertThat(failed.getInFlightStepsList()).isEmpty();
+
+      org.assertj.core.api.Assertions.assertThat(nextStepOnSuccess(failed, 3).build()).isEqualTo(failed);
+      org.assertj.core.api.Assertions.assertThat(nextStepOnFailure(failed, 5).build()).isEqualTo(failed);
+    }
+
+    @Test
+    @DisplayName("should run the rest of the block when a PARALLEL tracker has no in-flight steps")
+    void test3() {
+      var legacy = tracker.toBuilder().setCurrentBlock(BlockType.PARALLEL).setCurrentStep(4).build();
+
+      assertThat(TrackerUtils.runningSteps(legacy)).containsExactly(4, 5);
+      org.assertj.core.api.Assertions.assertThat(nextStepOnSuccess(legacy, 5).build().getInFlightStepsList())
+          .containsExactly(4);
+    }
+  }
+
   private static final BlockRange range(BlockType type, Integer start, Integer end) {
     return BlockRange.newBuilder()
         .setType(type)
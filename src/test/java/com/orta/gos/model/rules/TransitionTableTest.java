@@ -0,0 +1,310 @@
+package com.orta.gos.model.rules;
+
+import static com.orta.gos.model.rules.BlockType.FINALLY;
+import static com.orta.gos.model.rules.BlockType.FINALLY_VALUE;
+import static com.orta.gos.model.rules.BlockType.GENERAL_ERROR;
+import static com.orta.gos.model.rules.BlockType.GENERAL_ERROR_VALUE;
+import static com.orta.gos.model.rules.BlockType.MAIN;
+import static com.orta.gos.model.rules.BlockType.MAIN_VALUE;
+import static com.orta.gos.model.rules.BlockType.PARALLEL;
+import static com.orta.gos.model.rules.BlockType.PARALLEL_VALUE;
+import static com.orta.gos.model.rules.BlockType.TYPE_NA;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+
+import io.vavr.collection.HashMap;
+import io.vavr.collection.List;
+
+@DisplayName("TransitionTable")
+class TransitionTableTest {
+
+  static final Tracker fullTracker = Tracker.newBuilder()
+      .setCurrentStep(0)
+      .setCurrentBlock(MAIN)
+      .putRanges(MAIN_VALUE, range(MAIN, 0, 4))
+      .putRanges(GENERAL_ERROR_VALUE, range(GENERAL_ERROR, 5, 7))
+      .putRanges(FINALLY_VALUE, range(FINALLY, 8, 9))
+      .setTermination(10)
+      .build();
+
+  static final Tracker mainOnlyTracker = Tracker.newBuilder()
+      .setCurrentStep(0)
+      .setCurrentBlock(MAIN)
+      .putRanges(MAIN_VALUE, range(MAIN, 0, 4))
+      .setTermination(5)
+      .build();
+
+  static final Tracker noFinallyTracker = Tracker.newBuilder()
+      .setCurrentStep(0)
+      .setCurrentBlock(MAIN)
+      .putRanges(MAIN_VALUE, range(MAIN, 0, 4))
+      .putRanges(GENERAL_ERROR_VALUE, range(GENERAL_ERROR, 5, 7))
+      .setTermination(8)
+      .build();
+
+  static final Tracker noErrorTracker = Tracker.newBuilder()
+      .setCurrentStep(0)
+      .setCurrentBlock(MAIN)
+      .putRanges(MAIN_VALUE, range(MAIN, 0, 4))
+      .putRanges(FINALLY_VALUE, range(FINALLY, 5, 6))
+      .setTermination(7)
+      .build();
+
+  static final Tracker parallelTracker = Tracker.newBuilder()
+      .setCurrentStep(0)
+      .setCurrentBlock(MAIN)
+      .putRanges(MAIN_VALUE, range(MAIN, 0, 2))
+      .putRanges(PARALLEL_VALUE, range(PARALLEL, 3, 5))
+      .putRanges(GENERAL_ERROR_VALUE, range(GENERAL_ERROR, 6, 7))
+      .putRanges(FINALLY_VALUE, range(FINALLY, 8, 8))
+      .setTermination(9)
+      .build();
+
+  /**
+   * Every PARALLEL position of the parallel tracker: each non-empty subset of the block
+   * steps in flight, positioned on its first step.
+   */
+  static List<Tracker> parallelPositions() {
+    return List.range(1, 1 << 3)
+        .map(mask -> List.range(0, 3).filter(bit -> (mask & (1 << bit)) != 0).map(bit -> 3 + bit))
+        .map(inFlight -> parallelTracker.toBuilder()
+            .setCurrentBlock(PARALLEL)
+            .setCurrentStep(inFlight.head())
+            .addAllInFlightSteps(inFlight)
+            .build());
+  }
+
+  /**
+   * Every (block, step, error) position of the provided base tracker, including steps
+   * outside of the current block.
+   */
+  static List<Tracker> positions(final Tracker base) {
+    return List.of(MAIN, PARALLEL, GENERAL_ERROR, FINALLY)
+        .filter(block -> base.containsRanges(block.getNumber()))
+        .flatMap(block -> List.range(0, base.getTermination())
+            .flatMap(step -> List.of(false, true)
+                .map(errorRaised -> base.toBuilder()
+                    .setCurrentBlock(block)
+                    .setCurrentStep(step)
+                    .setErrorRaised(errorRaised)
+                    .setErrorRaisedStep(errorRaised ? 1 : 0)
+                    .build())));
+  }
+
+  @Nested
+  @DisplayName("onSuccess")
+  class OnSuccessTest {
+
+    @Test
+    @DisplayName("should match TrackerUtils.nextStepOnSuccess for every position")
+    void test0() {
+      List.of(fullTracker, mainOnlyTracker, noFinallyTracker, noErrorTracker, parallelTracker)
+          .flatMap(TransitionTableTest::positions)
+          .forEach(tracker -> {
+            var table = TransitionTable.of(tracker);
+            var state = table.onSuccess(TrackerState.of(tracker));
+
+            assertThat(state.toBuilder(tracker).build())
+                .as("onSuccess of %s", tracker)
+                .isEqualTo(TrackerUtils.nextStepOnSuccess(tracker).build());
+          });
+    }
+
+    @Test
+    @DisplayName("should reuse the same state instance")
+    void test1() {
+      var table = TransitionTable.of(fullTracker);
+      var state = TrackerState.of(fullTracker);
+
+      assertThat(table.onSuccess(state)).isSameAs(state);
+      assertThat(state.currentStep()).isEqualTo(1);
+      assertThat(state.currentBlock()).isEqualTo(MAIN);
+    }
+
+    @Test
+    @DisplayName("should reject a state whose block has no range, as TrackerUtils.nextStepOnSuccess")
+    void test2() {
+      var tracker = mainOnlyTracker.toBuilder().setCurrentBlock(FINALLY).setCurrentStep(4).build();
+      var table = TransitionTable.of(tracker);
+
+      assertThrows(IllegalStateException.class, () -> table.onSuccess(TrackerState.of(tracker)));
+      assertThrows(IllegalStateException.class, () -> TrackerUtils.nextStepOnSuccess(tracker));
+    }
+
+    @Test
+    @DisplayName("should match TrackerUtils.nextStepOnSuccess for every completed step of a PARALLEL block")
+    void test3() {
+      var table = TransitionTable.of(parallelTracker);
+      parallelPositions().forEach(tracker -> List.range(0, 9).forEach(completed -> {
+        var state = table.onSuccess(TrackerState.of(tracker), completed);
+
+        assertThat(state.toBuilder(tracker).build())
+            .as("onSuccess of step %d of %s", completed, tracker)
+            .isEqualTo(TrackerUtils.nextStepOnSuccess(tracker, completed).build());
+      }));
+    }
+
+    @Test
+    @DisplayName("should leave the PARALLEL block only once all its steps completed")
+    void test4() {
+      var table = TransitionTable.of(parallelTracker);
+      var state = TrackerState.of(parallelTracker.toBuilder().setCurrentStep(2));
+
+      table.onSuccess(state);
+      assertThat(state.currentBlock()).isEqualTo(PARALLEL);
+      assertThat(List.range(3, 6).filter(state::inFlight)).containsExactly(3, 4, 5);
+
+      table.onSuccess(state, 4);
+      table.onSuccess(state, 4);
+      table.onSuccess(state, 3);
+      assertThat(state.currentBlock()).isEqualTo(PARALLEL);
+      assertThat(state.currentStep()).isEqualTo(5);
+
+      table.onSuccess(state, 5);
+      assertThat(state.currentBlock()).isEqualTo(FINALLY);
+      assertThat(state.currentStep()).isEqualTo(8);
+      assertThat(state.hasInFlight()).isFalse();
+    }
+  }
+
+  @Nested
+  @DisplayName("onFailure")
+  class OnFailureTest {
+
+    @Test
+    @DisplayName("should match TrackerUtils.nextStepOnFailure for every position")
+    void test0() {
+      List.of(fullTracker, mainOnlyTracker, noFinallyTracker, noErrorTracker, parallelTracker)
+          .flatMap(TransitionTableTest::positions)
+          .forEach(tracker -> {
+            var table = TransitionTable.of(tracker);
+            var state = table.onFailure(TrackerState.of(tracker));
+
+            assertThat(state.toBuilder(tracker).build())
+                .as("onFailure of %s", tracker)
+                .isEqualTo(TrackerUtils.nextStepOnFailure(tracker).build());
+          });
+    }
+
+    @Test
+    @DisplayName("should terminate when failing inside FINALLY")
+    void test1() {
+      var state = TrackerState.of(fullTracker.toBuilder().setCurrentBlock(FINALLY).setCurrentStep(8));
+
+      TransitionTable.of(fullTracker).onFailure(state);
+
+      assertThat(state.terminated()).isTrue();
+      assertThat(state.currentStep()).isEqualTo(10);
+      assertThat(state.errorRaised()).isTrue();
+      assertThat(state.errorRaisedStep()).isEqualTo(8);
+    }
+
+    @Test
+    @DisplayName("should match TrackerUtils.nextStepOnFailure for every failed step of a PARALLEL block")
+    void test2() {
+      var table = TransitionTable.of(parallelTracker);
+      parallelPositions().forEach(tracker -> List.range(0, 9).forEach(failed -> {
+        var state = table.onFailure(TrackerState.of(tracker), failed);
+
+        assertThat(state.toBuilder(tracker).build())
+            .as("onFailure of step %d of %s", failed, tracker)
+            .isEqualTo(TrackerUtils.nextStepOnFailure(tracker, failed).build());
+      }));
+    }
+  }
+
+  @Nested
+  @DisplayName("parity with TrackerUtils")
+  class ParityTest {
+
+    /**
+     * Applies every success/failure outcome sequence from the tracker on, comparing both
+     * engines after each outcome, and one more outcome once the workflow terminated.
+     */
+    void walk(final TransitionTable table, final Tracker tracker) {
+      var step = tracker.getCurrentStep();
+      List.of(true, false).forEach(success -> {
+        var expected = (success ? TrackerUtils.nextStepOnSuccess(tracker, step)
+            : TrackerUtils.nextStepOnFailure(tracker, step)).build();
+        var state = TrackerState.of(tracker);
+        if (success) {
+          table.onSuccess(state, step);
+        } else {
+          table.onFailure(state, step);
+        }
+
+        assertThat(state.toBuilder(tracker).build())
+            .as("%s of step %d of %s", success ? "success" : "failure", step, tracker)
+            .isEqualTo(expected);
+        if (tracker.getCurrentBlock() == TYPE_NA) {
+          assertThat(expected).isEqualTo(tracker);
+        } else {
+          walk(table, expected);
+        }
+      });
+    }
+
+    @Test
+    @DisplayName("should match TrackerUtils for every outcome sequence until termination")
+    void test0() {
+      List.of(fullTracker, mainOnlyTracker, noFinallyTracker, noErrorTracker, parallelTracker)
+          .forEach(tracker -> walk(TransitionTable.of(tracker), tracker));
+    }
+
+    @Test
+    @DisplayName("should ignore the outcomes of any step once the workflow terminated")
+    void test1() {
+      var terminated = fullTracker.toBuilder()
+          .setCurrentBlock(TYPE_NA)
+          .setCurrentStep(10)
+          .setErrorRaised(true)
+          .setErrorRaisedStep(3)
+          .build();
+      var table = TransitionTable.of(terminated);
+
+      List.range(0, 11).forEach(step -> {
+        assertThat(TrackerUtils.nextStepOnSuccess(terminated, step).build()).isEqualTo(terminated);
+        assertThat(TrackerUtils.nextStepOnFailure(terminated, step).build()).isEqualTo(terminated);
+        assertThat(table.onSuccess(TrackerState.of(terminated), step).toBuilder(terminated).build())
+            .isEqualTo(terminated);
+        assertThat(table.onFailure(TrackerState.of(terminated), step).toBuilder(terminated).build())
+            .isEqualTo(terminated);
+      });
+    }
+  }
+
+  @Nested
+  @DisplayName("WorkflowPlan.transitions")
+  class PlanTransitionsTest {
+
+    @Test
+    @DisplayName("should walk a compiled plan until termination")
+    void test0() {
+      var step = Step.newBuilder().setName("step").build();
+      var plan = WorkflowPlan.compile(HashMap.of(
+          MAIN, List.of(step, step),
+          GENERAL_ERROR, List.of(step),
+          FINALLY, List.of(step)));
+      var table = plan.transitions();
+      var state = TrackerState.of(plan.initialTracker());
+
+      table.onSuccess(state);
+      assertThat(state.currentStep()).isEqualTo(1);
+      table.onSuccess(state);
+      assertThat(state.currentStep()).isEqualTo(3);
+      assertThat(state.currentBlock()).isEqualTo(FINALLY);
+      table.onSuccess(state);
+      assertThat(state.terminated()).isTrue();
+      assertThat(state.currentStep()).isEqualTo(plan.termination());
+    }
+  }
+
+  private static BlockRange range(BlockType type, int start, int end) {
+    return BlockRange.newBuilder().setType(type).setStartIdx(start).setEndIdx(end).build();
+  }
+
+}
@@ -0,0 +1,74 @@
+package com.orta.gos.model.rules;
+
+import static com.orta.gos.model.rules.BlockType.MAIN;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import io.vavr.collection.HashMap;
+import io.vavr.collection.List;
+import io.vavr.collection.Map;
+
+@DisplayName("WorkflowPlanCache")
+class WorkflowPlanCacheTest {
+
+  static Map<BlockType, List<Step>> rules(final String... names) {
+    return HashMap.of(MAIN, List.of(names).map(name -> Step.newBuilder().setName(name).build()));
+  }
+
+  @Test
+  @DisplayName("should compile once per workflow id")
+  void test0() {
+    var cache = new WorkflowPlanCache(4);
+
+    var first = cache.plan("wf-1", rules("a", "b"));
+    var second = cache.plan("wf-1", rules("a", "b"));
+
+    assertThat(second).isSameAs(first);
+    assertThat(cache.stats().hits()).isEqualTo(1);
+    assertThat(cache.stats().misses()).isEqualTo(1);
+  }
+
+  @Test
+  @DisplayName("should share plans of rule sets with identical content")
+  void test1() {
+    var cache = new WorkflowPlanCache(4);
+
+    var first = cache.plan(rules("a", "b"));
+    var second = cache.plan(rules("a", "b"));
+    var other = cache.plan(rules("a", "c"));
+
+    assertThat(second).isSameAs(first);
+    assertThat(other).isNotSameAs(first);
+    assertThat(cache.stats().size()).isEqualTo(2);
+  }
+
+  @Test
+  @DisplayName("should evict the least recently used plan when full")
+  void test2() {
+    var cache = new WorkflowPlanCache(2);
+
+    cache.plan("wf-1", rules("a"));
+    cache.plan("wf-2", rules("b"));
+    cache.plan("wf-1", rules("a"));
+    cache.plan("wf-3", rules("c"));
+
+    assertThat(cache.get("wf-1").isDefined()).isTrue();
+    assertThat(cache.get("wf-2").isEmpty()).isTrue();
+    assertThat(cache.get("wf-3").isDefined()).isTrue();
+    assertThat(cache.stats().evictions()).isEqualTo(1);
+  }
+
+  @Test
+  @DisplayName("should recompile after invalidation")
+  void test3() {
+    var cache = new WorkflowPlanCache(2);
+
+    var first = cache.plan("wf-1", rules("a"));
+    cache.invalidate("wf-1");
+
+    assertThat(cache.plan("wf-1", rules("a"))).isNotSameAs(first);
+  }
+
+}
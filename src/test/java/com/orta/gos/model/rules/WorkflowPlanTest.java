@@ -0,0 +1,157 @@
+package com.orta.gos.model.rules;
+
+import static com.orta.gos.model.rules.BlockType.FINALLY;
+import static com.orta.gos.model.rules.BlockType.GENERAL_ERROR;
+import static com.orta.gos.model.rules.BlockType.MAIN;
+import static com.orta.gos.model.rules.BlockType.TYPE_NA;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+
+import io.vavr.collection.HashMap;
+import io.vavr.collection.LinkedHashMap;
+import io.vavr.collection.List;
+import io.vavr.collection.Map;
+
+@DisplayName("WorkflowPlan")
+class WorkflowPlanTest {
+
+  static final Step stepM1 = Step.newBuilder().setName("step-m-1").build();
+  static final Step stepM2 = Step.newBuilder().setName("step-m-2").build();
+  static final Step stepM3 = Step.newBuilder().setName("step-m-3").build();
+  static final Step stepE1 = Step.newBuilder().setName("step-e-1").build();
+  static final Step stepF1 = Step.newBuilder().setName("step-f-1").build();
+  static final Step stepF2 = Step.newBuilder().setName("step-f-2").build();
+
+  static final Map<BlockType, List<Step>> fullRules = HashMap.of(
+      MAIN, List.of(stepM1, stepM2, stepM3),
+      GENERAL_ERROR, List.of(stepE1),
+      FINALLY, List.of(stepF1, stepF2));
+
+  @Nested
+  @DisplayName("compile")
+  class CompileTest {
+
+    @Test
+    @DisplayName("should order steps the same as TrackerUtils.orderedSteps")
+    void test0() {
+      var plan = WorkflowPlan.compile(fullRules);
+
+      assertThat(plan.steps()).containsExactlyElementsOf(TrackerUtils.orderedSteps(fullRules));
+      assertThat(plan.size()).isEqualTo(6);
+      assertThat(plan.termination()).isEqualTo(6);
+    }
+
+    @Test
+    @DisplayName("should compute the same ranges as TrackerUtils.blockRanges")
+    void test1() {
+      var plan = WorkflowPlan.compile(fullRules);
+      var steps = TrackerUtils.orderedSteps(fullRules);
+
+      assertThat(plan.ranges()).isEqualTo(TrackerUtils.blockRanges(0, steps));
+      assertThat(plan.ranges(6)).isEqualTo(TrackerUtils.blockRanges(6, steps));
+    }
+
+    @Test
+    @DisplayName("should expose block boundaries by block type")
+    void test2() {
+      var plan = WorkflowPlan.compile(HashMap.of(MAIN, List.of(stepM1, stepM2), FINALLY, List.of(stepF1)));
+
+      assertThat(plan.blockStart(MAIN)).isEqualTo(0);
+      assertThat(plan.blockEnd(MAIN)).isEqualTo(1);
+      assertThat(plan.hasBlock(GENERAL_ERROR)).isFalse();
+      assertThat(plan.blockStart(GENERAL_ERROR)).isEqualTo(-1);
+      assertThat(plan.blockStart(FINALLY)).isEqualTo(2);
+      assertThat(plan.blockEnd(FINALLY)).isEqualTo(2);
+    }
+
+    @Test
+    @DisplayName("should handle an empty rule set")
+    void test3() {
+      var plan = WorkflowPlan.compile(HashMap.empty());
+
+      assertThat(plan.size()).isZero();
+      assertThat(plan.ranges()).isEmpty();
+      assertThat(plan.firstBlock()).isEqualTo(TYPE_NA);
+    }
+  }
+
+  @Nested
+  @DisplayName("initialTracker")
+  class InitialTrackerTest {
+
+    @Test
+    @DisplayName("should point to the first step of the first block")
+    void test0() {
+      var tracker = WorkflowPlan.compile(fullRules).initialTracker().build();
+
+      assertThat(tracker.getCurrentStep()).isZero();
+      assertThat(tracker.getCurrentBlock()).isEqualTo(MAIN);
+      assertThat(tracker.getTermination()).isEqualTo(6);
+      assertThat(BlockBounds.ranges(tracker).keySet().toJavaSet())
+          .containsOnly(MAIN.getNumber(), GENERAL_ERROR.getNumber(), FINALLY.getNumber());
+    }
+
+    @Test
+    @DisplayName("should start from FINALLY when there is no MAIN block")
+    void test1() {
+      var tracker = WorkflowPlan.compile(HashMap.of(FINALLY, List.of(stepF1))).initialTracker().build();
+
+      assertThat(tracker.getCurrentStep()).isZero();
+      assertThat(tracker.getCurrentBlock()).isEqualTo(FINALLY);
+    }
+
+    @Test
+    @DisplayName("should dispatch all the steps when starting from a PARALLEL block")
+    void test2() {
+      var plan = WorkflowPlan.compile(HashMap.of(
+          BlockType.PARALLEL, List.of(stepM1, stepM2),
+          FINALLY, List.of(stepF1)));
+      var tracker = plan.initialTracker().build();
+
+      assertThat(tracker.getCurrentStep()).isZero();
+      assertThat(tracker.getCurrentBlock()).isEqualTo(BlockType.PARALLEL);
+      assertThat(tracker.getInFlightStepsList()).containsExactly(0, 1);
+      assertThat(plan.step(2).getName()).isEqualTo(stepF1.getName());
+    }
+  }
+
+  @Nested
+  @DisplayName("contentHash")
+  class ContentHashTest {
+
+    @Test
+    @DisplayName("should not depend on the map iteration order")
+    void test0() {
+      var reversed = LinkedHashMap.of(
+          FINALLY, List.of(stepF1, stepF2),
+          GENERAL_ERROR, List.of(stepE1),
+          MAIN, List.of(stepM1, stepM2, stepM3));
+
+      assertThat(WorkflowPlan.contentHash(reversed)).isEqualTo(WorkflowPlan.contentHash(fullRules));
+    }
+
+    @Test
+    @DisplayName("should differ when a step changes")
+    void test1() {
+      var changed = fullRules.put(MAIN, List.of(stepM1, stepM2, stepM3.toBuilder().setAddress("other").build()));
+
+      assertThat(WorkflowPlan.contentHash(changed)).isNotEqualTo(WorkflowPlan.contentHash(fullRules));
+    }
+
+    @Test
+    @DisplayName("should differ when the same fields are split across steps or blocks")
+    void test2() {
+      var split = HashMap.of(MAIN, List.of(Step.newBuilder().setName("a").build(),
+          Step.newBuilder().setAddress("x").build()));
+      var joined = HashMap.of(MAIN, List.of(Step.newBuilder().setName("a").setAddress("x").build()));
+      var moved = HashMap.of(MAIN, List.of(Step.newBuilder().setName("a").build()),
+          FINALLY, List.of(Step.newBuilder().setAddress("x").build()));
+
+      assertThat(List.of(split, joined, moved).map(WorkflowPlan::contentHash).distinct()).hasSize(3);
+    }
+  }
+
+}
@@ -0,0 +1,108 @@
+package com.orta.gos.model.rules;
+
+import static com.orta.gos.model.rules.BlockType.MAIN;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.vavr.api.VavrAssertions.assertThat;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import io.vavr.collection.HashMap;
+import io.vavr.collection.List;
+import io.vavr.collection.Map;
+import io.vavr.control.Option;
+
+@DisplayName("WorkflowRegistry")
+class WorkflowRegistryTest {
+
+  static Map<BlockType, List<Step>> rules(final String... names) {
+    return HashMap.of(MAIN, List.of(names).map(name -> Step.newBuilder().setName(name).build()));
+  }
+
+  @Test
+  @DisplayName("should resolve a registered reference to its compiled plan")
+  void test0() {
+    var registry = new WorkflowRegistry();
+    var ref = registry.register("wf", 1, rules("a", "b"));
+
+    var plan = registry.resolve(ref).get();
+
+    assertThat(ref.getHash()).isEqualTo(WorkflowPlan.contentHash(rules("a", "b")));
+    assertThat(plan.steps().map(Step::getName)).containsExactly("a", "b");
+    assertThat(registry.resolve(ref).get()).isSameAs(plan);
+  }
+
+  @Test
+  @DisplayName("should reject a reference with another content hash")
+  void test1() {
+    var registry = new WorkflowRegistry();
+    var ref = registry.register("wf", 1, rules("a", "b"));
+    registry.register("wf", 1, rules("a", "c"));
+
+    assertThat(registry.resolve(ref)).isLeft();
+    assertThat(registry.resolve(ref.toBuilder().clearHash().build()).get().steps().map(Step::getName))
+        .containsExactly("a", "c");
+  }
+
+  @Test
+  @DisplayName("should load unknown definitions and recompile evicted plans")
+  void test2() {
+    var registry = new WorkflowRegistry(1, ref -> Option.of(rules(ref.getId())));
+    var first = WorkflowRef.newBuilder().setId("x").setVersion(1).build();
+    var second = WorkflowRef.newBuilder().setId("y").setVersion(1).build();
+
+    var plan = registry.resolve(first).get();
+    registry.resolve(second);
+
+    assertThat(registry.resolve(first).get()).isNotSameAs(plan);
+    assertThat(registry.stats().evictions()).isEqualTo(2);
+  }
+
+  @Test
+  @DisplayName("should cache the plans of every content of a definition apart")
+  void test4() {
+    var registry = new WorkflowRegistry();
+    var ab = registry.register("wf", 1, rules("a", "b"));
+    var abPlan = registry.resolve(ab).get();
+    var ac = registry.register("wf", 1, rules("a", "c"));
+
+    assertThat(registry.resolve(ac).get()).isNotSameAs(abPlan);
+    assertThat(registry.resolve(ac).get().steps().map(Step::getName)).containsExactly("a", "c");
+    registry.register("wf", 1, rules("a", "b"));
+    assertThat(registry.resolve(ab).get().steps().map(Step::getName)).containsExactly("a", "b");
+  }
+
+  @Test
+  @DisplayName("should fetch evicted loaded definitions again and keep the registered ones")
+  void test5() {
+    var fetched = new AtomicInteger();
+    var registry = new WorkflowRegistry(8, 1, ref -> {
+      fetched.incrementAndGet();
+      return Option.of(rules(ref.getId()));
+    });
+    var pinned = registry.register("wf", 1, rules("a", "b"));
+    var first = WorkflowRef.newBuilder().setId("x").setVersion(1).build();
+    var second = WorkflowRef.newBuilder().setId("y").setVersion(1).build();
+
+    registry.resolve(first);
+    registry.resolve(first);
+    assertThat(fetched).hasValue(1);
+
+    registry.resolve(second);
+    registry.resolve(first);
+    assertThat(fetched).hasValue(3);
+
+    assertThat(registry.resolve(pinned)).isRight();
+    assertThat(fetched).hasValue(3);
+  }
+
+  @Test
+  @DisplayName("should fail on an unknown reference")
+  void test3() {
+    assertThat(new WorkflowRegistry().resolve(WorkflowRef.newBuilder().setId("wf").build()))
+        .containsOnLeft("Unknown workflow wf@0");
+  }
+
+}
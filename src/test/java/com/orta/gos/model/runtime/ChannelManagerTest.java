@@ -0,0 +1,220 @@
+package com.orta.gos.model.runtime;
+
+import static com.orta.gos.model.rules.BlockType.FINALLY;
+import static com.orta.gos.model.rules.BlockType.GENERAL_ERROR;
+import static com.orta.gos.model.rules.BlockType.MAIN;
+import static com.orta.gos.model.rules.BlockType.PARALLEL;
+import static com.orta.gos.model.runtime.WorkflowDriverTest.message;
+import static com.orta.gos.model.runtime.WorkflowDriverTest.parallelMessage;
+import static com.orta.gos.model.runtime.WorkflowDriverTest.path;
+import static com.orta.gos.model.runtime.WorkflowDriverTest.visit;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+
+import com.orta.gos.model.PlatformMessage;
+import com.orta.gos.model.PlatformWorkflow;
+import com.orta.gos.model.ProcessGrpc;
+import com.orta.gos.model.ProcessInput;
+import com.orta.gos.model.ProcessOutcome;
+import com.orta.gos.model.rules.WorkflowPlan;
+import com.orta.gos.model.rules.WorkflowRegistry;
+
+import io.grpc.ManagedChannel;
+import io.grpc.ManagedChannelBuilder;
+import io.grpc.ServerBuilder;
+import io.grpc.stub.StreamObserver;
+import io.vavr.collection.HashMap;
+import io.vavr.collection.List;
+
+@DisplayName("ChannelManager")
+class ChannelManagerTest {
+
+  static ManagedChannel plaintext(final String address) {
+    return ManagedChannelBuilder.forTarget(address).usePlaintext().build();
+  }
+
+  static final WorkflowRegistry REGISTRY = new WorkflowRegistry();
+
+  @Nested
+  @DisplayName("channel")
+  class ChannelTest {
+
+    @Test
+    @DisplayName("should reuse the pool of an address round robin")
+    void test0() {
+      try (var channels = new ChannelManager(new ChannelManager.Options(8, 2, Duration.ofMinutes(1)),
+          ChannelManagerTest::plaintext)) {
+        var first = channels.channel("localhost:1");
+        var second = channels.channel("localhost:1");
+
+        assertThat(second).isNotSameAs(first);
+        assertThat(channels.channel("localhost:1")).isSameAs(first);
+        assertThat(channels.stats()).isEqualTo(new ChannelManager.Stats(2, 1, 0, 1));
+      }
+    }
+
+    @Test
+    @DisplayName("should shut down the least recently used address above the limit")
+    void test1() {
+      try (var channels = new ChannelManager(new ChannelManager.Options(2, 1, Duration.ofMinutes(1)),
+          ChannelManagerTest::plaintext)) {
+        var a = channels.channel("localhost:1");
+        var b = channels.channel("localhost:2");
+        channels.channel("localhost:1");
+        channels.channel("localhost:3");
+
+        assertThat(b.isShutdown()).isTrue();
+        assertThat(a.isShutdown()).isFalse();
+        assertThat(channels.stats().evictions()).isEqualTo(1);
+      }
+    }
+
+    @Test
+    @DisplayName("should shut down the addresses idle for longer than the timeout")
+    void test2() {
+      var clock = new AtomicLong();
+      try (var channels = new ChannelManager(new ChannelManager.Options(8, 1, Duration.ofSeconds(10)),
+          ChannelManagerTest::plaintext, clock::get)) {
+        var idle = channels.channel("localhost:1");
+        clock.set(Duration.ofSeconds(6).toNanos());
+        var used = channels.channel("localhost:2");
+        clock.set(Duration.ofSeconds(12).toNanos());
+
+        channels.channel("localhost:2");
+
+        assertThat(idle.isShutdown()).isTrue();
+        assertThat(used.isShutdown()).isFalse();
+        assertThat(channels.stats().size()).isEqualTo(1);
+      }
+    }
+  }
+
+  @Nested
+  @DisplayName("warmUp")
+  class WarmUpTest {
+
+    @Test
+    @DisplayName("should not count a warm up as a use of the address")
+    void test0() {
+      try (var channels = new ChannelManager(new ChannelManager.Options(2, 1, Duration.ofMinutes(1)),
+          ChannelManagerTest::plaintext)) {
+        var a = channels.channel("localhost:1");
+        var b = channels.channel("localhost:2");
+        channels.warmUp("localhost:1");
+        channels.channel("localhost:3");
+
+        assertThat(a.isShutdown()).isTrue();
+        assertThat(b.isShutdown()).isFalse();
+        assertThat(channels.stats()).isEqualTo(new ChannelManager.Stats(0, 3, 1, 2));
+      }
+    }
+
+    @Test
+    @DisplayName("should not reset the idle clock of an address")
+    void test1() {
+      var clock = new AtomicLong();
+      try (var channels = new ChannelManager(new ChannelManager.Options(8, 1, Duration.ofSeconds(10)),
+          ChannelManagerTest::plaintext, clock::get)) {
+        var idle = channels.channel("localhost:1");
+        clock.set(Duration.ofSeconds(6).toNanos());
+        channels.warmUp("localhost:1");
+        channels.warmUp("localhost:2");
+        clock.set(Duration.ofSeconds(12).toNanos());
+
+        var warmed = channels.channel("localhost:2");
+
+        assertThat(idle.isShutdown()).isTrue();
+        assertThat(warmed.isShutdown()).isFalse();
+        assertThat(channels.stats()).isEqualTo(new ChannelManager.Stats(1, 1, 1, 1));
+      }
+    }
+  }
+
+  @Nested
+  @DisplayName("warmUpNext")
+  class WarmUpNextTest {
+
+    @Test
+    @DisplayName("should warm up the address of the next step")
+    void test0() {
+      try (var channels = new ChannelManager(ChannelManager.Options.DEFAULT, ChannelManagerTest::plaintext)) {
+        assertThat(channels.warmUpNext(message("m1"), REGISTRY)).containsExactly("enrich");
+        assertThat(channels.stats().size()).isEqualTo(1);
+      }
+    }
+
+    @Test
+    @DisplayName("should read ahead across blocks and PARALLEL steps")
+    void test1() {
+      try (var channels = new ChannelManager(ChannelManager.Options.DEFAULT, ChannelManagerTest::plaintext)) {
+        var message = parallelMessage("m1");
+        assertThat(channels.warmUpNext(message, REGISTRY)).containsExactly("fetch-a", "fetch-b", "fetch-c");
+
+        var parallel = advance(message, 3);
+        assertThat(channels.warmUpNext(parallel, REGISTRY)).containsExactly("audit");
+
+        var last = advance(parallel, 5);
+        assertThat(channels.warmUpNext(last, REGISTRY)).isEmpty();
+      }
+    }
+
+    private static PlatformMessage advance(final PlatformMessage message, final int step) {
+      var tracker = message.getWorkflowLog().getTracker().toBuilder().clearInFlightSteps().setCurrentStep(step);
+      if (step == 3) {
+        tracker.setCurrentBlock(PARALLEL).addAllInFlightSteps(List.of(3, 4, 5));
+      } else {
+        tracker.setCurrentBlock(FINALLY);
+      }
+      return message.toBuilder()
+          .setWorkflowLog(message.getWorkflowLog().toBuilder().setTracker(tracker))
+          .build();
+    }
+  }
+
+  @Nested
+  @DisplayName("GrpcStepTransport")
+  class GrpcStepTransportTest {
+
+    @Test
+    @DisplayName("should run a workflow against gRPC Process services")
+    void test0() throws IOException {
+      var service = new ProcessGrpc.ProcessImplBase() {
+        @Override
+        public void process(final ProcessInput input, final StreamObserver<ProcessOutcome> observer) {
+          observer.onNext(visit("remote", input));
+          observer.onCompleted();
+        }
+      };
+      var server = ServerBuilder.forPort(0).addService(service).build().start();
+      var address = "localhost:" + server.getPort();
+
+      try (var channels = new ChannelManager(ChannelManager.Options.DEFAULT, ChannelManagerTest::plaintext);
+          var driver = new WorkflowDriver(new GrpcStepTransport(channels, Duration.ofSeconds(5)),
+              WorkflowDriver.Options.DEFAULT)) {
+        var step = WorkflowDriverTest.step("remote").toBuilder().setAddress(address).build();
+        var plan = WorkflowPlan.compile(HashMap.of(
+            MAIN, List.of(step, step), GENERAL_ERROR, List.of(step)));
+        var message = message("m1").toBuilder()
+            .setWorkflowLog(PlatformWorkflow.newBuilder()
+                .addAllSteps(plan.steps())
+                .setTracker(plan.initialTracker()))
+            .build();
+
+        var result = driver.submit(message).join();
+
+        assertThat(path(result)).isEqualTo("m1>remote>remote");
+        assertThat(channels.stats()).isEqualTo(new ChannelManager.Stats(2, 0, 0, 1));
+      } finally {
+        server.shutdownNow();
+      }
+    }
+  }
+
+}
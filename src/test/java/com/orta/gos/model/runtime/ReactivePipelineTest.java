@@ -0,0 +1,195 @@
+package com.orta.gos.model.runtime;
+
+import static com.orta.gos.model.runtime.WorkflowDriverTest.message;
+import static com.orta.gos.model.runtime.WorkflowDriverTest.path;
+import static com.orta.gos.model.runtime.WorkflowDriverTest.visit;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Duration;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import com.orta.gos.model.PlatformMessage;
+import com.orta.gos.model.ProcessOutcome;
+import com.orta.gos.model.ProcessOutcomeFailure;
+
+import io.smallrye.mutiny.Multi;
+import io.smallrye.mutiny.Uni;
+import io.vavr.collection.List;
+
+@DisplayName("ReactivePipeline")
+class ReactivePipelineTest {
+
+  static final List<PlatformMessage> MESSAGES = List.range(0, 100).map(i -> message("m" + i));
+
+  static final List<String> EXPECTED = MESSAGES.map(m -> m.getId() + ">validate>enrich>store>audit");
+
+  /**
+   * Completes every call after a random delay, tracking the concurrent calls of "enrich".
+   */
+  static ReactiveStepTransport delayed(final AtomicInteger active, final AtomicInteger maxActive) {
+    return (step, input) -> {
+      var enrich = step.getAddress().equals("enrich");
+      return Uni.createFrom().deferred(() -> {
+        if (enrich) {
+          maxActive.accumulateAndGet(active.incrementAndGet(), Math::max);
+        }
+        return Uni.createFrom().item(visit(step.getAddress(), input))
+            .onItem().delayIt().by(Duration.ofMillis(ThreadLocalRandom.current().nextInt(1, 5)))
+            .invoke(() -> {
+              if (enrich) {
+                active.decrementAndGet();
+              }
+            });
+      });
+    };
+  }
+
+  @Test
+  @DisplayName("should emit in upstream order in ordered mode")
+  void test0() {
+    var pipeline = new ReactivePipeline(delayed(new AtomicInteger(), new AtomicInteger()),
+        new ReactivePipeline.Options(16, 8, true));
+
+    var results = pipeline.process(Multi.createFrom().iterable(MESSAGES))
+        .collect().asList().await().atMost(Duration.ofSeconds(30));
+
+    assertThat(List.ofAll(results).map(WorkflowDriverTest::path)).isEqualTo(EXPECTED);
+  }
+
+  @Test
+  @DisplayName("should bound in-flight messages and concurrent calls of a step")
+  void test1() {
+    var active = new AtomicInteger();
+    var maxActive = new AtomicInteger();
+    var requested = new AtomicInteger();
+    var emitted = new AtomicInteger();
+    var maxOutstanding = new AtomicInteger();
+    var pipeline = new ReactivePipeline(delayed(active, maxActive), new ReactivePipeline.Options(16, 3, false));
+
+    var upstream = Multi.createFrom().iterable(MESSAGES)
+        .onItem().invoke(() -> maxOutstanding.accumulateAndGet(requested.incrementAndGet() - emitted.get(), Math::max));
+    var results = pipeline.process(upstream)
+        .onItem().invoke(emitted::incrementAndGet)
+        .collect().asList().await().atMost(Duration.ofSeconds(30));
+
+    assertThat(List.ofAll(results).map(WorkflowDriverTest::path)).containsExactlyInAnyOrderElementsOf(EXPECTED);
+    assertThat(maxActive.get()).isLessThanOrEqualTo(3);
+    assertThat(maxOutstanding.get()).isLessThanOrEqualTo(16);
+  }
+
+  @Test
+  @DisplayName("should record a failed call as a failed step")
+  void test2() {
+    var pipeline = new ReactivePipeline((step, input) -> step.getAddress().equals("enrich")
+        ? Uni.createFrom().failure(new IllegalStateException("unavailable"))
+        : Uni.createFrom().item(visit(step.getAddress(), input)), ReactivePipeline.Options.DEFAULT);
+
+    var result = pipeline.submit(message("m1")).await().atMost(Duration.ofSeconds(5));
+
+    assertThat(path(result)).isEqualTo("m1>validate>alert>audit");
+  }
+
+  @Test
+  @DisplayName("should call the parallel steps concurrently and move to the error block on a failure")
+  void test4() {
+    try (var executor = java.util.concurrent.Executors.newVirtualThreadPerTaskExecutor()) {
+      var completed = ReactiveStepTransport.blocking(WorkflowDriverTest.parallelTransport("none",
+          new java.util.concurrent.CountDownLatch(3)), executor);
+      var result = new ReactivePipeline(completed, ReactivePipeline.Options.DEFAULT)
+          .submit(WorkflowDriverTest.parallelMessage("m1")).await().atMost(Duration.ofSeconds(5));
+
+      assertThat(WorkflowDriverTest.bodies(result).drop(2).init())
+          .containsExactlyInAnyOrder("m1>validate>fetch-a", "m1>validate>fetch-b", "m1>validate>fetch-c");
+      assertThat(path(result)).endsWith(">audit");
+
+      var failed = ReactiveStepTransport.blocking(WorkflowDriverTest.parallelTransport("fetch-b",
+          new java.util.concurrent.CountDownLatch(3)), executor);
+      var failedResult = new ReactivePipeline(failed, ReactivePipeline.Options.DEFAULT)
+          .submit(WorkflowDriverTest.parallelMessage("m2")).await().atMost(Duration.ofSeconds(4));
+
+      assertThat(path(failedResult)).isEqualTo("m2>validate>alert>audit");
+    }
+  }
+
+  @Test
+  @DisplayName("should gather the outputs of a scatter-gather step in order")
+  void test5() {
+    var pipeline = new ReactivePipeline(delayed(new AtomicInteger(), new AtomicInteger()),
+        ReactivePipeline.Options.DEFAULT);
+
+    var result = pipeline.submit(WorkflowDriverTest.scatterMessage(3,
+        com.orta.gos.model.rules.ScatterFailurePolicy.FAIL_ON_ANY)).await().atMost(Duration.ofSeconds(5));
+
+    assertThat(WorkflowDriverTest.bodies(result).drop(4))
+        .containsExactly("a>split", "b>split", "c>split", "d>split", "d>split>audit");
+  }
+
+  @Test
+  @DisplayName("should adapt a blocking transport")
+  void test3() {
+    try (var executor = java.util.concurrent.Executors.newVirtualThreadPerTaskExecutor()) {
+      var transport = ReactiveStepTransport.blocking(WorkflowDriverTest.transport("none"), executor);
+      var pipeline = new ReactivePipeline(transport, ReactivePipeline.Options.DEFAULT);
+
+      var result = pipeline.submit(message("m1")).await().atMost(Duration.ofSeconds(5));
+
+      assertThat(path(result)).isEqualTo("m1>validate>enrich>store>audit");
+    }
+  }
+
+  @Test
+  @DisplayName("should cancel a running call, drop a queued one and release their permits")
+  void test6() {
+    var started = new ConcurrentLinkedQueue<String>();
+    var cancelled = new AtomicInteger();
+    ReactiveStepTransport transport = (step, input) -> Uni.createFrom().deferred(() -> {
+      var body = input.getPayloads(0).getStringBody().getBody();
+      started.add(body);
+      return body.startsWith("m3") ? Uni.createFrom().item(visit(step.getAddress(), input))
+          : Uni.createFrom().<ProcessOutcome>nothing().onCancellation().invoke(cancelled::incrementAndGet);
+    });
+    var pipeline = new ReactivePipeline(transport, new ReactivePipeline.Options(16, 1, false));
+
+    var running = pipeline.submit(message("m1")).subscribe().with(result -> { });
+    var queued = pipeline.submit(message("m2")).subscribe().with(result -> { });
+    queued.cancel();
+    running.cancel();
+    var result = pipeline.submit(message("m3")).await().atMost(Duration.ofSeconds(5));
+
+    assertThat(path(result)).isEqualTo("m3>validate>enrich>store>audit");
+    assertThat(started).containsExactly("m1", "m3", "m3>validate", "m3>validate>enrich", "m3>validate>enrich>store");
+    assertThat(cancelled.get()).isEqualTo(1);
+  }
+
+  @Test
+  @DisplayName("should cancel the slow parallel steps once one of them failed")
+  void test7() {
+    var started = new ConcurrentLinkedQueue<String>();
+    var cancelled = new ConcurrentLinkedQueue<String>();
+    ReactiveStepTransport transport = (step, input) -> Uni.createFrom().deferred(() -> {
+      var address = step.getAddress();
+      if (!address.startsWith("fetch-")) {
+        return Uni.createFrom().item(visit(address, input));
+      }
+      started.add(address);
+      return address.equals("fetch-b")
+          ? Uni.createFrom().item(ProcessOutcome.newBuilder()
+              .setFailure(ProcessOutcomeFailure.newBuilder().setErrorMessage("failed")).build())
+          : Uni.createFrom().<ProcessOutcome>nothing().onCancellation().invoke(() -> cancelled.add(address));
+    });
+
+    var result = new ReactivePipeline(transport, ReactivePipeline.Options.DEFAULT)
+        .submit(WorkflowDriverTest.parallelMessage("m1")).await().atMost(Duration.ofSeconds(5));
+
+    assertThat(path(result)).isEqualTo("m1>validate>alert>audit");
+    assertThat(started).contains("fetch-a", "fetch-b");
+    assertThat(cancelled)
+        .containsExactlyInAnyOrderElementsOf(List.ofAll(started).remove("fetch-b"));
+  }
+
+}
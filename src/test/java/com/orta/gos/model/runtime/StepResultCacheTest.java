@@ -0,0 +1,205 @@
+package com.orta.gos.model.runtime;
+
+import static com.orta.gos.model.runtime.WorkflowDriverTest.message;
+import static com.orta.gos.model.runtime.WorkflowDriverTest.path;
+import static com.orta.gos.model.runtime.WorkflowDriverTest.visit;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+
+import com.orta.gos.model.Payload;
+import com.orta.gos.model.PlatformMessage;
+import com.orta.gos.model.ProcessInput;
+import com.orta.gos.model.ProcessOutcome;
+import com.orta.gos.model.ProcessOutcomeFailure;
+import com.orta.gos.model.StringBody;
+import com.orta.gos.model.rules.Step;
+
+import io.smallrye.mutiny.Uni;
+import io.vavr.collection.List;
+
+@DisplayName("StepResultCache")
+class StepResultCacheTest {
+
+  static final Step CACHEABLE = Step.newBuilder()
+      .setName("enrich")
+      .setAddress("enrich")
+      .putAttributes(StepResultCache.CACHEABLE_ATTRIBUTE, "true")
+      .build();
+
+  static ProcessInput input(final String body) {
+    return ProcessInput.newBuilder()
+        .addPayloads(Payload.newBuilder().setStringBody(StringBody.newBuilder().setBody(body)))
+        .build();
+  }
+
+  /**
+   * The message without the timing trace and update time, which differ from run to run.
+   */
+  static PlatformMessage untimed(final PlatformMessage message) {
+    var builder = message.toBuilder().clearLastUpdated();
+    builder.getWorkflowLogBuilder().clearTimings();
+    return builder.build();
+  }
+
+  /**
+   * The outcome without the identity of its output payload, which is fresh on every hit.
+   */
+  static ProcessOutcome anonymous(final ProcessOutcome outcome) {
+    var builder = outcome.toBuilder();
+    builder.getSuccessBuilder().getOutputPayloadBuilder().clearUuid().clearCreationTimestamp();
+    return builder.build();
+  }
+
+  /**
+   * The message without the identities of its payloads.
+   */
+  static PlatformMessage anonymous(final PlatformMessage message) {
+    var builder = message.toBuilder();
+    builder.getPayloadsBuilderList().forEach(payload -> payload.clearUuid().clearCreationTimestamp());
+    return builder.build();
+  }
+
+  @Nested
+  @DisplayName("get/put")
+  class GetPutTest {
+
+    @Test
+    @DisplayName("should hit on the same step and input only")
+    void test0() {
+      var cache = new StepResultCache(StepResultCache.Options.DEFAULT);
+      var outcome = visit("enrich", input("a"));
+
+      cache.put(CACHEABLE, input("a"), outcome);
+
+      assertThat(cache.get(CACHEABLE, input("a")).map(StepResultCacheTest::anonymous)).contains(outcome);
+      assertThat(cache.get(CACHEABLE, input("b")).isEmpty()).isTrue();
+      assertThat(cache.get(CACHEABLE.toBuilder().setAddress("other").build(), input("a")).isEmpty()).isTrue();
+      assertThat(cache.stats()).isEqualTo(new StepResultCache.Stats(1, 2, 0, 1));
+    }
+
+    @Test
+    @DisplayName("should not cache failures")
+    void test1() {
+      var cache = new StepResultCache(StepResultCache.Options.DEFAULT);
+
+      cache.put(CACHEABLE, input("a"), ProcessOutcome.newBuilder()
+          .setFailure(ProcessOutcomeFailure.newBuilder().setErrorMessage("failed"))
+          .build());
+
+      assertThat(cache.get(CACHEABLE, input("a")).isEmpty()).isTrue();
+    }
+
+    @Test
+    @DisplayName("should expire outcomes after the time to live")
+    void test2() {
+      var clock = new AtomicLong();
+      var cache = new StepResultCache(new StepResultCache.Options(10, Duration.ofSeconds(10)), clock::get);
+      cache.put(CACHEABLE, input("a"), visit("enrich", input("a")));
+
+      clock.set(Duration.ofSeconds(9).toNanos());
+      assertThat(cache.get(CACHEABLE, input("a")).isDefined()).isTrue();
+      clock.set(Duration.ofSeconds(10).toNanos());
+      assertThat(cache.get(CACHEABLE, input("a")).isEmpty()).isTrue();
+      assertThat(cache.stats().size()).isZero();
+    }
+
+    @Test
+    @DisplayName("should evict the least recently used outcome above the capacity")
+    void test3() {
+      var cache = new StepResultCache(new StepResultCache.Options(2, Duration.ofMinutes(1)));
+      cache.put(CACHEABLE, input("a"), visit("enrich", input("a")));
+      cache.put(CACHEABLE, input("b"), visit("enrich", input("b")));
+      cache.get(CACHEABLE, input("a"));
+      cache.put(CACHEABLE, input("c"), visit("enrich", input("c")));
+
+      assertThat(cache.get(CACHEABLE, input("a")).isDefined()).isTrue();
+      assertThat(cache.get(CACHEABLE, input("b")).isEmpty()).isTrue();
+      assertThat(cache.stats().evictions()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("should hit on the same content under other payload identities, with a fresh output identity")
+    void test4() {
+      var cache = new StepResultCache(StepResultCache.Options.DEFAULT);
+      var original = identified(input("a"), "p1", 1_000L);
+      var outcome = visit("enrich", original).toBuilder();
+      outcome.getSuccessBuilder().getOutputPayloadBuilder().setUuid("o1").setCreationTimestamp(2_000L);
+      cache.put(CACHEABLE, original, outcome.build());
+
+      var first = cache.get(CACHEABLE, identified(input("a"), "p2", 3_000L)).get();
+      var second = cache.get(CACHEABLE, identified(input("a"), "p3", 4_000L)).get();
+
+      assertThat(anonymous(first)).isEqualTo(anonymous(outcome.build()));
+      assertThat(List.of(first, second).map(hit -> hit.getSuccess().getOutputPayload().getUuid()))
+          .doesNotContain("o1", "")
+          .doesNotHaveDuplicates();
+      assertThat(first.getSuccess().getOutputPayload().getCreationTimestamp()).isGreaterThan(2_000L);
+      assertThat(cache.stats()).isEqualTo(new StepResultCache.Stats(2, 0, 0, 1));
+    }
+
+    private static ProcessInput identified(final ProcessInput input, final String uuid, final long created) {
+      var builder = input.toBuilder();
+      builder.getPayloadsBuilder(0).setUuid(uuid).setCreationTimestamp(created);
+      return builder.build();
+    }
+  }
+
+  @Nested
+  @DisplayName("caching")
+  class CachingTest {
+
+    @Test
+    @DisplayName("should skip the calls of cacheable steps with a repeated input")
+    void test0() {
+      var calls = new AtomicInteger();
+      StepTransport transport = (step, input) -> {
+        if (step.getAddress().equals("enrich")) {
+          calls.incrementAndGet();
+        }
+        return visit(step.getAddress(), input);
+      };
+      var cacheable = message("m1").toBuilder();
+      cacheable.getWorkflowLogBuilder().getStepsBuilder(1).putAttributes(StepResultCache.CACHEABLE_ATTRIBUTE, "true");
+      var cache = new StepResultCache(StepResultCache.Options.DEFAULT);
+
+      try (var driver = new WorkflowDriver(cache.caching(transport), WorkflowDriver.Options.DEFAULT)) {
+        var first = driver.submit(cacheable.build()).join();
+        var second = driver.submit(cacheable.build()).join();
+
+        assertThat(anonymous(untimed(second))).isEqualTo(anonymous(untimed(first)));
+        assertThat(second.getPayloads(2).getUuid()).isNotEqualTo(first.getPayloads(2).getUuid());
+        assertThat(path(second)).isEqualTo("m1>validate>enrich>store>audit");
+        assertThat(calls.get()).isEqualTo(1);
+        assertThat(cache.stats().hits()).isEqualTo(1);
+      }
+    }
+
+    @Test
+    @DisplayName("should call the steps not marked cacheable")
+    void test1() {
+      var calls = new AtomicInteger();
+      var cache = new StepResultCache(StepResultCache.Options.DEFAULT);
+      ReactiveStepTransport calling = (step, input) -> {
+        calls.incrementAndGet();
+        return Uni.createFrom().item(visit(step.getAddress(), input));
+      };
+      var transport = cache.caching(calling);
+      var plain = CACHEABLE.toBuilder().clearAttributes().build();
+
+      transport.call(plain, input("a")).await().indefinitely();
+      transport.call(plain, input("a")).await().indefinitely();
+      transport.call(CACHEABLE, input("a")).await().indefinitely();
+      transport.call(CACHEABLE, input("a")).await().indefinitely();
+
+      assertThat(calls.get()).isEqualTo(3);
+    }
+  }
+
+}
@@ -0,0 +1,452 @@
+package com.orta.gos.model.runtime;
+
+import static com.orta.gos.model.rules.BlockType.FINALLY;
+import static com.orta.gos.model.rules.BlockType.GENERAL_ERROR;
+import static com.orta.gos.model.rules.BlockType.MAIN;
+import static com.orta.gos.model.rules.BlockType.PARALLEL;
+import static com.orta.gos.model.rules.BlockType.TYPE_NA;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+
+import com.orta.gos.model.Payload;
+import com.orta.gos.model.PlatformMessage;
+import com.orta.gos.model.PlatformWorkflow;
+import com.orta.gos.model.ProcessInput;
+import com.orta.gos.model.ProcessOutcome;
+import com.orta.gos.model.ProcessOutcomeFailure;
+import com.orta.gos.model.ProcessOutcomeSucces;
+import com.orta.gos.model.StringBody;
+import com.orta.gos.model.rules.BlockType;
+import com.orta.gos.model.rules.PayloadAttributes;
+import com.orta.gos.model.rules.PicSelector;
+import com.orta.gos.model.rules.PicSelectorAttributes;
+import com.orta.gos.model.rules.Scatter;
+import com.orta.gos.model.rules.ScatterFailurePolicy;
+import com.orta.gos.model.rules.Step;
+import com.orta.gos.model.rules.WorkflowPlan;
+import com.orta.gos.model.rules.WorkflowRegistry;
+import com.orta.gos.model.utils.PlatformMessageUtils;
+import com.orta.gos.model.utils.StepTiming;
+import com.orta.gos.model.utils.StepTimingUtils;
+
+import io.vavr.collection.HashMap;
+import io.vavr.collection.List;
+import io.vavr.collection.Map;
+
+@DisplayName("WorkflowDriver")
+class WorkflowDriverTest {
+
+  static Step step(final String address) {
+    return Step.newBuilder().setName(address).setAddress(address).build();
+  }
+
+  static final Map<BlockType, List<Step>> RULES = HashMap.of(
+      MAIN, List.of(step("validate"), step("enrich"), step("store")),
+      GENERAL_ERROR, List.of(step("alert")),
+      FINALLY, List.of(step("audit")));
+
+  static final WorkflowPlan PLAN = WorkflowPlan.compile(RULES);
+
+  static PlatformMessage message(final String id) {
+    return PlatformMessage.newBuilder()
+        .setId(id)
+        .addPayloads(Payload.newBuilder().setStringBody(StringBody.newBuilder().setBody(id)))
+        .setWorkflowLog(PlatformWorkflow.newBuilder()
+            .addAllSteps(PLAN.steps())
+            .setTracker(PLAN.initialTracker()))
+        .build();
+  }
+
+  /**
+   * Appends the address to the body of the last payload.
+   */
+  static ProcessOutcome visit(final String address, final ProcessInput input) {
+    var body = input.getPayloads(0).getStringBody().getBody();
+    return ProcessOutcome.newBuilder()
+        .setSuccess(ProcessOutcomeSucces.newBuilder()
+            .setOutputPayload(Payload.newBuilder().setStringBody(StringBody.newBuilder().setBody(body + ">" + address))))
+        .build();
+  }
+
+  static InProcessTransport transport(final String failingAddress) {
+    var transport = new InProcessTransport();
+    for (var address : List.of("validate", "enrich", "store", "alert", "audit")) {
+      transport.register(address, input -> address.equals(failingAddress)
+          ? ProcessOutcome.newBuilder().setFailure(ProcessOutcomeFailure.newBuilder().setErrorMessage("failed")).build()
+          : visit(address, input));
+    }
+    return transport;
+  }
+
+  static String path(final PlatformMessage message) {
+    return message.getPayloadsList().getLast().getStringBody().getBody();
+  }
+
+  static final Map<BlockType, List<Step>> PARALLEL_RULES = HashMap.of(
+      MAIN, List.of(step("validate")),
+      PARALLEL, List.of(step("fetch-a"), step("fetch-b"), step("fetch-c")),
+      GENERAL_ERROR, List.of(step("alert")),
+      FINALLY, List.of(step("audit")));
+
+  static PlatformMessage parallelMessage(final String id) {
+    var plan = WorkflowPlan.compile(PARALLEL_RULES);
+    return message(id).toBuilder()
+        .setWorkflowLog(PlatformWorkflow.newBuilder()
+            .addAllSteps(plan.steps())
+            .setTracker(plan.initialTracker()))
+        .build();
+  }
+
+  /**
+   * Transport whose parallel steps only complete once all of them were called, so the
+   * workflow terminates only if they run concurrently. The failing step fails at once.
+   */
+  static StepTransport parallelTransport(final String failingAddress, final CountDownLatch called) {
+    return (step, input) -> {
+      if (step.getAddress().startsWith("fetch-")) {
+        if (step.getAddress().equals(failingAddress)) {
+          return ProcessOutcome.newBuilder()
+              .setFailure(ProcessOutcomeFailure.newBuilder().setErrorMessage("failed"))
+              .build();
+        }
+        called.countDown();
+        if (!called.await(5, TimeUnit.SECONDS)) {
+          throw new IllegalStateException("parallel steps did not run concurrently");
+        }
+      }
+      return visit(step.getAddress(), input);
+    };
+  }
+
+  /**
+   * Message with four payloads, scattered over by the "split" step before "audit".
+   */
+  static PlatformMessage scatterMessage(final int maxParallelism, final ScatterFailurePolicy onFailure) {
+    var selector = PicSelector.newBuilder().setByAttributes(PicSelectorAttributes.newBuilder()
+        .addAllPayloadDesc(List.of("a", "b", "c", "d").map(item -> PayloadAttributes.newBuilder()
+            .putPicAttributes("item", item).build())));
+    var split = step("split").toBuilder()
+        .setPicSelector(selector)
+        .setScatter(Scatter.newBuilder().setMaxParallelism(maxParallelism).setOnFailure(onFailure))
+        .build();
+    var plan = WorkflowPlan.compile(HashMap.of(
+        MAIN, List.of(split),
+        GENERAL_ERROR, List.of(step("alert")),
+        FINALLY, List.of(step("audit"))));
+
+    var message = PlatformMessage.newBuilder().setId("scatter");
+    for (var item : List.of("a", "b", "c", "d")) {
+      message.addPayloads(Payload.newBuilder()
+          .putAttributes("item", item)
+          .setStringBody(StringBody.newBuilder().setBody(item)));
+    }
+    return message
+        .setWorkflowLog(PlatformWorkflow.newBuilder()
+            .addAllSteps(plan.steps())
+            .setTracker(plan.initialTracker()))
+        .build();
+  }
+
+  static List<String> bodies(final PlatformMessage message) {
+    return List.ofAll(message.getPayloadsList()).map(payload -> payload.getStringBody().getBody());
+  }
+
+  @Nested
+  @DisplayName("submit")
+  class SubmitTest {
+
+    @Test
+    @DisplayName("should run the message until termination")
+    void test0() {
+      try (var driver = new WorkflowDriver(transport("none"), WorkflowDriver.Options.DEFAULT)) {
+        var result = driver.submit(message("m1")).join();
+
+        assertThat(path(result)).isEqualTo("m1>validate>enrich>store>audit");
+        assertThat(result.getWorkflowLog().getTracker().getCurrentBlock()).isEqualTo(TYPE_NA);
+      }
+    }
+
+    @Test
+    @DisplayName("should run the error block after a failed step")
+    void test1() {
+      try (var driver = new WorkflowDriver(transport("enrich"), WorkflowDriver.Options.DEFAULT)) {
+        var result = driver.submit(message("m1")).join();
+
+        assertThat(path(result)).isEqualTo("m1>validate>alert>audit");
+        assertThat(result.getWorkflowLog().getTracker().getErrorRaised()).isTrue();
+      }
+    }
+
+    @Test
+    @DisplayName("should record a transport exception as a failed step")
+    void test2() {
+      StepTransport transport = (step, input) -> {
+        if (step.getAddress().equals("store")) {
+          throw new IllegalStateException("unavailable");
+        }
+        return visit(step.getAddress(), input);
+      };
+
+      try (var driver = new WorkflowDriver(transport, WorkflowDriver.Options.DEFAULT)) {
+        assertThat(path(driver.submit(message("m1")).join())).isEqualTo("m1>validate>enrich>alert>audit");
+      }
+    }
+
+    @Test
+    @DisplayName("should resolve the steps of a referenced workflow")
+    void test3() {
+      var registry = new WorkflowRegistry();
+      var ref = registry.register("wf", 1, RULES);
+      var message = PlatformMessageUtils.withMessage(message("m1")).referencing(ref);
+
+      try (var driver = new WorkflowDriver(transport("none"), WorkflowDriver.Options.DEFAULT, registry,
+          com.orta.gos.model.store.PayloadResolver.NONE)) {
+        assertThat(path(driver.submit(message).join())).isEqualTo("m1>validate>enrich>store>audit");
+      }
+    }
+
+    @Test
+    @DisplayName("should report an unknown address as a failed step")
+    void test4() {
+      try (var driver = new WorkflowDriver(new InProcessTransport(), WorkflowDriver.Options.DEFAULT)) {
+        var result = driver.submit(message("m1")).join();
+
+        assertThat(result.getPayloadsCount()).isEqualTo(1);
+        assertThat(result.getWorkflowLog().getTracker().getErrorRaised()).isTrue();
+      }
+    }
+
+    @Test
+    @DisplayName("should record the timing of every step outcome")
+    void test5() {
+      try (var driver = new WorkflowDriver(transport("enrich"), WorkflowDriver.Options.DEFAULT)) {
+        var result = driver.submit(message("m1")).join();
+
+        var timings = StepTimingUtils.timings(result.getWorkflowLog());
+        assertThat(timings.map(StepTiming::failed)).containsExactly(false, true, false, false);
+        assertThat(timings.map(StepTiming::attempts)).containsOnly(1);
+        assertThat(timings.sliding(2).forAll(pair -> pair.get(0).completedMicros() <= pair.get(1).dispatchedMicros()))
+            .isTrue();
+        assertThat(result.getLastUpdated()).isEqualTo(timings.last().completedMicros() / 1000);
+      }
+    }
+  }
+
+  @Nested
+  @DisplayName("PARALLEL block")
+  class ParallelTest {
+
+    @Test
+    @DisplayName("should call the parallel steps concurrently and continue once all completed")
+    void test0() {
+      try (var driver = new WorkflowDriver(parallelTransport("none", new CountDownLatch(3)),
+          WorkflowDriver.Options.DEFAULT)) {
+        var result = driver.submit(parallelMessage("m1")).join();
+
+        assertThat(bodies(result).drop(2).init())
+            .containsExactlyInAnyOrder("m1>validate>fetch-a", "m1>validate>fetch-b", "m1>validate>fetch-c");
+        assertThat(path(result)).startsWith("m1>validate>fetch-").endsWith(">audit");
+        assertThat(result.getWorkflowLog().getTracker().getErrorRaised()).isFalse();
+      }
+    }
+
+    @Test
+    @DisplayName("should move to the error block on the first failure without waiting for the others")
+    void test1() {
+      // Never released: the remaining parallel steps block until cancelled
+      var called = new CountDownLatch(3);
+      try (var driver = new WorkflowDriver(parallelTransport("fetch-b", called), WorkflowDriver.Options.DEFAULT)) {
+        var result = driver.submit(parallelMessage("m1")).orTimeout(4, TimeUnit.SECONDS).join();
+
+        assertThat(path(result)).isEqualTo("m1>validate>alert>audit");
+        assertThat(result.getWorkflowLog().getTracker().getErrorRaisedStep()).isEqualTo(2);
+      }
+    }
+  }
+
+  @Nested
+  @DisplayName("scatter-gather step")
+  class ScatterTest {
+
+    @Test
+    @DisplayName("should call the step once per selected payload and append the outputs in order")
+    void test0() {
+      var active = new AtomicInteger();
+      var maxActive = new AtomicInteger();
+      StepTransport transport = (step, input) -> {
+        if (step.getAddress().equals("split")) {
+          maxActive.accumulateAndGet(active.incrementAndGet(), Math::max);
+          Thread.sleep(5);
+          active.decrementAndGet();
+        }
+        return visit(step.getAddress(), input);
+      };
+
+      try (var driver = new WorkflowDriver(transport, WorkflowDriver.Options.DEFAULT)) {
+        var result = driver.submit(scatterMessage(2, ScatterFailurePolicy.FAIL_ON_ANY)).join();
+
+        assertThat(bodies(result)).containsExactly("a", "b", "c", "d", "a>split", "b>split", "c>split", "d>split",
+            "d>split>audit");
+        assertThat(maxActive.get()).isEqualTo(2);
+        assertThat(StepTimingUtils.timings(result.getWorkflowLog()).head().attempts()).isEqualTo(4);
+      }
+    }
+
+    @Test
+    @DisplayName("should apply the failure policy of the step")
+    void test1() {
+      StepTransport transport = (step, input) -> step.getAddress().equals("split")
+          && input.getPayloads(0).getStringBody().getBody().equals("b")
+              ? ProcessOutcome.newBuilder().setFailure(ProcessOutcomeFailure.newBuilder().setErrorMessage("b")).build()
+              : visit(step.getAddress(), input);
+
+      try (var driver = new WorkflowDriver(transport, WorkflowDriver.Options.DEFAULT)) {
+        var failAny = driver.submit(scatterMessage(0, ScatterFailurePolicy.FAIL_ON_ANY)).join();
+        var failAll = driver.submit(scatterMessage(0, ScatterFailurePolicy.FAIL_ON_ALL)).join();
+
+        assertThat(path(failAny)).isEqualTo("d>alert>audit");
+        assertThat(bodies(failAll).drop(4)).containsExactly("a>split", "c>split", "d>split", "d>split>audit");
+      }
+    }
+
+    @Test
+    @DisplayName("should cancel the scattered calls when the message thread is interrupted")
+    void test2() throws InterruptedException {
+      var messageThread = new AtomicReference<Thread>();
+      var started = new CountDownLatch(1);
+      var cancelled = new CountDownLatch(1);
+      var calls = new AtomicInteger();
+      var transport = new StepTransport() {
+        @Override
+        public ProcessOutcome call(final Step step, final ProcessInput input) throws Exception {
+          calls.incrementAndGet();
+          started.countDown();
+          try {
+            Thread.sleep(10_000);
+          } catch (InterruptedException e) {
+            cancelled.countDown();
+            throw e;
+          }
+          return visit(step.getAddress(), input);
+        }
+
+        @Override
+        public void warmUp(final PlatformMessage message, final WorkflowRegistry registry) {
+          messageThread.set(Thread.currentThread());
+        }
+      };
+
+      try (var driver = new WorkflowDriver(transport, WorkflowDriver.Options.DEFAULT)) {
+        var result = driver.submit(scatterMessage(1, ScatterFailurePolicy.FAIL_ON_ANY));
+        assertThat(started.await(4, TimeUnit.SECONDS)).isTrue();
+
+        messageThread.get().interrupt();
+
+        assertThat(cancelled.await(4, TimeUnit.SECONDS)).isTrue();
+        assertThrows(CompletionException.class, result::join);
+        assertThat(calls).hasValue(1);
+      }
+    }
+  }
+
+  @Nested
+  @DisplayName("backpressure")
+  class BackpressureTest {
+
+    @Test
+    @DisplayName("should reject trySubmit while the driver is full")
+    void test0() throws InterruptedException {
+      var started = new CountDownLatch(1);
+      var release = new CountDownLatch(1);
+      StepTransport transport = (step, input) -> {
+        started.countDown();
+        release.await();
+        return visit(step.getAddress(), input);
+      };
+
+      try (var driver = new WorkflowDriver(transport, new WorkflowDriver.Options(1, 4))) {
+        var first = driver.trySubmit(message("m1"));
+        started.await(4, TimeUnit.SECONDS);
+
+        var rejected = driver.trySubmit(message("m2"));
+        release.countDown();
+
+        assertThat(rejected.isEmpty()).isTrue();
+        assertThat(path(first.get().join())).isEqualTo("m1>validate>enrich>store>audit");
+        assertThat(driver.trySubmit(message("m3")).map(f -> path(f.join())))
+            .contains("m3>validate>enrich>store>audit");
+      }
+    }
+
+    @Test
+    @DisplayName("should block submit in the caller until a message completes")
+    void test1() throws InterruptedException {
+      var started = new CountDownLatch(1);
+      var release = new CountDownLatch(1);
+      StepTransport transport = (step, input) -> {
+        started.countDown();
+        release.await();
+        return visit(step.getAddress(), input);
+      };
+
+      try (var driver = new WorkflowDriver(transport, new WorkflowDriver.Options(1, 4))) {
+        driver.submit(message("m1"));
+        started.await(4, TimeUnit.SECONDS);
+        var submitted = new CountDownLatch(1);
+        var submitter = Thread.ofVirtual().start(() -> {
+          driver.submit(message("m2"));
+          submitted.countDown();
+        });
+
+        var blocked = !submitted.await(100, TimeUnit.MILLISECONDS);
+        release.countDown();
+
+        assertThat(blocked).isTrue();
+        assertThat(submitted.await(4, TimeUnit.SECONDS)).isTrue();
+        submitter.join();
+      }
+    }
+  }
+
+  @Nested
+  @DisplayName("runAll")
+  class RunAllTest {
+
+    @Test
+    @DisplayName("should bound the concurrent calls of a step")
+    void test0() {
+      var active = new AtomicInteger();
+      var maxActive = new AtomicInteger();
+      StepTransport transport = (step, input) -> {
+        if (step.getAddress().equals("enrich")) {
+          maxActive.accumulateAndGet(active.incrementAndGet(), Math::max);
+          Thread.sleep(2);
+          active.decrementAndGet();
+        }
+        return visit(step.getAddress(), input);
+      };
+
+      try (var driver = new WorkflowDriver(transport, new WorkflowDriver.Options(1_000, 4))) {
+        var messages = List.range(0, 200).map(i -> message("m" + i));
+
+        var results = driver.runAll(messages);
+
+        assertThat(results.map(WorkflowDriverTest::path))
+            .isEqualTo(messages.map(m -> m.getId() + ">validate>enrich>store>audit"));
+        assertThat(maxActive.get()).isLessThanOrEqualTo(4);
+        assertThat(driver.calledAddresses()).isZero();
+      }
+    }
+  }
+
+}
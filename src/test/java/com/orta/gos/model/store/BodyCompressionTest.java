@@ -0,0 +1,171 @@
+package com.orta.gos.model.store;
+
+import static com.orta.gos.model.rules.BlockType.MAIN;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+
+import com.google.protobuf.ByteString;
+import com.orta.gos.model.BinaryBody;
+import com.orta.gos.model.EmptyBody;
+import com.orta.gos.model.Payload;
+import com.orta.gos.model.PlatformMessage;
+import com.orta.gos.model.PlatformWorkflow;
+import com.orta.gos.model.RestMethod;
+import com.orta.gos.model.RestRequestBody;
+import com.orta.gos.model.StringBody;
+import com.orta.gos.model.rules.BlockType;
+import com.orta.gos.model.rules.Step;
+import com.orta.gos.model.rules.WorkflowPlan;
+import com.orta.gos.model.rules.WorkflowRegistry;
+import com.orta.gos.model.utils.PlatformMessageUtils;
+
+import io.vavr.collection.HashMap;
+import io.vavr.collection.List;
+
+@DisplayName("BodyCompression")
+class BodyCompressionTest {
+
+  static final BodyCompression COMPRESSION = BodyCompression.of(PayloadCodec.DEFLATE, 256);
+
+  static final String JSON = "[" + "{\"name\":\"value\",\"count\":1},".repeat(100) + "{}]";
+
+  static Payload string(final String body) {
+    return Payload.newBuilder()
+        .setUuid("string")
+        .putAttributes("type", "json")
+        .setStringBody(StringBody.newBuilder().setBody(body))
+        .build();
+  }
+
+  @Nested
+  @DisplayName("compress")
+  class CompressTest {
+
+    @Test
+    @DisplayName("should compress large bodies and keep the payload metadata")
+    void test0() {
+      var compressed = COMPRESSION.compress(string(JSON));
+
+      assertThat(compressed.hasCompressedBody()).isTrue();
+      assertThat(compressed.getCompressedBody().getCodec()).isEqualTo("deflate");
+      assertThat(compressed.getCompressedBody().getBodyField()).isEqualTo(Payload.STRING_BODY_FIELD_NUMBER);
+      assertThat(compressed.getCompressedBody().getSize()).isEqualTo(string(JSON).getStringBody().getSerializedSize());
+      assertThat(compressed.getUuid()).isEqualTo("string");
+      assertThat(compressed.getAttributesMap()).containsEntry("type", "json");
+      assertThat(compressed.getSerializedSize()).isLessThan(string(JSON).getSerializedSize() / 5);
+    }
+
+    @Test
+    @DisplayName("should keep small, incompressible and empty bodies uncompressed")
+    void test1() {
+      var random = new byte[1024];
+      new java.util.Random(42).nextBytes(random);
+      var payloads = List.of(
+          string("{\"small\":true}"),
+          Payload.newBuilder().setBinaryBody(BinaryBody.newBuilder().setBody(ByteString.copyFrom(random))).build(),
+          Payload.newBuilder().setEmptyBody(EmptyBody.getDefaultInstance()).build());
+
+      payloads.forEach(payload -> assertThat(COMPRESSION.compress(payload)).isSameAs(payload));
+    }
+
+    @Test
+    @DisplayName("should use the codec declared in the payload attributes")
+    void test2() {
+      var gzip = string(JSON).toBuilder().putAttributes(BodyCompression.CODEC_ATTRIBUTE, "gzip").build();
+      var identity = string(JSON).toBuilder()
+          .putAttributes(BodyCompression.CODEC_ATTRIBUTE, BodyCompression.IDENTITY)
+          .build();
+      var unknown = string(JSON).toBuilder().putAttributes(BodyCompression.CODEC_ATTRIBUTE, "unknown").build();
+
+      assertThat(COMPRESSION.compress(gzip).getCompressedBody().getCodec()).isEqualTo("gzip");
+      assertThat(COMPRESSION.compress(identity)).isSameAs(identity);
+      assertThat(COMPRESSION.compress(unknown)).isSameAs(unknown);
+    }
+
+    @Test
+    @DisplayName("should compress every eligible payload of the message")
+    void test3() {
+      var message = PlatformMessage.newBuilder()
+          .setId("m1")
+          .addPayloads(string("{}"))
+          .addPayloads(string(JSON))
+          .build();
+
+      var compressed = COMPRESSION.compress(message);
+
+      assertThat(compressed.getPayloadsList()).extracting(Payload::hasCompressedBody).containsExactly(false, true);
+    }
+  }
+
+  @Nested
+  @DisplayName("decompress")
+  class DecompressTest {
+
+    @Test
+    @DisplayName("should restore string, binary and rest request bodies")
+    void test0() {
+      var payloads = List.of(
+          string(JSON),
+          Payload.newBuilder().setBinaryBody(BinaryBody.newBuilder().setBody(ByteString.copyFromUtf8(JSON))).build(),
+          Payload.newBuilder()
+              .setRestRequest(RestRequestBody.newBuilder()
+                  .setUrl("http://service/api")
+                  .setMethod(RestMethod.POST)
+                  .setBody(JSON))
+              .build());
+
+      payloads.forEach(payload -> {
+        var compressed = COMPRESSION.compress(payload);
+        assertThat(compressed.hasCompressedBody()).isTrue();
+        assertThat(BodyCompression.decompress(compressed)).isEqualTo(payload);
+        assertThat(PayloadResolver.NONE.resolve(compressed)).isEqualTo(payload);
+      });
+    }
+
+    @Test
+    @DisplayName("should fail on an unknown codec")
+    void test1() {
+      var compressed = COMPRESSION.compress(string(JSON));
+      var unknown = compressed.toBuilder()
+          .setCompressedBody(compressed.getCompressedBody().toBuilder().setCodec("unknown"))
+          .build();
+
+      assertThrows(IllegalStateException.class, () -> BodyCompression.decompress(unknown));
+    }
+
+    @Test
+    @DisplayName("should fail on a body inflating beyond its recorded size")
+    void test3() {
+      var compressed = COMPRESSION.compress(string(JSON));
+      var tampered = compressed.toBuilder()
+          .setCompressedBody(compressed.getCompressedBody().toBuilder().setSize(16))
+          .build();
+
+      assertThrows(IllegalStateException.class, () -> BodyCompression.decompress(tampered));
+    }
+
+    @Test
+    @DisplayName("should send the uncompressed body to the Process service")
+    void test2() {
+      var plan = WorkflowPlan.compile(HashMap.<BlockType, List<Step>>of(
+          MAIN, List.of(Step.newBuilder().setName("step").build())));
+      var message = COMPRESSION.compress(PlatformMessage.newBuilder()
+          .setId("m1")
+          .addPayloads(string(JSON))
+          .setWorkflowLog(PlatformWorkflow.newBuilder()
+              .addAllSteps(plan.steps())
+              .setTracker(plan.initialTracker()))
+          .build());
+
+      var input = PlatformMessageUtils.withMessage(message).processInput(new WorkflowRegistry(), PayloadResolver.NONE);
+
+      assertThat(message.getPayloads(0).hasCompressedBody()).isTrue();
+      assertThat(input.get().getPayloadsList()).containsExactly(string(JSON));
+    }
+  }
+
+}
@@ -0,0 +1,229 @@
+package com.orta.gos.model.store;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.google.protobuf.ByteString;
+import com.orta.gos.model.BinaryBody;
+import com.orta.gos.model.Payload;
+import com.orta.gos.model.PlatformMessage;
+import com.orta.gos.model.RestMethod;
+import com.orta.gos.model.RestRequestBody;
+import com.orta.gos.model.StringBody;
+
+import io.vavr.collection.List;
+
+@DisplayName("ClaimCheck")
+class ClaimCheckTest {
+
+  @TempDir
+  Path tempDir;
+
+  MappedPayloadStore store;
+  ClaimCheck claimCheck;
+
+  @BeforeEach
+  void open() {
+    store = MappedPayloadStore.open("local", tempDir, 4096, 0.5);
+    claimCheck = ClaimCheck.of(store, 64);
+  }
+
+  @AfterEach
+  void close() {
+    store.close();
+  }
+
+  static Payload binary(final int size) {
+    return Payload.newBuilder()
+        .setUuid("binary")
+        .putAttributes("type", "blob")
+        .setBinaryBody(BinaryBody.newBuilder().setBody(ByteString.copyFrom(new byte[size])))
+        .build();
+  }
+
+  @Nested
+  @DisplayName("checkIn")
+  class CheckInTest {
+
+    @Test
+    @DisplayName("should replace large binary bodies with a reference")
+    void test0() {
+      var payload = binary(1000);
+
+      var checkedIn = claimCheck.checkIn(payload);
+
+      assertThat(checkedIn.hasBodyRef()).isTrue();
+      assertThat(checkedIn.getBodyRef().getStore()).isEqualTo("local");
+      assertThat(checkedIn.getBodyRef().getBodyField()).isEqualTo(Payload.BINARY_BODY_FIELD_NUMBER);
+      assertThat(checkedIn.getUuid()).isEqualTo("binary");
+      assertThat(checkedIn.getAttributesMap()).containsEntry("type", "blob");
+      assertThat(checkedIn.getSerializedSize()).isLessThan(100);
+    }
+
+    @Test
+    @DisplayName("should keep small bodies inline")
+    void test1() {
+      var payload = binary(10);
+
+      assertThat(claimCheck.checkIn(payload)).isSameAs(payload);
+    }
+
+    @Test
+    @DisplayName("should keep string bodies inline")
+    void test2() {
+      var payload = Payload.newBuilder()
+          .setStringBody(StringBody.newBuilder().setBody("x".repeat(1000)))
+          .build();
+
+      assertThat(claimCheck.checkIn(payload)).isSameAs(payload);
+    }
+  }
+
+  @Nested
+  @DisplayName("resolve")
+  class ResolveTest {
+
+    @Test
+    @DisplayName("should restore binary bodies")
+    void test0() {
+      var payload = binary(1000);
+
+      assertThat(claimCheck.resolve(claimCheck.checkIn(payload))).isEqualTo(payload);
+    }
+
+    @Test
+    @DisplayName("should restore rest request bodies")
+    void test1() {
+      var payload = Payload.newBuilder()
+          .setRestRequest(RestRequestBody.newBuilder()
+              .setUrl("http://service/api")
+              .setMethod(RestMethod.POST)
+              .putHeaders("content-type", "application/json")
+              .setBody("{\"value\":\"" + "x".repeat(200) + "\"}"))
+          .build();
+
+      var checkedIn = claimCheck.checkIn(payload);
+
+      assertThat(checkedIn.hasBodyRef()).isTrue();
+      assertThat(claimCheck.resolve(checkedIn)).isEqualTo(payload);
+    }
+
+    @Test
+    @DisplayName("should restore and decompress compressed bodies")
+    void test4() {
+      var json = List.range(0, 1000).mkString("[", ",", "]");
+      var payload = Payload.newBuilder()
+          .setStringBody(StringBody.newBuilder().setBody(json))
+          .build();
+
+      var checkedIn = claimCheck.checkIn(BodyCompression.of(PayloadCodec.GZIP, 64).compress(payload));
+
+      assertThat(checkedIn.hasBodyRef()).isTrue();
+      assertThat(checkedIn.getBodyRef().getBodyField()).isEqualTo(Payload.COMPRESSED_BODY_FIELD_NUMBER);
+      assertThat(claimCheck.resolve(checkedIn)).isEqualTo(payload);
+    }
+
+    @Test
+    @DisplayName("should fail when the body was released")
+    void test2() {
+      var checkedIn = claimCheck.checkIn(binary(1000));
+      var message = PlatformMessage.newBuilder().addPayloads(checkedIn).build();
+
+      claimCheck.release(message);
+
+      assertThrows(IllegalStateException.class, () -> claimCheck.resolve(checkedIn));
+    }
+
+    @Test
+    @DisplayName("should not resolve references of another store")
+    void test3() {
+      var checkedIn = claimCheck.checkIn(binary(1000));
+      var other = checkedIn.toBuilder().setBodyRef(checkedIn.getBodyRef().toBuilder().setStore("other")).build();
+
+      assertThat(claimCheck.body(other.getBodyRef()).isEmpty()).isTrue();
+    }
+  }
+
+  @Nested
+  @DisplayName("deduplicating")
+  class DeduplicatingTest {
+
+    ContentAddressedStore cas;
+    ClaimCheck deduplication;
+
+    @BeforeEach
+    void open() {
+      cas = new ContentAddressedStore("cas");
+      deduplication = ClaimCheck.deduplicating(cas, 64);
+    }
+
+    static PlatformMessage message(final String id, final String body) {
+      return PlatformMessage.newBuilder()
+          .setId(id)
+          .addPayloads(Payload.newBuilder().setUuid(id).setStringBody(StringBody.newBuilder().setBody(body)))
+          .build();
+    }
+
+    @Test
+    @DisplayName("should replace the large bodies shared by messages with a single stored copy")
+    void test0() {
+      var body = "<order>" + "<line>item</line>".repeat(100) + "</order>";
+      var messages = List.range(0, 100).map(i -> message("m" + i, body));
+
+      var deduplicated = messages.map(deduplication::checkIn);
+
+      assertThat(deduplicated.map(message -> message.getPayloads(0).getBodyRef().getKey()).distinct()).hasSize(1);
+      assertThat(deduplicated.head().getSerializedSize()).isLessThan(messages.head().getSerializedSize() / 10);
+      assertThat(cas.stats().entries()).isEqualTo(1);
+      assertThat(cas.stats().deduplicated()).isEqualTo(99);
+      deduplicated.zip(messages).forEach(pair -> assertThat(deduplication.resolve(pair._1.getPayloads(0)))
+          .isEqualTo(pair._2.getPayloads(0)));
+    }
+
+    @Test
+    @DisplayName("should keep small bodies inline")
+    void test1() {
+      var message = message("m1", "{}");
+
+      assertThat(deduplication.checkIn(message.getPayloads(0))).isSameAs(message.getPayloads(0));
+    }
+
+    @Test
+    @DisplayName("should drop the stored body once every message released it")
+    void test2() {
+      var body = "x".repeat(100);
+      var first = deduplication.checkIn(message("m1", body));
+      var second = deduplication.checkIn(message("m2", body));
+      deduplication.retain(second);
+
+      deduplication.release(first);
+      deduplication.release(second);
+      assertThat(cas.stats().entries()).isEqualTo(1);
+      deduplication.release(second);
+
+      assertThat(cas.stats().entries()).isZero();
+    }
+
+    @Test
+    @DisplayName("should check in the same bodies as the claim-check, with the same encoded size")
+    void test3() {
+      var payload = binary(1000);
+
+      var checkedIn = claimCheck.checkIn(payload);
+      var deduplicated = deduplication.checkIn(payload);
+
+      assertThat(deduplicated.getBodyRef().getSize()).isEqualTo(checkedIn.getBodyRef().getSize());
+      assertThat(deduplication.checkIn(binary(10))).isEqualTo(binary(10));
+    }
+  }
+
+}
@@ -0,0 +1,53 @@
+package com.orta.gos.model.store;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import com.google.protobuf.ByteString;
+
+@DisplayName("ContentAddressedStore")
+class ContentAddressedStoreTest {
+
+  ContentAddressedStore store = new ContentAddressedStore("cas");
+
+  @Test
+  @DisplayName("should key bodies by their SHA-256 hash")
+  void test0() {
+    var key = store.put(ByteString.copyFromUtf8("abc"));
+
+    assertThat(key).isEqualTo("ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad");
+    assertThat(store.get(key).get()).isEqualTo(ByteString.copyFromUtf8("abc"));
+  }
+
+  @Test
+  @DisplayName("should hold identical bodies once")
+  void test1() {
+    var first = store.put(ByteString.copyFromUtf8("body"));
+    var second = store.put(ByteString.copyFromUtf8("body"));
+    var other = store.put(ByteString.copyFromUtf8("other body"));
+
+    assertThat(second).isEqualTo(first);
+    assertThat(other).isNotEqualTo(first);
+    assertThat(store.stats()).isEqualTo(new ContentAddressedStore.Stats(2, 14, 1, 4));
+  }
+
+  @Test
+  @DisplayName("should drop a body once every reference was released")
+  void test2() {
+    var key = store.put(ByteString.copyFromUtf8("body"));
+    store.put(ByteString.copyFromUtf8("body"));
+    store.retain(key);
+
+    assertThat(store.release(key)).isTrue();
+    assertThat(store.release(key)).isTrue();
+    assertThat(store.get(key).isDefined()).isTrue();
+    assertThat(store.release(key)).isTrue();
+
+    assertThat(store.get(key).isEmpty()).isTrue();
+    assertThat(store.release(key)).isFalse();
+    assertThat(store.stats().bytes()).isZero();
+  }
+
+}
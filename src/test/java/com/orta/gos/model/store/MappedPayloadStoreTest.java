@@ -0,0 +1,143 @@
+package com.orta.gos.model.store;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.google.protobuf.ByteString;
+
+@DisplayName("MappedPayloadStore")
+class MappedPayloadStoreTest {
+
+  @TempDir
+  Path tempDir;
+
+  MappedPayloadStore store;
+
+  @BeforeEach
+  void open() {
+    store = MappedPayloadStore.open("local", tempDir, 1024, 0.5);
+  }
+
+  @AfterEach
+  void close() {
+    store.close();
+  }
+
+  static ByteString body(final int size, final int seed) {
+    var bytes = new byte[size];
+    for (int i = 0; i < size; i++) {
+      bytes[i] = (byte) (i + seed);
+    }
+    return ByteString.copyFrom(bytes);
+  }
+
+  @Nested
+  @DisplayName("put/get")
+  class PutGetTest {
+
+    @Test
+    @DisplayName("should return the stored body")
+    void test0() {
+      var key = store.put(body(100, 1));
+
+      assertThat(store.get(key).get()).isEqualTo(body(100, 1));
+    }
+
+    @Test
+    @DisplayName("should roll segments when the active one is full")
+    void test1() {
+      var keys = io.vavr.collection.List.range(0, 5).map(i -> store.put(body(400, i)));
+
+      assertThat(store.stats().segments()).isEqualTo(3);
+      keys.zipWithIndex().forEach(t -> assertThat(store.get(t._1).get()).isEqualTo(body(400, t._2)));
+    }
+
+    @Test
+    @DisplayName("should store bodies larger than a segment in a dedicated segment")
+    void test2() {
+      var key = store.put(body(5000, 7));
+
+      assertThat(store.get(key).get()).isEqualTo(body(5000, 7));
+      assertThat(store.stats().mappedBytes()).isEqualTo(5000);
+    }
+
+    @Test
+    @DisplayName("should return none for an unknown key")
+    void test3() {
+      assertThat(store.get("missing").isEmpty()).isTrue();
+    }
+  }
+
+  @Nested
+  @DisplayName("retain/release")
+  class ReferenceCountTest {
+
+    @Test
+    @DisplayName("should keep a body until all references are released")
+    void test0() {
+      var key = store.put(body(10, 0));
+      store.retain(key);
+
+      store.release(key);
+      assertThat(store.get(key).isDefined()).isTrue();
+
+      store.release(key);
+      assertThat(store.get(key).isEmpty()).isTrue();
+      assertThat(store.release(key)).isFalse();
+    }
+
+    @Test
+    @DisplayName("should compact sealed segments once most of their bytes are released")
+    void test1() {
+      var first = store.put(body(400, 1));
+      var second = store.put(body(400, 2));
+      var third = store.put(body(400, 3));
+
+      store.release(first);
+
+      // Only the second body was left in the first segment, it moved to the active one
+      assertThat(store.stats().segments()).isEqualTo(1);
+      assertThat(store.get(second).get()).isEqualTo(body(400, 2));
+      assertThat(store.get(third).get()).isEqualTo(body(400, 3));
+      assertThat(store.stats().liveBytes()).isEqualTo(800);
+    }
+
+    @Test
+    @DisplayName("should keep bodies read before compaction readable")
+    void test2() {
+      var first = store.put(body(400, 1));
+      var second = store.put(body(400, 2));
+      store.put(body(400, 3));
+
+      var read = store.get(second).get();
+      store.release(first);
+
+      assertThat(read).isEqualTo(body(400, 2));
+    }
+  }
+
+  @Test
+  @DisplayName("should delete its files and reject calls once closed")
+  void test0() throws Exception {
+    var key = store.put(body(10, 0));
+    var directory = store.directory();
+
+    store.close();
+
+    assertThat(Files.exists(directory)).isFalse();
+    assertThrows(IllegalStateException.class, () -> store.put(body(10, 0)));
+    assertThrows(IllegalStateException.class, () -> store.retain(key));
+    assertThrows(IllegalStateException.class, () -> store.release(key));
+  }
+
+}
@@ -0,0 +1,199 @@
+package com.orta.gos.model.store;
+
+import static com.orta.gos.model.rules.BlockType.MAIN;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+
+import com.orta.gos.model.Payload;
+import com.orta.gos.model.PlatformMessage;
+import com.orta.gos.model.PlatformWorkflow;
+import com.orta.gos.model.ProcessOutcome;
+import com.orta.gos.model.ProcessOutcomeSucces;
+import com.orta.gos.model.StringBody;
+import com.orta.gos.model.rules.BlockType;
+import com.orta.gos.model.rules.Step;
+import com.orta.gos.model.rules.WorkflowPlan;
+import com.orta.gos.model.utils.PlatformMessageUtils;
+
+import io.vavr.collection.HashMap;
+import io.vavr.collection.List;
+
+@DisplayName("OffHeapStateStore")
+class OffHeapStateStoreTest {
+
+  static final WorkflowPlan PLAN = WorkflowPlan.compile(HashMap.<BlockType, List<Step>>of(
+      MAIN, List.range(0, 3).map(i -> Step.newBuilder().setName("main-" + i).setAddress("service-" + i).build())));
+
+  OffHeapStateStore store;
+
+  @BeforeEach
+  void open() {
+    store = new OffHeapStateStore(new OffHeapStateStore.Options(4096, 0.5));
+  }
+
+  @AfterEach
+  void close() {
+    store.close();
+  }
+
+  static PlatformMessage message(final String id, final String body) {
+    return PlatformMessage.newBuilder()
+        .setId(id)
+        .addPayloads(Payload.newBuilder().setStringBody(StringBody.newBuilder().setBody(body)))
+        .setWorkflowLog(PlatformWorkflow.newBuilder()
+            .addAllSteps(PLAN.steps())
+            .setTracker(PLAN.initialTracker()))
+        .build();
+  }
+
+  static PlatformMessage advance(final PlatformMessage message) {
+    return PlatformMessageUtils.withMessage(message).appendOutcome(ProcessOutcome.newBuilder()
+        .setSuccess(ProcessOutcomeSucces.getDefaultInstance())
+        .build());
+  }
+
+  @Nested
+  @DisplayName("put/get/remove")
+  class PutGetTest {
+
+    @Test
+    @DisplayName("should return the stored message")
+    void test0() {
+      var message = message("m1", "body");
+
+      assertThat(store.put(message)).isTrue();
+      assertThat(store.get("m1").get()).isEqualTo(message);
+      assertThat(store.tracker("m1").get()).isEqualTo(message.getWorkflowLog().getTracker());
+      assertThat(store.get("m2").isEmpty()).isTrue();
+    }
+
+    @Test
+    @DisplayName("should replace the message with the same id, in place when it fits")
+    void test1() {
+      store.put(message("m1", "a longer body"));
+      var allocated = store.stats().allocatedBytes();
+
+      assertThat(store.put(message("m1", "short"))).isFalse();
+      assertThat(store.put(message("m1", "x".repeat(100)))).isFalse();
+
+      assertThat(store.get("m1").get()).isEqualTo(message("m1", "x".repeat(100)));
+      assertThat(store.size()).isEqualTo(1);
+      assertThat(store.stats().allocatedBytes()).isEqualTo(allocated);
+    }
+
+    @Test
+    @DisplayName("should keep every message retrievable as the index grows and entries are removed")
+    void test2() {
+      var ids = List.range(0, 5000).map(i -> "message-" + i);
+      ids.forEach(id -> store.put(message(id, id)));
+
+      ids.filter(id -> id.hashCode() % 2 == 0).forEach(id -> assertThat(store.remove(id)).isTrue());
+
+      assertThat(store.stats().indexCapacity()).isGreaterThan(5000);
+      ids.forEach(id -> assertThat(store.get(id).map(PlatformMessage::getId).getOrNull())
+          .isEqualTo(id.hashCode() % 2 == 0 ? null : id));
+      assertThat(store.size()).isEqualTo(ids.count(id -> id.hashCode() % 2 != 0));
+    }
+
+    @Test
+    @DisplayName("should compact the slabs of removed messages")
+    void test3() {
+      var ids = List.range(0, 200).map(i -> "message-" + i);
+      ids.forEach(id -> store.put(message(id, "x".repeat(50))));
+      var slabs = store.stats().slabs();
+
+      ids.drop(10).forEach(store::remove);
+
+      assertThat(store.stats().slabs()).isLessThan(slabs);
+      ids.take(10).forEach(id -> assertThat(store.get(id).get()).isEqualTo(message(id, "x".repeat(50))));
+    }
+
+    @Test
+    @DisplayName("should free the slabs without live records when compaction is disabled")
+    void test5() {
+      try (var uncompacted = new OffHeapStateStore(new OffHeapStateStore.Options(4096, 0))) {
+        var ids = List.range(0, 200).map(i -> "message-" + i);
+        ids.forEach(id -> uncompacted.put(message(id, "x".repeat(50))));
+        var slabs = uncompacted.stats().slabs();
+
+        ids.drop(10).forEach(uncompacted::remove);
+
+        assertThat(uncompacted.stats().slabs()).isLessThan(slabs);
+        assertThat(uncompacted.stats().allocatedBytes()).isLessThan(slabs * 4096L);
+        ids.take(10).forEach(id -> assertThat(uncompacted.get(id).get()).isEqualTo(message(id, "x".repeat(50))));
+      }
+    }
+
+    @Test
+    @DisplayName("should reject calls once closed")
+    void test4() {
+      store.close();
+
+      assertThrows(IllegalStateException.class, () -> store.get("m1"));
+    }
+  }
+
+  @Nested
+  @DisplayName("compareAndSet")
+  class CompareAndSetTest {
+
+    @Test
+    @DisplayName("should replace the message only when the tracker is the expected one")
+    void test0() {
+      var message = message("m1", "body");
+      store.put(message);
+      var advanced = advance(message);
+
+      assertThat(store.compareAndSet(message.getWorkflowLog().getTracker(), advanced)).isTrue();
+      assertThat(store.compareAndSet(message.getWorkflowLog().getTracker(), advance(message))).isFalse();
+      assertThat(store.get("m1").get()).isEqualTo(advanced);
+    }
+
+    @Test
+    @DisplayName("should not store an unknown message")
+    void test1() {
+      var message = message("m1", "body");
+
+      assertThat(store.compareAndSet(message.getWorkflowLog().getTracker(), message)).isFalse();
+      assertThat(store.size()).isZero();
+    }
+  }
+
+  @Nested
+  @DisplayName("atAddress")
+  class AtAddressTest {
+
+    @Test
+    @DisplayName("should iterate the messages waiting on the address")
+    void test0() {
+      store.put(message("m1", "body"));
+      store.put(advance(message("m2", "body")));
+      store.put(advance(message("m3", "body")));
+      store.put(advance(advance(advance(message("m4", "body")))));
+
+      assertThat(store.atAddress("service-0").map(PlatformMessage::getId).toJavaList()).containsExactly("m1");
+      assertThat(store.atAddress("service-1").map(PlatformMessage::getId).toJavaSet())
+          .containsExactlyInAnyOrder("m2", "m3");
+      assertThat(store.atAddress("service-2").isEmpty()).isTrue();
+      assertThat(store.atAddress("service").isEmpty()).isTrue();
+    }
+
+    @Test
+    @DisplayName("should follow the message as it advances")
+    void test1() {
+      var message = message("m1", "body");
+      store.put(message);
+      store.compareAndSet(message.getWorkflowLog().getTracker(), advance(message));
+
+      assertThat(store.atAddress("service-0").isEmpty()).isTrue();
+      assertThat(store.atAddress("service-1").map(PlatformMessage::getId).toJavaList()).containsExactly("m1");
+    }
+  }
+
+}
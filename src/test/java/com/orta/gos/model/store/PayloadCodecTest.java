@@ -0,0 +1,77 @@
+package com.orta.gos.model.store;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import com.google.protobuf.ByteString;
+
+import io.vavr.collection.List;
+
+@DisplayName("PayloadCodec")
+class PayloadCodecTest {
+
+  static final ByteString BODY = ByteString.copyFromUtf8("<items>" + "<item>value</item>".repeat(500) + "</items>");
+
+  @Test
+  @DisplayName("should restore the compressed bytes")
+  void test0() {
+    List.of("deflate", "gzip").map(name -> PayloadCodec.forName(name).get()).forEach(codec -> {
+      var compressed = codec.compress(BODY);
+
+      assertThat(compressed.size()).isLessThan(BODY.size() / 10);
+      assertThat(codec.decompress(compressed)).isEqualTo(BODY);
+      assertThat(codec.decompress(codec.compress(ByteString.EMPTY))).isEqualTo(ByteString.EMPTY);
+    });
+  }
+
+  @Test
+  @DisplayName("should fail on corrupted bytes")
+  void test1() {
+    assertThrows(IllegalStateException.class,
+        () -> PayloadCodec.GZIP.decompress(ByteString.copyFromUtf8("not compressed")));
+  }
+
+  @Test
+  @DisplayName("should look up registered codecs by name")
+  void test2() {
+    var reversing = new PayloadCodec() {
+      @Override
+      public String name() {
+        return "test-reverse";
+      }
+
+      @Override
+      public ByteString compress(final ByteString body) {
+        return ByteString.copyFrom(new StringBuilder(body.toStringUtf8()).reverse().toString().getBytes());
+      }
+
+      @Override
+      public ByteString decompress(final ByteString compressed) {
+        return compress(compressed);
+      }
+    };
+
+    assertThat(PayloadCodec.forName("test-reverse").isEmpty()).isTrue();
+    PayloadCodec.register(reversing);
+
+    assertThat(PayloadCodec.forName("test-reverse").get()).isSameAs(reversing);
+  }
+
+  @Test
+  @DisplayName("should reject bytes not inflating to exactly the recorded size")
+  void test3() {
+    var zeros = ByteString.copyFrom(new byte[8 * 1024 * 1024]);
+    List.of(PayloadCodec.DEFLATE, PayloadCodec.GZIP).forEach(codec -> {
+      var compressed = codec.compress(zeros);
+
+      assertThat(codec.decompress(compressed, zeros.size())).isEqualTo(zeros);
+      assertThrows(IllegalStateException.class, () -> codec.decompress(compressed, 1_024));
+      assertThrows(IllegalStateException.class, () -> codec.decompress(compressed, zeros.size() + 1));
+      assertThrows(IllegalStateException.class, () -> codec.decompress(compressed, -1));
+    });
+  }
+
+}
@@ -0,0 +1,257 @@
+package com.orta.gos.model.store;
+
+import static com.orta.gos.model.rules.BlockType.GENERAL_ERROR;
+import static com.orta.gos.model.rules.BlockType.MAIN;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.orta.gos.model.Payload;
+import com.orta.gos.model.PlatformMessage;
+import com.orta.gos.model.PlatformWorkflow;
+import com.orta.gos.model.ProcessOutcome;
+import com.orta.gos.model.ProcessOutcomeFailure;
+import com.orta.gos.model.ProcessOutcomeSucces;
+import com.orta.gos.model.StringBody;
+import com.orta.gos.model.rules.BlockType;
+import com.orta.gos.model.rules.Step;
+import com.orta.gos.model.rules.WorkflowPlan;
+import com.orta.gos.model.utils.PlatformMessageUtils;
+
+import io.vavr.collection.HashMap;
+import io.vavr.collection.List;
+
+@DisplayName("TransitionJournal")
+class TransitionJournalTest {
+
+  @TempDir
+  Path tempDir;
+
+  static final WorkflowPlan PLAN = WorkflowPlan.compile(HashMap.<BlockType, List<Step>>of(
+      MAIN, List.range(0, 3).map(i -> Step.newBuilder().setName("main-" + i).build()),
+      GENERAL_ERROR, List.of(Step.newBuilder().setName("error").build())));
+
+  static final Duration NO_FLUSH = Duration.ofHours(1);
+
+  static PlatformMessage message(final String id) {
+    return PlatformMessage.newBuilder()
+        .setId(id)
+        .addPayloads(payload(id))
+        .setWorkflowLog(PlatformWorkflow.newBuilder()
+            .addAllSteps(PLAN.steps())
+            .setTracker(PLAN.initialTracker()))
+        .build();
+  }
+
+  static Payload payload(final String body) {
+    return Payload.newBuilder().setStringBody(StringBody.newBuilder().setBody(body)).build();
+  }
+
+  static ProcessOutcome success(final String body) {
+    return ProcessOutcome.newBuilder()
+        .setSuccess(ProcessOutcomeSucces.newBuilder().setOutputPayload(payload(body)).putHeaders("last", body))
+        .build();
+  }
+
+  static final ProcessOutcome FAILURE = ProcessOutcome.newBuilder()
+      .setFailure(ProcessOutcomeFailure.newBuilder().setErrorMessage("failed"))
+      .build();
+
+  /**
+   * Appends the outcome to the message and journals the transition.
+   */
+  static PlatformMessage step(final TransitionJournal journal, final PlatformMessage message,
+      final ProcessOutcome outcome) {
+    var updated = PlatformMessageUtils.withMessage(message).appendOutcome(outcome);
+    journal.record(message, outcome, updated);
+    return updated;
+  }
+
+  @Nested
+  @DisplayName("recover")
+  class RecoverTest {
+
+    @Test
+    @DisplayName("should rebuild the latest state of every in-flight message")
+    void test0() {
+      PlatformMessage m1;
+      PlatformMessage m2;
+      try (var journal = TransitionJournal.open(tempDir, new TransitionJournal.Options(4096, NO_FLUSH))) {
+        m1 = message("m1");
+        m2 = message("m2");
+        journal.begin(m1);
+        journal.begin(m2);
+        m1 = step(journal, m1, success("m1-0"));
+        m2 = step(journal, m2, FAILURE);
+        m1 = step(journal, m1, success("m1-1"));
+      }
+
+      var recovered = TransitionJournal.recover(tempDir);
+
+      assertThat(recovered.keySet().toJavaList()).containsExactly("m1", "m2");
+      assertThat(recovered.get("m1").get()).isEqualTo(m1);
+      assertThat(recovered.get("m2").get()).isEqualTo(m2);
+    }
+
+    @Test
+    @DisplayName("should drop the terminated and completed messages")
+    void test1() {
+      try (var journal = TransitionJournal.open(tempDir, new TransitionJournal.Options(4096, NO_FLUSH))) {
+        var m1 = message("m1");
+        journal.begin(m1);
+        journal.begin(message("m2"));
+        journal.begin(message("m3"));
+        for (int i = 0; i < 3; i++) {
+          m1 = step(journal, m1, success("m1-" + i));
+        }
+        journal.complete("m2");
+      }
+
+      assertThat(TransitionJournal.recover(tempDir).keySet().toJavaList()).containsExactly("m3");
+    }
+
+    @Test
+    @DisplayName("should read across rolled segments and journals reopened in the same directory")
+    void test2() {
+      var m1 = message("m1");
+      try (var journal = TransitionJournal.open(tempDir, new TransitionJournal.Options(256, NO_FLUSH))) {
+        journal.begin(m1);
+        m1 = step(journal, m1, success("x".repeat(200)));
+        assertThat(journal.stats().segments()).isGreaterThan(1);
+      }
+      try (var journal = TransitionJournal.open(tempDir, new TransitionJournal.Options(256, NO_FLUSH))) {
+        m1 = step(journal, m1, success("m1-1"));
+      }
+
+      assertThat(TransitionJournal.recover(tempDir).get("m1").get()).isEqualTo(m1);
+    }
+
+    @Test
+    @DisplayName("should stop reading a segment at a torn record")
+    void test3() throws IOException {
+      var m1 = message("m1");
+      PlatformMessage beforeTorn;
+      try (var journal = TransitionJournal.open(tempDir, new TransitionJournal.Options(4096, NO_FLUSH))) {
+        journal.begin(m1);
+        beforeTorn = step(journal, m1, success("m1-0"));
+        step(journal, beforeTorn, success("m1-1"));
+      }
+
+      // Corrupt the last byte of the last record
+      var segment = Files.list(tempDir).findFirst().get();
+      try (var channel = FileChannel.open(segment, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+        var content = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        int position = 0;
+        int last = 0;
+        while (content.getInt(position) > 0) {
+          last = position + 8 + content.getInt(position) - 1;
+          position += 8 + content.getInt(position);
+        }
+        channel.write(ByteBuffer.wrap(new byte[] { (byte) ~content.get(last) }), last);
+      }
+
+      assertThat(TransitionJournal.recover(tempDir).get("m1").get()).isEqualTo(beforeTorn);
+    }
+  }
+
+  @Nested
+  @DisplayName("sync/checkpoint")
+  class SyncTest {
+
+    @Test
+    @DisplayName("should make every record durable once synced from concurrent writers")
+    void test0() throws Exception {
+      try (var journal = TransitionJournal.open(tempDir, new TransitionJournal.Options(1 << 20, NO_FLUSH));
+          var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+        var futures = List.range(0, 64).map(i -> executor.submit(() -> journal.sync(journal.begin(message("m" + i)))));
+        for (var future : futures) {
+          future.get();
+        }
+
+        assertThat(journal.stats().durable()).isEqualTo(64);
+      }
+    }
+
+    @Test
+    @DisplayName("should flush in the background")
+    void test1() throws InterruptedException {
+      try (var journal = TransitionJournal.open(tempDir, new TransitionJournal.Options(4096, Duration.ofMillis(1)))) {
+        journal.begin(message("m1"));
+        for (int i = 0; i < 500 && journal.stats().durable() == 0; i++) {
+          Thread.sleep(1);
+        }
+
+        assertThat(journal.stats().durable()).isEqualTo(1);
+      }
+    }
+
+    @Test
+    @DisplayName("should keep the in-flight messages only after a checkpoint")
+    void test2() {
+      try (var journal = TransitionJournal.open(tempDir, new TransitionJournal.Options(256, NO_FLUSH))) {
+        var m1 = message("m1");
+        journal.begin(m1);
+        journal.begin(message("m2"));
+        m1 = step(journal, m1, success("m1-0"));
+
+        var deleted = journal.checkpoint(List.of(m1));
+        m1 = step(journal, m1, success("m1-1"));
+
+        assertThat(deleted).isPositive();
+        var recovered = TransitionJournal.recover(tempDir);
+        assertThat(recovered.keySet().toJavaList()).containsExactly("m1");
+        assertThat(recovered.get("m1").get()).isEqualTo(m1);
+      }
+    }
+
+    @Test
+    @DisplayName("should fail the waiting writers when forcing fails, and force their records again")
+    void test3() throws Exception {
+      var failing = new AtomicBoolean(true);
+      var forces = new AtomicInteger();
+      Consumer<MappedByteBuffer> forcer = buffer -> {
+        forces.incrementAndGet();
+        if (failing.get()) {
+          throw new UncheckedIOException(new IOException("disk failure"));
+        }
+        buffer.force();
+      };
+
+      try (var journal = TransitionJournal.open(tempDir, new TransitionJournal.Options(1 << 20, NO_FLUSH), forcer);
+          var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+        var futures = List.range(0, 16).map(i -> executor.submit(() -> journal.sync(journal.begin(message("m" + i)))));
+        for (var future : futures) {
+          assertThrows(ExecutionException.class, future::get);
+        }
+        assertThat(journal.stats().durable()).isZero();
+
+        failing.set(false);
+        var attempted = forces.get();
+        journal.flush();
+
+        assertThat(forces.get()).isGreaterThan(attempted);
+        assertThat(journal.stats().durable()).isEqualTo(16);
+      }
+    }
+  }
+
+}
@@ -0,0 +1,80 @@
+package com.orta.gos.model.utils;
+
+import static com.orta.gos.model.utils.PayloadFixtures.byAttributes;
+import static com.orta.gos.model.utils.PayloadFixtures.desc;
+import static com.orta.gos.model.utils.PayloadFixtures.payload;
+import static com.orta.gos.model.utils.RetentionPolicyTest.message;
+import static com.orta.gos.model.utils.RetentionPolicyTest.step;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import com.orta.gos.model.Payload;
+import com.orta.gos.model.ProcessOutcome;
+import com.orta.gos.model.ProcessOutcomeFailure;
+import com.orta.gos.model.ProcessOutcomeSucces;
+import com.orta.gos.model.rules.PicSelector;
+
+import io.vavr.collection.List;
+
+@DisplayName("IndexedMessage")
+class IndexedMessageTest {
+
+  static final ProcessOutcome ENRICHED = ProcessOutcome.newBuilder()
+      .setSuccess(ProcessOutcomeSucces.newBuilder().setOutputPayload(payload("p5", "type", "customer")))
+      .build();
+
+  static List<String> uuids(final Iterable<Payload> payloads) {
+    return List.ofAll(payloads).map(Payload::getUuid);
+  }
+
+  @Test
+  @DisplayName("should send the payloads selected by the current step")
+  void test0() {
+    var message = IndexedMessage.of(message(0,
+        step("s0", byAttributes(desc("order", "type", "order"), desc("customer", "type", "customer"))),
+        step("s1", PicSelector.getDefaultInstance())));
+
+    assertThat(uuids(message.processInput().getPayloadsList())).containsExactly("p1", "p2");
+  }
+
+  @Test
+  @DisplayName("should index appended payloads incrementally")
+  void test1() {
+    var message = IndexedMessage.of(message(0,
+        step("s0", PicSelector.getDefaultInstance()),
+        step("s1", byAttributes(desc("customer", "type", "customer")))));
+
+    var updated = message.appendOutcome(ENRICHED);
+
+    assertThat(updated.index().size()).isEqualTo(6);
+    assertThat(uuids(updated.processInput().getPayloadsList())).containsExactly("p5");
+  }
+
+  @Test
+  @DisplayName("should keep the index when no payload is appended or dropped")
+  void test2() {
+    var message = IndexedMessage.of(message(0, step("s0", PicSelector.getDefaultInstance())));
+    var failure = ProcessOutcome.newBuilder()
+        .setFailure(ProcessOutcomeFailure.newBuilder().setErrorMessage("failed"))
+        .build();
+
+    assertThat(message.appendOutcome(failure).index()).isSameAs(message.index());
+  }
+
+  @Test
+  @DisplayName("should rebuild the index of a pruned message")
+  void test3() {
+    var message = IndexedMessage.of(message(0,
+        step("s0", PicSelector.getDefaultInstance()),
+        step("s1", byAttributes(desc("order", "type", "order")))));
+
+    var updated = message.appendOutcome(ENRICHED, RetentionPolicy.keepSelected());
+
+    assertThat(uuids(updated.message().getPayloadsList())).containsExactly("p2");
+    assertThat(updated.index().size()).isEqualTo(1);
+    assertThat(uuids(updated.processInput().getPayloadsList())).containsExactly("p2");
+  }
+
+}
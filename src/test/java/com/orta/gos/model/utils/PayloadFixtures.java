@@ -0,0 +1,47 @@
+package com.orta.gos.model.utils;
+
+import com.orta.gos.model.Payload;
+import com.orta.gos.model.rules.PayloadAttributes;
+import com.orta.gos.model.rules.PicSelector;
+import com.orta.gos.model.rules.PicSelectorAttributes;
+
+import io.vavr.collection.List;
+
+/**
+ * Payloads and selectors shared by the tests of the payload utilities.
+ */
+final class PayloadFixtures {
+
+  static final List<Payload> payloads = List.of(
+      payload("p0", "type", "order", "version", "1"),
+      payload("p1", "type", "customer"),
+      payload("p2", "type", "order", "version", "2"),
+      payload("p3", "type", "invoice"));
+
+  private PayloadFixtures() {
+    // Private constructor to prevent instantiation
+  }
+
+  static Payload payload(final String uuid, final String... attributes) {
+    var builder = Payload.newBuilder().setUuid(uuid);
+    for (int i = 0; i < attributes.length; i += 2) {
+      builder.putAttributes(attributes[i], attributes[i + 1]);
+    }
+    return builder.build();
+  }
+
+  static PayloadAttributes desc(final String name, final String... attributes) {
+    var builder = PayloadAttributes.newBuilder().setPicName(name);
+    for (int i = 0; i < attributes.length; i += 2) {
+      builder.putPicAttributes(attributes[i], attributes[i + 1]);
+    }
+    return builder.build();
+  }
+
+  static PicSelector byAttributes(final PayloadAttributes... descs) {
+    return PicSelector.newBuilder()
+        .setByAttributes(PicSelectorAttributes.newBuilder().addAllPayloadDesc(List.of(descs)))
+        .build();
+  }
+
+}
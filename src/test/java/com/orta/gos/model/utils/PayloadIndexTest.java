@@ -0,0 +1,81 @@
+package com.orta.gos.model.utils;
+
+import static com.orta.gos.model.utils.PayloadFixtures.byAttributes;
+import static com.orta.gos.model.utils.PayloadFixtures.desc;
+import static com.orta.gos.model.utils.PayloadFixtures.payload;
+import static com.orta.gos.model.utils.PayloadFixtures.payloads;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+
+import com.orta.gos.model.Payload;
+import com.orta.gos.model.rules.PayloadAttributes;
+import com.orta.gos.model.rules.PicSelector;
+
+import io.vavr.collection.List;
+
+@DisplayName("PayloadIndex")
+class PayloadIndexTest {
+
+  @Nested
+  @DisplayName("latest")
+  class LatestTest {
+
+    @Test
+    @DisplayName("should find the most recent payload holding all attributes")
+    void test0() {
+      var index = PayloadIndex.of(payloads);
+
+      assertThat(index.latest(desc("order", "type", "order")).get()).isEqualTo(2);
+      assertThat(index.latest(desc("order", "type", "order", "version", "1")).get()).isEqualTo(0);
+      assertThat(index.latest(desc("order", "type", "order", "version", "3")).isEmpty()).isTrue();
+      assertThat(index.latest(desc("any")).get()).isEqualTo(3);
+    }
+
+    @Test
+    @DisplayName("should not confuse attribute keys and values containing '='")
+    void test1() {
+      var index = PayloadIndex.of(List.of(payload("p0", "a=b", "c"), payload("p1", "a", "b=c")));
+
+      assertThat(index.latest(desc("x", "a", "b=c")).get()).isEqualTo(1);
+      assertThat(index.latest(desc("x", "a=b", "c")).get()).isEqualTo(0);
+    }
+  }
+
+  @Nested
+  @DisplayName("selectedIndices")
+  class SelectedIndicesTest {
+
+    @Test
+    @DisplayName("should select as PicSelectorUtils does")
+    void test0() {
+      var random = new Random(42);
+      var history = List.range(0, 300).map(i -> payload("p" + i,
+          "type", "t" + random.nextInt(5), "version", "v" + random.nextInt(3), "source", "s" + random.nextInt(2)));
+      var selectors = List.range(0, 50).map(i -> byAttributes(
+          desc("a", "type", "t" + random.nextInt(6), "version", "v" + random.nextInt(3)),
+          desc("b", "source", "s" + random.nextInt(2), "type", "t" + random.nextInt(5), "version", "v2"),
+          PayloadAttributes.getDefaultInstance()))
+          .append(PicSelector.getDefaultInstance());
+
+      var index = PayloadIndex.empty();
+      for (int size = 0; size <= history.size(); size += 50) {
+        var prefix = history.take(size);
+        var incremental = index;
+        for (Payload payload : prefix.drop(index.size())) {
+          incremental = incremental.append(payload);
+        }
+        index = incremental;
+
+        for (var selector : selectors) {
+          assertThat(index.selectedIndices(selector)).isEqualTo(PicSelectorUtils.selectedIndices(prefix, selector));
+        }
+      }
+    }
+  }
+
+}
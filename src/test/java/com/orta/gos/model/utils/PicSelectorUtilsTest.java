@@ -0,0 +1,61 @@
+package com.orta.gos.model.utils;
+
+import static com.orta.gos.model.utils.PayloadFixtures.byAttributes;
+import static com.orta.gos.model.utils.PayloadFixtures.desc;
+import static com.orta.gos.model.utils.PayloadFixtures.payloads;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+
+import com.orta.gos.model.rules.PicSelector;
+import com.orta.gos.model.rules.PicSelectorLast;
+
+@DisplayName("PicSelectorUtils")
+class PicSelectorUtilsTest {
+
+  @Nested
+  @DisplayName("matches")
+  class MatchesTest {
+
+    @Test
+    @DisplayName("should match when all attributes are present with the same value")
+    void test0() {
+      assertThat(PicSelectorUtils.matches(payloads.get(0), desc("order", "type", "order", "version", "1"))).isTrue();
+      assertThat(PicSelectorUtils.matches(payloads.get(0), desc("order", "type", "order", "version", "2"))).isFalse();
+      assertThat(PicSelectorUtils.matches(payloads.get(1), desc("order", "type", "order"))).isFalse();
+    }
+  }
+
+  @Nested
+  @DisplayName("selectedIndices")
+  class SelectedIndicesTest {
+
+    @Test
+    @DisplayName("should select the last payload by default")
+    void test0() {
+      assertThat(PicSelectorUtils.selectedIndices(payloads, PicSelector.getDefaultInstance())).containsExactly(3);
+      assertThat(PicSelectorUtils.selectedIndices(payloads,
+          PicSelector.newBuilder().setLastPayload(PicSelectorLast.getDefaultInstance()).build()))
+          .containsExactly(3);
+    }
+
+    @Test
+    @DisplayName("should select the most recent match of each entry")
+    void test1() {
+      var selector = byAttributes(desc("order", "type", "order"), desc("customer", "type", "customer"));
+
+      assertThat(PicSelectorUtils.selectedIndices(payloads, selector)).containsExactly(1, 2);
+    }
+
+    @Test
+    @DisplayName("should skip entries without a match")
+    void test2() {
+      var selector = byAttributes(desc("missing", "type", "missing"), desc("invoice", "type", "invoice"));
+
+      assertThat(PicSelectorUtils.selectedIndices(payloads, selector)).containsExactly(3);
+    }
+  }
+
+}
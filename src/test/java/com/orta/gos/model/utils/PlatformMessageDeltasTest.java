@@ -0,0 +1,162 @@
+package com.orta.gos.model.utils;
+
+import static com.orta.gos.model.rules.BlockType.MAIN;
+import static com.orta.gos.model.rules.BlockType.MAIN_VALUE;
+import static com.orta.gos.model.utils.PayloadFixtures.payload;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.vavr.api.VavrAssertions.assertThat;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+
+import com.orta.gos.model.PlatformMessage;
+import com.orta.gos.model.PlatformWorkflow;
+import com.orta.gos.model.ProcessOutcome;
+import com.orta.gos.model.ProcessOutcomeFailure;
+import com.orta.gos.model.ProcessOutcomeSucces;
+import com.orta.gos.model.rules.BlockRange;
+import com.orta.gos.model.rules.Step;
+import com.orta.gos.model.rules.Tracker;
+
+@DisplayName("PlatformMessageDeltas")
+class PlatformMessageDeltasTest {
+
+  static final PlatformMessage BASE = PlatformMessage.newBuilder()
+      .setId("message-1")
+      .setCreationTime(1000L)
+      .addPayloads(payload("p0", "type", "order"))
+      .addPayloads(payload("p1", "type", "customer"))
+      .putHeaders("h1", "v1")
+      .setWorkflowLog(PlatformWorkflow.newBuilder()
+          .addSteps(Step.newBuilder().setName("s0"))
+          .addSteps(Step.newBuilder().setName("s1"))
+          .addSteps(Step.newBuilder().setName("s2"))
+          .setTracker(Tracker.newBuilder()
+              .setCurrentBlock(MAIN)
+              .setTermination(3)
+              .putRanges(MAIN_VALUE, BlockRange.newBuilder().setType(MAIN).setEndIdx(2).build())))
+      .build();
+
+  static final ProcessOutcome SUCCESS = ProcessOutcome.newBuilder()
+      .setSuccess(ProcessOutcomeSucces.newBuilder()
+          .setOutputPayload(payload("p2", "type", "result"))
+          .putHeaders("h1", "ignored")
+          .putHeaders("h2", "v2"))
+      .build();
+
+  @Nested
+  @DisplayName("diff")
+  class DiffTest {
+
+    @Test
+    @DisplayName("should carry only the tracker, new payloads and new headers")
+    void test0() {
+      var delta = PlatformMessageDeltas.diff(BASE, SUCCESS).get();
+
+      assertThat(delta.getId()).isEqualTo("message-1");
+      assertThat(delta.getTracker().getCurrentStep()).isEqualTo(1);
+      assertThat(delta.getAppendedPayloadsList()).containsExactly(payload("p2", "type", "result"));
+      assertThat(delta.getRemovedPayloadsList()).isEmpty();
+      assertThat(delta.getAddedHeadersMap()).containsOnlyKeys("h2");
+      assertThat(delta.getSerializedSize()).isLessThan(BASE.getSerializedSize());
+    }
+
+    @Test
+    @DisplayName("should record payloads dropped by a retention policy")
+    void test1() {
+      var updated = PlatformMessageUtils.withMessage(BASE).appendOutcome(SUCCESS, RetentionPolicy.keepLast(2));
+
+      var delta = PlatformMessageDeltas.diff(BASE, updated).get();
+
+      assertThat(delta.getRemovedPayloadsList()).containsExactly(0);
+      assertThat(delta.getAppendedPayloadsList()).containsExactly(payload("p2", "type", "result"));
+    }
+
+    @Test
+    @DisplayName("should refuse changes of the workflow steps")
+    void test2() {
+      var updated = BASE.toBuilder()
+          .setWorkflowLog(BASE.getWorkflowLog().toBuilder().addSteps(Step.newBuilder().setName("s3")))
+          .build();
+
+      assertThat(PlatformMessageDeltas.diff(BASE, updated)).isLeft();
+    }
+  }
+
+  @Nested
+  @DisplayName("apply")
+  class ApplyTest {
+
+    @Test
+    @DisplayName("should rebuild the message produced by appendOutcome")
+    void test0() {
+      var failure = ProcessOutcome.newBuilder()
+          .setFailure(ProcessOutcomeFailure.newBuilder().setErrorMessage("failed"))
+          .build();
+
+      for (var outcome : java.util.List.of(SUCCESS, failure)) {
+        var expected = PlatformMessageUtils.withMessage(BASE).appendOutcome(outcome);
+        var delta = PlatformMessageDeltas.diff(BASE, outcome).get();
+
+        assertThat(PlatformMessageDeltas.apply(BASE, delta)).containsOnRight(expected);
+      }
+    }
+
+    @Test
+    @DisplayName("should rebuild a pruned message")
+    void test1() {
+      var expected = PlatformMessageUtils.withMessage(BASE).appendOutcome(SUCCESS, RetentionPolicy.keepLast(1));
+      var delta = PlatformMessageDeltas.diff(BASE, expected).get();
+
+      assertThat(PlatformMessageDeltas.apply(BASE, delta)).containsOnRight(expected);
+    }
+
+    @Test
+    @DisplayName("should rebuild the timing trace of a timed outcome")
+    void test3() {
+      var expected = PlatformMessageUtils.withMessage(BASE).appendOutcome(0, SUCCESS,
+          new CallTiming(2_000L, 3_500L, 1));
+      var delta = PlatformMessageDeltas.diff(BASE, expected).get();
+
+      assertThat(delta.getAppendedTimings()).isEqualTo(expected.getWorkflowLog().getTimings());
+      assertThat(PlatformMessageDeltas.apply(BASE, delta)).containsOnRight(expected);
+    }
+
+    @Test
+    @DisplayName("should carry only the timing entries appended to the base trace")
+    void test4() {
+      var base = PlatformMessageUtils.withMessage(BASE).appendOutcome(0, SUCCESS, new CallTiming(2_000L, 3_500L, 1));
+      var expected = PlatformMessageUtils.withMessage(base).appendOutcome(1, SUCCESS,
+          new CallTiming(4_000L, 4_200L, 2));
+      var delta = PlatformMessageDeltas.diff(base, expected).get();
+
+      assertThat(delta.hasTimings()).isFalse();
+      assertThat(delta.getAppendedTimings().getStepsList()).containsExactly(1);
+      assertThat(delta.getAppendedTimings().getDispatchDeltasList()).containsExactly(2_000L);
+      assertThat(PlatformMessageDeltas.apply(base, delta)).containsOnRight(expected);
+    }
+
+    @Test
+    @DisplayName("should carry the whole timing trace when it was not appended to")
+    void test5() {
+      var base = PlatformMessageUtils.withMessage(BASE).appendOutcome(0, SUCCESS, new CallTiming(2_000L, 3_500L, 1));
+      var rewritten = base.toBuilder();
+      rewritten.getWorkflowLogBuilder().getTimingsBuilder().setDurations(0, 1L);
+      var delta = PlatformMessageDeltas.diff(base, rewritten.build()).get();
+
+      assertThat(delta.hasAppendedTimings()).isFalse();
+      assertThat(PlatformMessageDeltas.apply(base, delta)).containsOnRight(rewritten.build());
+    }
+
+    @Test
+    @DisplayName("should reject a delta created against another base")
+    void test2() {
+      var delta = PlatformMessageDeltas.diff(BASE, SUCCESS).get();
+      var next = PlatformMessageDeltas.apply(BASE, delta).get();
+
+      assertThat(PlatformMessageDeltas.apply(next, delta)).isLeft();
+    }
+  }
+
+}
@@ -0,0 +1,125 @@
+package com.orta.gos.model.utils;
+
+import static com.orta.gos.model.rules.BlockType.GENERAL_ERROR;
+import static com.orta.gos.model.rules.BlockType.MAIN;
+import static com.orta.gos.model.rules.BlockType.TYPE_NA;
+import static com.orta.gos.model.utils.PayloadFixtures.payload;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.orta.gos.model.BinaryBody;
+import com.orta.gos.model.Payload;
+import com.orta.gos.model.PlatformMessage;
+import com.orta.gos.model.PlatformWorkflow;
+import com.orta.gos.model.ProcessOutcome;
+import com.orta.gos.model.ProcessOutcomeFailure;
+import com.orta.gos.model.ProcessOutcomeSucces;
+import com.orta.gos.model.rules.BlockType;
+import com.orta.gos.model.rules.Step;
+import com.orta.gos.model.rules.WorkflowPlan;
+
+import io.vavr.collection.HashMap;
+import io.vavr.collection.List;
+
+@DisplayName("PlatformMessageSplicer")
+class PlatformMessageSplicerTest {
+
+  static List<Step> steps(final String prefix, final int count) {
+    return List.range(0, count).map(i -> Step.newBuilder().setName(prefix + i).setAddress("service-" + i).build());
+  }
+
+  static final WorkflowPlan PLAN = WorkflowPlan.compile(HashMap.<BlockType, List<Step>>of(
+      MAIN, steps("main-", 3), GENERAL_ERROR, steps("error-", 2)));
+
+  static final PlatformMessage MESSAGE = PlatformMessage.newBuilder()
+      .setId("message-1")
+      .setCreationTime(1000L)
+      .addPayloads(Payload.newBuilder()
+          .setBinaryBody(BinaryBody.newBuilder().setBody(ByteString.copyFrom(new byte[16 * 1024]))))
+      .putHeaders("h1", "v1")
+      .setWorkflowLog(PlatformWorkflow.newBuilder()
+          .addAllSteps(PLAN.steps())
+          .setTracker(PLAN.initialTracker()))
+      .build();
+
+  static final ProcessOutcome SUCCESS = ProcessOutcome.newBuilder()
+      .setSuccess(ProcessOutcomeSucces.newBuilder()
+          .setOutputPayload(payload("p1", "type", "result"))
+          .putHeaders("h1", "ignored")
+          .putHeaders("h2", "v2"))
+      .build();
+
+  static final ProcessOutcome FAILURE = ProcessOutcome.newBuilder()
+      .setFailure(ProcessOutcomeFailure.newBuilder().setErrorMessage("failed"))
+      .build();
+
+  @Test
+  @DisplayName("should produce the message appendOutcome produces, hop after hop")
+  void test0() throws InvalidProtocolBufferException {
+    for (var outcomes : List.of(
+        List.of(SUCCESS, SUCCESS, SUCCESS),
+        List.of(SUCCESS, FAILURE, SUCCESS, SUCCESS),
+        List.of(FAILURE, FAILURE, FAILURE))) {
+      var expected = MESSAGE;
+      var bytes = MESSAGE.toByteString();
+      for (var outcome : outcomes) {
+        expected = PlatformMessageUtils.withMessage(expected).appendOutcome(outcome);
+        bytes = PlatformMessageSplicer.appendOutcome(bytes, outcome);
+
+        assertThat(PlatformMessage.parseFrom(bytes)).isEqualTo(expected);
+      }
+      assertThat(PlatformMessageSplicer.compact(bytes)).isEqualTo(expected.toByteString());
+    }
+  }
+
+  @Test
+  @DisplayName("should produce the message appendOutcome produces through a PARALLEL block")
+  void test3() throws InvalidProtocolBufferException {
+    var plan = WorkflowPlan.compile(HashMap.<BlockType, List<Step>>of(
+        MAIN, steps("main-", 1), BlockType.PARALLEL, steps("parallel-", 3), GENERAL_ERROR, steps("error-", 1)));
+    var message = MESSAGE.toBuilder()
+        .setWorkflowLog(PlatformWorkflow.newBuilder().addAllSteps(plan.steps()).setTracker(plan.initialTracker()))
+        .build();
+
+    for (var outcomes : List.of(
+        List.of(SUCCESS, SUCCESS, SUCCESS, SUCCESS),
+        List.of(SUCCESS, SUCCESS, FAILURE, SUCCESS))) {
+      var expected = message;
+      var bytes = message.toByteString();
+      for (var outcome : outcomes) {
+        expected = PlatformMessageUtils.withMessage(expected).appendOutcome(outcome);
+        bytes = PlatformMessageSplicer.appendOutcome(bytes, outcome);
+
+        assertThat(PlatformMessage.parseFrom(bytes)).isEqualTo(expected);
+      }
+      assertThat(expected.getWorkflowLog().getTracker().getCurrentBlock()).isEqualTo(TYPE_NA);
+    }
+  }
+
+  @Test
+  @DisplayName("should override tracker fields reset to their default value")
+  void test1() throws InvalidProtocolBufferException {
+    var bytes = MESSAGE.toByteString();
+    for (int i = 0; i < 3; i++) {
+      bytes = PlatformMessageSplicer.appendOutcome(bytes, SUCCESS);
+    }
+
+    assertThat(PlatformMessage.parseFrom(bytes).getWorkflowLog().getTracker().getCurrentBlock()).isEqualTo(TYPE_NA);
+  }
+
+  @Test
+  @DisplayName("should only append the changes to the original bytes")
+  void test2() throws InvalidProtocolBufferException {
+    var original = MESSAGE.toByteString();
+
+    var bytes = PlatformMessageSplicer.appendOutcome(original, FAILURE);
+
+    assertThat(bytes.startsWith(original)).isTrue();
+    assertThat(bytes.size() - original.size()).isLessThan(32);
+  }
+
+}
@@ -5,29 +5,46 @@ import static com.orta.gos.model.rules.BlockEdge.START;
 import static com.orta.gos.model.rules.BlockType.MAIN;
 import static com.orta.gos.model.rules.BlockType.MAIN_VALUE;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.vavr.api.VavrAssertions.assertThat;
 
 import static java.util.Map.entry;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 
+import java.nio.file.Path;
+
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Nested;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
+import com.google.protobuf.ByteString;
+import com.orta.gos.model.BinaryBody;
 import com.orta.gos.model.Payload;
+import com.orta.gos.model.PayloadReference;
 import com.orta.gos.model.PlatformMessage;
 import com.orta.gos.model.PlatformWorkflow;
+import com.orta.gos.model.ProcessBatchOutcome;
 import com.orta.gos.model.ProcessOutcome;
 import com.orta.gos.model.ProcessOutcomeFailure;
 import com.orta.gos.model.ProcessOutcomeSucces;
+import com.orta.gos.model.ProcessRequest;
+import com.orta.gos.model.ProcessResponse;
 import com.orta.gos.model.StringBody;
 import com.orta.gos.model.rules.BlockIndicator;
 import com.orta.gos.model.rules.BlockRange;
 import com.orta.gos.model.rules.Step;
 import com.orta.gos.model.rules.Tracker;
+import com.orta.gos.model.rules.WorkflowRef;
+import com.orta.gos.model.rules.WorkflowRegistry;
+import com.orta.gos.model.store.ClaimCheck;
+import com.orta.gos.model.store.ContentAddressedStore;
+import com.orta.gos.model.store.MappedPayloadStore;
+import com.orta.gos.model.store.PayloadResolver;
 import com.orta.gos.model.utils.PlatformMessageUtils;
 
 import io.vavr.collection.List;
 import io.vavr.control.Either;
+import io.vavr.control.Option;
 
 @DisplayName("PlatformMessageUtils")
 class PlatformMessageUtilsTest {
@@ -61,7 +78,7 @@ class PlatformMessageUtilsTest {
   class ProcessInputTest {
 
     @Test
-    @DisplayName("should extract last payload and first step attributes")
+    @DisplayName("should extract last payload and current step attributes")
     void test0() {
       // Arrange
       var workflow = PlatformWorkflow.newBuilder()
@@ -83,6 +100,99 @@ class PlatformMessageUtilsTest {
       assertThat(result.getPayloadsList()).containsExactly(INPUT_PAYLOAD);
       assertThat(result.getAttributesMap()).containsExactlyEntriesOf(STEP.getAttributesMap());
     }
+
+    @Test
+    @DisplayName("should resolve a referenced payload body")
+    void test1() {
+      // Arrange
+      var reference = PayloadReference.newBuilder()
+          .setStore("local")
+          .setKey("key-1")
+          .setBodyField(Payload.STRING_BODY_FIELD_NUMBER)
+          .build();
+      var message = PlatformMessage.newBuilder()
+          .setWorkflowLog(PlatformWorkflow.newBuilder().addSteps(STEP).setTracker(TRACKER))
+          .addPayloads(Payload.newBuilder().setBodyRef(reference))
+          .build();
+      PayloadResolver resolver = ref -> ref.equals(reference)
+          ? Option.of(INPUT_PAYLOAD.getStringBody().toByteString())
+          : Option.none();
+
+      // Act
+      var result = PlatformMessageUtils.withMessage(message).processInput(resolver);
+
+      // Assert
+      assertThat(result.getPayloadsList()).containsExactly(INPUT_PAYLOAD);
+    }
+
+    @Test
+    @DisplayName("should send the payloads selected by the current step")
+    void test2() {
+      // Arrange
+      var order = PayloadFixtures.payload("p0", "type", "order");
+      var customer = PayloadFixtures.payload("p1", "type", "customer");
+      var step = STEP.toBuilder()
+          .setPicSelector(PayloadFixtures.byAttributes(PayloadFixtures.desc("order", "type", "order")))
+          .build();
+      var message = PlatformMessage.newBuilder()
+          .setWorkflowLog(PlatformWorkflow.newBuilder().addSteps(step).setTracker(TRACKER))
+          .addPayloads(order)
+          .addPayloads(customer)
+          .build();
+
+      // Act
+      var result = PlatformMessageUtils.withMessage(message).processInput();
+
+      // Assert
+      assertThat(result.getPayloadsList()).containsExactly(order);
+    }
+
+    @Test
+    @DisplayName("should take the attributes and selector of the same step past step 0")
+    void test3() {
+      // Arrange
+      var order = PayloadFixtures.payload("p0", "type", "order");
+      var customer = PayloadFixtures.payload("p1", "type", "customer");
+      var first = STEP.toBuilder()
+          .setPicSelector(PayloadFixtures.byAttributes(PayloadFixtures.desc("order", "type", "order")))
+          .build();
+      var second = Step.newBuilder()
+          .setName("second-step")
+          .putAttributes("key2", "value2")
+          .setPicSelector(PayloadFixtures.byAttributes(PayloadFixtures.desc("customer", "type", "customer")))
+          .build();
+      var message = PlatformMessage.newBuilder()
+          .setWorkflowLog(PlatformWorkflow.newBuilder()
+              .addSteps(first)
+              .addSteps(second)
+              .setTracker(TRACKER.toBuilder().setCurrentStep(1)))
+          .addPayloads(order)
+          .addPayloads(customer)
+          .build();
+      var utils = PlatformMessageUtils.withMessage(message);
+
+      // Act
+      var scanned = utils.processInput();
+      var indexed = IndexedMessage.of(message).processInput();
+
+      // Assert
+      for (var result : java.util.List.of(scanned, indexed)) {
+        assertThat(result.getAttributesMap()).containsExactly(entry("key2", "value2"));
+        assertThat(result.getPayloadsList()).containsExactly(customer);
+      }
+    }
+
+    @Test
+    @DisplayName("should fail when the current step cannot be resolved")
+    void test4() {
+      var message = PlatformMessage.newBuilder()
+          .setId("m1")
+          .setWorkflowLog(PlatformWorkflow.newBuilder().addSteps(STEP).setTracker(TRACKER.toBuilder().setCurrentStep(3)))
+          .addPayloads(INPUT_PAYLOAD)
+          .build();
+
+      assertThrows(IllegalStateException.class, () -> PlatformMessageUtils.withMessage(message).processInput());
+    }
   }
 
   @Nested
@@ -272,6 +382,89 @@ class PlatformMessageUtilsTest {
           .isTrue(); // Verify tracker was updated
     }
 
+    @Test
+    @DisplayName("should check in large output payloads")
+    void test6(@TempDir Path tempDir) {
+      // Arrange
+      var message = PlatformMessage.newBuilder()
+          .setWorkflowLog(PlatformWorkflow.newBuilder().addSteps(STEP).setTracker(TRACKER))
+          .addPayloads(INPUT_PAYLOAD)
+          .build();
+      var outputPayload = Payload.newBuilder()
+          .setBinaryBody(BinaryBody.newBuilder().setBody(ByteString.copyFrom(new byte[2048])))
+          .build();
+      var outcome = ProcessOutcome.newBuilder()
+          .setSuccess(ProcessOutcomeSucces.newBuilder().setOutputPayload(outputPayload))
+          .build();
+
+      try (var store = MappedPayloadStore.open("local", tempDir)) {
+        var claimCheck = ClaimCheck.of(store, 1024);
+
+        // Act
+        var result = PlatformMessageUtils.withMessage(message).appendOutcome(outcome, claimCheck);
+
+        // Assert
+        assertThat(result.getPayloadsList()).hasSize(2);
+        assertThat(result.getPayloadsList().getLast().hasBodyRef()).isTrue();
+        assertThat(claimCheck.resolve(result.getPayloadsList().getLast())).isEqualTo(outputPayload);
+      }
+    }
+
+    @Test
+    @DisplayName("should deduplicate identical output payloads and rehydrate them as input")
+    void test7() {
+      // Arrange
+      var outputPayload = Payload.newBuilder()
+          .setStringBody(StringBody.newBuilder().setBody("{\"value\":\"" + "x".repeat(2048) + "\"}"))
+          .build();
+      var outcome = ProcessOutcome.newBuilder()
+          .setSuccess(ProcessOutcomeSucces.newBuilder().setOutputPayload(outputPayload))
+          .build();
+      var store = new ContentAddressedStore("cas");
+      var deduplication = ClaimCheck.deduplicating(store, 1024);
+
+      // Act
+      var results = List.of("m1", "m2").map(id -> PlatformMessageUtils.withMessage(PlatformMessage.newBuilder()
+          .setId(id)
+          .setWorkflowLog(PlatformWorkflow.newBuilder().addSteps(STEP).addSteps(STEP).setTracker(TRACKER))
+          .addPayloads(INPUT_PAYLOAD)
+          .build()).appendOutcome(outcome, deduplication));
+
+      // Assert
+      assertThat(results.map(result -> result.getPayloadsList().getLast().getBodyRef().getKey()).distinct())
+          .hasSize(1);
+      assertThat(store.stats().entries()).isEqualTo(1);
+      results.forEach(result -> assertThat(PlatformMessageUtils.withMessage(result).processInput(deduplication)
+          .getPayloadsList()).containsExactly(outputPayload));
+    }
+
+    @Test
+    @DisplayName("should record the step timing and update time of a timed outcome only")
+    void test8() {
+      // Arrange
+      var message = PlatformMessage.newBuilder()
+          .setLastUpdated(1L)
+          .setWorkflowLog(PlatformWorkflow.newBuilder().addSteps(STEP).addSteps(STEP).setTracker(TRACKER))
+          .addPayloads(INPUT_PAYLOAD)
+          .build();
+      var outcome = ProcessOutcome.newBuilder()
+          .setFailure(ProcessOutcomeFailure.newBuilder().setErrorMessage("failed"))
+          .build();
+      var utils = PlatformMessageUtils.withMessage(message);
+
+      // Act
+      var untimed = utils.appendOutcome(0, outcome);
+      var timed = utils.appendOutcome(0, outcome, new CallTiming(5_000_000L, 5_250_000L, 1));
+
+      // Assert
+      assertThat(untimed.getLastUpdated()).isEqualTo(1L);
+      assertThat(untimed.getWorkflowLog().hasTimings()).isFalse();
+      assertThat(timed.getLastUpdated()).isEqualTo(5_250L);
+      assertThat(StepTimingUtils.timings(timed.getWorkflowLog()))
+          .containsExactly(new StepTiming(0, 5_000_000L, 5_250_000L, 1, true));
+      assertThat(timed.getWorkflowLog().getTracker()).isEqualTo(untimed.getWorkflowLog().getTracker());
+    }
+
     @Test
     @DisplayName("should handle unset outcome")
     void test3() {
@@ -295,6 +488,76 @@ class PlatformMessageUtilsTest {
     }
   }
 
+  @Nested
+  @DisplayName("batch")
+  class BatchTest {
+
+    static PlatformMessage message(final String id) {
+      return PlatformMessage.newBuilder()
+          .setId(id)
+          .setWorkflowLog(PlatformWorkflow.newBuilder().addSteps(STEP).setTracker(TRACKER))
+          .addPayloads(INPUT_PAYLOAD)
+          .build();
+    }
+
+    static ProcessResponse response(final String id, final String body) {
+      return ProcessResponse.newBuilder()
+          .setCorrelationId(id)
+          .setOutcome(ProcessOutcome.newBuilder()
+              .setSuccess(ProcessOutcomeSucces.newBuilder()
+                  .setOutputPayload(Payload.newBuilder().setStringBody(StringBody.newBuilder().setBody(body)))))
+          .build();
+    }
+
+    @Test
+    @DisplayName("should correlate batched inputs by message id")
+    void test0() {
+      var batch = PlatformMessageUtils.batchInput(List.of(message("m1"), message("m2")));
+
+      assertThat(batch.getRequestsList()).extracting(ProcessRequest::getCorrelationId).containsExactly("m1", "m2");
+      assertThat(batch.getRequests(0).getInput()).isEqualTo(PlatformMessageUtils.withMessage(message("m1")).processInput());
+    }
+
+    @Test
+    @DisplayName("should reject duplicated message ids")
+    void test1() {
+      assertThrows(IllegalArgumentException.class,
+          () -> PlatformMessageUtils.batchInput(List.of(message("m1"), message("m1"))));
+    }
+
+    @Test
+    @DisplayName("should fan outcomes back into their messages")
+    void test2() {
+      var messages = List.of(message("m1"), message("m2"), message("m3"));
+      var batchOutcome = ProcessBatchOutcome.newBuilder()
+          .addResponses(response("m2", "out-2"))
+          .addResponses(response("m1", "out-1"))
+          .build();
+
+      var results = PlatformMessageUtils.appendBatchOutcome(messages, batchOutcome);
+
+      assertThat(results.get(0).get().getPayloadsList().getLast().getStringBody().getBody()).isEqualTo("out-1");
+      assertThat(results.get(1).get().getPayloadsList().getLast().getStringBody().getBody()).isEqualTo("out-2");
+      assertThat(results.get(2)).containsOnLeft("No outcome for message m3");
+    }
+
+    @Test
+    @DisplayName("should reject a message with more than one outcome")
+    void test3() {
+      var messages = List.of(message("m1"), message("m2"));
+      var batchOutcome = ProcessBatchOutcome.newBuilder()
+          .addResponses(response("m1", "out-1"))
+          .addResponses(response("m2", "out-2a"))
+          .addResponses(response("m2", "out-2b"))
+          .build();
+
+      var results = PlatformMessageUtils.appendBatchOutcome(messages, batchOutcome);
+
+      assertThat(results.get(0).get().getPayloadsList().getLast().getStringBody().getBody()).isEqualTo("out-1");
+      assertThat(results.get(1)).containsOnLeft("2 outcomes for message m2");
+    }
+  }
+
   @Nested
   @DisplayName("currentStep()")
   public class CurrentStepTest {
@@ -335,7 +598,7 @@ class PlatformMessageUtilsTest {
       var message = createMessage(createStepsRange(0, 4), 2);
       var currentStepName = PlatformMessageUtils.withMessage(message).currentStep().map(Step::getName);
 
-      org.assertj.vavr.api.VavrAssertions.assertThat(currentStepName).isRight().containsOnRight("step-2");
+      assertThat(currentStepName).isRight().containsOnRight("step-2");
     }
 
     @Test
@@ -344,10 +607,51 @@ class PlatformMessageUtilsTest {
       var message = createMessage(createStepsRange(0, 4), 12);
       var currentStepName = PlatformMessageUtils.withMessage(message).currentStep().map(Step::getName);
 
-      org.assertj.vavr.api.VavrAssertions.assertThat(currentStepName).isLeft()
+      assertThat(currentStepName).isLeft()
           .containsOnLeft("Index 12 out of bounds for length 4");
     }
 
+    @Test
+    @DisplayName("should resolve the step of a referenced workflow")
+    void test2() {
+      var registry = new WorkflowRegistry();
+      var ref = registry.register("wf", 1, io.vavr.collection.HashMap.of(MAIN, createStepsRange(0, 4)));
+      var inline = createMessage(createStepsRange(0, 4), 2).toBuilder().addPayloads(INPUT_PAYLOAD).build();
+      var message = PlatformMessageUtils.withMessage(inline).referencing(ref);
+      var utils = PlatformMessageUtils.withMessage(message);
+
+      assertThat(message.getWorkflowLog().getStepsList()).isEmpty();
+      assertThat(utils.currentStep(registry).map(Step::getName))
+          .containsOnRight("step-2");
+      assertThat(utils.processInput(registry, PayloadResolver.NONE))
+          .containsOnRight(PlatformMessageUtils.withMessage(inline).processInput());
+    }
+
+    @Test
+    @DisplayName("should fail on an unknown referenced workflow")
+    void test3() {
+      var message = PlatformMessageUtils.withMessage(createMessage(createStepsRange(0, 4), 2))
+          .referencing(WorkflowRef.newBuilder().setId("missing").setVersion(1).build());
+      var utils = PlatformMessageUtils.withMessage(message);
+
+      assertThat(utils.currentStep(new WorkflowRegistry()))
+          .containsOnLeft("Unknown workflow missing@1");
+      assertThat(utils.maybeCurrentAddress(new WorkflowRegistry()).isEmpty()).isTrue();
+    }
+
+    @Test
+    @DisplayName("should ask for the registry when the message carries a workflow reference only")
+    void test4() {
+      var message = PlatformMessageUtils.withMessage(createMessage(createStepsRange(0, 4), 2).toBuilder()
+          .setId("m1").build())
+          .referencing(WorkflowRef.newBuilder().setId("wf").setVersion(1).build());
+      var utils = PlatformMessageUtils.withMessage(message);
+
+      assertThat(utils.currentStep())
+          .containsOnLeft("Message m1 carries a workflow reference only, resolve it with the registry");
+      assertThat(utils.maybeCurrentAddress().isEmpty()).isTrue();
+    }
+
   }
 
 }
@@ -0,0 +1,119 @@
+package com.orta.gos.model.utils;
+
+import static com.orta.gos.model.rules.BlockType.MAIN;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.orta.gos.model.BinaryBody;
+import com.orta.gos.model.Payload;
+import com.orta.gos.model.PlatformMessage;
+import com.orta.gos.model.PlatformWorkflow;
+import com.orta.gos.model.rules.Step;
+import com.orta.gos.model.rules.Tracker;
+import com.orta.gos.model.rules.WorkflowRegistry;
+
+import io.vavr.collection.HashMap;
+import io.vavr.collection.List;
+
+@DisplayName("PlatformMessageView")
+class PlatformMessageViewTest {
+
+  static final List<Step> STEPS = List.range(0, 4)
+      .map(i -> Step.newBuilder().setName("step-" + i).setAddress("service-" + i).build());
+
+  static PlatformMessage message(final int currentStep) {
+    return PlatformMessage.newBuilder()
+        .setId("message-1")
+        .setCreationTime(1000L)
+        .setLastUpdated(2000L)
+        .addPayloads(Payload.newBuilder()
+            .setBinaryBody(BinaryBody.newBuilder().setBody(ByteString.copyFrom(new byte[64 * 1024]))))
+        .putHeaders("h1", "v1")
+        .setWorkflowLog(PlatformWorkflow.newBuilder()
+            .addAllSteps(STEPS)
+            .setTracker(Tracker.newBuilder().setCurrentStep(currentStep).setCurrentBlock(MAIN)))
+        .build();
+  }
+
+  @Test
+  @DisplayName("should route as the fully parsed message does")
+  void test0() throws InvalidProtocolBufferException {
+    for (int idx = 0; idx < 6; idx++) {
+      var message = message(idx);
+      var view = PlatformMessageView.parse(message.toByteString());
+
+      assertThat(view.id()).isEqualTo("message-1");
+      assertThat(view.lastUpdated()).isEqualTo(2000L);
+      assertThat(view.tracker()).isEqualTo(message.getWorkflowLog().getTracker());
+      assertThat(view.maybeCurrentAddress()).isEqualTo(PlatformMessageUtils.withMessage(message).maybeCurrentAddress());
+    }
+  }
+
+  @Test
+  @DisplayName("should merge repeated occurrences of the workflow log")
+  void test1() throws InvalidProtocolBufferException {
+    var first = message(0);
+    var second = PlatformMessage.newBuilder()
+        .setWorkflowLog(PlatformWorkflow.newBuilder()
+            .addSteps(Step.newBuilder().setName("step-4").setAddress("service-4"))
+            .setTracker(Tracker.newBuilder().setCurrentStep(4)))
+        .build();
+    var bytes = first.toByteString().concat(second.toByteString());
+
+    var view = PlatformMessageView.parse(bytes);
+
+    assertThat(view.stepsCount()).isEqualTo(5);
+    assertThat(view.tracker()).isEqualTo(PlatformMessage.parseFrom(bytes).getWorkflowLog().getTracker());
+    assertThat(view.maybeCurrentAddress().get()).isEqualTo("service-4");
+  }
+
+  @Test
+  @DisplayName("should resolve the step of a referenced workflow")
+  void test2() throws InvalidProtocolBufferException {
+    var registry = new WorkflowRegistry();
+    var ref = registry.register("wf", 1, HashMap.of(MAIN, STEPS));
+    var message = PlatformMessageUtils.withMessage(message(2)).referencing(ref);
+
+    var view = PlatformMessageView.parse(message.toByteString());
+
+    assertThat(view.workflowRef().get()).isEqualTo(ref);
+    assertThat(view.maybeCurrentAddress(registry).get()).isEqualTo("service-2");
+  }
+
+  @Test
+  @DisplayName("should forward the original bytes unchanged")
+  void test3() throws Exception {
+    var bytes = message(1).toByteString();
+
+    var view = PlatformMessageView.MARSHALLER.parse(bytes.newInput());
+
+    try (var forwarded = PlatformMessageView.MARSHALLER.stream(view)) {
+      assertThat(ByteString.readFrom(forwarded)).isEqualTo(bytes);
+    }
+    assertThat(view.message()).isEqualTo(message(1));
+  }
+
+  @Test
+  @DisplayName("should reject invalid bytes")
+  void test4() {
+    assertThrows(InvalidProtocolBufferException.class,
+        () -> PlatformMessageView.parse(new byte[] { (byte) 0x32, (byte) 0x05, 0x01 }));
+  }
+
+  @Test
+  @DisplayName("should view a byte array without copying it")
+  void test5() throws InvalidProtocolBufferException {
+    var bytes = message(1).toByteArray();
+
+    var view = PlatformMessageView.parse(bytes);
+    bytes[bytes.length - 1] ^= 1;
+
+    assertThat(view.bytes().byteAt(bytes.length - 1)).isEqualTo(bytes[bytes.length - 1]);
+  }
+
+}
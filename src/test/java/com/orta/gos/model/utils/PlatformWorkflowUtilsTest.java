@@ -55,6 +55,64 @@ class PlatformWorkflowUtilsTest {
       .putRanges(FINALLY_VALUE,
           BlockRange.newBuilder().setType(FINALLY).setStartIdx(5).setEndIdx(6).build());
 
+  @Nested
+  @DisplayName("completedSteps")
+  class CompletedStepsTest {
+
+    @Test
+    @DisplayName("should mark completed steps in the bitset")
+    void test0() {
+      var workflow = PlatformWorkflow.newBuilder().addAllSteps(allSteps);
+
+      PlatformWorkflowUtils.markCompleted(workflow, 0);
+      PlatformWorkflowUtils.markCompleted(workflow, 6);
+      PlatformWorkflowUtils.markCompleted(workflow, 70);
+
+      assertThat(workflow.getCompletedStepsBitsList()).containsExactly(1L | 1L << 6, 1L << 6);
+      assertThat(PlatformWorkflowUtils.completedSteps(workflow)).containsExactly(0, 6, 70);
+      assertThat(PlatformWorkflowUtils.isCompleted(workflow, 6)).isTrue();
+      assertThat(PlatformWorkflowUtils.isCompleted(workflow, 5)).isFalse();
+      assertThat(PlatformWorkflowUtils.isCompleted(workflow, 128)).isFalse();
+    }
+
+    @Test
+    @DisplayName("should read and migrate the completed step names")
+    void test1() {
+      var workflow = PlatformWorkflow.newBuilder()
+          .addAllSteps(allSteps)
+          .addCompletedSteps("step1")
+          .addCompletedSteps("step2");
+
+      assertThat(PlatformWorkflowUtils.completedSteps(workflow)).containsExactly(0, 1);
+      assertThat(PlatformWorkflowUtils.isCompleted(workflow, 1)).isTrue();
+
+      PlatformWorkflowUtils.markCompleted(workflow, 2);
+
+      assertThat(workflow.getCompletedStepsCount()).isZero();
+      assertThat(PlatformWorkflowUtils.completedSteps(workflow)).containsExactly(0, 1, 2);
+      assertThat(workflow.build().getSerializedSize())
+          .isLessThan(PlatformWorkflow.newBuilder().addAllSteps(allSteps)
+              .addAllCompletedSteps(List.of("step1", "step2", "step3")).build().getSerializedSize());
+    }
+
+    @Test
+    @DisplayName("should keep the completed step names matching no step")
+    void test2() {
+      var removed = Navigation.updateWorkflow(PlatformWorkflow.newBuilder().addAllSteps(allSteps).build());
+      var referenced = PlatformWorkflow.newBuilder().addCompletedSteps("step1");
+
+      PlatformWorkflowUtils.markCompleted(removed, 0);
+      PlatformWorkflowUtils.markCompleted(referenced, 3);
+
+      assertThat(removed.getCompletedStepsList()).containsExactly("step1");
+      assertThat(PlatformWorkflowUtils.completedSteps(removed)).containsExactly(0);
+      assertThat(referenced.getCompletedStepsList()).containsExactly("step1");
+      var resolved = referenced.addAllSteps(allSteps);
+      assertThat(PlatformWorkflowUtils.isCompleted(resolved, 0)).isTrue();
+      assertThat(PlatformWorkflowUtils.completedSteps(resolved)).containsExactly(0, 3);
+    }
+  }
+
   @Nested
   @DisplayName("updateTracker")
   class UpdateTrackerTest {
@@ -0,0 +1,182 @@
+package com.orta.gos.model.utils;
+
+import static com.orta.gos.model.rules.BlockType.MAIN;
+import static com.orta.gos.model.rules.BlockType.MAIN_VALUE;
+import static com.orta.gos.model.rules.BlockType.TYPE_NA;
+import static com.orta.gos.model.utils.PayloadFixtures.byAttributes;
+import static com.orta.gos.model.utils.PayloadFixtures.desc;
+import static com.orta.gos.model.utils.PayloadFixtures.payload;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.regex.Pattern;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+
+import com.orta.gos.model.Payload;
+import com.orta.gos.model.PlatformMessage;
+import com.orta.gos.model.PlatformWorkflow;
+import com.orta.gos.model.ProcessOutcome;
+import com.orta.gos.model.ProcessOutcomeSucces;
+import com.orta.gos.model.rules.BlockRange;
+import com.orta.gos.model.rules.PicSelector;
+import com.orta.gos.model.rules.Step;
+import com.orta.gos.model.rules.Tracker;
+import com.orta.gos.model.rules.WorkflowRef;
+import com.orta.gos.model.rules.WorkflowRegistry;
+
+import io.vavr.collection.HashMap;
+import io.vavr.collection.List;
+
+@DisplayName("RetentionPolicy")
+class RetentionPolicyTest {
+
+  static final List<Payload> payloads = List.of(
+      payload("p0", "type", "order"),
+      payload("p1", "type", "customer", "audit", "keep"),
+      payload("p2", "type", "order"),
+      payload("p3", "type", "enriched"),
+      payload("p4", "type", "enriched"));
+
+  static PlatformMessage message(final int currentStep, final Step... steps) {
+    return PlatformMessage.newBuilder()
+        .addAllPayloads(payloads)
+        .setWorkflowLog(PlatformWorkflow.newBuilder()
+            .addAllSteps(List.of(steps))
+            .setTracker(Tracker.newBuilder()
+                .setCurrentStep(currentStep)
+                .setCurrentBlock(MAIN)
+                .setTermination(steps.length)
+                .putRanges(MAIN_VALUE, BlockRange.newBuilder().setType(MAIN).setEndIdx(steps.length - 1).build())))
+        .build();
+  }
+
+  static Step step(final String name, final PicSelector selector) {
+    return Step.newBuilder().setName(name).setPicSelector(selector).build();
+  }
+
+  static List<String> uuids(final PlatformMessage message) {
+    return List.ofAll(message.getPayloadsList()).map(Payload::getUuid);
+  }
+
+  @Nested
+  @DisplayName("keepLast")
+  class KeepLastTest {
+
+    @Test
+    @DisplayName("should keep the most recent payloads")
+    void test0() {
+      var message = message(0, step("s0", PicSelector.getDefaultInstance()));
+
+      assertThat(uuids(RetentionPolicy.keepLast(2).apply(message))).containsExactly("p3", "p4");
+    }
+
+    @Test
+    @DisplayName("should return the same message when nothing is dropped")
+    void test1() {
+      var message = message(0, step("s0", PicSelector.getDefaultInstance()));
+
+      assertThat(RetentionPolicy.keepLast(10).apply(message)).isSameAs(message);
+    }
+  }
+
+  @Nested
+  @DisplayName("keepSelected")
+  class KeepSelectedTest {
+
+    @Test
+    @DisplayName("should keep payloads selected by the current and later steps only")
+    void test0() {
+      var message = message(1,
+          step("s0", byAttributes(desc("customer", "type", "customer"))),
+          step("s1", byAttributes(desc("order", "type", "order"))),
+          step("s2", PicSelector.getDefaultInstance()));
+
+      assertThat(uuids(RetentionPolicy.keepSelected().apply(message))).containsExactly("p2", "p4");
+    }
+
+    @Test
+    @DisplayName("should drop everything once the workflow terminated")
+    void test1() {
+      var message = message(1, step("s0", PicSelector.getDefaultInstance()));
+      var terminated = message.toBuilder()
+          .setWorkflowLog(message.getWorkflowLog().toBuilder()
+              .setTracker(message.getWorkflowLog().getTracker().toBuilder().setCurrentBlock(TYPE_NA)))
+          .build();
+
+      assertThat(RetentionPolicy.keepSelected().apply(terminated).getPayloadsList()).isEmpty();
+    }
+
+    @Test
+    @DisplayName("should resolve the steps of a message carrying a workflow reference only")
+    void test2() {
+      var steps = List.of(
+          step("s0", byAttributes(desc("customer", "type", "customer"))),
+          step("s1", byAttributes(desc("order", "type", "order"))),
+          step("s2", PicSelector.getDefaultInstance()));
+      var registry = new WorkflowRegistry();
+      var ref = registry.register("wf", 1, HashMap.of(MAIN, steps));
+      var message = PlatformMessageUtils.withMessage(message(1, steps.toJavaArray(Step[]::new))).referencing(ref);
+      var unknown = PlatformMessageUtils.withMessage(message)
+          .referencing(WorkflowRef.newBuilder().setId("missing").setVersion(1).build());
+
+      assertThat(uuids(RetentionPolicy.keepSelected(registry).apply(message))).containsExactly("p2", "p4");
+      assertThat(RetentionPolicy.keepSelected().apply(message)).isSameAs(message);
+      assertThat(RetentionPolicy.keepSelected(registry).apply(unknown)).isSameAs(unknown);
+    }
+  }
+
+  @Nested
+  @DisplayName("keepByAttribute")
+  class KeepByAttributeTest {
+
+    @Test
+    @DisplayName("should keep payloads whose attribute matches the pattern")
+    void test0() {
+      var message = message(0, step("s0", PicSelector.getDefaultInstance()));
+
+      assertThat(uuids(RetentionPolicy.keepByAttribute("type", Pattern.compile("cust.*")).apply(message)))
+          .containsExactly("p1");
+    }
+  }
+
+  @Nested
+  @DisplayName("or")
+  class OrTest {
+
+    @Test
+    @DisplayName("should keep the union of the policies, in payload order")
+    void test0() {
+      var message = message(0, step("s0", byAttributes(desc("order", "type", "order"))));
+      var policy = RetentionPolicy.keepLast(1)
+          .or(RetentionPolicy.keepSelected())
+          .or(RetentionPolicy.keepByAttribute("audit", Pattern.compile("keep")));
+
+      assertThat(uuids(policy.apply(message))).containsExactly("p1", "p2", "p4");
+    }
+  }
+
+  @Nested
+  @DisplayName("PlatformMessageUtils.appendOutcome")
+  class AppendOutcomeTest {
+
+    @Test
+    @DisplayName("should prune against the tracker after the outcome is applied")
+    void test0() {
+      var message = message(0,
+          step("s0", PicSelector.getDefaultInstance()),
+          step("s1", byAttributes(desc("customer", "type", "customer"))));
+      var outcome = ProcessOutcome.newBuilder()
+          .setSuccess(ProcessOutcomeSucces.newBuilder().setOutputPayload(payload("p5", "type", "result")))
+          .build();
+
+      var result = PlatformMessageUtils.withMessage(message)
+          .appendOutcome(outcome, RetentionPolicy.keepSelected());
+
+      assertThat(result.getWorkflowLog().getTracker().getCurrentStep()).isEqualTo(1);
+      assertThat(uuids(result)).containsExactly("p1");
+    }
+  }
+
+}
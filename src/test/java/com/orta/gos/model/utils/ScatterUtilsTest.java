@@ -0,0 +1,166 @@
+package com.orta.gos.model.utils;
+
+import static com.orta.gos.model.rules.BlockType.GENERAL_ERROR;
+import static com.orta.gos.model.rules.BlockType.MAIN;
+import static com.orta.gos.model.utils.PayloadFixtures.payload;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+
+import com.orta.gos.model.PlatformMessage;
+import com.orta.gos.model.PlatformWorkflow;
+import com.orta.gos.model.ProcessInput;
+import com.orta.gos.model.ProcessOutcome;
+import com.orta.gos.model.ProcessOutcomeFailure;
+import com.orta.gos.model.ProcessOutcomeSucces;
+import com.orta.gos.model.rules.BlockType;
+import com.orta.gos.model.rules.Scatter;
+import com.orta.gos.model.rules.ScatterFailurePolicy;
+import com.orta.gos.model.rules.Step;
+import com.orta.gos.model.rules.WorkflowPlan;
+
+import io.vavr.collection.HashMap;
+import io.vavr.collection.List;
+
+@DisplayName("ScatterUtils")
+class ScatterUtilsTest {
+
+  static final Scatter FAIL_ON_ANY = Scatter.getDefaultInstance();
+
+  static final Scatter FAIL_ON_ALL = Scatter.newBuilder().setOnFailure(ScatterFailurePolicy.FAIL_ON_ALL).build();
+
+  static ProcessOutcome success(final String uuid, final String... headers) {
+    var success = ProcessOutcomeSucces.newBuilder().setOutputPayload(payload(uuid));
+    for (int i = 0; i < headers.length; i += 2) {
+      success.putHeaders(headers[i], headers[i + 1]);
+    }
+    return ProcessOutcome.newBuilder().setSuccess(success).build();
+  }
+
+  static ProcessOutcome failure(final String error) {
+    return ProcessOutcome.newBuilder()
+        .setFailure(ProcessOutcomeFailure.newBuilder().setErrorMessage(error))
+        .build();
+  }
+
+  @Nested
+  @DisplayName("scatter")
+  class ScatterTest {
+
+    @Test
+    @DisplayName("should create one input per payload, keeping the attributes")
+    void test0() {
+      var input = ProcessInput.newBuilder()
+          .putAttributes("mode", "fast")
+          .addPayloads(payload("p1"))
+          .addPayloads(payload("p2"))
+          .build();
+
+      var inputs = ScatterUtils.scatter(input);
+
+      assertThat(inputs.map(scattered -> scattered.getPayloads(0).getUuid())).containsExactly("p1", "p2");
+      assertThat(inputs.map(ProcessInput::getPayloadsCount)).containsOnly(1);
+      assertThat(inputs.map(scattered -> scattered.getAttributesMap().get("mode"))).containsOnly("fast");
+    }
+
+    @Test
+    @DisplayName("should bound the parallelism by the number of inputs")
+    void test1() {
+      assertThat(ScatterUtils.parallelism(FAIL_ON_ANY, 5)).isEqualTo(5);
+      assertThat(ScatterUtils.parallelism(Scatter.newBuilder().setMaxParallelism(2).build(), 5)).isEqualTo(2);
+      assertThat(ScatterUtils.parallelism(Scatter.newBuilder().setMaxParallelism(8).build(), 5)).isEqualTo(5);
+      assertThat(ScatterUtils.parallelism(FAIL_ON_ANY, 0)).isEqualTo(1);
+    }
+  }
+
+  @Nested
+  @DisplayName("gather")
+  class GatherTest {
+
+    @Test
+    @DisplayName("should fail on any failure with FAIL_ON_ANY")
+    void test0() {
+      var outcomes = List.of(success("p1"), failure("boom"), success("p3"));
+
+      var gathered = ScatterUtils.gather(outcomes, FAIL_ON_ANY);
+
+      assertThat(gathered.hasFailure()).isTrue();
+      assertThat(gathered.getFailure().getErrorMessage()).isEqualTo("1 of 3 scattered calls failed: boom");
+    }
+
+    @Test
+    @DisplayName("should succeed with partial failures with FAIL_ON_ALL")
+    void test1() {
+      var outcomes = List.of(success("p1"), failure("boom"), success("p3"));
+
+      assertThat(ScatterUtils.gather(outcomes, FAIL_ON_ALL).hasSuccess()).isTrue();
+      assertThat(ScatterUtils.outputs(outcomes).map(p -> p.getUuid())).containsExactly("p1", "p3");
+      assertThat(ScatterUtils.gather(List.of(failure("a"), failure("b")), FAIL_ON_ALL).hasFailure()).isTrue();
+    }
+
+    @Test
+    @DisplayName("should keep the first value of every header and succeed without calls")
+    void test2() {
+      var gathered = ScatterUtils.gather(List.of(success("p1", "h1", "first"), success("p2", "h1", "second",
+          "h2", "v2")), FAIL_ON_ANY);
+
+      assertThat(gathered.getSuccess().getHeadersMap()).containsExactlyInAnyOrderEntriesOf(
+          java.util.Map.of("h1", "first", "h2", "v2"));
+      assertThat(gathered.getSuccess().hasOutputPayload()).isFalse();
+      assertThat(ScatterUtils.gather(List.empty(), FAIL_ON_ALL).hasSuccess()).isTrue();
+    }
+  }
+
+  @Nested
+  @DisplayName("PlatformMessageUtils.appendOutcomes")
+  class AppendOutcomesTest {
+
+    static final WorkflowPlan PLAN = WorkflowPlan.compile(HashMap.<BlockType, List<Step>>of(
+        MAIN, List.of(Step.newBuilder().setName("split").setScatter(FAIL_ON_ANY).build(),
+            Step.newBuilder().setName("store").build()),
+        GENERAL_ERROR, List.of(Step.newBuilder().setName("alert").build())));
+
+    static final PlatformMessage MESSAGE = PlatformMessage.newBuilder()
+        .setId("m1")
+        .addPayloads(payload("p0"))
+        .putHeaders("h1", "v1")
+        .setWorkflowLog(PlatformWorkflow.newBuilder()
+            .addAllSteps(PLAN.steps())
+            .setTracker(PLAN.initialTracker()))
+        .build();
+
+    @Test
+    @DisplayName("should append all the outputs in order with a single tracker advance")
+    void test0() {
+      var result = PlatformMessageUtils.withMessage(MESSAGE)
+          .appendOutcomes(0, List.of(success("p1", "h1", "ignored"), success("p2", "h2", "v2")), FAIL_ON_ANY);
+
+      assertThat(List.ofAll(result.getPayloadsList()).map(p -> p.getUuid())).containsExactly("p0", "p1", "p2");
+      assertThat(result.getHeadersMap()).containsExactlyInAnyOrderEntriesOf(java.util.Map.of("h1", "v1", "h2", "v2"));
+      assertThat(result.getWorkflowLog().getTracker().getCurrentStep()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("should only advance the tracker to the error block when the step fails")
+    void test1() {
+      var result = PlatformMessageUtils.withMessage(MESSAGE)
+          .appendOutcomes(0, List.of(success("p1"), failure("boom")), FAIL_ON_ANY);
+
+      assertThat(result.getPayloadsCount()).isEqualTo(1);
+      assertThat(result.getWorkflowLog().getTracker().getCurrentBlock()).isEqualTo(GENERAL_ERROR);
+      assertThat(result.getWorkflowLog().getTracker().getErrorRaisedStep()).isZero();
+    }
+
+    @Test
+    @DisplayName("should index the appended outputs of an IndexedMessage")
+    void test2() {
+      var result = IndexedMessage.of(MESSAGE)
+          .appendOutcomes(0, List.of(success("p1"), success("p2")), FAIL_ON_ANY);
+
+      assertThat(result.index().size()).isEqualTo(3);
+    }
+  }
+
+}
@@ -0,0 +1,87 @@
+package com.orta.gos.model.utils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import com.orta.gos.model.PlatformWorkflow;
+
+@DisplayName("StepTimingUtils")
+class StepTimingUtilsTest {
+
+  private static final long BASE = 1_760_000_000_000_000L;
+
+  @Test
+  @DisplayName("should read back the appended entries in order")
+  void test0() {
+    var builder = PlatformWorkflow.newBuilder();
+    StepTimingUtils.append(builder, 0, new CallTiming(BASE, BASE + 1_200, 1), false);
+    StepTimingUtils.append(builder, 2, new CallTiming(BASE + 1_500, BASE + 90_000, 4), false);
+    StepTimingUtils.append(builder, 1, new CallTiming(BASE + 1_400, BASE + 2_000, 1), true);
+
+    assertThat(StepTimingUtils.timings(builder)).containsExactly(
+        new StepTiming(0, BASE, BASE + 1_200, 1, false),
+        new StepTiming(2, BASE + 1_500, BASE + 90_000, 4, false),
+        new StepTiming(1, BASE + 1_400, BASE + 2_000, 1, true));
+  }
+
+  @Test
+  @DisplayName("should store the dispatch times as deltas of the previous entry")
+  void test1() {
+    var builder = PlatformWorkflow.newBuilder();
+    StepTimingUtils.append(builder, 0, new CallTiming(BASE, BASE + 1_200, 1), false);
+    StepTimingUtils.append(builder, 1, new CallTiming(BASE + 1_300, BASE + 2_000, 1), false);
+    StepTimingUtils.append(builder, 2, new CallTiming(BASE + 1_250, BASE + 2_100, 1), false);
+
+    var timings = builder.getTimings();
+    assertThat(timings.getBaseMicros()).isEqualTo(BASE);
+    assertThat(timings.getDispatchDeltasList()).containsExactly(0L, 1_300L, -50L);
+    assertThat(timings.getDurationsList()).containsExactly(1_200L, 700L, 850L);
+    // smaller than the two timestamps of every entry alone
+    assertThat(timings.getSerializedSize()).isLessThan(3 * 2 * Long.BYTES);
+  }
+
+  @Test
+  @DisplayName("should record outcomes received before their dispatch time as immediate")
+  void test2() {
+    var builder = PlatformWorkflow.newBuilder();
+    StepTimingUtils.append(builder, 0, new CallTiming(BASE, BASE - 10, 1), false);
+
+    assertThat(StepTimingUtils.timings(builder).head().durationMicros()).isZero();
+  }
+
+  @Test
+  @DisplayName("should reject a timing without attempts")
+  void test3() {
+    assertThrows(IllegalArgumentException.class, () -> new CallTiming(BASE, BASE, 0));
+  }
+
+  @Test
+  @DisplayName("should keep the last dispatch time, and recompute it for traces written without it")
+  void test4() {
+    var builder = PlatformWorkflow.newBuilder();
+    StepTimingUtils.append(builder, 0, new CallTiming(BASE, BASE + 1_200, 1), false);
+    StepTimingUtils.append(builder, 1, new CallTiming(BASE + 1_300, BASE + 2_000, 1), false);
+    assertThat(builder.getTimings().getLastDispatchOffset()).isEqualTo(1_300L);
+
+    builder.getTimingsBuilder().clearLastDispatchOffset();
+    StepTimingUtils.append(builder, 2, new CallTiming(BASE + 1_250, BASE + 2_100, 1), false);
+
+    assertThat(builder.getTimings().getDispatchDeltasList()).containsExactly(0L, 1_300L, -50L);
+    assertThat(builder.getTimings().getLastDispatchOffset()).isEqualTo(1_250L);
+  }
+
+  @Test
+  @DisplayName("should measure the duration from the monotonic clock of the dispatch")
+  void test5() {
+    var dispatch = new CallTiming.Dispatch(BASE, System.nanoTime() - 5_000_000L);
+
+    var timing = CallTiming.since(dispatch, 1);
+
+    assertThat(timing.dispatchedMicros()).isEqualTo(BASE);
+    assertThat(timing.completedMicros() - BASE).isBetween(5_000L, 5_000_000L);
+  }
+
+}
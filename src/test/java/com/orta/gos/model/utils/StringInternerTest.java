@@ -0,0 +1,120 @@
+package com.orta.gos.model.utils;
+
+import static com.orta.gos.model.rules.BlockType.MAIN;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.orta.gos.model.Payload;
+import com.orta.gos.model.PlatformMessage;
+import com.orta.gos.model.PlatformWorkflow;
+import com.orta.gos.model.StringBody;
+import com.orta.gos.model.rules.BlockType;
+import com.orta.gos.model.rules.Step;
+import com.orta.gos.model.rules.WorkflowPlan;
+
+import io.vavr.collection.HashMap;
+import io.vavr.collection.List;
+
+@DisplayName("StringInterner")
+class StringInternerTest {
+
+  static final WorkflowPlan PLAN = WorkflowPlan.compile(HashMap.<BlockType, List<Step>>of(
+      MAIN, List.range(0, 3).map(i -> Step.newBuilder()
+          .setName("step-" + i)
+          .setAddress("service-" + i + ":9000")
+          .putAttributes("mode", "strict")
+          .build())));
+
+  static PlatformMessage message(final String id) {
+    return PlatformMessage.newBuilder()
+        .setId(id)
+        .putHeaders("correlation-id", id)
+        .addPayloads(Payload.newBuilder()
+            .putAttributes("content-type", "json")
+            .setStringBody(StringBody.newBuilder().setBody("{\"id\":\"" + id + "\"}")))
+        .setWorkflowLog(PlatformWorkflow.newBuilder()
+            .addAllSteps(PLAN.steps())
+            .addCompletedSteps("step-0")
+            .setTracker(PLAN.initialTracker()))
+        .build();
+  }
+
+  @Nested
+  @DisplayName("intern")
+  class InternTest {
+
+    @Test
+    @DisplayName("should return the canonical instance of equal strings")
+    void test0() {
+      var interner = new StringInterner(StringInterner.Options.DEFAULT);
+      var first = new String("service-a:9000");
+      var second = new String("service-a:9000");
+
+      assertThat(interner.intern(first)).isSameAs(first);
+      assertThat(interner.intern(second)).isSameAs(first);
+      assertThat(interner.stats()).isEqualTo(new StringInterner.Stats(1, 1, 24 + 32, 1));
+    }
+
+    @Test
+    @DisplayName("should keep long strings and stay bounded")
+    void test1() {
+      var interner = new StringInterner(new StringInterner.Options(16, 8));
+      var value = new String("longer than eight");
+
+      assertThat(interner.intern(value)).isSameAs(value);
+      List.range(0, 1000).forEach(i -> interner.intern("id-" + i));
+
+      assertThat(interner.stats().size()).isLessThanOrEqualTo(16);
+    }
+  }
+
+  @Nested
+  @DisplayName("parse")
+  class ParseTest {
+
+    @Test
+    @DisplayName("should share the identifiers of parsed messages")
+    void test0() {
+      var interner = new StringInterner(StringInterner.Options.DEFAULT);
+
+      var messages = List.range(0, 100).map(i -> message("m" + i));
+      var parsed = messages.map(message -> {
+        try {
+          return interner.parse(message.toByteString());
+        } catch (InvalidProtocolBufferException e) {
+          throw new IllegalStateException(e);
+        }
+      });
+
+      assertThat(parsed).isEqualTo(messages);
+      var first = parsed.head();
+      parsed.tail().forEach(message -> {
+        assertThat(message.getWorkflowLog().getSteps(1).getName())
+            .isSameAs(first.getWorkflowLog().getSteps(1).getName());
+        assertThat(message.getWorkflowLog().getSteps(1).getAddress())
+            .isSameAs(first.getWorkflowLog().getSteps(1).getAddress());
+        assertThat(message.getWorkflowLog().getSteps(1).getAttributesMap().keySet().iterator().next())
+            .isSameAs(first.getWorkflowLog().getSteps(1).getAttributesMap().keySet().iterator().next());
+        assertThat(message.getHeadersMap().keySet().iterator().next())
+            .isSameAs(first.getHeadersMap().keySet().iterator().next());
+        assertThat(message.getWorkflowLog().getCompletedSteps(0))
+            .isSameAs(first.getWorkflowLog().getCompletedSteps(0));
+      });
+      assertThat(interner.stats().savedBytes()).isGreaterThan(99 * 10 * 40);
+    }
+
+    @Test
+    @DisplayName("should intern the steps of compiled plans")
+    void test1() {
+      var other = WorkflowPlan.compile(HashMap.<BlockType, List<Step>>of(
+          MAIN, List.of(Step.newBuilder().setName(new String("step-0")).build())));
+
+      assertThat(other.step(0).getName()).isSameAs(PLAN.step(0).getName());
+    }
+  }
+
+}